@@ -0,0 +1,122 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Benchmark of the all-kNN join via
+ * {@link KNNQuery#getKNNForBulkDBIDs}, comparing the tiled linear scan with
+ * the batched R*-tree join.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AllKNNBenchmark {
+  /**
+   * Index to use.
+   */
+  @Param({ "linear", "rstar" })
+  String index;
+
+  /**
+   * Data distribution.
+   */
+  @Param({ "UNIFORM", "CLUSTERED" })
+  BenchmarkData.Distribution distribution;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8" })
+  int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  int k;
+
+  /**
+   * kNN query.
+   */
+  KNNQuery<NumberVector> knnq;
+
+  /**
+   * All object ids.
+   */
+  ArrayDBIDs ids;
+
+  /**
+   * Build the database and the index.
+   */
+  @Setup
+  public void setup() {
+    double[][] data = BenchmarkData.dense(distribution, size, dim, 0L);
+    Database db = BenchmarkData.database(data, IndexQueryBenchmark.indexParameters(index));
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    knnq = QueryUtil.getKNNQuery(rel, EuclideanDistanceFunction.STATIC, k);
+    ids = DBIDUtil.ensureArray(rel.getDBIDs());
+  }
+
+  @Benchmark
+  public void allknn(Blackhole bh) {
+    bh.consume(knnq.getKNNForBulkDBIDs(ids, k));
+  }
+}
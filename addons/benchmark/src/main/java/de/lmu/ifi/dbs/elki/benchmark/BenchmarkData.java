@@ -0,0 +1,171 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
+import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Seeded data set generators shared by the benchmarks.
+ *
+ * All generators are deterministic for a given seed, so that different index
+ * structures and algorithms are always compared on exactly the same data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class BenchmarkData {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkData() {
+    // Static methods only.
+  }
+
+  /**
+   * Data distributions available to the benchmarks.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static enum Distribution {
+    /** Uniform in the unit cube. */
+    UNIFORM,
+    /** Gaussian clusters with random centers in the unit cube. */
+    CLUSTERED,
+  }
+
+  /**
+   * Number of clusters used for {@link Distribution#CLUSTERED}.
+   */
+  public static final int CLUSTERS = 10;
+
+  /**
+   * Standard deviation of the generated clusters.
+   */
+  public static final double CLUSTER_STDDEV = 0.05;
+
+  /**
+   * Generate dense vectors.
+   *
+   * @param dist Distribution
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Data array
+   */
+  public static double[][] dense(Distribution dist, int size, int dim, long seed) {
+    final Random rnd = new Random(seed);
+    double[][] data = new double[size][dim];
+    switch(dist){
+    case UNIFORM:
+      for(int i = 0; i < size; i++) {
+        final double[] row = data[i];
+        for(int d = 0; d < dim; d++) {
+          row[d] = rnd.nextDouble();
+        }
+      }
+      break;
+    case CLUSTERED: {
+      double[][] centers = new double[CLUSTERS][dim];
+      for(int c = 0; c < CLUSTERS; c++) {
+        for(int d = 0; d < dim; d++) {
+          centers[c][d] = rnd.nextDouble();
+        }
+      }
+      for(int i = 0; i < size; i++) {
+        final double[] row = data[i], center = centers[rnd.nextInt(CLUSTERS)];
+        for(int d = 0; d < dim; d++) {
+          row[d] = center[d] + rnd.nextGaussian() * CLUSTER_STDDEV;
+        }
+      }
+      break;
+    }
+    default:
+      throw new IllegalStateException("Unknown distribution: " + dist);
+    }
+    return data;
+  }
+
+  /**
+   * Generate sparse vectors with uniform values.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param density Expected fraction of non-zero dimensions
+   * @param seed Random seed
+   * @return Sparse vectors
+   */
+  public static SparseDoubleVector[] sparse(int size, int dim, double density, long seed) {
+    final Random rnd = new Random(seed);
+    SparseDoubleVector[] data = new SparseDoubleVector[size];
+    int[] idx = new int[dim];
+    double[] val = new double[dim];
+    for(int i = 0; i < size; i++) {
+      int nnz = 0;
+      for(int d = 0; d < dim; d++) {
+        if(rnd.nextDouble() < density) {
+          idx[nnz] = d;
+          val[nnz] = rnd.nextDouble();
+          ++nnz;
+        }
+      }
+      int[] ci = new int[nnz];
+      double[] cv = new double[nnz];
+      System.arraycopy(idx, 0, ci, 0, nnz);
+      System.arraycopy(val, 0, cv, 0, nnz);
+      data[i] = new SparseDoubleVector(ci, cv, dim);
+    }
+    return data;
+  }
+
+  /**
+   * Build and initialize a static database from a data array.
+   *
+   * Object IDs are fixed (starting at 0), so repeatedly building databases in
+   * a benchmark loop does not exhaust the DBID space.
+   *
+   * @param data Data array
+   * @param params Additional database parameters, e.g. index factories. May
+   *        be {@code null}.
+   * @return Initialized database
+   */
+  public static Database database(double[][] data, ListParameterization params) {
+    if(params == null) {
+      params = new ListParameterization();
+    }
+    params.addParameter(AbstractDatabase.Parameterizer.DATABASE_CONNECTION_ID, new ArrayAdapterDatabaseConnection(data, null, 0));
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    return db;
+  }
+}
@@ -0,0 +1,259 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.graph.HNSWIndex;
+import de.lmu.ifi.dbs.elki.index.laesa.LAESAIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.InMemoryLSHIndex;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractProjectedHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.DynamicKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.SortTileRecursiveBulkSplit;
+import de.lmu.ifi.dbs.elki.index.vafile.VAFile;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Benchmark of kNN and range queries, comparing the linear scan with the
+ * index structures that support Euclidean distance.
+ *
+ * Queries are drawn from the same distribution as the data, but are not part
+ * of the data set. The range query radius is chosen per query as its exact
+ * k-nearest neighbor distance, so that range and kNN queries return result
+ * sets of comparable size. Note that LSH is approximate, and may return fewer
+ * results.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexQueryBenchmark {
+  /**
+   * Number of queries per invocation.
+   */
+  static final int QUERIES = 100;
+
+  /**
+   * Index to use.
+   */
+  @Param({ "linear", "rstar", "covertree", "laesa", "kdtree", "dynkd", "dynkd-approx", "vafile", "lsh", "lsh-multiprobe", "hnsw" })
+  String index;
+
+  /**
+   * Data distribution.
+   */
+  @Param({ "UNIFORM", "CLUSTERED" })
+  BenchmarkData.Distribution distribution;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32" })
+  int dim;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  int k;
+
+  /**
+   * kNN query.
+   */
+  KNNQuery<NumberVector> knnq;
+
+  /**
+   * Range query.
+   */
+  RangeQuery<NumberVector> rangeq;
+
+  /**
+   * Query points.
+   */
+  DoubleVector[] queries;
+
+  /**
+   * Range query radius, per query.
+   */
+  double[] radius;
+
+  /**
+   * Build the database and the index.
+   */
+  @Setup
+  public void setup() {
+    double[][] data = BenchmarkData.dense(distribution, size, dim, 0L);
+    Database db = BenchmarkData.database(data, indexParameters(index));
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    knnq = QueryUtil.getKNNQuery(rel, EuclideanDistanceFunction.STATIC, k);
+    rangeq = QueryUtil.getRangeQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    double[][] qdata = BenchmarkData.dense(distribution, QUERIES, dim, 1L);
+    queries = new DoubleVector[QUERIES];
+    radius = new double[QUERIES];
+    for(int i = 0; i < QUERIES; i++) {
+      queries[i] = new DoubleVector(qdata[i]);
+      // Exact kNN distance, computed independently of the index:
+      final double[] q = qdata[i];
+      DoubleMaxHeap heap = new DoubleMaxHeap(k + 1);
+      for(int j = 0; j < size; j++) {
+        final double[] o = data[j];
+        double sum = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double v = q[d] - o[d];
+          sum += v * v;
+        }
+        heap.add(sum, k);
+      }
+      radius[i] = Math.sqrt(heap.peek());
+    }
+  }
+
+  /**
+   * Database parameters for the named index.
+   *
+   * @param index Index name
+   * @return Parameters
+   */
+  static ListParameterization indexParameters(String index) {
+    ListParameterization params = new ListParameterization();
+    switch(index){
+    case "linear":
+      break;
+    case "rstar":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 4096);
+      params.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class);
+      break;
+    case "covertree":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+      params.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+      break;
+    case "laesa":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, LAESAIndex.Factory.class);
+      params.addParameter(LAESAIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+      params.addParameter(LAESAIndex.Factory.Parameterizer.SEED_ID, 0L);
+      break;
+    case "kdtree":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, SmallMemoryKDTree.Factory.class);
+      break;
+    case "dynkd":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, DynamicKDTree.Factory.class);
+      params.addParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 8);
+      break;
+    case "dynkd-approx":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, DynamicKDTree.Factory.class);
+      params.addParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 8);
+      params.addParameter(DynamicKDTree.Factory.Parameterizer.EPSILON_ID, .5);
+      break;
+    case "vafile":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, VAFile.Factory.class);
+      params.addParameter(VAFile.Factory.PARTITIONS_ID, 16);
+      break;
+    case "lsh":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 10);
+      params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, .1);
+      params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+      params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+      break;
+    case "lsh-multiprobe":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 2);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.PROBES_ID, 20);
+      params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, .1);
+      params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+      params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+      break;
+    case "hnsw":
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, HNSWIndex.Factory.class);
+      params.addParameter(HNSWIndex.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+      params.addParameter(HNSWIndex.Factory.Parameterizer.SEED_ID, 0L);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+    return params;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void knn(Blackhole bh) {
+    for(int i = 0; i < QUERIES; i++) {
+      bh.consume(knnq.getKNNForObject(queries[i], k));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void range(Blackhole bh) {
+    for(int i = 0; i < QUERIES; i++) {
+      bh.consume(rangeq.getRangeForObject(queries[i], radius[i]));
+    }
+  }
+}
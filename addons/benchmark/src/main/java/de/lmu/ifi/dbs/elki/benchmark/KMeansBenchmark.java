@@ -0,0 +1,153 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.algorithm.Algorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHybridLloydMacQueen;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansMacQueen;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansSort;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelElkanKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelHamerlyKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel.ParallelLloydKMeans;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Benchmark of the k-means variants. All variants use the same seeded
+ * initialization, so they perform the same number of iterations and converge
+ * to the same result; only the cost per iteration differs.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KMeansBenchmark {
+  /**
+   * k-means variant.
+   */
+  @Param({ "lloyd", "macqueen", "hybrid", "sort", "elkan", "hamerly", "parallel-lloyd", "parallel-elkan", "parallel-hamerly" })
+  String variant;
+
+  /**
+   * Data distribution.
+   */
+  @Param({ "CLUSTERED", "UNIFORM" })
+  BenchmarkData.Distribution distribution;
+
+  /**
+   * Data set size.
+   */
+  @Param({ "10000", "100000" })
+  int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "16" })
+  int dim;
+
+  /**
+   * Number of clusters.
+   */
+  @Param({ "10", "100" })
+  int k;
+
+  /**
+   * Database.
+   */
+  Database db;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    db = BenchmarkData.database(BenchmarkData.dense(distribution, size, dim, 0L), null);
+  }
+
+  @Benchmark
+  public Result run() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, k);
+    params.addParameter(KMeans.SEED_ID, 0L);
+    Algorithm algorithm = ClassGenericsUtil.parameterizeOrAbort(variant(variant), params);
+    return algorithm.run(db);
+  }
+
+  /**
+   * Map a variant name to its class.
+   *
+   * @param variant Variant name
+   * @return Class
+   */
+  static Class<? extends Algorithm> variant(String variant) {
+    switch(variant){
+    case "lloyd":
+      return KMeansLloyd.class;
+    case "macqueen":
+      return KMeansMacQueen.class;
+    case "hybrid":
+      return KMeansHybridLloydMacQueen.class;
+    case "sort":
+      return KMeansSort.class;
+    case "elkan":
+      return KMeansElkan.class;
+    case "hamerly":
+      return KMeansHamerly.class;
+    case "parallel-lloyd":
+      return ParallelLloydKMeans.class;
+    case "parallel-elkan":
+      return ParallelElkanKMeans.class;
+    case "parallel-hamerly":
+      return ParallelHamerlyKMeans.class;
+    default:
+      throw new IllegalArgumentException("Unknown k-means variant: " + variant);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+
+/**
+ * Micro benchmark of the kNN heap, i.e. the inner loop of every kNN search.
+ *
+ * The default {@link DBIDUtil#newHeap(int)} returns the primitive
+ * {@code DoubleIntegerDBIDKNNHeap}; it is compared against inserting boxed
+ * pairs, and against a bare {@link DoubleIntegerMaxHeap} as lower bound.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KNNHeapBenchmark {
+  /**
+   * Number of candidates offered per invocation.
+   */
+  static final int CANDIDATES = 4096;
+
+  /**
+   * Heap size.
+   */
+  @Param({ "1", "10", "100" })
+  int k;
+
+  /**
+   * Candidate distances.
+   */
+  double[] dists;
+
+  /**
+   * Candidate object ids.
+   */
+  DBIDRange ids;
+
+  /**
+   * Precomputed pairs.
+   */
+  DoubleDBIDPair[] pairs;
+
+  /**
+   * Generate the candidate stream.
+   */
+  @Setup
+  public void setup() {
+    Random rnd = new Random(0L);
+    dists = new double[CANDIDATES];
+    ids = DBIDUtil.generateStaticDBIDRange(CANDIDATES);
+    pairs = new DoubleDBIDPair[CANDIDATES];
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      dists[i] = rnd.nextDouble();
+      pairs[i] = DBIDUtil.newPair(dists[i], it);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public KNNList knnHeap() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    double kdist = Double.POSITIVE_INFINITY;
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      if(dists[i] <= kdist) {
+        kdist = heap.insert(dists[i], it);
+      }
+    }
+    return heap.toKNNList();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public KNNList knnHeapPairs() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    for(int i = 0; i < CANDIDATES; i++) {
+      heap.insert(pairs[i]);
+    }
+    return heap.toKNNList();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CANDIDATES)
+  public double primitiveHeap() {
+    DoubleIntegerMaxHeap heap = new DoubleIntegerMaxHeap(k + 1);
+    for(int i = 0; i < CANDIDATES; i++) {
+      heap.add(dists[i], i, k);
+    }
+    return heap.peekKey();
+  }
+}
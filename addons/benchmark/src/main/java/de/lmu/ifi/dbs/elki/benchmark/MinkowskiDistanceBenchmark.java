@@ -0,0 +1,209 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.SparseDoubleVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseMaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Micro benchmark of the Minkowski family of distance functions, on dense and
+ * on sparse vectors.
+ *
+ * Each invocation computes the distances of {@link #PAIRS} consecutive vector
+ * pairs, and the scores are reported per distance computation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MinkowskiDistanceBenchmark {
+  /**
+   * Number of vector pairs per invocation.
+   */
+  static final int PAIRS = 1024;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8", "32", "128" })
+  int dim;
+
+  /**
+   * Fraction of non-zero values in the sparse vectors.
+   */
+  @Param({ "0.1" })
+  double density;
+
+  /**
+   * Dense vectors.
+   */
+  DoubleVector[] dense;
+
+  /**
+   * Sparse vectors.
+   */
+  SparseDoubleVector[] sparse;
+
+  /**
+   * Non-integer p, to exercise the generic code path.
+   */
+  LPNormDistanceFunction lp = new LPNormDistanceFunction(1.5);
+
+  /**
+   * Sparse non-integer p.
+   */
+  SparseLPNormDistanceFunction sparseLp = new SparseLPNormDistanceFunction(1.5);
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    double[][] data = BenchmarkData.dense(BenchmarkData.Distribution.UNIFORM, PAIRS + 1, dim, 0L);
+    dense = new DoubleVector[data.length];
+    for(int i = 0; i < data.length; i++) {
+      dense[i] = new DoubleVector(data[i]);
+    }
+    sparse = BenchmarkData.sparse(PAIRS + 1, dim, density, 0L);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double denseEuclidean() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += EuclideanDistanceFunction.STATIC.distance(dense[i], dense[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double denseSquaredEuclidean() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += SquaredEuclideanDistanceFunction.STATIC.distance(dense[i], dense[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double denseManhattan() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += ManhattanDistanceFunction.STATIC.distance(dense[i], dense[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double denseMaximum() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += MaximumDistanceFunction.STATIC.distance(dense[i], dense[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double denseLP() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += lp.distance(dense[i], dense[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double sparseEuclidean() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += SparseEuclideanDistanceFunction.STATIC.distance(sparse[i], sparse[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double sparseManhattan() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += SparseManhattanDistanceFunction.STATIC.distance(sparse[i], sparse[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double sparseMaximum() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += SparseMaximumDistanceFunction.STATIC.distance(sparse[i], sparse[i + 1]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public double sparseLP() {
+    double sum = 0.;
+    for(int i = 0; i < PAIRS; i++) {
+      sum += sparseLp.distance(sparse[i], sparse[i + 1]);
+    }
+    return sum;
+  }
+}
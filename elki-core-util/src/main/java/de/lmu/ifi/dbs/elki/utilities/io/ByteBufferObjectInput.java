@@ -0,0 +1,204 @@
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary {@link ObjectInput} reading directly from a
+ * {@link ByteBuffer}, as written by {@link ByteBufferObjectOutput}.
+ * 
+ * The wrapper can be reused for different buffers, to avoid allocations.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has ByteBuffer
+ */
+public class ByteBufferObjectInput implements ObjectInput {
+  /**
+   * The actual buffer we're using.
+   */
+  ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer ByteBuffer to wrap.
+   */
+  public ByteBufferObjectInput(ByteBuffer buffer) {
+    super();
+    this.buffer = buffer;
+  }
+
+  /**
+   * Get the underlying buffer.
+   * 
+   * @return Buffer
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Switch to a different buffer.
+   * 
+   * @param buffer New buffer
+   */
+  public void setBuffer(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+  }
+
+  @Override
+  public int read(byte[] b) {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    final int maxread = Math.min(len, buffer.remaining());
+    buffer.get(b, off, maxread);
+    return maxread == 0 && len > 0 ? -1 : maxread;
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    try {
+      buffer.get(b, off, len);
+    }
+    catch(BufferUnderflowException e) {
+      throw new EOFException();
+    }
+  }
+
+  @Override
+  public long skip(long n) {
+    final int skip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + skip);
+    return skip;
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    return (int) skip(n);
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean readBoolean() {
+    return buffer.get() != 0;
+  }
+
+  @Override
+  public byte readByte() {
+    return buffer.get();
+  }
+
+  @Override
+  public int readUnsignedByte() {
+    return buffer.get() & 0xFF;
+  }
+
+  @Override
+  public short readShort() {
+    return buffer.getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() {
+    return buffer.getShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() {
+    return buffer.getChar();
+  }
+
+  @Override
+  public int readInt() {
+    return buffer.getInt();
+  }
+
+  @Override
+  public long readLong() {
+    return buffer.getLong();
+  }
+
+  @Override
+  public float readFloat() {
+    return buffer.getFloat();
+  }
+
+  @Override
+  public double readDouble() {
+    return buffer.getDouble();
+  }
+
+  @Override
+  public String readLine() {
+    throw new UnsupportedOperationException("Line-based reading is not supported.");
+  }
+
+  @Override
+  public String readUTF() {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public Object readObject() throws ClassNotFoundException, IOException {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return ois.readObject();
+    }
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+}
@@ -0,0 +1,178 @@
+package de.lmu.ifi.dbs.elki.utilities.io;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary {@link ObjectOutput} writing directly into a
+ * {@link ByteBuffer}.
+ * 
+ * Primitive values are stored in their raw binary representation, without
+ * the stream header and block data framing of {@link ObjectOutputStream}.
+ * Only {@link #writeObject} falls back to Java serialization, with a length
+ * prefix. Use {@link ByteBufferObjectInput} to read the data back.
+ * 
+ * The wrapper can be reused for different buffers, to avoid allocations.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has ByteBuffer
+ */
+public class ByteBufferObjectOutput implements ObjectOutput {
+  /**
+   * The actual buffer we're using.
+   */
+  ByteBuffer buffer;
+
+  /**
+   * Constructor.
+   * 
+   * @param buffer ByteBuffer to wrap.
+   */
+  public ByteBufferObjectOutput(ByteBuffer buffer) {
+    super();
+    this.buffer = buffer;
+  }
+
+  /**
+   * Get the underlying buffer.
+   * 
+   * @return Buffer
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Switch to a different buffer.
+   * 
+   * @param buffer New buffer
+   */
+  public void setBuffer(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void write(int b) {
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b) {
+    buffer.put(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    buffer.put(b, off, len);
+  }
+
+  @Override
+  public void writeBoolean(boolean v) {
+    buffer.put((byte) (v ? 1 : 0));
+  }
+
+  @Override
+  public void writeByte(int v) {
+    buffer.put((byte) v);
+  }
+
+  @Override
+  public void writeShort(int v) {
+    buffer.putShort((short) v);
+  }
+
+  @Override
+  public void writeChar(int v) {
+    buffer.putChar((char) v);
+  }
+
+  @Override
+  public void writeInt(int v) {
+    buffer.putInt(v);
+  }
+
+  @Override
+  public void writeLong(long v) {
+    buffer.putLong(v);
+  }
+
+  @Override
+  public void writeFloat(float v) {
+    buffer.putFloat(v);
+  }
+
+  @Override
+  public void writeDouble(double v) {
+    buffer.putDouble(v);
+  }
+
+  @Override
+  public void writeBytes(String s) {
+    for(int i = 0; i < s.length(); i++) {
+      buffer.put((byte) s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeChars(String s) {
+    for(int i = 0; i < s.length(); i++) {
+      buffer.putChar(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  @Override
+  public void writeObject(Object obj) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(obj);
+    }
+    buffer.putInt(baos.size());
+    buffer.put(baos.toByteArray());
+  }
+
+  @Override
+  public void flush() {
+    // Nothing to do.
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do.
+  }
+}
@@ -37,6 +37,7 @@ import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.MillisTimeDuration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Statistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StripedLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.UnsynchronizedLongCounter;
 
 /**
@@ -614,6 +615,17 @@ public class Logging {
     return new UnsynchronizedLongCounter(key);
   }
 
+  /**
+   * Generate a new counter that may be incremented concurrently by many
+   * threads.
+   * 
+   * @param key Key to use
+   * @return Counter.
+   */
+  public Counter newConcurrentCounter(String key) {
+    return new StripedLongCounter(key);
+  }
+
   /**
    * Generate a new duration statistic.
    * 
@@ -0,0 +1,115 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe counter for highly concurrent use, such as counting distance
+ * computations of many parallel queries.
+ * 
+ * Increments are spread over several padded stripes (chosen by the thread id)
+ * to avoid all threads contending on a single cache line; reading the value
+ * sums all stripes. Because of this, the return values of the increment
+ * methods only refer to the current stripe, not the total count.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class StripedLongCounter extends AbstractStatistic implements Counter {
+  /**
+   * Padding, in longs, to keep each stripe on its own cache line.
+   */
+  private static final int PAD = 8;
+
+  /**
+   * Maximum number of stripes.
+   */
+  private static final int MAX_STRIPES = 64;
+
+  /**
+   * The stripes.
+   */
+  private final AtomicLongArray stripes;
+
+  /**
+   * Bit mask to select a stripe.
+   */
+  private final int mask;
+
+  /**
+   * Constructor.
+   * 
+   * @param key Key to report.
+   */
+  public StripedLongCounter(String key) {
+    super(key);
+    int n = 1;
+    final int cpus = Runtime.getRuntime().availableProcessors() << 1;
+    while(n < cpus && n < MAX_STRIPES) {
+      n <<= 1;
+    }
+    this.mask = n - 1;
+    this.stripes = new AtomicLongArray(n * PAD);
+  }
+
+  /**
+   * Choose the stripe of the current thread.
+   * 
+   * @return Array offset of the stripe
+   */
+  private int stripe() {
+    long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return ((int) (h >>> 32) & mask) * PAD;
+  }
+
+  @Override
+  public long increment() {
+    return stripes.incrementAndGet(stripe());
+  }
+
+  @Override
+  public long decrement() {
+    return stripes.decrementAndGet(stripe());
+  }
+
+  @Override
+  public long increment(long i) {
+    return stripes.addAndGet(stripe(), i);
+  }
+
+  @Override
+  public long getValue() {
+    long sum = 0;
+    for(int i = 0; i < stripes.length(); i += PAD) {
+      sum += stripes.get(i);
+    }
+    return sum;
+  }
+
+  @Override
+  public String formatValue() {
+    return Long.toString(getValue());
+  }
+}
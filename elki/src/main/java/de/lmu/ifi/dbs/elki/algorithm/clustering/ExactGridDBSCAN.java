@@ -0,0 +1,735 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.IncompatibleDataException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Exact DBSCAN for low-dimensional Euclidean data, using a grid of cells of
+ * width epsilon/sqrt(d).
+ *
+ * Any two points in the same cell are neighbors, so all points of a cell with
+ * at least minPts points are core points without any distance computation.
+ * Only the points of sparse cells need to count their neighbors in the
+ * adjacent cells. Two cells containing core points are in the same cluster if
+ * some pair of their core points is within epsilon (a bichromatic closest pair
+ * check, which stops at the first such pair). Border points are assigned to
+ * the cluster of the first core point found within epsilon.
+ *
+ * The cells are processed in parallel. The number of adjacent cells grows
+ * exponentially with the dimensionality, so this is only useful for data with
+ * few (about 2 to 8) dimensions, such as geographic data.
+ *
+ * Unlike {@link GriDBSCAN}, this implementation does not use range queries,
+ * and always produces the exact DBSCAN result (up to the assignment of border
+ * points that belong to multiple clusters).
+ *
+ * Reference:
+ * <p>
+ * J. Gan, Y. Tao<br />
+ * DBSCAN Revisited: Mis-Claim, Un-Fixability, and Approximation<br />
+ * In Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD 2015)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Cell
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+@Reference(authors = "J. Gan, Y. Tao", //
+title = "DBSCAN Revisited: Mis-Claim, Un-Fixability, and Approximation", //
+booktitle = "Proc. ACM SIGMOD Int. Conf. on Management of Data (SIGMOD 2015)", //
+url = "http://dx.doi.org/10.1145/2723372.2737792")
+public class ExactGridDBSCAN<V extends NumberVector> extends AbstractAlgorithm<Clustering<Model>> implements ClusteringAlgorithm<Clustering<Model>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ExactGridDBSCAN.class);
+
+  /**
+   * Maximum dimensionality before we warn about the number of cells.
+   */
+  private static final int MAXDIM = 8;
+
+  /**
+   * Holds the epsilon radius threshold.
+   */
+  protected double epsilon;
+
+  /**
+   * Holds the minimum cluster size.
+   */
+  protected int minpts;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public ExactGridDBSCAN(double epsilon, int minpts) {
+    super();
+    this.epsilon = epsilon;
+    this.minpts = minpts;
+  }
+
+  /**
+   * Performs the DBSCAN algorithm on the given database.
+   *
+   * @param relation Relation to process
+   * @return Clustering result
+   */
+  public Clustering<Model> run(Relation<V> relation) {
+    final int dim = RelationUtil.dimensionality(relation);
+    if(dim > MAXDIM) {
+      LOG.warning("Grid-based DBSCAN is designed for low-dimensional data. With " + dim + " dimensions, the number of adjacent cells will be very large.");
+    }
+    return new Instance<V>(epsilon, minpts, dim).run(relation);
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single grid cell.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  protected static class Cell {
+    /**
+     * Cell coordinates.
+     */
+    final int[] coord;
+
+    /**
+     * Number of points in this cell.
+     */
+    int size;
+
+    /**
+     * Offsets of the member points.
+     */
+    int[] members;
+
+    /**
+     * Coordinates of the member points, in row-major order.
+     */
+    double[] data;
+
+    /**
+     * Core point flags.
+     */
+    boolean[] core;
+
+    /**
+     * Number of core points.
+     */
+    int numcore;
+
+    /**
+     * Adjacent non-empty cells (by index), which may contain neighbors.
+     */
+    int[] neighbors;
+
+    /**
+     * Adjacent cells with a larger index that are in the same cluster.
+     */
+    int[] links;
+
+    /**
+     * Cluster number, or -1.
+     */
+    int cluster = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param coord Cell coordinates
+     */
+    Cell(int[] coord) {
+      this.coord = coord;
+    }
+  }
+
+  /**
+   * Key for looking up grid cells.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class CellKey {
+    /**
+     * Cell coordinates.
+     */
+    int[] coord;
+
+    /**
+     * Constructor.
+     *
+     * @param coord Cell coordinates
+     */
+    CellKey(int[] coord) {
+      this.coord = coord;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(coord);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof CellKey && Arrays.equals(coord, ((CellKey) obj).coord);
+    }
+  }
+
+  /**
+   * Lexicographic order of cells.
+   */
+  private static final Comparator<Cell> CELL_ORDER = new Comparator<Cell>() {
+    @Override
+    public int compare(Cell o1, Cell o2) {
+      for(int d = 0; d < o1.coord.length; d++) {
+        if(o1.coord[d] != o2.coord[d]) {
+          return o1.coord[d] < o2.coord[d] ? -1 : +1;
+        }
+      }
+      return 0;
+    }
+  };
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  protected static class Instance<V extends NumberVector> {
+    /**
+     * Minimum number of cells per parallel block.
+     */
+    private static final int MIN_BLOCKSIZE = 4;
+
+    /**
+     * Squared epsilon radius.
+     */
+    protected double epsilon2;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    protected int minpts;
+
+    /**
+     * Dimensionality.
+     */
+    protected int dim;
+
+    /**
+     * Cells, in lexicographic order.
+     */
+    protected Cell[] cells;
+
+    /**
+     * Constructor.
+     *
+     * @param epsilon Epsilon
+     * @param minpts MinPts
+     * @param dim Dimensionality
+     */
+    public Instance(double epsilon, int minpts, int dim) {
+      this.epsilon2 = epsilon * epsilon;
+      this.minpts = minpts;
+      this.dim = dim;
+    }
+
+    /**
+     * Performs the DBSCAN algorithm on the given relation.
+     *
+     * @param relation Relation to process
+     * @return Clustering result
+     */
+    public Clustering<Model> run(Relation<V> relation) {
+      StepProgress stepprog = LOG.isVerbose() ? new StepProgress(5) : null;
+      if(stepprog != null) {
+        stepprog.beginStep(1, "Building the grid.", LOG);
+      }
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      buildGrid(relation, ids);
+      LOG.statistics(new LongStatistic(ExactGridDBSCAN.class.getName() + ".cells", cells.length));
+      final int blocksize = ParallelRange.blocksize(cells.length, MIN_BLOCKSIZE);
+
+      try {
+        if(stepprog != null) {
+          stepprog.beginStep(2, "Finding adjacent cells and core points.", LOG);
+        }
+        ParallelRange.run(0, cells.length, blocksize, new ParallelRange.Block() {
+          @Override
+          public void process(int begin, int end) {
+            for(int i = begin; i < end; i++) {
+              // Core points only depend on the adjacent cells of this cell.
+              findNeighbors(cells[i], i);
+              findCorePoints(cells[i]);
+            }
+          }
+        });
+        if(stepprog != null) {
+          stepprog.beginStep(3, "Connecting core cells.", LOG);
+        }
+        ParallelRange.run(0, cells.length, blocksize, new ParallelRange.Block() {
+          @Override
+          public void process(int begin, int end) {
+            for(int i = begin; i < end; i++) {
+              findLinks(cells[i], i);
+            }
+          }
+        });
+        if(stepprog != null) {
+          stepprog.beginStep(4, "Assigning border points.", LOG);
+        }
+        final int numclusters = labelClusters();
+        LOG.statistics(new LongStatistic(ExactGridDBSCAN.class.getName() + ".clusters", numclusters));
+        final int[] assignment = new int[ids.size()];
+        ParallelRange.run(0, cells.length, blocksize, new ParallelRange.Block() {
+          @Override
+          public void process(int begin, int end) {
+            for(int i = begin; i < end; i++) {
+              assignPoints(cells[i], assignment);
+            }
+          }
+        });
+        if(stepprog != null) {
+          stepprog.beginStep(5, "Building the final result.", LOG);
+        }
+        Clustering<Model> result = buildResult(ids, assignment, numclusters);
+        LOG.setCompleted(stepprog);
+        return result;
+      }
+      finally {
+        cells = null;
+      }
+    }
+
+    /**
+     * Partition the data into grid cells.
+     *
+     * @param relation Data relation
+     * @param ids Object ids
+     */
+    protected void buildGrid(Relation<V> relation, ArrayDBIDs ids) {
+      final double[] min = RelationUtil.computeMinMax(relation)[0];
+      // Slightly smaller than epsilon / sqrt(d), to be safe w.r.t. rounding.
+      final double width = Math.sqrt(epsilon2 / dim) * (1 - 1e-12);
+      final int size = ids.size();
+      int[] cellof = new int[size];
+      HashMap<CellKey, Cell> map = new HashMap<>();
+      List<Cell> list = new ArrayList<>();
+      CellKey probe = new CellKey(new int[dim]);
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < size; i++) {
+        V vec = relation.get(it.seek(i));
+        for(int d = 0; d < dim; d++) {
+          final double c = Math.floor((vec.doubleValue(d) - min[d]) / width);
+          if(!(c < Integer.MAX_VALUE)) {
+            throw new IncompatibleDataException("Too many grid cells in dimension " + d + ", or non-finite values. Use a larger epsilon.");
+          }
+          probe.coord[d] = (int) c;
+        }
+        Cell cell = map.get(probe);
+        if(cell == null) {
+          cell = new Cell(probe.coord.clone());
+          cell.cluster = list.size(); // Temporary index
+          map.put(new CellKey(cell.coord), cell);
+          list.add(cell);
+        }
+        cell.size++;
+        cellof[i] = cell.cluster;
+      }
+      map = null;
+      for(Cell cell : list) {
+        cell.members = new int[cell.size];
+        cell.data = new double[cell.size * dim];
+        cell.size = 0;
+      }
+      for(int i = 0; i < size; i++) {
+        Cell cell = list.get(cellof[i]);
+        V vec = relation.get(it.seek(i));
+        for(int d = 0, j = cell.size * dim; d < dim; d++, j++) {
+          cell.data[j] = vec.doubleValue(d);
+        }
+        cell.members[cell.size++] = i;
+      }
+      for(Cell cell : list) {
+        cell.cluster = -1;
+      }
+      Collections.sort(list, CELL_ORDER);
+      cells = list.toArray(new Cell[list.size()]);
+    }
+
+    /**
+     * Find all non-empty cells that may contain points within epsilon.
+     *
+     * @param cell Cell
+     * @param self Index of the cell
+     */
+    protected void findNeighbors(Cell cell, int self) {
+      TIntArrayList neighbors = new TIntArrayList();
+      findNeighbors(cell.coord, self, 0, 0, cells.length, 0, neighbors);
+      cell.neighbors = neighbors.toArray();
+    }
+
+    /**
+     * Recursive search of adjacent cells in the sorted cell array.
+     *
+     * With cell width epsilon/sqrt(d), the minimum distance of two cells is
+     * at most epsilon if the sum of the squared cell gaps is at most d.
+     *
+     * @param coord Query cell coordinates
+     * @param self Index of the query cell
+     * @param d Current dimension
+     * @param begin First cell with the current coordinate prefix
+     * @param end End of cells with the current coordinate prefix (exclusive)
+     * @param gaps Sum of squared cell gaps so far
+     * @param neighbors Output list
+     */
+    private void findNeighbors(int[] coord, int self, int d, int begin, int end, int gaps, TIntArrayList neighbors) {
+      if(d == dim) {
+        assert (end == begin + 1);
+        if(begin != self) {
+          neighbors.add(begin);
+        }
+        return;
+      }
+      final int range = (int) Math.sqrt(dim - gaps) + 1;
+      int start = lowerBound(d, begin, end, coord[d] - range);
+      while(start < end) {
+        final int v = cells[start].coord[d];
+        final int gap = Math.abs(v - coord[d]) - 1;
+        if(gap >= range) {
+          break;
+        }
+        final int stop = lowerBound(d, start, end, v + 1);
+        final int ngaps = gap > 0 ? gaps + gap * gap : gaps;
+        if(ngaps <= dim) {
+          findNeighbors(coord, self, d + 1, start, stop, ngaps, neighbors);
+        }
+        start = stop;
+      }
+    }
+
+    /**
+     * Find the first cell with a coordinate of at least v in dimension d, in
+     * the sorted cells array.
+     *
+     * @param d Dimension
+     * @param begin Begin of range (all cells in the range must share the
+     *        coordinates up to d)
+     * @param end End of range (exclusive)
+     * @param v Coordinate value
+     * @return Index
+     */
+    private int lowerBound(int d, int begin, int end, int v) {
+      while(begin < end) {
+        final int mid = (begin + end) >>> 1;
+        if(cells[mid].coord[d] < v) {
+          begin = mid + 1;
+        }
+        else {
+          end = mid;
+        }
+      }
+      return begin;
+    }
+
+    /**
+     * Squared Euclidean distance of two points.
+     *
+     * @param a First data array
+     * @param i Offset in first array
+     * @param b Second data array
+     * @param j Offset in second array
+     * @return Squared distance
+     */
+    private double sqdist(double[] a, int i, double[] b, int j) {
+      double agg = 0.;
+      for(int d = 0; d < dim; d++, i++, j++) {
+        final double v = a[i] - b[j];
+        agg += v * v;
+      }
+      return agg;
+    }
+
+    /**
+     * Determine the core points of a cell.
+     *
+     * @param cell Cell
+     */
+    protected void findCorePoints(Cell cell) {
+      cell.core = new boolean[cell.size];
+      // All points within the same cell are neighbors:
+      if(cell.size >= minpts) {
+        Arrays.fill(cell.core, true);
+        cell.numcore = cell.size;
+        return;
+      }
+      for(int a = 0, i = 0; a < cell.size; a++, i += dim) {
+        int count = cell.size;
+        search: for(int n : cell.neighbors) {
+          final Cell other = cells[n];
+          for(int j = 0, e = other.size * dim; j < e; j += dim) {
+            if(sqdist(cell.data, i, other.data, j) <= epsilon2 && ++count >= minpts) {
+              break search;
+            }
+          }
+        }
+        if(count >= minpts) {
+          cell.core[a] = true;
+          cell.numcore++;
+        }
+      }
+    }
+
+    /**
+     * Find the adjacent core cells that are in the same cluster.
+     *
+     * @param cell Cell
+     * @param self Index of the cell
+     */
+    protected void findLinks(Cell cell, int self) {
+      if(cell.numcore == 0) {
+        return;
+      }
+      TIntArrayList links = new TIntArrayList();
+      for(int n : cell.neighbors) {
+        if(n > self && cells[n].numcore > 0 && closeCorePair(cell, cells[n])) {
+          links.add(n);
+        }
+      }
+      cell.links = links.toArray();
+    }
+
+    /**
+     * Test whether two cells contain core points within epsilon of each other.
+     *
+     * @param c1 First cell
+     * @param c2 Second cell
+     * @return {@code true} if some core points are within epsilon
+     */
+    private boolean closeCorePair(Cell c1, Cell c2) {
+      for(int a = 0, i = 0; a < c1.size; a++, i += dim) {
+        if(!c1.core[a]) {
+          continue;
+        }
+        for(int b = 0, j = 0; b < c2.size; b++, j += dim) {
+          if(c2.core[b] && sqdist(c1.data, i, c2.data, j) <= epsilon2) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Label the core cells with cluster numbers.
+     *
+     * @return Number of clusters
+     */
+    protected int labelClusters() {
+      WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+      for(int i = 0; i < cells.length; i++) {
+        uf.nextIndex(1);
+      }
+      for(int i = 0; i < cells.length; i++) {
+        if(cells[i].links != null) {
+          for(int n : cells[i].links) {
+            uf.union(i, n);
+          }
+        }
+      }
+      int[] clusternum = new int[cells.length];
+      Arrays.fill(clusternum, -1);
+      int numclusters = 0;
+      for(int i = 0; i < cells.length; i++) {
+        if(cells[i].numcore > 0) {
+          final int root = uf.find(i);
+          if(clusternum[root] < 0) {
+            clusternum[root] = numclusters++;
+          }
+          cells[i].cluster = clusternum[root];
+        }
+      }
+      return numclusters;
+    }
+
+    /**
+     * Assign the points of a cell to clusters.
+     *
+     * @param cell Cell
+     * @param assignment Output cluster numbers, by offset
+     */
+    protected void assignPoints(Cell cell, int[] assignment) {
+      // If the cell has any core point, all points are in its cluster.
+      if(cell.numcore > 0) {
+        for(int a = 0; a < cell.size; a++) {
+          assignment[cell.members[a]] = cell.cluster;
+        }
+        return;
+      }
+      for(int a = 0, i = 0; a < cell.size; a++, i += dim) {
+        int cluster = -1;
+        search: for(int n : cell.neighbors) {
+          final Cell other = cells[n];
+          if(other.numcore == 0) {
+            continue;
+          }
+          for(int b = 0, j = 0; b < other.size; b++, j += dim) {
+            if(other.core[b] && sqdist(cell.data, i, other.data, j) <= epsilon2) {
+              cluster = other.cluster;
+              break search;
+            }
+          }
+        }
+        assignment[cell.members[a]] = cluster;
+      }
+    }
+
+    /**
+     * Build the final clustering.
+     *
+     * @param ids Object ids
+     * @param assignment Cluster numbers, by offset
+     * @param numclusters Number of clusters
+     * @return Clustering
+     */
+    protected Clustering<Model> buildResult(ArrayDBIDs ids, int[] assignment, int numclusters) {
+      ModifiableDBIDs[] clusters = new ModifiableDBIDs[numclusters];
+      for(int i = 0; i < numclusters; i++) {
+        clusters[i] = DBIDUtil.newArray();
+      }
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int c = assignment[it.getOffset()];
+        (c >= 0 ? clusters[c] : noise).add(it);
+      }
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      for(int i = 0; i < numclusters; i++) {
+        result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Holds the epsilon radius threshold.
+     */
+    protected double epsilon;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    protected int minpts;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter epsilonP = new DoubleParameter(DBSCAN.Parameterizer.EPSILON_ID) //
+      .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(epsilonP)) {
+        epsilon = epsilonP.getValue();
+      }
+      IntParameter minptsP = new IntParameter(DBSCAN.Parameterizer.MINPTS_ID) //
+      .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(minptsP)) {
+        minpts = minptsP.getValue();
+        if(minpts <= 2) {
+          LOG.warning("DBSCAN with minPts <= 2 is equivalent to single-link clustering at a single height. Consider using larger values of minPts.");
+        }
+      }
+    }
+
+    @Override
+    protected ExactGridDBSCAN<O> makeInstance() {
+      return new ExactGridDBSCAN<>(epsilon, minpts);
+    }
+  }
+}
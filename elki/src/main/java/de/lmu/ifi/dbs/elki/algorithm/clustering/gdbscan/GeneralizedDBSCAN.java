@@ -1,5 +1,9 @@
 package de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
 import de.lmu.ifi.dbs.elki.data.Cluster;
@@ -13,16 +17,22 @@ import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFindDBIDs;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFindUtil;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
@@ -74,6 +84,7 @@ import gnu.trove.list.array.TIntArrayList;
  * @apiviz.landmark
  *
  * @apiviz.has Instance
+ * @apiviz.has ParallelInstance
  * @apiviz.composedOf CorePredicate
  * @apiviz.composedOf NeighborPredicate
  */
@@ -102,6 +113,11 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
    */
   protected boolean coremodel = false;
 
+  /**
+   * Evaluate the neighborhoods in parallel.
+   */
+  protected boolean parallel = false;
+
   /**
    * Constructor for parameterized algorithm.
    *
@@ -110,10 +126,23 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
    * @param coremodel Keep track of core points.
    */
   public GeneralizedDBSCAN(NeighborPredicate<?> npred, CorePredicate<?> corepred, boolean coremodel) {
+    this(npred, corepred, coremodel, false);
+  }
+
+  /**
+   * Constructor for parameterized algorithm.
+   *
+   * @param npred Neighbor predicate.
+   * @param corepred Core point predicate.
+   * @param coremodel Keep track of core points.
+   * @param parallel Evaluate the neighborhoods in parallel.
+   */
+  public GeneralizedDBSCAN(NeighborPredicate<?> npred, CorePredicate<?> corepred, boolean coremodel, boolean parallel) {
     super();
     this.npred = npred;
     this.corepred = corepred;
     this.coremodel = coremodel;
+    this.parallel = parallel;
     // Ignore the generic, we do a run-time test below:
     @SuppressWarnings("unchecked")
     CorePredicate<Object> cp = (CorePredicate<Object>) corepred;
@@ -130,6 +159,9 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
     if(!cp.acceptsType(npred.getOutputType())) {
       throw new AbortException("Core predicate and neighbor predicate are not compatible.");
     }
+    if(parallel) {
+      return new ParallelInstance<>(database, (NeighborPredicate<Object>) npred, cp.instantiate(database), coremodel).run();
+    }
     return new Instance<>(npred.instantiate(database), cp.instantiate(database), coremodel).run();
   }
 
@@ -327,6 +359,264 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
     }
   }
 
+  /**
+   * Parallel instance for a particular data set.
+   *
+   * The core predicate is evaluated for all objects in parallel blocks first.
+   * Then the neighborhoods of all core objects are evaluated again (in
+   * parallel), to merge neighboring core objects using a concurrent
+   * union-find, and to assign border objects to the first core object that
+   * reaches them. This needs two neighborhood evaluations per core object,
+   * but does not need to keep the neighborhoods in memory.
+   *
+   * The neighbor predicate is instantiated once per worker thread, because
+   * not all predicate instances are thread-safe. The core predicate instance
+   * is shared.
+   *
+   * Reference:
+   * <p>
+   * M. Patwary, D. Palsetia, A. Agrawal, W. K. Liao, F. Manne, A. Choudhary<br />
+   * A new scalable parallel DBSCAN algorithm using the disjoint-set data
+   * structure<br />
+   * IEEE Int. Conf. for High Performance Computing, Networking, Storage and
+   * Analysis (SC)
+   * </p>
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.composedOf CorePredicate.Instance
+   * @apiviz.composedOf NeighborPredicate.Instance
+   * @apiviz.composedOf ConcurrentUnionFindDBIDs
+   */
+  @Reference(authors = "M. Patwary, D. Palsetia, A. Agrawal, W. K. Liao, F. Manne, A. Choudhary", //
+  title = "A new scalable parallel DBSCAN algorithm using the disjoint-set data structure", //
+  booktitle = "IEEE Int. Conf. for High Performance Computing, Networking, Storage and Analysis (SC)", //
+  url = "http://dx.doi.org/10.1109/SC.2012.9")
+  public static class ParallelInstance<T> {
+    /**
+     * Minimum number of objects per parallel block.
+     */
+    private static final int MIN_BLOCKSIZE = 16;
+
+    /**
+     * Neighbor predicate, main thread instance.
+     */
+    protected final NeighborPredicate.Instance<T> npred;
+
+    /**
+     * Per-thread neighbor predicates.
+     */
+    protected final ThreadLocal<NeighborPredicate.Instance<T>> npreds;
+
+    /**
+     * The core object property
+     */
+    protected final CorePredicate.Instance<? super T> corepred;
+
+    /**
+     * Track which objects are "core" objects.
+     */
+    protected boolean coremodel = false;
+
+    /**
+     * Objects to process.
+     */
+    protected ArrayDBIDs ids;
+
+    /**
+     * Core object flags, by offset.
+     */
+    protected boolean[] core;
+
+    /**
+     * Core object offset each border object was assigned to, or -1.
+     */
+    protected AtomicIntegerArray border;
+
+    /**
+     * Union-find of the core objects.
+     */
+    protected ConcurrentUnionFindDBIDs uf;
+
+    /**
+     * Progress logging.
+     */
+    protected FiniteProgress progress;
+
+    /**
+     * Full Constructor
+     *
+     * @param database Database, for instantiating the neighbor predicates
+     * @param npred Neighborhood predicate
+     * @param corepred Core object predicate
+     * @param coremodel Keep track of core points.
+     */
+    public ParallelInstance(final Database database, final NeighborPredicate<T> npred, CorePredicate.Instance<? super T> corepred, boolean coremodel) {
+      super();
+      this.npred = npred.instantiate(database);
+      this.npreds = new ThreadLocal<NeighborPredicate.Instance<T>>() {
+        @Override
+        protected NeighborPredicate.Instance<T> initialValue() {
+          return npred.instantiate(database);
+        }
+      };
+      this.corepred = corepred;
+      this.coremodel = coremodel;
+    }
+
+    /**
+     * Run the parallel GDBSCAN algorithm.
+     *
+     * @return Clustering result
+     */
+    public Clustering<Model> run() {
+      final StaticDBIDs sids = DBIDUtil.makeUnmodifiable(npred.getIDs());
+      // Note: the union-find uses the same iteration order for its offsets.
+      ids = DBIDUtil.ensureArray(sids);
+      uf = UnionFindUtil.makeConcurrent(sids);
+      final int size = ids.size();
+      core = new boolean[size];
+      border = new AtomicIntegerArray(size);
+      for(int i = 0; i < size; i++) {
+        border.lazySet(i, -1);
+      }
+      final int blocksize = ParallelRange.blocksize(size, MIN_BLOCKSIZE);
+
+      progress = LOG.isVerbose() ? new FiniteProgress("Generalized DBSCAN core objects", size, LOG) : null;
+      ParallelRange.run(0, size, blocksize, new ObjectBlock() {
+        @Override
+        void process(NeighborPredicate.Instance<T> pred, DBIDArrayIter it, int i) {
+          core[i] = corepred.isCorePoint(it, pred.getNeighbors(it));
+        }
+      });
+      LOG.ensureCompleted(progress);
+      progress = LOG.isVerbose() ? new FiniteProgress("Generalized DBSCAN cluster merging", size, LOG) : null;
+      ParallelRange.run(0, size, blocksize, new ObjectBlock() {
+        @Override
+        void process(NeighborPredicate.Instance<T> pred, DBIDArrayIter it, int i) {
+          merge(pred, it, i);
+        }
+      });
+      LOG.ensureCompleted(progress);
+      return buildResult();
+    }
+
+    /**
+     * Build the final clustering from the union-find.
+     *
+     * @return Clustering result
+     */
+    protected Clustering<Model> buildResult() {
+      final int size = ids.size();
+      // Map union-find roots to cluster numbers, in order of first occurrence.
+      int[] clusternum = new int[size];
+      Arrays.fill(clusternum, -1);
+      int numclusters = 0;
+      for(int i = 0; i < size; i++) {
+        if(core[i]) {
+          final int root = uf.find(i);
+          if(clusternum[root] < 0) {
+            clusternum[root] = numclusters++;
+          }
+        }
+      }
+      ArrayModifiableDBIDs noise = DBIDUtil.newArray();
+      ArrayModifiableDBIDs[] clusterlists = new ArrayModifiableDBIDs[numclusters];
+      ArrayModifiableDBIDs[] corelists = coremodel ? new ArrayModifiableDBIDs[numclusters] : null;
+      for(int i = 0; i < numclusters; i++) {
+        clusterlists[i] = DBIDUtil.newArray();
+        if(corelists != null) {
+          corelists[i] = DBIDUtil.newArray();
+        }
+      }
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int i = it.getOffset();
+        if(core[i]) {
+          final int c = clusternum[uf.find(i)];
+          clusterlists[c].add(it);
+          if(corelists != null) {
+            corelists[c].add(it);
+          }
+          continue;
+        }
+        final int b = border.get(i);
+        if(b >= 0) {
+          clusterlists[clusternum[uf.find(b)]].add(it);
+        }
+        else {
+          noise.add(it);
+        }
+      }
+      core = null;
+      border = null;
+      uf = null;
+
+      Clustering<Model> result = new Clustering<>("GDBSCAN", "gdbscan-clustering");
+      result.addToplevelCluster(new Cluster<Model>(noise, true, coremodel ? new CoreObjectsModel(DBIDUtil.newArray(0)) : ClusterModel.CLUSTER));
+      for(int i = 0; i < numclusters; i++) {
+        Model m = coremodel ? new CoreObjectsModel(corelists[i]) : ClusterModel.CLUSTER;
+        result.addToplevelCluster(new Cluster<Model>(clusterlists[i], false, m));
+      }
+      return result;
+    }
+
+    /**
+     * Merge the neighboring core objects of a core object, and assign its
+     * border objects.
+     *
+     * @param pred Neighbor predicate of this thread
+     * @param it Object
+     * @param i Object offset
+     */
+    protected void merge(NeighborPredicate.Instance<T> pred, DBIDArrayIter it, int i) {
+      if(!core[i]) {
+        return;
+      }
+      for(DBIDIter n = pred.iterDBIDs(pred.getNeighbors(it)); n.valid(); n.advance()) {
+        final int j = uf.offset(n);
+        if(j == i) {
+          continue;
+        }
+        if(core[j]) {
+          uf.union(i, j);
+        }
+        else {
+          // The first core object to reach a border object wins.
+          border.compareAndSet(j, -1, i);
+        }
+      }
+    }
+
+    /**
+     * Process each object of a block, with the neighbor predicate of the
+     * current thread.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private abstract class ObjectBlock implements ParallelRange.Block {
+      @Override
+      public void process(int begin, int end) {
+        final NeighborPredicate.Instance<T> pred = ForkJoinTask.inForkJoinPool() ? npreds.get() : npred;
+        DBIDArrayIter it = ids.iter();
+        for(int i = begin; i < end; i++) {
+          process(pred, it.seek(i), i);
+          LOG.incrementProcessed(progress);
+        }
+      }
+
+      /**
+       * Process a single object.
+       *
+       * @param pred Neighbor predicate of this thread
+       * @param it Object
+       * @param i Object offset
+       */
+      abstract void process(NeighborPredicate.Instance<T> pred, DBIDArrayIter it, int i);
+    }
+  }
+
   /**
    * Parameterization class
    *
@@ -353,6 +643,12 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
     public static final OptionID COREMODEL_ID = new OptionID("gdbscan.core-model", //
     "Use a model that keeps track of core points. Needs more memory.");
 
+    /**
+     * Flag to evaluate the neighborhoods in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("gdbscan.parallel", //
+    "Evaluate the neighborhoods in parallel, and merge clusters using a concurrent union-find.");
+
     /**
      * Neighborhood predicate.
      */
@@ -368,6 +664,11 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
      */
     protected boolean coremodel = false;
 
+    /**
+     * Evaluate the neighborhoods in parallel.
+     */
+    protected boolean parallel = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // Neighborhood predicate
@@ -394,11 +695,16 @@ public class GeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Model>> impl
       if(config.grab(coremodelOpt)) {
         coremodel = coremodelOpt.isTrue();
       }
+
+      Flag parallelOpt = new Flag(PARALLEL_ID);
+      if(config.grab(parallelOpt)) {
+        parallel = parallelOpt.isTrue();
+      }
     }
 
     @Override
     protected GeneralizedDBSCAN makeInstance() {
-      return new GeneralizedDBSCAN(npred, corepred, coremodel);
+      return new GeneralizedDBSCAN(npred, corepred, coremodel, parallel);
     }
   }
 }
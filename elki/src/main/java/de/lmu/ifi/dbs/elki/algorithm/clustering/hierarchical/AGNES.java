@@ -34,13 +34,14 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.TriangularDistanceMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -55,6 +56,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * This implementation uses the pointer-based representation used by SLINK, so
  * that the extraction algorithms we have can be used with either of them.
  *
+ * The distance matrix is stored in a segmented {@link TriangularDistanceMatrix}
+ * (optionally in single precision), so the data set size is only limited by
+ * the available memory, and is computed in parallel.
+ *
  * The algorithm is believed to be first published (for single-linkage) by:
  * <p>
  * P. H. Sneath<br />
@@ -90,6 +95,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @apiviz.composedOf LinkageMethod
  * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ * @apiviz.uses TriangularDistanceMatrix
  *
  * @param <O> Object type
  */
@@ -110,6 +116,11 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   LinkageMethod linkage = WardLinkageMethod.STATIC;
 
+  /**
+   * Store the distance matrix in single precision.
+   */
+  boolean single = false;
+
   /**
    * Constructor.
    *
@@ -117,8 +128,20 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param linkage Linkage method
    */
   public AGNES(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix in single precision
+   */
+  public AGNES(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.single = single;
   }
 
   /**
@@ -142,20 +165,15 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = ids.size();
 
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-      0x10000 // = 65535
-      + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
     // Compute the initial (lower triangular) distance matrix.
-    double[] scratch = new double[triangleSize(size)];
+    TriangularDistanceMatrix scratch = TriangularDistanceMatrix.newMatrix(size, single);
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
     boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
-    initializeDistanceMatrix(scratch, dq, ix, iy, square);
+    initializeDistanceMatrix(scratch, dq, ids, square);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
@@ -184,8 +202,8 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  protected static long triangleSize(int x) {
+    return TriangularDistanceMatrix.triangleSize(x);
   }
 
   /**
@@ -193,21 +211,14 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    *
    * @param scratch Scratch space to be used.
    * @param dq Distance query
-   * @param ix Data iterator
-   * @param iy Data iterator
+   * @param ids Object ids
    * @param square Flag to use squared distances.
    */
-  protected static <O> void initializeDistanceMatrix(double[] scratch, DistanceQuery<O> dq, DBIDArrayIter ix, DBIDArrayIter iy, boolean square) {
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        double dist = dq.distance(ix, iy);
-        // Ward uses variances -- i.e. squared values
-        dist = square ? (dist * dist) : dist;
-        scratch[pos] = dist;
-        pos++;
-      }
-    }
+  protected static <O> void initializeDistanceMatrix(TriangularDistanceMatrix scratch, DistanceQuery<O> dq, ArrayDBIDs ids, boolean square) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing distance matrix", ids.size(), LOG) : null;
+    // Ward uses variances -- i.e. squared values
+    scratch.fill(ids, dq, square, prog, LOG);
+    LOG.ensureCompleted(prog);
   }
 
   /**
@@ -220,11 +231,12 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param builder Pointer representation builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, TriangularDistanceMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
-    for(int ox = 0, xbase = 0; ox < size; xbase += ox++) {
+    long xbase = 0;
+    for(int ox = 0; ox < size; xbase += ox++) {
       // Skip if object has already joined a cluster:
       if(builder.isLinked(ix.seek(ox))) {
         continue;
@@ -235,9 +247,9 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         if(builder.isLinked(iy.seek(oy))) {
           continue;
         }
-        final int idx = xbase + oy;
-        if(scratch[idx] <= mindist) {
-          mindist = scratch[idx];
+        final double d = scratch.get(xbase + oy);
+        if(d <= mindist) {
+          mindist = d;
           x = ox;
           y = oy;
         }
@@ -260,7 +272,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, TriangularDistanceMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     ix.seek(x);
     iy.seek(y);
@@ -292,9 +304,9 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, TriangularDistanceMatrix scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = triangleSize(x), ybase = triangleSize(y);
+    final long xbase = triangleSize(x), ybase = triangleSize(y);
 
     // Write to (y, j), with j < y
     int j = 0;
@@ -303,19 +315,19 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
+      final long yb = ybase + j;
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist));
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = triangleSize(j);
+    long jbase = triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
+      final long jb = jbase + y;
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist));
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -324,7 +336,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         continue;
       }
       final int sizej = builder.getSize(ij);
-      scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], sizej, mindist);
+      scratch.set(jbase + y, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jbase + y), sizej, mindist));
     }
   }
 
@@ -354,11 +366,21 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Flag to store the distance matrix in single precision.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("hierarchical.float", "Store the distance matrix in single precision, to halve the memory requirements.");
+
     /**
      * Current linkage in use.
      */
     protected LinkageMethod linkage;
 
+    /**
+     * Store the distance matrix in single precision.
+     */
+    protected boolean single = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -372,11 +394,16 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        single = floatF.isTrue();
+      }
     }
 
     @Override
     protected AGNES<O> makeInstance() {
-      return new AGNES<>(distanceFunction, linkage);
+      return new AGNES<>(distanceFunction, linkage, single);
     }
   }
 }
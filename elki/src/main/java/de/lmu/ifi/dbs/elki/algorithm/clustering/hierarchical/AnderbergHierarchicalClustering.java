@@ -36,11 +36,15 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.TriangularDistanceMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -56,6 +60,11 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * This optimization is attributed to M. R. Anderberg.
  *
+ * Optionally, the search for the best pair and the Lance-Williams updates of
+ * the matrix and cache can be performed in parallel. Every thread only writes
+ * the matrix entries and cache values of its own rows, and ties are resolved
+ * the same way as in the sequential version, so the result is identical.
+ *
  * Reference:
  * <p>
  * M. R. Anderberg<br />
@@ -69,6 +78,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @apiviz.composedOf LinkageMethod
  * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ * @apiviz.uses TriangularDistanceMatrix
  *
  * @param <O> Object type
  */
@@ -86,6 +96,21 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    */
   LinkageMethod linkage = WardLinkageMethod.STATIC;
 
+  /**
+   * Store the distance matrix in single precision.
+   */
+  boolean single = false;
+
+  /**
+   * Perform the updates in parallel.
+   */
+  boolean parallel = false;
+
+  /**
+   * Minimum number of objects to process in one parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
   /**
    * Constructor.
    *
@@ -93,8 +118,33 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param linkage Linkage method
    */
   public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix in single precision
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
+    this(distanceFunction, linkage, single, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix in single precision
+   * @param parallel Perform the updates in parallel
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single, boolean parallel) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.single = single;
+    this.parallel = parallel;
   }
 
   /**
@@ -109,21 +159,15 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = ids.size();
 
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-      0x10000 // = 65535
-      + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
     // Compute the initial (lower triangular) distance matrix.
-    double[] scratch = new double[AGNES.triangleSize(size)];
+    TriangularDistanceMatrix scratch = TriangularDistanceMatrix.newMatrix(size, single);
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    // Position counter - must agree with computeOffset!
     final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
-    AGNES.initializeDistanceMatrix(scratch, dq, ix, iy, square);
+    AGNES.initializeDistanceMatrix(scratch, dq, ids, square);
 
     // Arrays used for caching:
     double[] bestd = new double[size];
@@ -135,16 +179,28 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
 
     // Repeat until everything merged into 1 cluster
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    int wsize = size;
-    for(int i = 1; i < size; i++) {
-      int x = findMerge(wsize, scratch, ix, iy, bestd, besti, builder);
-      if(x == wsize - 1) {
-        --wsize;
-        for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+    ParallelInstance par = parallel ? new ParallelInstance(ids, scratch, bestd, besti, builder) : null;
+    ParallelCore core = ParallelCore.getCore();
+    if(par != null) {
+      core.connect();
+    }
+    try {
+      int wsize = size;
+      for(int i = 1; i < size; i++) {
+        int x = par != null ? par.findMerge(wsize, ix, iy) : findMerge(wsize, scratch, ix, iy, bestd, besti, builder);
+        if(x == wsize - 1) {
           --wsize;
+          for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+            --wsize;
+          }
         }
+        LOG.incrementProcessed(prog);
+      }
+    }
+    finally {
+      if(par != null) {
+        core.disconnect();
       }
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
 
@@ -158,16 +214,17 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param bestd Best distance
    * @param besti Best index
    */
-  private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  private static void initializeNNCache(TriangularDistanceMatrix scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
-    for(int x = 0, p = 0; x < size; x++) {
+    long p = 0;
+    for(int x = 0; x < size; x++) {
       assert(p == AGNES.triangleSize(x));
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++, p++) {
-        final double v = scratch[p];
+        final double v = scratch.get(p);
         if(v < bestd[y]) {
           bestd[y] = v;
           besti[y] = x;
@@ -196,7 +253,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param builder Hierarchy builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, TriangularDistanceMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
@@ -230,7 +287,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, TriangularDistanceMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     ix.seek(x);
     iy.seek(y);
@@ -270,41 +327,46 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, TriangularDistanceMatrix scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+    updateMatrix(0, size, size, scratch, ij, bestd, besti, builder, mindist, x, y, sizex, sizey);
+  }
+
+  /**
+   * Update a range of rows of the scratch distance matrix.
+   *
+   * This only writes the entries {@code (y, j)} and the cache of {@code j} for
+   * {@code begin <= j < end}, so disjoint ranges can be updated concurrently.
+   *
+   * @param begin First row to update
+   * @param end End of rows to update (exclusive)
+   * @param size Data set size
+   * @param scratch Scratch matrix.
+   * @param ij Iterator to reuse
+   * @param bestd Best distance
+   * @param besti Index of best distance
+   * @param builder Hierarchy builder
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   */
+  private void updateMatrix(int begin, int end, int size, TriangularDistanceMatrix scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = AGNES.triangleSize(x), ybase = AGNES.triangleSize(y);
+    final long xbase = AGNES.triangleSize(x), ybase = AGNES.triangleSize(y);
 
-    // Write to (y, j), with j < y
-    int j = 0;
-    for(; j < y; j++) {
-      if(builder.isLinked(ij.seek(j))) {
-        continue;
-      }
-      final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
-    }
-    j++; // Skip y
-    // Write to (j, y), with y < j < x
-    int jbase = AGNES.triangleSize(j);
-    for(; j < x; jbase += j++) {
-      if(builder.isLinked(ij.seek(j))) {
-        continue;
-      }
-      final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
-    }
-    jbase += j++; // Skip x
-    // Write to (j, y), with y < x < j
-    for(; j < size; jbase += j++) {
-      if(builder.isLinked(ij.seek(j))) {
+    long jbase = AGNES.triangleSize(begin);
+    for(int j = begin; j < end; jbase += j++) {
+      // Skip x, y and objects that have already joined a cluster:
+      if(j == x || j == y || builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final double d = scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], sizej, mindist);
+      // Positions of (x, j) and (y, j) in the triangular matrix:
+      final long xj = j < x ? xbase + j : jbase + x;
+      final long yj = j < y ? ybase + j : jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(xj), sizey, scratch.get(yj), sizej, mindist);
+      scratch.set(yj, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
   }
@@ -321,7 +383,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  private void updateCache(int size, TriangularDistanceMatrix scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
       bestd[j] = d;
@@ -334,27 +396,31 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
   }
 
-  protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
-    final int jbase = AGNES.triangleSize(j);
+  protected void findBest(int size, TriangularDistanceMatrix scratch, double[] bestd, int[] besti, int j) {
+    final long jbase = AGNES.triangleSize(j);
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = jbase; i < j; i++, o++) {
+    long o = jbase;
+    for(int i = 0; i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      if(scratch[o] < bestdj) {
-        bestdj = scratch[o];
+      final double d = scratch.get(o);
+      if(d < bestdj) {
+        bestdj = d;
         bestij = i;
       }
     }
-    for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
+    o = jbase + j + j;
+    for(int i = j + 1; i < size; o += i, i++) {
       // assert(o == AGNES.triangleSize(i) + j);
       if(besti[i] < 0) {
         continue;
       }
-      if(scratch[o] < bestdj) {
-        bestdj = scratch[o];
+      final double d = scratch.get(o);
+      if(d < bestdj) {
+        bestdj = d;
         bestij = i;
       }
     }
@@ -362,6 +428,143 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     besti[j] = bestij;
   }
 
+  /**
+   * Parallel variant of the merge step.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class ParallelInstance {
+    /**
+     * Object ids, for obtaining per-thread iterators.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Scratch distance matrix.
+     */
+    final TriangularDistanceMatrix scratch;
+
+    /**
+     * Nearest neighbor cache.
+     */
+    final double[] bestd;
+
+    /**
+     * Nearest neighbor cache.
+     */
+    final int[] besti;
+
+    /**
+     * Hierarchy builder.
+     */
+    final PointerHierarchyRepresentationBuilder builder;
+
+    /**
+     * Number of objects to process without splitting.
+     */
+    final int blocksize;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Object ids
+     * @param scratch Scratch distance matrix
+     * @param bestd Best distance
+     * @param besti Index of best distance
+     * @param builder Hierarchy builder
+     */
+    ParallelInstance(ArrayDBIDs ids, TriangularDistanceMatrix scratch, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+      this.ids = ids;
+      this.scratch = scratch;
+      this.bestd = bestd;
+      this.besti = besti;
+      this.builder = builder;
+      this.blocksize = ParallelRange.blocksize(ids.size(), MIN_BLOCKSIZE);
+    }
+
+    /**
+     * Perform the next merge step.
+     *
+     * @param size Working set size
+     * @param ix First iterator
+     * @param iy Second iterator
+     * @return x, for shrinking the working set.
+     */
+    int findMerge(int size, DBIDArrayIter ix, DBIDArrayIter iy) {
+      if(size <= blocksize) {
+        return AnderbergHierarchicalClustering.this.findMerge(size, scratch, ix, iy, bestd, besti, builder);
+      }
+      final int x = ParallelRange.reduce(0, size, blocksize, new ParallelRange.Reducer<Integer>() {
+        @Override
+        public Integer process(int begin, int end) {
+          double mindist = Double.POSITIVE_INFINITY;
+          int best = -1;
+          for(int cx = begin; cx < end; cx++) {
+            // Skip if object has already joined a cluster:
+            if(besti[cx] < 0) {
+              continue;
+            }
+            if(bestd[cx] < mindist) {
+              mindist = bestd[cx];
+              best = cx;
+            }
+          }
+          return best;
+        }
+
+        @Override
+        public Integer merge(Integer left, Integer right) {
+          // Ties are resolved in favor of the lower index, as in the
+          // sequential version.
+          return right < 0 || (left >= 0 && bestd[left] <= bestd[right]) ? left : right;
+        }
+      });
+      assert(x >= 0 && besti[x] >= 0);
+      final int y = besti[x];
+      final double mindist = bestd[x];
+      merge(size, ix, iy, mindist, x < y ? y : x, x < y ? x : y);
+      return x;
+    }
+
+    /**
+     * Execute the cluster merge.
+     *
+     * @param size Working set size
+     * @param ix First iterator
+     * @param iy Second iterator
+     * @param mindist Distance that was used for merging
+     * @param x First matrix position
+     * @param y Second matrix position
+     */
+    void merge(final int size, DBIDArrayIter ix, DBIDArrayIter iy, final double mindist, final int x, final int y) {
+      ix.seek(x);
+      iy.seek(y);
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Merging: " + DBIDUtil.toString(ix) + " -> " + DBIDUtil.toString(iy) + " " + mindist);
+      }
+      // Perform merge in data structure: x -> y
+      assert(y < x);
+      builder.add(ix, mindist, iy);
+      final int sizex = builder.getSize(ix), sizey = builder.getSize(iy);
+      builder.setSize(iy, sizex + sizey);
+
+      // Deactivate x in cache:
+      besti[x] = -1;
+
+      ParallelRange.run(0, size, blocksize, new ParallelRange.Block() {
+        @Override
+        public void process(int begin, int end) {
+          updateMatrix(begin, end, size, scratch, ids.iter(), bestd, besti, builder, mindist, x, y, sizex, sizey);
+        }
+      });
+      if(besti[y] == x) {
+        findBest(size, scratch, bestd, besti, y);
+      }
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
     // The input relation must match our distance function:
@@ -383,11 +586,26 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param <O> Object type
    */
   public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Flag to perform the updates in parallel.
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("anderberg.parallel", "Search the best merge and update the distance matrix in parallel.");
+
     /**
      * Current linkage in use.
      */
     protected LinkageMethod linkage;
 
+    /**
+     * Store the distance matrix in single precision.
+     */
+    protected boolean single = false;
+
+    /**
+     * Perform the updates in parallel.
+     */
+    protected boolean parallel = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -401,11 +619,21 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      Flag floatF = new Flag(AGNES.Parameterizer.FLOAT_ID);
+      if(config.grab(floatF)) {
+        single = floatF.isTrue();
+      }
+
+      Flag parallelF = new Flag(PARALLEL_ID);
+      if(config.grab(parallelF)) {
+        parallel = parallelF.isTrue();
+      }
     }
 
     @Override
     protected AnderbergHierarchicalClustering<O> makeInstance() {
-      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage, single, parallel);
     }
   }
 }
@@ -0,0 +1,513 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.ExtractFlatClusteringFromHierarchy;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentUnionFindDBIDs;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.UnionFindUtil;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+
+/**
+ * HDBSCAN* clustering using kNN queries for both the core distances and the
+ * minimum spanning tree, computed in parallel.
+ *
+ * Core distances are computed with bulk kNN queries on blocks of objects, so
+ * any index (or batch kNN) available in the database is used. The minimum
+ * spanning tree of the mutual reachability graph is then built with
+ * Boruvka's algorithm: in each round, every object searches its nearest
+ * object in a different component using kNN queries of increasing size
+ * (falling back to a linear scan only when the neighborhood becomes too
+ * large), and every component is joined with the component of its shortest
+ * outgoing edge. Searches are pruned by the core distance, by the best edge
+ * already found for the component, and by the neighbors already known to be
+ * in the same component. The number of rounds is at most logarithmic in the
+ * number of objects, and all searches of a round run in parallel.
+ *
+ * The result is the same pointer representation as produced by
+ * {@link HDBSCANLinearMemory}, but with an index the number of distance
+ * computations is far below the quadratic cost of Prim's algorithm on the
+ * dense graph. Each worker thread obtains its own distance and kNN queries
+ * from the database, so the queries need not be thread-safe.
+ *
+ * This implementation does <em>not</em> include the cluster extraction
+ * discussed as Step 4. This functionality should however already be provided by
+ * {@link ExtractFlatClusteringFromHierarchy}.
+ *
+ * Reference:
+ * <p>
+ * R. J. G. B. Campello, D. Moulavi, and J. Sander<br />
+ * Density-Based Clustering Based on Hierarchical Density Estimates<br />
+ * Pacific-Asia Conference on Advances in Knowledge Discovery and Data Mining,
+ * PAKDD
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ *
+ * @apiviz.has PointerDensityHierarchyRepresentationResult
+ */
+@Title("HDBSCAN: Hierarchical Density-Based Spatial Clustering of Applications with Noise")
+@Description("Density-Based Clustering Based on Hierarchical Density Estimates")
+@Reference(authors = "R. J. G. B. Campello, D. Moulavi, and J. Sander", //
+title = "Density-Based Clustering Based on Hierarchical Density Estimates", //
+booktitle = "Pacific-Asia Conference on Advances in Knowledge Discovery and Data Mining, PAKDD", //
+url = "http://dx.doi.org/10.1007/978-3-642-37456-2_14")
+public class HDBSCANBoruvka<O> extends AbstractHDBSCAN<O, PointerDensityHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HDBSCANBoruvka.class);
+
+  /**
+   * Additional reference for the spanning tree algorithm.
+   */
+  @Reference(authors = "O. Boruvka", //
+  title = "O jistém problému minimálním (About a certain minimal problem)", //
+  booktitle = "Práce moravské přírodovědecké společnosti, 3 (1926)")
+  public static final Void BORUVKA_REFERENCE = null;
+
+  /**
+   * Minimum number of objects per parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 64;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param minPts Minimum number of points for density
+   */
+  public HDBSCANBoruvka(DistanceFunction<? super O> distanceFunction, int minPts) {
+    super(distanceFunction, minPts);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerDensityHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    // We need array addressing later.
+    final StaticDBIDs sids = DBIDUtil.makeUnmodifiable(relation.getDBIDs());
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(sids);
+    return new Instance(ids, UnionFindUtil.makeConcurrent(sids), db, relation).run();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Instance for a single data set.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Instance {
+    /**
+     * Objects to process.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Union-find of the spanning tree components. The offsets must agree with
+     * the offsets of {@link #ids}.
+     */
+    private final ConcurrentUnionFindDBIDs uf;
+
+    /**
+     * Per-thread queries, because queries are not necessarily thread-safe.
+     */
+    private final ThreadLocal<Queries> queries;
+
+    /**
+     * Core distances, by offset.
+     */
+    private double[] core;
+
+    /**
+     * Component of each object in the current round.
+     */
+    private int[] comp;
+
+    /**
+     * Best edge length found for each component (as long bits of a
+     * non-negative double, so the order is the same).
+     */
+    private AtomicLongArray compBest;
+
+    /**
+     * Best edge of each object in the current round.
+     */
+    private double[] edgeLength;
+
+    /**
+     * Target of the best edge of each object, or -1.
+     */
+    private int[] edgeTarget;
+
+    /**
+     * Number of leading kNN known to be in the same component.
+     */
+    private int[] known;
+
+    /**
+     * Lower bound for the distance to any object in another component.
+     */
+    private double[] lower;
+
+    /**
+     * Maximum k before using a linear scan.
+     */
+    private int kmax;
+
+    /**
+     * Progress logging.
+     */
+    private FiniteProgress progress;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Objects to process
+     * @param uf Union-find
+     * @param db Database, to obtain the queries
+     * @param relation Relation
+     */
+    Instance(ArrayDBIDs ids, ConcurrentUnionFindDBIDs uf, final Database db, final Relation<O> relation) {
+      this.ids = ids;
+      this.uf = uf;
+      this.queries = new ThreadLocal<Queries>() {
+        @Override
+        protected Queries initialValue() {
+          return new Queries(db, relation);
+        }
+      };
+    }
+
+    /**
+     * Run the algorithm.
+     *
+     * @return Clustering hierarchy
+     */
+    public PointerDensityHierarchyRepresentationResult run() {
+      final int size = ids.size();
+      core = new double[size];
+      kmax = Math.min(size, Math.max(256, minPts << 4));
+      final int blocksize = ParallelRange.blocksize(size, MIN_BLOCKSIZE);
+      final DoubleLongHeap heap = new DoubleLongMinHeap(Math.max(1, size - 1));
+      ParallelCore pc = ParallelCore.getCore();
+      pc.connect();
+      try {
+        // 1. Compute the core distances
+        progress = LOG.isVerbose() ? new FiniteProgress("Computing core sizes", size, LOG) : null;
+        ParallelRange.run(0, size, blocksize, new CoreBlock());
+        LOG.ensureCompleted(progress);
+        // 2. Build spanning tree.
+        comp = new int[size];
+        compBest = new AtomicLongArray(size);
+        edgeLength = new double[size];
+        edgeTarget = new int[size];
+        known = new int[size];
+        lower = new double[size];
+        FiniteProgress mprog = LOG.isVerbose() ? new FiniteProgress("Computing minimum spanning tree (n-1 edges)", size - 1, LOG) : null;
+        int components = size, rounds = 0;
+        while(components > 1) {
+          for(int i = 0; i < size; i++) {
+            final int c = comp[i] = uf.find(i);
+            if(c == i) {
+              compBest.set(i, Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+            }
+          }
+          ParallelRange.run(0, size, blocksize, new EdgeBlock());
+          final int added = mergeComponents(heap, mprog);
+          if(added == 0) {
+            throw new IllegalStateException("Boruvka round did not find any edge.");
+          }
+          components -= added;
+          ++rounds;
+        }
+        LOG.ensureCompleted(mprog);
+        LOG.statistics(new LongStatistic(HDBSCANBoruvka.class.getName() + ".rounds", rounds));
+      }
+      finally {
+        pc.disconnect();
+        comp = null;
+        compBest = null;
+        edgeLength = null;
+        edgeTarget = null;
+        known = null;
+        lower = null;
+      }
+      WritableDoubleDataStore coredists = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_DB);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        coredists.putDouble(it, core[it.getOffset()]);
+      }
+      core = null;
+      // Storage for pointer representation:
+      WritableDBIDDataStore pi = DataStoreUtil.makeDBIDStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC);
+      WritableDoubleDataStore lambda = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_STATIC, Double.POSITIVE_INFINITY);
+      convertToPointerRepresentation(ids, heap, pi, lambda);
+      return new PointerDensityHierarchyRepresentationResult(ids, pi, lambda, coredists);
+    }
+
+    /**
+     * Join each component with the component of its shortest outgoing edge.
+     *
+     * @param heap Output heap of edges
+     * @param mprog Progress
+     * @return Number of edges added
+     */
+    private int mergeComponents(DoubleLongHeap heap, FiniteProgress mprog) {
+      final int size = ids.size();
+      // Select the best edge of each component, stored at its root.
+      int[] best = new int[size];
+      for(int i = 0; i < size; i++) {
+        best[i] = -1;
+      }
+      for(int i = 0; i < size; i++) {
+        if(edgeTarget[i] >= 0) {
+          final int c = comp[i], b = best[c];
+          if(b < 0 || edgeLength[i] < edgeLength[b]) {
+            best[c] = i;
+          }
+        }
+      }
+      int added = 0;
+      for(int c = 0; c < size; c++) {
+        final int i = best[c];
+        if(i < 0) {
+          continue;
+        }
+        final int j = edgeTarget[i];
+        // Ties may yield the same edge from both sides.
+        if(uf.find(i) != uf.find(j)) {
+          uf.union(i, j);
+          heap.add(edgeLength[i], (((long) i) << 31) | j);
+          LOG.incrementProcessed(mprog);
+          ++added;
+        }
+      }
+      return added;
+    }
+
+    /**
+     * Find the shortest mutual reachability edge of an object to a different
+     * component.
+     *
+     * @param i Object offset
+     * @param it Iterator positioned at the object
+     * @param scan Second iterator, for linear scans
+     * @param q Queries of the current thread
+     */
+    private void findEdge(int i, DBIDArrayIter it, DBIDArrayIter scan, Queries q) {
+      final int c = comp[i];
+      final double corei = core[i];
+      edgeTarget[i] = -1;
+      double best = Double.longBitsToDouble(compBest.get(c));
+      if(Math.max(corei, lower[i]) >= best) {
+        return; // Cannot improve on the component.
+      }
+      int bestj = -1;
+      for(int k = Math.max(minPts, known[i] + 1) << 1;; k <<= 1) {
+        if(k >= kmax) {
+          // Linear scan fallback.
+          for(scan.seek(0); scan.valid(); scan.advance()) {
+            final int j = scan.getOffset();
+            if(comp[j] == c || Math.max(corei, core[j]) >= best) {
+              continue;
+            }
+            final double m = MathUtil.max(corei, core[j], q.distQ.distance(it, scan));
+            if(m < best) {
+              best = m;
+              bestj = j;
+            }
+          }
+          break;
+        }
+        KNNList knn = q.knnQ.getKNNForDBID(it, k);
+        boolean done = false;
+        int pos = 0;
+        for(DoubleDBIDListIter n = knn.iter(); n.valid(); n.advance(), pos++) {
+          final double d = n.doubleValue();
+          if(Math.max(corei, d) >= best) {
+            done = true; // All further edges are at least as long.
+            break;
+          }
+          final int j = uf.offset(n);
+          if(comp[j] == c) {
+            if(pos == known[i]) {
+              known[i]++;
+              lower[i] = d;
+            }
+            continue;
+          }
+          final double m = MathUtil.max(corei, core[j], d);
+          if(m < best) {
+            best = m;
+            bestj = j;
+          }
+        }
+        if(done || knn.size() < k) {
+          break;
+        }
+      }
+      if(bestj < 0) {
+        return;
+      }
+      edgeLength[i] = best;
+      edgeTarget[i] = bestj;
+      // Update the component bound, for pruning other searches.
+      final long bits = Double.doubleToLongBits(best);
+      for(long cur = compBest.get(c); bits < cur; cur = compBest.get(c)) {
+        if(compBest.compareAndSet(c, cur, bits)) {
+          break;
+        }
+      }
+    }
+
+    /**
+     * Queries used by a single worker thread.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Queries {
+      /**
+       * Distance query, for the linear scan fallback.
+       */
+      final DistanceQuery<O> distQ;
+
+      /**
+       * kNN query for core distances.
+       */
+      final KNNQuery<O> coreQ;
+
+      /**
+       * kNN query for finding edges.
+       */
+      final KNNQuery<O> knnQ;
+
+      /**
+       * Constructor.
+       *
+       * @param db Database
+       * @param relation Relation
+       */
+      Queries(Database db, Relation<O> relation) {
+        distQ = db.getDistanceQuery(relation, getDistanceFunction());
+        coreQ = db.getKNNQuery(distQ, minPts, DatabaseQuery.HINT_BULK);
+        knnQ = db.getKNNQuery(distQ, DatabaseQuery.HINT_EXACT);
+      }
+    }
+
+    /**
+     * Compute core distances with a bulk kNN query.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class CoreBlock implements ParallelRange.Block {
+      @Override
+      public void process(int begin, int end) {
+        List<? extends KNNList> knns = queries.get().coreQ.getKNNForBulkDBIDs(ids.slice(begin, end), minPts);
+        for(int i = begin; i < end; i++) {
+          core[i] = knns.get(i - begin).getKNNDistance();
+          LOG.incrementProcessed(progress);
+        }
+      }
+    }
+
+    /**
+     * Find the shortest outgoing edge of each object.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class EdgeBlock implements ParallelRange.Block {
+      @Override
+      public void process(int begin, int end) {
+        final Queries q = queries.get();
+        DBIDArrayIter it = ids.iter(), scan = ids.iter();
+        for(int i = begin; i < end; i++) {
+          findEdge(i, it.seek(i), scan, q);
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AbstractHDBSCAN.Parameterizer<O> {
+    @Override
+    protected HDBSCANBoruvka<O> makeInstance() {
+      return new HDBSCANBoruvka<>(distanceFunction, minPts);
+    }
+  }
+}
@@ -0,0 +1,278 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.TriangularDistanceMatrix;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Nearest-neighbor chain algorithm for agglomerative hierarchical clustering.
+ *
+ * Starting from an arbitrary cluster, the chain is extended by the nearest
+ * neighbor of its last element, until two clusters are reciprocal nearest
+ * neighbors. These two clusters are then merged. For <em>reducible</em>
+ * linkages (single, complete, group average, weighted average and Ward), the
+ * remainder of the chain stays valid after a merge, so the entire hierarchy is
+ * built in O(n^2) time using the same Lance-Williams matrix updates as
+ * {@link AGNES}, without the cost of searching for the global minimum.
+ *
+ * Centroid and median linkage are not reducible, and may produce a different
+ * (non-monotone) hierarchy than {@link AGNES} with this algorithm.
+ *
+ * Merges are not found in order of increasing distance, so they are recorded
+ * and sorted before building the pointer representation.
+ *
+ * Reference:
+ * <p>
+ * F. Murtagh<br />
+ * A survey of recent advances in hierarchical clustering algorithms<br />
+ * The Computer Journal 26(4)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf LinkageMethod
+ * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ * @apiviz.uses TriangularDistanceMatrix
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "F. Murtagh", //
+title = "A survey of recent advances in hierarchical clustering algorithms", //
+booktitle = "The Computer Journal 26(4)", //
+url = "http://dx.doi.org/10.1093/comjnl/26.4.354")
+public class NNChain<O> extends AGNES<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(NNChain.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix in single precision
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
+    super(distanceFunction, linkage, single);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  @Override
+  public PointerHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    if(SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+    if(CentroidLinkageMethod.class.isInstance(linkage) || MedianLinkageMethod.class.isInstance(linkage)) {
+      LOG.warning("Centroid and median linkage are not reducible. The nearest-neighbor chain may yield a different result than AGNES.");
+    }
+
+    // Compute the initial (lower triangular) distance matrix.
+    TriangularDistanceMatrix scratch = TriangularDistanceMatrix.newMatrix(size, single);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
+    initializeDistanceMatrix(scratch, dq, ids, square);
+
+    // Merges, in the order they were found:
+    final int[] mergex = new int[size - 1], mergey = new int[size - 1];
+    final double[] merged = new double[size - 1];
+    nnChainCore(size, scratch, mergex, mergey, merged);
+
+    // The pointer representation requires increasing merge distances.
+    // Ties are kept in the order found, as later merges may depend on them.
+    int[] order = new int[size - 1];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    IntegerArrayQuickSort.sort(order, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        final int c = Double.compare(merged[x], merged[y]);
+        return c != 0 ? c : Integer.compare(x, y);
+      }
+    });
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+    for(int i : order) {
+      // Since y < x, the cluster is represented by y.
+      builder.add(ix.seek(mergex[i]), merged[i], iy.seek(mergey[i]));
+    }
+    return builder.complete();
+  }
+
+  /**
+   * Core of the nearest-neighbor chain algorithm.
+   *
+   * @param size Data set size
+   * @param scratch Scratch space.
+   * @param mergex Output: merged (dropped) position of each merge
+   * @param mergey Output: kept position of each merge
+   * @param merged Output: distance of each merge
+   */
+  private void nnChainCore(int size, TriangularDistanceMatrix scratch, int[] mergex, int[] mergey, double[] merged) {
+    // Cluster sizes; 0 for clusters that have been merged into another.
+    int[] csize = new int[size];
+    Arrays.fill(csize, 1);
+    // The chain of cluster positions; it can never exceed the data set size.
+    int[] chain = new int[size];
+    int clen = 0;
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    for(int k = 0; k < size - 1; k++) {
+      if(clen == 0) {
+        // Since merges always keep the smaller position, 0 remains active.
+        chain[clen++] = 0;
+      }
+      while(true) {
+        final int a = chain[clen - 1], b = clen > 1 ? chain[clen - 2] : -1;
+        // Find the nearest neighbor of a, preferring b on ties to avoid cycles
+        double mindist = b >= 0 ? scratch.get(TriangularDistanceMatrix.offset(a, b)) : Double.POSITIVE_INFINITY;
+        int c = b;
+        final long abase = triangleSize(a);
+        for(int j = 0; j < a; j++) {
+          if(csize[j] == 0) {
+            continue;
+          }
+          final double d = scratch.get(abase + j);
+          if(d < mindist) {
+            mindist = d;
+            c = j;
+          }
+        }
+        long jbase = triangleSize(a + 1);
+        for(int j = a + 1; j < size; jbase += j++) {
+          if(csize[j] == 0) {
+            continue;
+          }
+          final double d = scratch.get(jbase + a);
+          if(d < mindist) {
+            mindist = d;
+            c = j;
+          }
+        }
+        assert(c >= 0);
+        if(c != b) {
+          // Extend the chain.
+          chain[clen++] = c;
+          continue;
+        }
+        // Reciprocal nearest neighbors: merge, and remove both from the chain.
+        clen -= 2;
+        final int x = a < b ? b : a, y = a < b ? a : b;
+        mergex[k] = x;
+        mergey[k] = y;
+        merged[k] = mindist;
+        updateMatrix(size, scratch, csize, mindist, x, y);
+        break;
+      }
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Merge x into y, and update the scratch distance matrix.
+   *
+   * @param size Data set size
+   * @param scratch Scratch matrix.
+   * @param csize Cluster sizes
+   * @param mindist Distance that was used for merging
+   * @param x First matrix position
+   * @param y Second matrix position, {@code y < x}
+   */
+  private void updateMatrix(int size, TriangularDistanceMatrix scratch, int[] csize, double mindist, int x, int y) {
+    final int sizex = csize[x], sizey = csize[y];
+    csize[y] = sizex + sizey;
+    csize[x] = 0;
+    final long xbase = triangleSize(x), ybase = triangleSize(y);
+
+    long jbase = 0;
+    for(int j = 0; j < size; jbase += j++) {
+      // Skip y and objects that have already joined a cluster (including x):
+      if(j == y || csize[j] == 0) {
+        continue;
+      }
+      // Positions of (x, j) and (y, j) in the triangular matrix:
+      final long xj = j < x ? xbase + j : jbase + x;
+      final long yj = j < y ? ybase + j : jbase + y;
+      scratch.set(yj, linkage.combine(sizex, scratch.get(xj), sizey, scratch.get(yj), csize[j], mindist));
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AGNES.Parameterizer<O> {
+    @Override
+    protected NNChain<O> makeInstance() {
+      return new NNChain<>(distanceFunction, linkage, single);
+    }
+  }
+}
@@ -44,6 +44,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -58,6 +59,10 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * sets based on PAM, partitioning around medoids ({@link KMedoidsPAM}) based on
  * sampling.
  *
+ * The samples and their initial medoids are drawn sequentially, so that the
+ * result is reproducible; the PAM optimization of the samples then runs
+ * concurrently.
+ *
  * Reference:
  * <p>
  * L. Kaufman, P. J. Rousseeuw<br />
@@ -117,32 +122,50 @@ public class CLARA<V> extends KMedoidsPAM<V> {
     if(relation.size() <= 0) {
       return new Clustering<>("CLARA Clustering", "clara-clustering");
     }
-    DBIDs ids = relation.getDBIDs();
-    DistanceQuery<V> distQ = database.getDistanceQuery(relation, getDistanceFunction());
-
-    double best = Double.POSITIVE_INFINITY;
-    ArrayModifiableDBIDs bestmedoids = null;
-    WritableIntegerDataStore bestclusters = null;
+    final DBIDs ids = relation.getDBIDs();
+    final DistanceQuery<V> distQ = database.getDistanceQuery(relation, getDistanceFunction());
 
+    // Draw the samples and initial medoids sequentially, for reproducibility.
+    final DBIDs[] samples = new DBIDs[numsamples];
+    final ArrayModifiableDBIDs[] medoids = new ArrayModifiableDBIDs[numsamples];
     Random rnd = random.getSingleThreadedRandom();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
     for(int j = 0; j < numsamples; j++) {
-      DBIDs rids = DBIDUtil.randomSample(ids, sampling, rnd);
+      samples[j] = DBIDUtil.randomSample(ids, sampling, rnd);
       // Choose initial medoids
-      ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, distQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      runPAMOptimization(distQ, rids, medoids, assignment);
-      double score = assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
-      }
-      LOG.incrementProcessed(prog);
+      medoids[j] = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, samples[j], distQ));
     }
+
+    final double[] scores = new double[numsamples];
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
+    // Run PAM on the samples in parallel, one sample per block.
+    ParallelRange.run(0, numsamples, 1, new ParallelRange.Block() {
+      @Override
+      public void process(int begin, int end) {
+        for(int j = begin; j < end; j++) {
+          // Cluster assignment of the sample only; the full assignment is
+          // computed once, for the best medoids.
+          WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(samples[j], DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+          runPAMOptimization(distQ, samples[j], medoids[j], assignment);
+          scores[j] = assignRemainingToNearestCluster(medoids[j], ids, samples[j], null, distQ);
+          LOG.incrementProcessed(prog);
+        }
+      }
+    });
     LOG.ensureCompleted(prog);
 
+    double best = Double.POSITIVE_INFINITY;
+    ArrayModifiableDBIDs bestmedoids = null;
+    for(int j = 0; j < numsamples; j++) {
+      if(scores[j] < best) {
+        best = scores[j];
+        bestmedoids = medoids[j];
+      }
+    }
+
+    // Assign all objects once, to the winning medoids only.
+    WritableIntegerDataStore bestclusters = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+    assignRemainingToNearestCluster(bestmedoids, ids, DBIDUtil.EMPTYDBIDS, bestclusters, distQ);
+
     ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, bestclusters, k);
 
     // Wrap result
@@ -161,7 +184,8 @@ public class CLARA<V> extends KMedoidsPAM<V> {
    * @param means Object centroids
    * @param ids Object ids
    * @param rids Sample that was already assigned
-   * @param assignment cluster assignment
+   * @param assignment cluster assignment, may be {@code null} to only compute
+   *        the score
    * @param distQ distance query
    * @return Sum of distances.
    */
@@ -184,7 +208,9 @@ public class CLARA<V> extends KMedoidsPAM<V> {
         }
       }
       distsum += mindist;
-      assignment.put(iditer, minIndex);
+      if(assignment != null) {
+        assignment.put(iditer, minIndex);
+      }
     }
     return distsum;
   }
@@ -0,0 +1,374 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Accelerated variant of PAM k-medoids clustering.
+ *
+ * For every candidate non-medoid, the change in cost is computed for all k
+ * medoid removals at once: using the cached distances to the nearest and
+ * second nearest medoid, objects that would move to the candidate contribute
+ * to all k swaps equally, and only the loss of the current medoid needs to be
+ * accounted per medoid. This reduces the cost of evaluating a candidate from
+ * O(nk) to O(n+k). The candidates are evaluated in parallel, and the best swap
+ * is chosen with the same tie breaking as the sequential order, so the result
+ * does not depend on the number of threads.
+ *
+ * Reference:
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br />
+ * Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+ * Algorithms<br />
+ * Proc. 12th Int. Conf. Similarity Search and Applications (SISAP 2019)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+title = "Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS Algorithms", //
+booktitle = "Proc. 12th Int. Conf. Similarity Search and Applications (SISAP 2019)", //
+url = "http://dx.doi.org/10.1007/978-3-030-32047-8_16")
+public class KMedoidsFastPAM<V> extends KMedoidsPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMedoidsFastPAM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMedoidsFastPAM.class.getName();
+
+  /**
+   * Minimum number of objects to process in one parallel block.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public KMedoidsFastPAM(DistanceFunction<? super V> distanceFunction, int k, int maxiter, KMedoidsInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void runPAMOptimization(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      new Instance(distQ, DBIDUtil.ensureArray(ids), medoids).run(assignment);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Instance for a single data set.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  protected class Instance {
+    /**
+     * Distance query.
+     */
+    final DistanceQuery<V> distQ;
+
+    /**
+     * Objects to cluster.
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Current medoids.
+     */
+    final ArrayModifiableDBIDs medoids;
+
+    /**
+     * Distance to the nearest and second nearest medoid, by object offset.
+     */
+    final double[] nearest, second;
+
+    /**
+     * Cluster assignment, by object offset.
+     */
+    final int[] assignment;
+
+    /**
+     * Number of objects to process without splitting.
+     */
+    final int blocksize;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids Objects to cluster
+     * @param medoids Initial medoids, will be modified
+     */
+    protected Instance(DistanceQuery<V> distQ, ArrayDBIDs ids, ArrayModifiableDBIDs medoids) {
+      this.distQ = distQ;
+      this.ids = ids;
+      this.medoids = medoids;
+      final int size = ids.size();
+      this.nearest = new double[size];
+      this.second = new double[size];
+      this.assignment = new int[size];
+      this.blocksize = ParallelRange.blocksize(size, MIN_BLOCKSIZE);
+    }
+
+    /**
+     * Run the PAM optimization phase.
+     *
+     * @param assignOut Output cluster assignment
+     */
+    protected void run(WritableIntegerDataStore assignOut) {
+      final int size = ids.size();
+      final AssignBlock assign = new AssignBlock();
+      ParallelRange.run(0, size, blocksize, assign);
+      double tc = cost();
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + 0 + ".cost", tc));
+      }
+
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("PAM iteration", LOG) : null;
+      // Swap phase
+      DBIDArrayIter it = ids.iter();
+      int iteration = 1;
+      for(; maxiter <= 0 || iteration <= maxiter; iteration++) {
+        LOG.incrementProcessed(prog);
+        Swap swap = ParallelRange.reduce(0, size, blocksize, new SwapSearch());
+        if(swap.best >= 0.) {
+          break;
+        }
+        medoids.set(swap.bestcluster, it.seek(swap.bestid));
+        // Reassign
+        ParallelRange.run(0, size, blocksize, assign);
+        double nc = cost();
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + iteration + ".cost", nc));
+        }
+        if(nc > tc) {
+          if(nc - tc < 1e-7 * tc) {
+            LOG.warning("PAM failed to converge (numerical instability?)");
+            break;
+          }
+          LOG.warning("PAM failed to converge: costs increased by: " + (nc - tc) + " exepected a decrease by " + swap.best);
+          break;
+        }
+        tc = nc;
+      }
+      LOG.setCompleted(prog);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+        LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + iteration + ".cost", tc));
+      }
+      for(it.seek(0); it.valid(); it.advance()) {
+        assignOut.putInt(it, assignment[it.getOffset()]);
+      }
+    }
+
+    /**
+     * Total cost of the current assignment.
+     *
+     * Summed sequentially, so that it does not depend on the parallelism.
+     *
+     * @return Sum of distances to the nearest medoids
+     */
+    protected double cost() {
+      double cost = 0.;
+      for(double d : nearest) {
+        cost += d;
+      }
+      return cost;
+    }
+
+    /**
+     * Assign a range of objects to their nearest medoids.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class AssignBlock implements ParallelRange.Block {
+      @Override
+      public void process(int begin, int end) {
+        DBIDArrayIter miter = medoids.iter(), iter = ids.iter();
+        for(int j = begin; j < end; j++) {
+          iter.seek(j);
+          double mindist = Double.POSITIVE_INFINITY,
+              mindist2 = Double.POSITIVE_INFINITY;
+          int minIndex = -1;
+          for(int i = 0; i < k; i++) {
+            double dist = distQ.distance(iter, miter.seek(i));
+            if(dist < mindist) {
+              mindist2 = mindist;
+              mindist = dist;
+              minIndex = i;
+            }
+            else if(dist < mindist2) {
+              mindist2 = dist;
+            }
+          }
+          if(minIndex < 0) {
+            throw new AbortException("Too many infinite distances. Cannot assign objects.");
+          }
+          assignment[j] = minIndex;
+          nearest[j] = mindist;
+          second[j] = mindist2;
+        }
+      }
+    }
+
+    /**
+     * Best swap found in a range of candidates.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Swap {
+      /**
+       * Best change in cost found.
+       */
+      double best = Double.POSITIVE_INFINITY;
+
+      /**
+       * Offset of the best candidate, and the medoid it replaces.
+       */
+      int bestid = -1, bestcluster = -1;
+    }
+
+    /**
+     * Find the best swap for a range of candidate objects.
+     *
+     * Ties are resolved in favor of the first candidate, as in the sequential
+     * version.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class SwapSearch implements ParallelRange.Reducer<Swap> {
+      @Override
+      public Swap merge(Swap left, Swap right) {
+        return right.best < left.best ? right : left;
+      }
+
+      @Override
+      public Swap process(int begin, int end) {
+        Swap swap = new Swap();
+        final int size = ids.size();
+        DBIDArrayIter m = medoids.iter(), h = ids.iter(), j = ids.iter();
+        double[] cost = new double[k];
+        for(int hi = begin; hi < end; hi++) {
+          h.seek(hi);
+          final double hdist = nearest[hi]; // Current assignment cost of h.
+          if(hdist <= 0. || DBIDUtil.equal(m.seek(assignment[hi]), h)) {
+            continue; // Only consider non-selected items
+          }
+          // Loss of removing each medoid, and the gain shared by all swaps:
+          Arrays.fill(cost, 0.);
+          double shared = -hdist;
+          for(int ji = 0; ji < size; ji++) {
+            if(ji == hi) {
+              continue;
+            }
+            final double distcur = nearest[ji];
+            final double dist_h = distQ.distance(h, j.seek(ji));
+            if(dist_h < distcur) {
+              // j moves to h, regardless of which medoid is removed.
+              shared += dist_h - distcur;
+            }
+            else {
+              // Only if the current medoid is removed, j moves to h or its
+              // second nearest medoid.
+              final double distsec = second[ji];
+              cost[assignment[ji]] += (dist_h < distsec ? dist_h : distsec) - distcur;
+            }
+          }
+          // Consider all possible swaps:
+          for(int pi = 0; pi < k; pi++) {
+            final double c = cost[pi] + shared;
+            if(c < swap.best) {
+              swap.best = c;
+              swap.bestid = hi;
+              swap.bestcluster = pi;
+            }
+          }
+        }
+        return swap;
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends KMedoidsPAM.Parameterizer<V> {
+    @Override
+    protected KMedoidsFastPAM<V> makeInstance() {
+      return new KMedoidsFastPAM<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
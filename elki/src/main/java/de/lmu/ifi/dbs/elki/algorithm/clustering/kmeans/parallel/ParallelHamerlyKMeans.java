@@ -0,0 +1,587 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.times;
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Parallel version of Hamerly's fast k-means, {@link KMeansHamerly}.
+ *
+ * The upper and lower bounds are kept in primitive data stores, which each
+ * thread only writes for the objects it is processing. Every thread collects
+ * the changes to the cluster sums and sizes locally; these are merged at the
+ * end of each pass. The bound update after moving the means is folded into
+ * the next assignment pass, to avoid an additional scan of the data.
+ *
+ * <p>
+ * Reference:<br />
+ * G. Hamerly<br/>
+ * Making k-means even faster<br/>
+ * Proc. 2010 SIAM International Conference on Data Mining
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "G. Hamerly", //
+title = "Making k-means even faster", //
+booktitle = "Proc. 2010 SIAM International Conference on Data Mining", //
+url = "http://dx.doi.org/10.1137/1.9781611972801.12")
+public class ParallelHamerlyKMeans<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelHamerlyKMeans.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelHamerlyKMeans.class.getName();
+
+  /**
+   * Flag whether to compute the final variance statistic.
+   */
+  private boolean varstat = false;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelHamerlyKMeans(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.varstat = varstat;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    final DBIDs ids = relation.getDBIDs();
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    // Hamerly bounds
+    WritableDoubleDataStore upper = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, Double.POSITIVE_INFINITY);
+    WritableDoubleDataStore lower = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, 0.);
+    // Store every key once, so the threads never modify the store structure.
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      assignment.putInt(it, -1);
+      upper.putDouble(it, Double.POSITIVE_INFINITY);
+      lower.putDouble(it, 0.);
+    }
+    // Running sums and sizes of the clusters:
+    final int dim = means[0].length;
+    double[][] sums = new double[k][dim];
+    int[] sizes = new int[k];
+    // Separation of means / distance moved.
+    double[] sep = new double[k], move = new double[k];
+    double delta = 0.;
+
+    HamerlyProcessor<V> proc = new HamerlyProcessor<>(relation, distanceFunction, assignment, upper, lower, sums, sizes);
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    LongStatistic rstat = LOG.isStatistics() ? new LongStatistic(KEY + ".reassignments") : null;
+    long distances = 0L;
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      LOG.incrementProcessed(prog);
+      if(iteration > 0) {
+        distances += recomputeSeperation(means, sep);
+      }
+      proc.nextIteration(means, sep, move, delta);
+      ParallelExecutor.run(ids, proc);
+      distances += proc.distances;
+      if(rstat != null) {
+        rstat.setLong(proc.changed);
+        LOG.statistics(rstat);
+      }
+      // Stop if no cluster assignment changed.
+      if(proc.changed == 0) {
+        break;
+      }
+      // Recompute means.
+      double[][] newmeans = new double[k][];
+      for(int i = 0; i < k; i++) {
+        newmeans[i] = sizes[i] > 0 ? times(sums[i], 1. / sizes[i]) : means[i];
+      }
+      delta = maxMoved(means, newmeans, move);
+      distances += k;
+      means = newmeans;
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+      LOG.statistics(new LongStatistic(KEY + ".distance-computations", distances));
+    }
+    upper.destroy();
+    lower.destroy();
+
+    // Wrap result
+    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, assignment, k);
+    double totalvariance = 0.;
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.length; i++) {
+      DBIDs cids = clusters[i];
+      if(cids.size() == 0) {
+        continue;
+      }
+      double[] mean = means[i];
+      double varsum = 0.;
+      if(varstat) {
+        DoubleVector mvec = DoubleVector.wrap(mean);
+        for(DBIDIter it = cids.iter(); it.valid(); it.advance()) {
+          varsum += distanceFunction.distance(mvec, relation.get(it));
+        }
+        totalvariance += varsum;
+      }
+      KMeansModel model = new KMeansModel(mean, varsum);
+      result.addToplevelCluster(new Cluster<>(cids, model));
+    }
+    if(LOG.isStatistics() && varstat) {
+      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".variance-sum", totalvariance));
+    }
+    return result;
+  }
+
+  /**
+   * Recompute the separation of cluster means.
+   *
+   * @param means Means
+   * @param sep Output array
+   * @return Number of distance computations
+   */
+  private int recomputeSeperation(double[][] means, double[] sep) {
+    final int k = means.length;
+    assert (sep.length == k);
+    boolean issquared = (distanceFunction instanceof SquaredEuclideanDistanceFunction);
+    Arrays.fill(sep, Double.POSITIVE_INFINITY);
+    for(int i = 1; i < k; i++) {
+      DoubleVector m1 = DoubleVector.wrap(means[i]);
+      for(int j = 0; j < i; j++) {
+        double d = distanceFunction.distance(m1, DoubleVector.wrap(means[j]));
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+    // We need half the Euclidean distance
+    for(int i = 0; i < k; i++) {
+      sep[i] = issquared ? Math.sqrt(sep[i]) : sep[i];
+      sep[i] *= .5;
+    }
+    return (k * (k - 1)) >> 1;
+  }
+
+  /**
+   * Maximum distance moved.
+   *
+   * @param means Old means
+   * @param newmeans New means
+   * @param dists Distances moved
+   * @return Maximum distance moved
+   */
+  private double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
+    assert (means.length == k);
+    assert (newmeans.length == k);
+    assert (dists.length == k);
+    boolean issquared = (distanceFunction instanceof SquaredEuclideanDistanceFunction);
+    double max = 0.;
+    for(int i = 0; i < k; i++) {
+      double d = distanceFunction.distance(DoubleVector.wrap(means[i]), DoubleVector.wrap(newmeans[i]));
+      d = issquared ? Math.sqrt(d) : d;
+      dists[i] = d;
+      max = (d > max) ? d : max;
+    }
+    return max;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor for one assignment pass of Hamerly's algorithm.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> Vector type
+   */
+  private static class HamerlyProcessor<V extends NumberVector> implements Processor {
+    /**
+     * Data relation.
+     */
+    Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Cluster assignment, {@code -1} if not yet assigned.
+     */
+    WritableIntegerDataStore assignment;
+
+    /**
+     * Upper and lower bounds.
+     */
+    WritableDoubleDataStore upper, lower;
+
+    /**
+     * Shared running sums of the clusters.
+     */
+    double[][] sums;
+
+    /**
+     * Shared cluster sizes.
+     */
+    int[] sizes;
+
+    /**
+     * Current means.
+     */
+    double[][] means;
+
+    /**
+     * Separation of means.
+     */
+    double[] sep;
+
+    /**
+     * Distance each mean moved in the last update.
+     */
+    double[] move;
+
+    /**
+     * Maximum distance moved.
+     */
+    double delta;
+
+    /**
+     * Number of reassigned objects in this pass.
+     */
+    int changed;
+
+    /**
+     * Number of distance computations in this pass.
+     */
+    long distances;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param assignment Cluster assignment
+     * @param upper Upper bounds
+     * @param lower Lower bounds
+     * @param sums Running sums of the clusters
+     * @param sizes Cluster sizes
+     */
+    HamerlyProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[][] sums, int[] sizes) {
+      super();
+      this.relation = relation;
+      this.distance = distance;
+      this.assignment = assignment;
+      this.upper = upper;
+      this.lower = lower;
+      this.sums = sums;
+      this.sizes = sizes;
+    }
+
+    /**
+     * Initialize for the next pass.
+     *
+     * @param means Current means
+     * @param sep Separation of means
+     * @param move Distance moved by each mean since the last pass
+     * @param delta Maximum distance moved
+     */
+    void nextIteration(double[][] means, double[] sep, double[] move, double delta) {
+      this.means = means;
+      this.sep = sep;
+      this.move = move;
+      this.delta = delta;
+      this.changed = 0;
+      this.distances = 0L;
+    }
+
+    @Override
+    public Instance<V> instantiate(Executor executor) {
+      return new Instance<>(this);
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      @SuppressWarnings("unchecked")
+      Instance<V> instance = (Instance<V>) inst;
+      synchronized(this) {
+        changed += instance.changed;
+        distances += instance.distances;
+        for(int i = 0; i < sums.length; i++) {
+          sizes[i] += instance.sizes[i];
+          final double[] sum = sums[i], part = instance.sums[i];
+          for(int d = 0; d < sum.length; d++) {
+            sum[d] += part[d];
+          }
+        }
+      }
+    }
+
+    /**
+     * Per-thread instance.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <V> Vector type
+     */
+    private static class Instance<V extends NumberVector> implements Processor.Instance {
+      /**
+       * Shared state.
+       */
+      private final HamerlyProcessor<V> parent;
+
+      /**
+       * Whether the distance function is squared Euclidean.
+       */
+      private final boolean issquared;
+
+      /**
+       * Wrapped means.
+       */
+      private final DoubleVector[] means;
+
+      /**
+       * Partial changes to the sums.
+       */
+      private final double[][] sums;
+
+      /**
+       * Partial changes to the sizes.
+       */
+      private final int[] sizes;
+
+      /**
+       * Number of reassigned objects.
+       */
+      private int changed = 0;
+
+      /**
+       * Number of distance computations.
+       */
+      private long distances = 0L;
+
+      /**
+       * Constructor.
+       *
+       * @param parent Shared state
+       */
+      Instance(HamerlyProcessor<V> parent) {
+        this.parent = parent;
+        this.issquared = (parent.distance instanceof SquaredEuclideanDistanceFunction);
+        final int k = parent.means.length;
+        this.means = new DoubleVector[k];
+        for(int i = 0; i < k; i++) {
+          this.means[i] = DoubleVector.wrap(parent.means[i]);
+        }
+        this.sums = new double[k][parent.means[0].length];
+        this.sizes = new int[k];
+      }
+
+      @Override
+      public void map(DBIDRef id) {
+        final HamerlyProcessor<V> p = parent;
+        final int cur = p.assignment.intValue(id);
+        double u = Double.POSITIVE_INFINITY, z = 0.;
+        if(cur >= 0) {
+          // Apply the pending bound update:
+          u = p.upper.doubleValue(id) + p.move[cur];
+          z = p.lower.doubleValue(id) - p.delta;
+          final double sa = p.sep[cur];
+          if(u <= z || u <= sa) {
+            p.upper.putDouble(id, u);
+            p.lower.putDouble(id, z);
+            return;
+          }
+        }
+        final V fv = p.relation.get(id);
+        if(cur >= 0) {
+          // Update the upper bound
+          u = p.distance.distance(fv, means[cur]);
+          u = issquared ? Math.sqrt(u) : u;
+          ++distances;
+          if(u <= z || u <= p.sep[cur]) {
+            p.upper.putDouble(id, u);
+            p.lower.putDouble(id, z);
+            return;
+          }
+        }
+        // Find closest center, and distance to two closest centers
+        double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+        int minIndex = -1;
+        for(int i = 0; i < means.length; i++) {
+          double dist = p.distance.distance(fv, means[i]);
+          if(dist < min1) {
+            minIndex = i;
+            min2 = min1;
+            min1 = dist;
+          }
+          else if(dist < min2) {
+            min2 = dist;
+          }
+        }
+        distances += means.length;
+        // make squared Euclidean a metric:
+        if(issquared) {
+          min1 = Math.sqrt(min1);
+          min2 = Math.sqrt(min2);
+        }
+        if(minIndex != cur) {
+          p.assignment.putInt(id, minIndex);
+          final double[] newsum = sums[minIndex];
+          ++sizes[minIndex];
+          if(cur >= 0) {
+            final double[] oldsum = sums[cur];
+            --sizes[cur];
+            for(int d = 0; d < fv.getDimensionality(); d++) {
+              final double v = fv.doubleValue(d);
+              newsum[d] += v;
+              oldsum[d] -= v;
+            }
+          }
+          else {
+            for(int d = 0; d < fv.getDimensionality(); d++) {
+              newsum[d] += fv.doubleValue(d);
+            }
+          }
+          ++changed;
+        }
+        p.upper.putDouble(id, min1);
+        p.lower.putDouble(id, min2);
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Compute the final variance statisic.
+     */
+    protected boolean varstat = false;
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected void getParameterDistanceFunction(Parameterization config) {
+      super.getParameterDistanceFunction(config);
+      if(distanceFunction instanceof SquaredEuclideanDistanceFunction) {
+        return; // Proper choice.
+      }
+      if(distanceFunction != null && !distanceFunction.isMetric()) {
+        LOG.warning("Hamerly k-means requires a metric distance, and k-means should only be used with squared Euclidean distance!");
+      }
+    }
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag varF = new Flag(KMeansHamerly.Parameterizer.VARSTAT_ID);
+      if(config.grab(varF)) {
+        varstat = varF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelHamerlyKMeans<V> makeInstance() {
+      return new ParallelHamerlyKMeans<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -44,9 +44,9 @@ import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.IncrementalKNNAndRKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.KNNChangeEvent;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.KNNListener;
-import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNAndRKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
@@ -133,7 +133,7 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       if(stepprog != null) {
         stepprog.beginStep(1, "Materializing neighborhood w.r.t. reference neighborhood distance function.", LOG);
       }
-      MaterializeKNNAndRKNNPreprocessor<O> preproc = new MaterializeKNNAndRKNNPreprocessor<>(relation, referenceDistanceFunction, krefer);
+      IncrementalKNNAndRKNNPreprocessor<O> preproc = new IncrementalKNNAndRKNNPreprocessor<>(relation, referenceDistanceFunction, krefer);
       kNNRefer = preproc.getKNNQuery(drefQ, krefer, DatabaseQuery.HINT_HEAVY_USE);
       rkNNRefer = preproc.getRKNNQuery(drefQ, krefer, DatabaseQuery.HINT_HEAVY_USE);
       // add as index
@@ -155,7 +155,7 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       ListParameterization config = new ListParameterization();
       config.addParameter(AbstractMaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, reachabilityDistanceFunction);
       config.addParameter(AbstractMaterializeKNNPreprocessor.Factory.K_ID, kreach);
-      MaterializeKNNAndRKNNPreprocessor<O> preproc = new MaterializeKNNAndRKNNPreprocessor<>(relation, reachabilityDistanceFunction, kreach);
+      IncrementalKNNAndRKNNPreprocessor<O> preproc = new IncrementalKNNAndRKNNPreprocessor<>(relation, reachabilityDistanceFunction, kreach);
       kNNReach = preproc.getKNNQuery(dreachQ, kreach, DatabaseQuery.HINT_HEAVY_USE);
       rkNNReach = preproc.getRKNNQuery(dreachQ, kreach, DatabaseQuery.HINT_HEAVY_USE);
       // add as index
@@ -237,7 +237,8 @@ public class OnlineLOF<O> extends FlexibleLOF<O> {
       if(!e1.getType().equals(e2.getType())) {
         throw new UnsupportedOperationException("Event types do not fit: " + e1.getType() + " != " + e2.getType());
       }
-      if(!e1.getObjects().equals(e2.getObjects())) {
+      final DBIDs o1 = e1.getObjects(), o2 = e2.getObjects();
+      if(o1 != o2 && (o1.size() != o2.size() || DBIDUtil.intersectionSize(o1, o2) != o1.size())) {
         throw new UnsupportedOperationException("Objects do not fit: " + e1.getObjects() + " != " + e2.getObjects());
       }
 
@@ -0,0 +1,255 @@
+package de.lmu.ifi.dbs.elki.data;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Flyweight vector type, that is a view on a slice of a shared
+ * {@link DoubleBuffer}, as used by
+ * {@link de.lmu.ifi.dbs.elki.database.relation.DoubleBufferVectorRelation}.
+ *
+ * Instances are cheap to create, and do not copy the data. Note that the
+ * values are only read on access, so they must not be modified while the
+ * vector is in use (e.g. in an index).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class DoubleBufferVector extends AbstractNumberVector {
+  /**
+   * Static factory instance.
+   */
+  public static final DoubleBufferVector.Factory FACTORY = new DoubleBufferVector.Factory();
+
+  /**
+   * Serializer using varint encoding.
+   */
+  public static final ByteBufferSerializer<DoubleBufferVector> VARIABLE_SERIALIZER = new VariableSerializer();
+
+  /**
+   * Buffer containing the data.
+   */
+  private final DoubleBuffer buffer;
+
+  /**
+   * Offset of the first value in the buffer.
+   */
+  private final int offset;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Constructor.
+   *
+   * @param buffer Shared data buffer (will not be copied!)
+   * @param offset Offset of the first value
+   * @param dim Dimensionality
+   */
+  public DoubleBufferVector(DoubleBuffer buffer, int offset, int dim) {
+    super();
+    assert (offset >= 0 && offset + dim <= buffer.limit()) : "Vector out of buffer bounds.";
+    this.buffer = buffer;
+    this.offset = offset;
+    this.dim = dim;
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  @Deprecated
+  public Double getValue(int dimension) {
+    return buffer.get(offset + dimension);
+  }
+
+  @Override
+  public double doubleValue(int dimension) {
+    return buffer.get(offset + dimension);
+  }
+
+  @Override
+  public long longValue(int dimension) {
+    return (long) buffer.get(offset + dimension);
+  }
+
+  @Override
+  public double[] toArray() {
+    double[] values = new double[dim];
+    for(int i = 0, j = offset; i < dim; i++, j++) {
+      values[i] = buffer.get(j);
+    }
+    return values;
+  }
+
+  /**
+   * Get the underlying buffer, for low-level access.
+   *
+   * Use absolute accessors only, starting at {@link #getOffset()}: the buffer
+   * is shared with other vectors and threads.
+   *
+   * @return Shared buffer
+   */
+  public DoubleBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Get the offset of the first value in the buffer.
+   *
+   * @return Offset
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder featureLine = new StringBuilder();
+    for(int i = 0; i < dim; i++) {
+      featureLine.append(buffer.get(offset + i));
+      if(i + 1 < dim) {
+        featureLine.append(ATTRIBUTE_SEPARATOR);
+      }
+    }
+    return featureLine.toString();
+  }
+
+  /**
+   * Wrap a double array as vector (without copying).
+   *
+   * @param vals Values
+   * @return Wrapped vector
+   */
+  public static DoubleBufferVector wrap(double[] vals) {
+    return new DoubleBufferVector(DoubleBuffer.wrap(vals), 0, vals.length);
+  }
+
+  /**
+   * Factory for buffer-backed vectors. New vectors are backed by their own
+   * (heap) buffer.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has DoubleBufferVector
+   */
+  public static class Factory extends AbstractNumberVector.Factory<DoubleBufferVector> {
+    @Override
+    public DoubleBufferVector newNumberVector(double[] values) {
+      return wrap(values.clone());
+    }
+
+    @Override
+    public <A> DoubleBufferVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      int dim = adapter.size(array);
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.get(array, i).doubleValue();
+      }
+      return wrap(values);
+    }
+
+    @Override
+    public <A> DoubleBufferVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      final int dim = adapter.size(array);
+      double[] values = new double[dim];
+      for(int i = 0; i < dim; i++) {
+        values[i] = adapter.getDouble(array, i);
+      }
+      return wrap(values);
+    }
+
+    @Override
+    public ByteBufferSerializer<DoubleBufferVector> getDefaultSerializer() {
+      return VARIABLE_SERIALIZER;
+    }
+
+    @Override
+    public Class<? super DoubleBufferVector> getRestrictionClass() {
+      return DoubleBufferVector.class;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer extends AbstractParameterizer {
+      @Override
+      protected DoubleBufferVector.Factory makeInstance() {
+        return FACTORY;
+      }
+    }
+  }
+
+  /**
+   * Serialization class using VarInt encodings, compatible with
+   * {@link DoubleVector.VariableSerializer}.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses DoubleBufferVector - - «serializes»
+   */
+  public static class VariableSerializer implements ByteBufferSerializer<DoubleBufferVector> {
+    @Override
+    public DoubleBufferVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      final int dimensionality = ByteArrayUtil.readUnsignedVarint(buffer);
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * dimensionality) : "Not enough data remaining in buffer to read " + dimensionality + " doubles";
+      final double[] values = new double[dimensionality];
+      for(int i = 0; i < dimensionality; i++) {
+        values[i] = buffer.getDouble();
+      }
+      return wrap(values);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, DoubleBufferVector vec) throws IOException {
+      assert (buffer.remaining() >= ByteArrayUtil.SIZE_DOUBLE * vec.dim) : "Not enough space remaining in buffer to write " + vec.dim + " doubles";
+      ByteArrayUtil.writeUnsignedVarint(buffer, vec.dim);
+      for(int i = 0; i < vec.dim; i++) {
+        buffer.putDouble(vec.buffer.get(vec.offset + i));
+      }
+    }
+
+    @Override
+    public int getByteSize(DoubleBufferVector vec) {
+      return ByteArrayUtil.getUnsignedVarintSize(vec.dim) + ByteArrayUtil.SIZE_DOUBLE * vec.dim;
+    }
+  }
+}
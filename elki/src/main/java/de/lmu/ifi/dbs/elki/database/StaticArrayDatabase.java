@@ -25,7 +25,13 @@ package de.lmu.ifi.dbs.elki.database;
 
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.type.NoSupportedDataTypeException;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
@@ -34,17 +40,22 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleBufferVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.index.FreezableIndex;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -60,6 +71,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.landmark
  * @apiviz.composedOf ArrayStaticDBIDs
  * @apiviz.uses DatabaseConnection
+ * @apiviz.uses DoubleBufferVectorRelation
  */
 @Description("Database using an in-memory hashtable and at least providing linear scans.")
 public class StaticArrayDatabase extends AbstractDatabase {
@@ -83,6 +95,34 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Storage layout for dense numerical vector fields.
+   */
+  protected VectorStorage vectorStorage = VectorStorage.OBJECTS;
+
+  /**
+   * Freeze indexes after construction, for concurrent read-only queries.
+   */
+  protected boolean freeze = false;
+
+  /**
+   * Storage layouts for dense numerical vector fields.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static enum VectorStorage {
+    /** Keep the vector objects as loaded (default). */
+    OBJECTS,
+    /** Contiguous row-major buffer on the Java heap. */
+    HEAP,
+    /** Contiguous row-major buffer off-heap (direct buffer). */
+    DIRECT,
+    /** Contiguous row-major buffer, memory-mapped from a temporary file. */
+    MAPPED
+  }
+
   /**
    * Constructor.
    *
@@ -90,8 +130,33 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, VectorStorage.OBJECTS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param vectorStorage Storage layout for dense numerical vector fields
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, VectorStorage vectorStorage) {
+    this(databaseConnection, indexFactories, vectorStorage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param vectorStorage Storage layout for dense numerical vector fields
+   * @param freeze Freeze indexes after construction, see {@link FreezableIndex}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, VectorStorage vectorStorage, boolean freeze) {
     super();
     this.databaseConnection = databaseConnection;
+    this.vectorStorage = vectorStorage;
+    this.freeze = freeze;
     this.ids = null;
     this.idrep = null;
 
@@ -141,18 +206,13 @@ public class StaticArrayDatabase extends AbstractDatabase {
       relations.add(this.idrep);
       getHierarchy().add(this, idrep);
 
-      DBIDArrayIter it = this.ids.iter();
-
       int numrel = bundle.metaLength();
       for(int i = 0; i < numrel; i++) {
         SimpleTypeInformation<?> meta = bundle.meta(i);
-        @SuppressWarnings("unchecked")
-        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
-        }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
+        Relation<?> relation = vectorStorage != VectorStorage.OBJECTS && isDenseVectorField(meta) ? //
+            materializeVectors((VectorFieldTypeInformation<?>) meta, bundle, i) : //
+            materializeObjects(meta, bundle, i);
+        SimpleTypeInformation<?> ometa = relation.getDataTypeInformation();
         relations.add(relation);
         getHierarchy().add(this, relation);
 
@@ -169,6 +229,9 @@ public class StaticArrayDatabase extends AbstractDatabase {
             if(duration != null) {
               LOG.statistics(duration.end());
             }
+            if(freeze && index instanceof FreezableIndex) {
+              ((FreezableIndex) index).freeze();
+            }
             getHierarchy().add(relation, index);
           }
         }
@@ -179,6 +242,94 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Test whether a type is a dense numerical vector field with a fixed
+   * dimensionality.
+   *
+   * @param meta Type information
+   * @return {@code true} if the column can be stored in a contiguous buffer
+   */
+  private static boolean isDenseVectorField(SimpleTypeInformation<?> meta) {
+    if(!(meta instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    final VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    return NumberVector.class.isAssignableFrom(vmeta.getRestrictionClass()) //
+        && !SparseNumberVector.class.isAssignableFrom(vmeta.getRestrictionClass()) //
+        && vmeta.mindim() == vmeta.maxdim() && vmeta.mindim() > 0;
+  }
+
+  /**
+   * Materialize a bundle column as objects.
+   *
+   * @param meta Column type
+   * @param bundle Bundle
+   * @param col Column number
+   * @return Relation
+   */
+  private Relation<?> materializeObjects(SimpleTypeInformation<?> meta, MultipleObjectsBundle bundle, int col) {
+    @SuppressWarnings("unchecked")
+    SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+    WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+    for(DBIDArrayIter it = this.ids.iter(); it.valid(); it.advance()) {
+      store.put(it, bundle.data(it.getOffset(), col));
+    }
+    return new MaterializedRelation<>(ometa, ids, null, store);
+  }
+
+  /**
+   * Materialize a dense vector column into a contiguous buffer.
+   *
+   * @param meta Column type
+   * @param bundle Bundle
+   * @param col Column number
+   * @return Relation
+   */
+  private Relation<?> materializeVectors(VectorFieldTypeInformation<?> meta, MultipleObjectsBundle bundle, int col) {
+    final int dim = meta.getDimensionality();
+    String[] labels = meta.getLabel(0) != null ? new String[dim] : null;
+    for(int d = 0; labels != null && d < dim; d++) {
+      labels[d] = meta.getLabel(d);
+    }
+    final DoubleBufferVectorRelation.Storage storage = vectorStorage == VectorStorage.MAPPED ? DoubleBufferVectorRelation.Storage.MAPPED : //
+        vectorStorage == VectorStorage.DIRECT ? DoubleBufferVectorRelation.Storage.DIRECT : DoubleBufferVectorRelation.Storage.HEAP;
+    DoubleBufferVectorRelation relation = new DoubleBufferVectorRelation(ids, dim, labels, storage, null);
+    for(DBIDArrayIter it = this.ids.iter(); it.valid(); it.advance()) {
+      relation.set(it, (NumberVector) bundle.data(it.getOffset(), col));
+    }
+    return relation;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * If the restriction can only be satisfied by {@link DoubleVector}s, but the
+   * vectors are stored in a buffer, a view copying the vectors is returned.
+   */
+  @Override
+  public <O> Relation<O> getRelation(TypeInformation restriction, Object... hints) throws NoSupportedDataTypeException {
+    try {
+      return super.getRelation(restriction, hints);
+    }
+    catch(NoSupportedDataTypeException e) {
+      for(Relation<?> relation : relations) {
+        if(!(relation instanceof DoubleBufferVectorRelation)) {
+          continue;
+        }
+        Relation<DoubleVector> view = ((DoubleBufferVectorRelation) relation).asDoubleVectors();
+        if(restriction.isAssignableFromType(view.getDataTypeInformation())) {
+          LOG.warning("Vectors are stored in a buffer, but the algorithm requires DoubleVectors: vectors will be copied on access.");
+          relations.add(view);
+          getHierarchy().add(relation, view);
+          @SuppressWarnings("unchecked")
+          final Relation<O> orel = (Relation<O>) view;
+          return orel;
+        }
+      }
+      throw e;
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -202,6 +353,30 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Storage layout for dense numerical vector fields.
+     */
+    private VectorStorage vectorStorage = VectorStorage.OBJECTS;
+
+    /**
+     * Freeze indexes after construction.
+     */
+    private boolean freeze = false;
+
+    /**
+     * Flag to freeze indexes after construction.
+     */
+    public static final OptionID FREEZE_ID = new OptionID("db.freeze", //
+        "Make indexes read-only after construction, which allows concurrent queries without locking. " //
+            + "Do not use with algorithms that modify the index, such as DeLiClu.");
+
+    /**
+     * Option to choose the storage layout of dense numerical vector fields.
+     */
+    public static final OptionID VECTOR_STORAGE_ID = new OptionID("db.vectorstorage", //
+        "Storage layout for dense numerical vectors: keep the vector objects, or copy them into a contiguous buffer on the heap, off-heap, or memory-mapped from a temporary file. " //
+            + "Buffer layouts use less memory, but produce DoubleBufferVector objects; algorithms requiring DoubleVectors will use a copying view.");
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -215,11 +390,19 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      EnumParameter<VectorStorage> vectorStorageP = new EnumParameter<>(VECTOR_STORAGE_ID, VectorStorage.class, VectorStorage.OBJECTS);
+      if(config.grab(vectorStorageP)) {
+        vectorStorage = vectorStorageP.getValue();
+      }
+      Flag freezeF = new Flag(FREEZE_ID);
+      if(config.grab(freezeF)) {
+        freeze = freezeF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, vectorStorage, freeze);
     }
   }
 }
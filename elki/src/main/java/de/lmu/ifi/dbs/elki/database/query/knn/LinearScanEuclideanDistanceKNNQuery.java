@@ -27,17 +27,23 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleBufferVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 
 /**
  * Instance of this query for a particular database.
@@ -45,12 +51,24 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * This is a subtle optimization: for primitive queries, it is clearly faster to
  * retrieve the query object from the relation only once!
  *
+ * Large batch queries on dense vectors of fixed dimensionality are processed
+ * in tiles: the candidate vectors are copied once into contiguous tiles (i.e.
+ * a second copy of the data), and blocks of query vectors are compared to
+ * them using the decomposition {@code ||x-y||^2 = ||x||^2 + ||y||^2 - 2 x*y}.
+ * Only candidates within the rounding tolerance of the current kNN distance
+ * are verified exactly, and the distances of the final neighbors are
+ * recomputed exactly. The query tiles are processed in parallel. Vectors
+ * stored in a {@link DoubleBufferVectorRelation} are copied directly from the
+ * raw buffers.
+ *
  * @author Erich Schubert
  * @since 0.4.0
  *
+ * @apiviz.has TileBlock
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses EuclideanDistanceFunction
  * @apiviz.uses SquaredEuclideanDistanceFunction
+ * @apiviz.uses DoubleBufferVectorRelation
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
   /**
@@ -58,6 +76,22 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   private static final SquaredEuclideanDistanceFunction SQUARED = SquaredEuclideanDistanceFunction.STATIC;
 
+  /**
+   * Number of query vectors per tile.
+   */
+  private static final int QUERY_TILE = 64;
+
+  /**
+   * Target size of a candidate tile, in doubles (256 KB).
+   */
+  private static final int CANDIDATE_TILE_DOUBLES = 1 << 15;
+
+  /**
+   * Relative tolerance of the decomposed distance, to account for rounding
+   * errors. Candidates within this tolerance are verified exactly.
+   */
+  private static final double TOLERANCE = 1e-10;
+
   /**
    * Constructor.
    *
@@ -103,12 +137,21 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final int size = ids.size();
     final List<KNNHeap> heaps = new ArrayList<>(size);
-    List<O> objs = new ArrayList<>(size);
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      heaps.add(DBIDUtil.newHeap(k));
-      objs.add(relation.get(iter));
+    final int dim = RelationUtil.dimensionality(relation);
+    if(size >= QUERY_TILE && dim > 0 && !TypeUtil.SPARSE_VECTOR_VARIABLE_LENGTH.isAssignableFromType(relation.getDataTypeInformation())) {
+      for(int i = 0; i < size; i++) {
+        heaps.add(DBIDUtil.newHeap(k));
+      }
+      tiledBatchKNN(ids, heaps, dim);
+    }
+    else {
+      List<O> objs = new ArrayList<>(size);
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        heaps.add(DBIDUtil.newHeap(k));
+        objs.add(relation.get(iter));
+      }
+      linearScanBatchKNN(objs, heaps);
     }
-    linearScanBatchKNN(objs, heaps);
 
     List<KNNList> result = new ArrayList<>(heaps.size());
     for(KNNHeap heap : heaps) {
@@ -138,4 +181,216 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Tiled batch kNN, processing the query tiles in parallel.
+   *
+   * @param ids Query ids
+   * @param heaps Heaps, one per query
+   * @param dim Dimensionality
+   */
+  private void tiledBatchKNN(ArrayDBIDs ids, List<KNNHeap> heaps, int dim) {
+    final ArrayDBIDs cands = DBIDUtil.ensureArray(relation.getDBIDs());
+    // Copy the candidates into tiles once, shared by all query tiles.
+    final int size = cands.size();
+    final int ctilesize = Math.max(16, CANDIDATE_TILE_DOUBLES / dim);
+    final int numctiles = (size + ctilesize - 1) / ctilesize;
+    final double[][] ctiles = new double[numctiles][], cnorms = new double[numctiles][];
+    DBIDArrayIter citer = cands.iter();
+    for(int t = 0; t < numctiles; t++) {
+      final int cnum = Math.min(ctilesize, size - t * ctilesize);
+      ctiles[t] = new double[cnum * dim];
+      cnorms[t] = new double[cnum];
+      copyTile(relation, citer, cnum, dim, ctiles[t], cnorms[t]);
+    }
+
+    final int numtiles = (ids.size() + QUERY_TILE - 1) / QUERY_TILE;
+    ParallelRange.run(0, numtiles, 1, new TileBlock<>(relation, ids, cands, ctilesize, ctiles, cnorms, heaps, dim));
+  }
+
+  /**
+   * Copy a block of vectors into a row-major tile, and compute their squared
+   * norms.
+   *
+   * @param relation Data relation
+   * @param iter Iterator, positioned at the first vector
+   * @param num Number of vectors
+   * @param dim Dimensionality
+   * @param tile Output tile
+   * @param norms Output squared norms
+   */
+  private static void copyTile(Relation<? extends NumberVector> relation, DBIDArrayIter iter, int num, int dim, double[] tile, double[] norms) {
+    if(relation instanceof DoubleBufferVectorRelation) {
+      // Bulk copy from the raw buffers.
+      final DoubleBufferVectorRelation brel = (DoubleBufferVectorRelation) relation;
+      for(int i = 0, off = 0; i < num; i++, iter.advance(), off += dim) {
+        brel.copyRow(iter, tile, off);
+        double norm = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double x = tile[off + d];
+          norm += x * x;
+        }
+        norms[i] = norm;
+      }
+      return;
+    }
+    for(int i = 0, off = 0; i < num; i++, iter.advance()) {
+      final NumberVector v = relation.get(iter);
+      double norm = 0.;
+      for(int d = 0; d < dim; d++, off++) {
+        final double x = v.doubleValue(d);
+        tile[off] = x;
+        norm += x * x;
+      }
+      norms[i] = norm;
+    }
+  }
+
+  /**
+   * Process a range of query tiles against all candidates.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class TileBlock<O extends NumberVector> implements ParallelRange.Block {
+    /**
+     * Data relation.
+     */
+    private final Relation<? extends O> relation;
+
+    /**
+     * Query and candidate ids.
+     */
+    private final ArrayDBIDs ids, cands;
+
+    /**
+     * Number of vectors per candidate tile.
+     */
+    private final int ctilesize;
+
+    /**
+     * Candidate tiles, and their squared norms.
+     */
+    private final double[][] ctiles, cnorms;
+
+    /**
+     * Heaps, one per query.
+     */
+    private final List<KNNHeap> heaps;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param ids Query ids
+     * @param cands Candidate ids
+     * @param ctilesize Number of vectors per candidate tile
+     * @param ctiles Candidate tiles
+     * @param cnorms Squared norms of the candidates
+     * @param heaps Heaps, one per query
+     * @param dim Dimensionality
+     */
+    TileBlock(Relation<? extends O> relation, ArrayDBIDs ids, ArrayDBIDs cands, int ctilesize, double[][] ctiles, double[][] cnorms, List<KNNHeap> heaps, int dim) {
+      this.relation = relation;
+      this.ids = ids;
+      this.cands = cands;
+      this.ctilesize = ctilesize;
+      this.ctiles = ctiles;
+      this.cnorms = cnorms;
+      this.heaps = heaps;
+      this.dim = dim;
+    }
+
+    @Override
+    public void process(int begin, int end) {
+      for(int tile = begin; tile < end; tile++) {
+        processTile(tile);
+      }
+    }
+
+    /**
+     * Process a single query tile.
+     *
+     * @param tile Query tile number
+     */
+    private void processTile(int tile) {
+      final int qstart = tile * QUERY_TILE, qnum = Math.min(QUERY_TILE, ids.size() - qstart);
+      final double[] qtile = new double[qnum * dim], qnorms = new double[qnum];
+      DBIDArrayIter qiter = ids.iter();
+      qiter.seek(qstart);
+      copyTile(relation, qiter, qnum, dim, qtile, qnorms);
+
+      DBIDArrayIter cref = cands.iter();
+      for(int t = 0; t < ctiles.length; t++) {
+        final double[] ctile = ctiles[t], cnorm = cnorms[t];
+        final int cstart = t * ctilesize, cnum = cnorm.length;
+        for(int i = 0; i < qnum; i++) {
+          final KNNHeap heap = heaps.get(qstart + i);
+          final double qnorm = qnorms[i];
+          final int qoff = i * dim;
+          double kdist = heap.getKNNDistance();
+          for(int j = 0, coff = 0; j < cnum; j++, coff += dim) {
+            double dot = 0.;
+            for(int d = 0; d < dim; d++) {
+              dot += qtile[qoff + d] * ctile[coff + d];
+            }
+            final double norms = qnorm + cnorm[j], tol = TOLERANCE * norms;
+            double dist = norms - 2 * dot;
+            if(dist - tol > kdist) {
+              continue;
+            }
+            if(dist + tol >= kdist) {
+              // Within the rounding tolerance of the kNN distance: verify.
+              dist = exactDistance(qtile, qoff, ctile, coff);
+              if(dist > kdist) {
+                continue;
+              }
+            }
+            kdist = heap.insert(dist > 0 ? dist : 0, cref.seek(cstart + j));
+          }
+        }
+      }
+      // Recompute the distances of the neighbors exactly.
+      for(int i = 0; i < qnum; i++) {
+        final KNNHeap heap = heaps.get(qstart + i);
+        final KNNHeap exact = DBIDUtil.newHeap(heap.getK());
+        final int qoff = i * dim;
+        for(DoubleDBIDListIter it = heap.unorderedIterator(); it.valid(); it.advance()) {
+          final NumberVector v = relation.get(it);
+          double dist = 0.;
+          for(int d = 0; d < dim; d++) {
+            final double delta = qtile[qoff + d] - v.doubleValue(d);
+            dist += delta * delta;
+          }
+          exact.insert(dist, it);
+        }
+        heaps.set(qstart + i, exact);
+      }
+    }
+
+    /**
+     * Exact squared Euclidean distance, with the same arithmetic as the
+     * linear scan.
+     *
+     * @param qtile Query tile
+     * @param qoff Query offset
+     * @param ctile Candidate tile
+     * @param coff Candidate offset
+     * @return Squared distance
+     */
+    private double exactDistance(double[] qtile, int qoff, double[] ctile, int coff) {
+      double dist = 0.;
+      for(int d = 0; d < dim; d++) {
+        final double delta = qtile[qoff + d] - ctile[coff + d];
+        dist += delta * delta;
+      }
+      return dist;
+    }
+  }
+}
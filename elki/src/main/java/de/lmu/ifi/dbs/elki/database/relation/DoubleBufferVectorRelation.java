@@ -0,0 +1,430 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.data.DoubleBufferVector;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Relation storing fixed-dimensional numerical vectors in row-major
+ * {@link DoubleBuffer} segments, either on the Java heap, off-heap in direct
+ * buffers, or memory-mapped from a temporary file.
+ *
+ * Compared to {@link MaterializedRelation}, this avoids one object and one
+ * array header per vector, and keeps the data in a cache-friendly layout; with
+ * direct or mapped buffers, the data does not add to garbage collection
+ * pressure at all. Each segment holds a whole number of vectors, and at most
+ * {@link #SEGMENT_SIZE} values, so the relation is not limited by the maximum
+ * buffer size.
+ *
+ * {@link #get} returns a flyweight {@link DoubleBufferVector} view, hot kernels
+ * may access the raw data via {@link #getBuffer}, {@link #getOffset} and
+ * {@link #copyRow}. Algorithms that strictly require {@link DoubleVector} can
+ * use {@link #asDoubleVectors}, which copies the vectors on access.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf DoubleBuffer
+ * @apiviz.has DoubleBufferVector
+ * @apiviz.has DoubleVectorView
+ */
+public class DoubleBufferVectorRelation extends AbstractRelation<DoubleBufferVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(DoubleBufferVectorRelation.class);
+
+  /**
+   * Maximum number of values per segment (1 GiB).
+   */
+  public static final int SEGMENT_SIZE = 1 << 27;
+
+  /**
+   * Storage location of the buffers.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static enum Storage {
+    /** On the Java heap. */
+    HEAP,
+    /** Off-heap, in direct buffers. */
+    DIRECT,
+    /** Memory-mapped from a temporary file. */
+    MAPPED
+  }
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<DoubleBufferVector> type;
+
+  /**
+   * The DBIDs this is supposed to be defined for.
+   */
+  private final StaticDBIDs ids;
+
+  /**
+   * Offset lookup, when the ids are not a range.
+   */
+  private final WritableIntegerDataStore rows;
+
+  /**
+   * Data segments, row-major.
+   */
+  private final DoubleBuffer[] segments;
+
+  /**
+   * Number of vectors per segment.
+   */
+  private final int segmentrows;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * View as DoubleVectors, lazily initialized.
+   */
+  private DoubleVectorView view;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   * @param storage Storage location
+   * @param name Name
+   */
+  public DoubleBufferVectorRelation(DBIDs ids, int dim, String[] labels, Storage storage, String name) {
+    this(ids, dim, labels, storage, SEGMENT_SIZE, name);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids IDs
+   * @param dim Dimensionality
+   * @param labels Column labels, may be {@code null}
+   * @param storage Storage location
+   * @param segmentsize Maximum number of values per segment (at least one
+   *        vector is stored per segment)
+   * @param name Name
+   */
+  public DoubleBufferVectorRelation(DBIDs ids, int dim, String[] labels, Storage storage, int segmentsize, String name) {
+    super();
+    if(dim <= 0 || dim > SEGMENT_SIZE) {
+      throw new IllegalArgumentException("Unsupported dimensionality: " + dim);
+    }
+    this.ids = DBIDUtil.makeUnmodifiable(ids);
+    this.dim = dim;
+    this.name = name;
+    this.type = new VectorFieldTypeInformation<>(DoubleBufferVector.FACTORY, dim, labels);
+    final int size = ids.size();
+    this.segmentrows = Math.max(1, Math.min(segmentsize, SEGMENT_SIZE) / dim);
+    this.segments = new DoubleBuffer[Math.max(1, (size + segmentrows - 1) / segmentrows)];
+    allocate(storage, size);
+    if(this.ids instanceof DBIDRange) {
+      this.rows = null;
+    }
+    else {
+      this.rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+      int i = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+        rows.putInt(iter, i);
+      }
+    }
+  }
+
+  /**
+   * Allocate the segments.
+   *
+   * @param storage Storage location
+   * @param size Number of vectors
+   */
+  private void allocate(Storage storage, int size) {
+    if(storage != Storage.MAPPED) {
+      for(int s = 0; s < segments.length; s++) {
+        final int len = Math.min(segmentrows, size - s * segmentrows) * dim;
+        segments[s] = storage == Storage.DIRECT ? //
+            ByteBuffer.allocateDirect(len * ByteArrayUtil.SIZE_DOUBLE).order(ByteOrder.nativeOrder()).asDoubleBuffer() : //
+            DoubleBuffer.wrap(new double[len]);
+      }
+      return;
+    }
+    File file = null;
+    try {
+      file = File.createTempFile("elki-vectors", ".bin");
+      file.deleteOnExit();
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        FileChannel channel = raf.getChannel();
+        long pos = 0;
+        for(int s = 0; s < segments.length; s++) {
+          final long bytes = (long) Math.min(segmentrows, size - s * segmentrows) * dim * ByteArrayUtil.SIZE_DOUBLE;
+          segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, pos, bytes).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+          pos += bytes;
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error in memory-mapping the vectors: " + e.getMessage(), e);
+    }
+    finally {
+      // The mappings remain valid; on most platforms, we can unlink the file.
+      if(file != null && !file.delete()) {
+        LOG.debugFine("Temporary file will be deleted on exit: " + file);
+      }
+    }
+  }
+
+  /**
+   * Get the row number of an object.
+   *
+   * @param id Object
+   * @return Row number
+   */
+  private int row(DBIDRef id) {
+    return rows == null ? ((DBIDRange) ids).getOffset(id) : rows.intValue(id);
+  }
+
+  /**
+   * Get the offset of the first value of an object in its segment buffer.
+   *
+   * @param id Object
+   * @return Offset in the buffer returned by {@link #getBuffer}
+   */
+  public int getOffset(DBIDRef id) {
+    return (row(id) % segmentrows) * dim;
+  }
+
+  /**
+   * Get the raw data buffer segment containing an object (row-major,
+   * {@link #getDimensionality} values per object). Only use absolute
+   * accessors, the buffer is shared.
+   *
+   * @param id Object
+   * @return Data buffer segment
+   */
+  public DoubleBuffer getBuffer(DBIDRef id) {
+    return segments[row(id) / segmentrows];
+  }
+
+  /**
+   * Copy the values of an object into an array.
+   *
+   * @param id Object
+   * @param dst Destination array
+   * @param off Offset in the destination array
+   */
+  public void copyRow(DBIDRef id, double[] dst, int off) {
+    final int r = row(id);
+    DoubleBuffer buf = segments[r / segmentrows].duplicate();
+    buf.position((r % segmentrows) * dim);
+    buf.get(dst, off, dim);
+  }
+
+  /**
+   * Get the dimensionality.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  /**
+   * Store the values of a vector.
+   *
+   * @param id Object
+   * @param vec Vector
+   */
+  public void set(DBIDRef id, NumberVector vec) {
+    assert (vec.getDimensionality() == dim) : "Dimensionality mismatch.";
+    final int r = row(id);
+    final DoubleBuffer buf = segments[r / segmentrows];
+    for(int d = 0, off = (r % segmentrows) * dim; d < dim; d++, off++) {
+      buf.put(off, vec.doubleValue(d));
+    }
+  }
+
+  /**
+   * Get a view of this relation as {@link DoubleVector}s. The vectors are
+   * copied on every access, so this should only be used by algorithms that
+   * cannot process other vector types.
+   *
+   * @return View
+   */
+  public Relation<DoubleVector> asDoubleVectors() {
+    if(view == null) {
+      view = new DoubleVectorView();
+    }
+    return view;
+  }
+
+  @Override
+  public DoubleBufferVector get(DBIDRef id) {
+    final int r = row(id);
+    return new DoubleBufferVector(segments[r / segmentrows], (r % segmentrows) * dim, dim);
+  }
+
+  @Override
+  public SimpleTypeInformation<DoubleBufferVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public StaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * View of the buffer contents as {@link DoubleVector}s, copied on access.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public class DoubleVectorView extends AbstractRelation<DoubleVector> {
+    /**
+     * Type information.
+     */
+    private final VectorFieldTypeInformation<DoubleVector> vtype;
+
+    /**
+     * Constructor.
+     */
+    protected DoubleVectorView() {
+      super();
+      String[] labels = type.getLabel(0) != null ? new String[dim] : null;
+      for(int d = 0; labels != null && d < dim; d++) {
+        labels[d] = type.getLabel(d);
+      }
+      this.vtype = new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, labels);
+    }
+
+    @Override
+    public DoubleVector get(DBIDRef id) {
+      double[] values = new double[dim];
+      copyRow(id, values, 0);
+      return DoubleVector.wrap(values);
+    }
+
+    @Override
+    public SimpleTypeInformation<DoubleVector> getDataTypeInformation() {
+      return vtype;
+    }
+
+    @Override
+    public StaticDBIDs getDBIDs() {
+      return ids;
+    }
+
+    @Override
+    public DBIDIter iterDBIDs() {
+      return ids.iter();
+    }
+
+    @Override
+    public int size() {
+      return ids.size();
+    }
+
+    @Override
+    public String getLongName() {
+      return "DoubleVector view of " + DoubleBufferVectorRelation.this.getLongName();
+    }
+
+    @Override
+    public String getShortName() {
+      return "doublevector-view";
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+  }
+}
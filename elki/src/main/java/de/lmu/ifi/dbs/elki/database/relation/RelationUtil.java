@@ -38,6 +38,7 @@ import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 
 /**
@@ -207,6 +208,52 @@ public final class RelationUtil {
     return (Relation<V>) database;
   }
 
+  /**
+   * Compute a hash of the relation contents, e.g. to detect stale files.
+   *
+   * Number vectors are hashed by their values, other objects by their string
+   * representation.
+   *
+   * @param relation Relation
+   * @param seed Seed value, e.g. to include the distance function
+   * @param withIDs Include the object DBIDs
+   * @return Hash code
+   */
+  public static long contentHash(Relation<?> relation, long seed, boolean withIDs) {
+    long hash = mixHash(0xCBF29CE484222325L, seed);
+    hash = mixHash(hash, relation.size());
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      if(withIDs) {
+        hash = mixHash(hash, DBIDUtil.asInteger(iter));
+      }
+      final Object obj = relation.get(iter);
+      if(obj instanceof NumberVector) {
+        final NumberVector vec = (NumberVector) obj;
+        final int dim = vec.getDimensionality();
+        hash = mixHash(hash, dim);
+        for(int d = 0; d < dim; d++) {
+          hash = mixHash(hash, Double.doubleToLongBits(vec.doubleValue(d)));
+        }
+      }
+      else {
+        hash = mixHash(hash, obj.toString().hashCode());
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Mix a value into a hash.
+   *
+   * @param hash Previous hash
+   * @param val Value
+   * @return New hash
+   */
+  private static long mixHash(long hash, long val) {
+    hash = (hash ^ val) * 0x100000001B3L;
+    return hash ^ (hash >>> 29);
+  }
+
   /**
    * Iterator class that retrieves the given objects from the database.
    *
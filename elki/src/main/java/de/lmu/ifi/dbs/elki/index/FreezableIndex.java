@@ -0,0 +1,51 @@
+package de.lmu.ifi.dbs.elki.index;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Index that can be switched into a read-only state.
+ * 
+ * Once frozen, the index can no longer be modified, but queries may be issued
+ * concurrently from many threads without locking on the hot path. This is
+ * intended for parallel algorithms such as outlier detection, where a static
+ * index is queried for every object of the database.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface FreezableIndex extends Index {
+  /**
+   * Freeze the index: afterwards, it is read-only and safe for concurrent
+   * queries. Modifications will cause an
+   * {@link UnsupportedOperationException}.
+   */
+  public void freeze();
+
+  /**
+   * Test whether the index has been frozen.
+   * 
+   * @return {@code true} when read-only.
+   */
+  public boolean isFrozen();
+}
@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.index.distancematrix;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -55,6 +57,8 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -62,14 +66,16 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * This class uses a linear memory layout (not a ragged array), and assumes
  * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most 2^16 objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * matrix. It has to store n * (n-1) / 2 distance values, requiring 4 * n *
+ * (n-1) bytes in double precision, or half of that in single precision. The
+ * storage is segmented (see {@link TriangularDistanceMatrix}), so the size is
+ * only limited by the available memory; optionally, the matrix can be
+ * memory-mapped from a file.
  *
  * @author Erich Schubert
  * @since 0.7.0
  *
+ * @apiviz.composedOf TriangularDistanceMatrix
  * @apiviz.has PrecomputedDistanceQuery
  * @apiviz.has PrecomputedKNNQuery
  * @apiviz.has PrecomputedRangeQuery
@@ -95,7 +101,17 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private TriangularDistanceMatrix matrix = null;
+
+  /**
+   * Store single precision values only.
+   */
+  private boolean single;
+
+  /**
+   * File to memory-map the matrix from, may be {@code null}.
+   */
+  private File file;
 
   /**
    * DBID range.
@@ -114,8 +130,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param distanceFunction Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction) {
+    this(relation, distanceFunction, false, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param single Store single precision values only
+   * @param file File to memory-map the matrix from, may be {@code null}
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, boolean single, File file) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.single = single;
+    this.file = file;
 
     if(!distanceFunction.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -130,56 +160,48 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
     ids = (DBIDRange) rids;
     size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
 
     distanceQuery = distanceFunction.instantiate(relation);
 
-    final int msize = triangleSize(size);
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
-      }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
-      }
+    close(); // Release a previous matrix, if any.
+    try {
+      matrix = file != null ? TriangularDistanceMatrix.newMappedMatrix(size, single, file) : TriangularDistanceMatrix.newMatrix(size, single);
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map the distance matrix file.", e);
     }
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", size, LOG) : null;
+    matrix.fill(ids, distanceQuery, false, prog, LOG);
     LOG.ensureCompleted(prog);
   }
 
   /**
-   * Compute the size of a complete x by x triangle (minus diagonal)
-   *
-   * @param x Offset
-   * @return Size of complete triangle
+   * Release the distance matrix; for memory-mapped matrixes, this unmaps the
+   * file. The index must not be used afterwards, unless it is initialized
+   * again.
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public void close() {
+    if(matrix != null) {
+      matrix.close();
+      matrix = null;
+    }
   }
 
   /**
-   * Array offset computation.
+   * Compute the size of a complete x by x triangle (minus diagonal)
    *
-   * @param x X parameter
-   * @param y Y parameter
-   * @return Array offset
+   * @param x Offset
+   * @return Size of complete triangle
    */
-  private int getOffset(int x, int y) {
-    return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
+  protected static long triangleSize(int x) {
+    return TriangularDistanceMatrix.triangleSize(x);
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length()));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-bytes", matrix.byteSize()));
     }
   }
 
@@ -226,7 +248,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? matrix.get(x, y) : 0.;
     }
 
     @Override
@@ -276,9 +298,9 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
 
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -288,7 +310,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -321,9 +343,9 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -333,7 +355,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -373,19 +395,42 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
      */
     final protected DistanceFunction<? super O> distanceFunction;
 
+    /**
+     * Store single precision values only.
+     */
+    final protected boolean single;
+
+    /**
+     * File to memory-map the matrix from, may be {@code null}.
+     */
+    final protected File file;
+
     /**
      * Constructor.
      *
      * @param distanceFunction Distance function
      */
     public Factory(DistanceFunction<? super O> distanceFunction) {
+      this(distanceFunction, false, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param single Store single precision values only
+     * @param file File to memory-map the matrix from, may be {@code null}
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, boolean single, File file) {
       super();
       this.distanceFunction = distanceFunction;
+      this.single = single;
+      this.file = file;
     }
 
     @Override
     public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
-      return new PrecomputedDistanceMatrix<>(relation, distanceFunction);
+      return new PrecomputedDistanceMatrix<>(relation, distanceFunction, single, file);
     }
 
     @Override
@@ -408,11 +453,31 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Flag to store single precision values only.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store the distances in single precision, to halve the memory requirements.");
+
+      /**
+       * Option to memory-map the distance matrix from a file.
+       */
+      public static final OptionID FILE_ID = new OptionID("matrix.file", "File to memory-map the distance matrix from (will be overwritten). By default, the matrix is kept on the Java heap.");
+
       /**
        * Nested distance function.
        */
       protected DistanceFunction<? super O> distanceFunction;
 
+      /**
+       * Store single precision values only.
+       */
+      protected boolean single = false;
+
+      /**
+       * File to memory-map the matrix from.
+       */
+      protected File file = null;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -420,11 +485,20 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
         if(config.grab(distanceP)) {
           distanceFunction = distanceP.instantiateClass(config);
         }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          single = floatF.isTrue();
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+        fileP.setOptional(true);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, single, file);
       }
     }
   }
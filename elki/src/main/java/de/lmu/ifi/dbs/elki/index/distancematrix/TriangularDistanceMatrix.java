@@ -0,0 +1,435 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Strict lower triangle of a symmetric distance matrix, i.e. the values
+ * {@code (x, y)} with {@code y < x}, stored in linear order.
+ *
+ * Since Java arrays are limited to 2^31 entries, the storage is split into
+ * segments, and all positions are {@code long}. The values can be stored in
+ * double or single precision, on the heap or memory-mapped from a file. This
+ * allows distance matrixes of several hundred thousand objects, given enough
+ * memory (or disk space).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public abstract class TriangularDistanceMatrix {
+  /**
+   * Number of entries per segment, as power of two.
+   */
+  protected static final int SEGMENT_SHIFT = 27;
+
+  /**
+   * Mask to get the position within a segment.
+   */
+  protected static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+  /**
+   * Minimum number of entries to compute in a single parallel block.
+   */
+  private static final long FILL_BLOCK = 1L << 16;
+
+  /**
+   * Number of objects.
+   */
+  protected final int size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of objects
+   */
+  protected TriangularDistanceMatrix(int size) {
+    super();
+    this.size = size;
+  }
+
+  /**
+   * Allocate a new matrix on the heap.
+   *
+   * @param size Number of objects
+   * @param single Use single precision
+   * @return New matrix
+   */
+  public static TriangularDistanceMatrix newMatrix(int size, boolean single) {
+    return single ? new FloatSegments(size) : new DoubleSegments(size);
+  }
+
+  /**
+   * Allocate a new memory-mapped matrix. An existing file will be overwritten.
+   *
+   * @param size Number of objects
+   * @param single Use single precision
+   * @param file File to map
+   * @return New matrix
+   * @throws IOException on IO errors
+   */
+  public static TriangularDistanceMatrix newMappedMatrix(int size, boolean single, File file) throws IOException {
+    return new Mapped(size, single, file);
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSize(long x) {
+    return (x * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Linear position of the pair {@code (x, y)}, {@code x != y}.
+   *
+   * @param x First index
+   * @param y Second index
+   * @return Position
+   */
+  public static long offset(int x, int y) {
+    return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
+  }
+
+  /**
+   * Number of segments needed.
+   *
+   * @param length Number of entries
+   * @return Number of segments
+   */
+  protected static int numSegments(long length) {
+    return (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+  }
+
+  /**
+   * Length of a segment.
+   *
+   * @param length Total number of entries
+   * @param seg Segment number
+   * @return Segment length
+   */
+  protected static int segmentLength(long length, int seg) {
+    return (int) Math.min(SEGMENT_MASK + 1, length - (((long) seg) << SEGMENT_SHIFT));
+  }
+
+  /**
+   * Get the value at a linear position.
+   *
+   * @param pos Position, see {@link #offset}
+   * @return Value
+   */
+  public abstract double get(long pos);
+
+  /**
+   * Set the value at a linear position.
+   *
+   * @param pos Position, see {@link #offset}
+   * @param val New value
+   */
+  public abstract void set(long pos, double val);
+
+  /**
+   * Get the value of the pair {@code (x, y)}, {@code x != y}.
+   *
+   * @param x First index
+   * @param y Second index
+   * @return Value
+   */
+  public double get(int x, int y) {
+    return get(offset(x, y));
+  }
+
+  /**
+   * Set the value of the pair {@code (x, y)}, {@code x != y}.
+   *
+   * @param x First index
+   * @param y Second index
+   * @param val New value
+   */
+  public void set(int x, int y, double val) {
+    set(offset(x, y), val);
+  }
+
+  /**
+   * Number of objects.
+   *
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Number of stored entries.
+   *
+   * @return Number of entries
+   */
+  public long length() {
+    return triangleSize(size);
+  }
+
+  /**
+   * Number of bytes used for storing the entries.
+   *
+   * @return Storage size
+   */
+  public abstract long byteSize();
+
+  /**
+   * Release the storage. The matrix must not be used afterwards.
+   */
+  public void close() {
+    // Nothing to do by default.
+  }
+
+  /**
+   * Fill the matrix with the distances of the given objects, in parallel.
+   *
+   * The distance query must be safe for concurrent use.
+   *
+   * @param ids Object ids, in matrix order
+   * @param dq Distance query
+   * @param square Store squared distances
+   * @param prog Progress (counting rows), may be {@code null}
+   * @param log Logger for progress
+   */
+  public void fill(final ArrayDBIDs ids, final DistanceQuery<?> dq, final boolean square, final FiniteProgress prog, final Logging log) {
+    assert (ids.size() == size);
+    // Blocks of rows with about the same triangle area:
+    TIntArrayList bounds = new TIntArrayList();
+    bounds.add(0);
+    for(int row = 1, last = 0; row <= size; row++) {
+      if(row == size || triangleSize(row) - triangleSize(last) >= FILL_BLOCK) {
+        bounds.add(row);
+        last = row;
+      }
+    }
+    final int[] rows = bounds.toArray();
+    ParallelRange.run(0, rows.length - 1, 1, new ParallelRange.Block() {
+      @Override
+      public void process(int begin, int end) {
+        DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+        long pos = triangleSize(rows[begin]);
+        for(ix.seek(rows[begin]); ix.getOffset() < rows[end]; ix.advance()) {
+          for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+            final double dist = dq.distance(ix, iy);
+            set(pos++, square ? dist * dist : dist);
+          }
+          if(prog != null) {
+            prog.incrementProcessed(log);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Segmented double precision storage on the heap.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class DoubleSegments extends TriangularDistanceMatrix {
+    /**
+     * Data segments.
+     */
+    private final double[][] data;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    DoubleSegments(int size) {
+      super(size);
+      final long length = triangleSize(size);
+      data = new double[numSegments(length)][];
+      for(int i = 0; i < data.length; i++) {
+        data[i] = new double[segmentLength(length, i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      data[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)] = val;
+    }
+
+    @Override
+    public long byteSize() {
+      return length() * ByteArrayUtil.SIZE_DOUBLE;
+    }
+  }
+
+  /**
+   * Segmented single precision storage on the heap.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class FloatSegments extends TriangularDistanceMatrix {
+    /**
+     * Data segments.
+     */
+    private final float[][] data;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    FloatSegments(int size) {
+      super(size);
+      final long length = triangleSize(size);
+      data = new float[numSegments(length)][];
+      for(int i = 0; i < data.length; i++) {
+        data[i] = new float[segmentLength(length, i)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      data[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)] = (float) val;
+    }
+
+    @Override
+    public long byteSize() {
+      return length() * ByteArrayUtil.SIZE_FLOAT;
+    }
+  }
+
+  /**
+   * Memory-mapped storage, one mapping per segment.
+   *
+   * Unlike {@link de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix},
+   * which maps the whole file into a single buffer and is thus limited to 2 GB,
+   * this supports arbitrary file sizes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Mapped extends TriangularDistanceMatrix {
+    /**
+     * Mapped segments.
+     */
+    private MappedByteBuffer[] data;
+
+    /**
+     * Use single precision.
+     */
+    private final boolean single;
+
+    /**
+     * Bytes per entry, as power of two.
+     */
+    private final int shift;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     * @param single Single precision flag
+     * @param file File to map
+     * @throws IOException on IO errors
+     */
+    Mapped(int size, boolean single, File file) throws IOException {
+      super(size);
+      this.single = single;
+      this.shift = single ? 2 : 3;
+      final long length = triangleSize(size);
+      data = new MappedByteBuffer[numSegments(length)];
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(length << shift);
+        FileChannel channel = raf.getChannel();
+        for(int i = 0; i < data.length; i++) {
+          data[i] = channel.map(MapMode.READ_WRITE, ((long) i) << (SEGMENT_SHIFT + shift), ((long) segmentLength(length, i)) << shift);
+          data[i].order(ByteOrder.nativeOrder());
+        }
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      final ByteBuffer seg = data[(int) (pos >>> SEGMENT_SHIFT)];
+      final int off = ((int) (pos & SEGMENT_MASK)) << shift;
+      return single ? seg.getFloat(off) : seg.getDouble(off);
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      final ByteBuffer seg = data[(int) (pos >>> SEGMENT_SHIFT)];
+      final int off = ((int) (pos & SEGMENT_MASK)) << shift;
+      if(single) {
+        seg.putFloat(off, (float) val);
+      }
+      else {
+        seg.putDouble(off, val);
+      }
+    }
+
+    @Override
+    public long byteSize() {
+      return length() << shift;
+    }
+
+    @Override
+    public void close() {
+      for(int i = 0; i < data.length; i++) {
+        ByteArrayUtil.unmapByteBuffer(data[i]);
+      }
+      data = null;
+    }
+  }
+}
@@ -0,0 +1,895 @@
+package de.lmu.ifi.dbs.elki.index.graph;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Hierarchical navigable small world graph (HNSW) for approximate nearest
+ * neighbor search with arbitrary distance functions.
+ *
+ * Every object is assigned a random level, and linked to approximately
+ * nearest neighbors on each layer up to this level, chosen with the
+ * neighbor-diversity heuristic. Searches descend greedily from the top layer,
+ * and perform a beam search of width efSearch on the bottom layer.
+ *
+ * Links are stored as {@code int[]} arrays of object offsets, one per layer
+ * and object, where the first entry is the number of links. After a short
+ * sequential start, objects are inserted in parallel, locking only the link
+ * arrays being modified. The resulting graph therefore depends on the thread
+ * scheduling.
+ *
+ * Queries are approximate, and not returned when
+ * {@link DatabaseQuery#HINT_EXACT} is given.
+ *
+ * Reference:
+ * <p>
+ * Y. A. Malkov, D. A. Yashunin<br />
+ * Efficient and robust approximate nearest neighbor search using Hierarchical
+ * Navigable Small World graphs<br />
+ * CoRR abs/1603.09320
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has HNSWKNNQuery
+ * @apiviz.has HNSWRangeQuery
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "Y. A. Malkov, D. A. Yashunin", //
+title = "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs", //
+booktitle = "CoRR abs/1603.09320", //
+url = "http://arxiv.org/abs/1603.09320")
+public class HNSWIndex<O> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(HNSWIndex.class);
+
+  /**
+   * Number of objects inserted sequentially before inserting in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1000;
+
+  /**
+   * Number of objects inserted per parallel block.
+   */
+  private static final int INSERT_BLOCK = 64;
+
+  /**
+   * Distance function.
+   */
+  protected DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Distance query.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Number of links per object and layer; twice as many on the bottom layer.
+   */
+  private final int m;
+
+  /**
+   * Beam width during construction.
+   */
+  private final int efConstruction;
+
+  /**
+   * Beam width during search.
+   */
+  private final int efSearch;
+
+  /**
+   * Random generator for the levels.
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Indexed objects; links refer to offsets in this array.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Links, by object and layer; the first entry is the number of links.
+   */
+  private int[][][] links;
+
+  /**
+   * Entry point for searches, an object on the top layer.
+   */
+  private volatile int entry = -1;
+
+  /**
+   * Visited markers, per thread.
+   */
+  private ThreadLocal<Visited> visited = new ThreadLocal<Visited>() {
+    @Override
+    protected Visited initialValue() {
+      return new Visited(ids.size());
+    }
+  };
+
+  /**
+   * Distance computations performed.
+   */
+  private final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param m Number of links per object and layer
+   * @param efConstruction Beam width during construction
+   * @param efSearch Beam width during search
+   * @param rnd Random generator for the levels
+   */
+  public HNSWIndex(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory rnd) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.distanceQuery = distanceFunction.instantiate(relation);
+    this.m = m;
+    this.efConstruction = efConstruction;
+    this.efSearch = efSearch;
+    this.rnd = rnd;
+    this.distcalc = LOG.isStatistics() ? LOG.newConcurrentCounter(this.getClass().getName() + ".distance-computations") : null;
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    if(size == 0) {
+      return;
+    }
+    // Draw the levels, with exponentially decreasing probability:
+    final Random random = rnd.getSingleThreadedRandom();
+    final double mult = 1. / Math.log(m);
+    links = new int[size][][];
+    for(int i = 0; i < size; i++) {
+      final int level = (int) (-Math.log(1. - random.nextDouble()) * mult);
+      int[][] l = links[i] = new int[level + 1][];
+      l[0] = new int[(m << 1) + 1];
+      for(int j = 1; j <= level; j++) {
+        l[j] = new int[m + 1];
+      }
+    }
+    entry = 0;
+    final int seq = Math.min(size, PARALLEL_THRESHOLD);
+    DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+    for(int i = 1; i < seq; i++) {
+      insert(i, it, it2);
+    }
+    ParallelRange.run(seq, size, INSERT_BLOCK, new ParallelRange.Block() {
+      @Override
+      public void process(int begin, int end) {
+        DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+        for(int i = begin; i < end; i++) {
+          insert(i, it, it2);
+        }
+      }
+    });
+  }
+
+  /**
+   * Insert an object into the graph.
+   *
+   * @param q Object offset
+   * @param it Iterator
+   * @param it2 Second iterator
+   */
+  private void insert(int q, DBIDArrayIter it, DBIDArrayIter it2) {
+    final int level = links[q].length - 1;
+    int ep = entry;
+    if(level < links[ep].length) {
+      insert(q, level, ep, it, it2);
+      return;
+    }
+    // New top level: block other top level insertions.
+    synchronized(this) {
+      ep = entry;
+      insert(q, level, ep, it, it2);
+      if(level >= links[ep].length) {
+        entry = q;
+      }
+    }
+  }
+
+  /**
+   * Insert an object into the graph.
+   *
+   * @param q Object offset
+   * @param level Level of the object
+   * @param ep Entry point
+   * @param it Iterator
+   * @param it2 Second iterator
+   */
+  private void insert(int q, int level, int ep, DBIDArrayIter it, DBIDArrayIter it2) {
+    final O obj = relation.get(it.seek(q));
+    final int top = links[ep].length - 1;
+    double epd = distance(obj, it.seek(ep));
+    // Greedy descent on the upper layers:
+    for(int lc = top; lc > level; lc--) {
+      ep = greedy(obj, ep, epd, lc, it);
+      epd = distance(obj, it.seek(ep));
+    }
+    final int[] buf = new int[(m << 1) + 1];
+    for(int lc = Math.min(top, level); lc >= 0; lc--) {
+      DoubleIntegerMaxHeap res = searchLayer(obj, ep, epd, efConstruction, lc, it, buf);
+      // Sort candidates by ascending distance:
+      final int n = res.size();
+      int[] cand = new int[n];
+      double[] cdist = new double[n];
+      for(int i = n - 1; i >= 0; i--) {
+        cdist[i] = res.peekKey();
+        cand[i] = res.peekValue();
+        res.poll();
+      }
+      final int[] own = links[q][lc];
+      final int c = selectNeighbors(cand, cdist, n, m, it, it2);
+      synchronized(own) {
+        System.arraycopy(cand, 0, own, 1, c);
+        own[0] = c;
+      }
+      for(int i = 0; i < c; i++) {
+        connect(cand[i], q, cdist[i], lc, it, it2);
+      }
+      ep = cand[0];
+      epd = cdist[0];
+    }
+  }
+
+  /**
+   * Add a link to an existing object, pruning its links if necessary.
+   *
+   * @param e Object to add the link to
+   * @param q New neighbor
+   * @param dist Distance of e and q
+   * @param lc Layer
+   * @param it Iterator
+   * @param it2 Second iterator
+   */
+  private void connect(int e, int q, double dist, int lc, DBIDArrayIter it, DBIDArrayIter it2) {
+    final int[] nb = links[e][lc];
+    synchronized(nb) {
+      final int c = nb[0];
+      if(c + 1 < nb.length) {
+        nb[c + 1] = q;
+        nb[0] = c + 1;
+        return;
+      }
+      // Full: choose among the current links and the new object.
+      final int n = c + 1;
+      int[] cand = new int[n];
+      double[] cdist = new double[n];
+      cand[0] = q;
+      cdist[0] = dist;
+      it.seek(e);
+      for(int i = 0; i < c; i++) {
+        cand[i + 1] = nb[i + 1];
+        cdist[i + 1] = distance(it, it2.seek(nb[i + 1]));
+      }
+      sortByDistance(cand, cdist, n);
+      final int k = selectNeighbors(cand, cdist, n, c, it, it2);
+      System.arraycopy(cand, 0, nb, 1, k);
+      nb[0] = k;
+    }
+  }
+
+  /**
+   * Sort candidates by ascending distance (insertion sort, arrays are short).
+   *
+   * @param cand Candidates
+   * @param cdist Candidate distances
+   * @param n Number of candidates
+   */
+  private static void sortByDistance(int[] cand, double[] cdist, int n) {
+    for(int i = 1; i < n; i++) {
+      final double d = cdist[i];
+      final int c = cand[i];
+      int j = i - 1;
+      for(; j >= 0 && cdist[j] > d; j--) {
+        cdist[j + 1] = cdist[j];
+        cand[j + 1] = cand[j];
+      }
+      cdist[j + 1] = d;
+      cand[j + 1] = c;
+    }
+  }
+
+  /**
+   * Select diverse neighbors: a candidate is kept if it is closer to the base
+   * object than to all neighbors kept so far. Remaining slots are filled with
+   * the closest candidates discarded.
+   *
+   * The selected candidates are moved to the front of the arrays.
+   *
+   * @param cand Candidates, by ascending distance
+   * @param cdist Candidate distances to the base object
+   * @param n Number of candidates
+   * @param max Maximum number of neighbors
+   * @param it Iterator
+   * @param it2 Second iterator
+   * @return Number of neighbors selected
+   */
+  private int selectNeighbors(int[] cand, double[] cdist, int n, int max, DBIDArrayIter it, DBIDArrayIter it2) {
+    if(n <= max) {
+      return n;
+    }
+    int kept = 0;
+    int[] rest = new int[n];
+    double[] restd = new double[n];
+    int numrest = 0;
+    candidates: for(int i = 0; i < n && kept < max; i++) {
+      final int c = cand[i];
+      final double d = cdist[i];
+      it.seek(c);
+      for(int j = 0; j < kept; j++) {
+        if(distance(it, it2.seek(cand[j])) < d) {
+          rest[numrest] = c;
+          restd[numrest++] = d;
+          continue candidates;
+        }
+      }
+      cand[kept] = c;
+      cdist[kept++] = d;
+    }
+    // Fill with the closest pruned candidates.
+    for(int i = 0; i < numrest && kept < max; i++) {
+      cand[kept] = rest[i];
+      cdist[kept++] = restd[i];
+    }
+    return kept;
+  }
+
+  /**
+   * Greedy search for the closest object on a layer.
+   *
+   * @param obj Query object
+   * @param ep Entry point
+   * @param epd Distance to the entry point
+   * @param lc Layer
+   * @param it Iterator
+   * @return Closest object found
+   */
+  private int greedy(O obj, int ep, double epd, int lc, DBIDArrayIter it) {
+    final int[] buf = new int[m + 1];
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+      final int c = copyLinks(ep, lc, buf);
+      for(int i = 1; i <= c; i++) {
+        final double d = distance(obj, it.seek(buf[i]));
+        if(d < epd) {
+          epd = d;
+          ep = buf[i];
+          changed = true;
+        }
+      }
+    }
+    return ep;
+  }
+
+  /**
+   * Beam search on a single layer.
+   *
+   * @param obj Query object
+   * @param ep Entry point
+   * @param epd Distance to the entry point
+   * @param ef Beam width
+   * @param lc Layer
+   * @param it Iterator
+   * @param buf Buffer for links
+   * @return Heap of the ef closest objects found
+   */
+  private DoubleIntegerMaxHeap searchLayer(O obj, int ep, double epd, int ef, int lc, DBIDArrayIter it, int[] buf) {
+    final Visited vis = visited.get().clear();
+    vis.add(ep);
+    DoubleIntegerMinHeap cand = new DoubleIntegerMinHeap(ef);
+    DoubleIntegerMaxHeap res = new DoubleIntegerMaxHeap(ef + 1);
+    cand.add(epd, ep);
+    res.add(epd, ep);
+    while(!cand.isEmpty()) {
+      final double cd = cand.peekKey();
+      final int c = cand.peekValue();
+      cand.poll();
+      if(cd > res.peekKey() && res.size() >= ef) {
+        break;
+      }
+      final int num = copyLinks(c, lc, buf);
+      for(int i = 1; i <= num; i++) {
+        final int e = buf[i];
+        if(!vis.add(e)) {
+          continue;
+        }
+        final double d = distance(obj, it.seek(e));
+        if(res.size() < ef || d < res.peekKey()) {
+          cand.add(d, e);
+          res.add(d, e, ef);
+        }
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Copy the links of an object.
+   *
+   * @param c Object offset
+   * @param lc Layer
+   * @param buf Output buffer
+   * @return Number of links
+   */
+  private int copyLinks(int c, int lc, int[] buf) {
+    final int[] nb = links[c][lc];
+    synchronized(nb) {
+      final int num = nb[0];
+      System.arraycopy(nb, 0, buf, 0, num + 1);
+      return num;
+    }
+  }
+
+  /**
+   * Search the bottom layer for the approximate nearest neighbors.
+   *
+   * @param obj Query object
+   * @param ef Beam width
+   * @param it Iterator
+   * @return Heap of the ef closest objects found, {@code null} if empty.
+   */
+  private DoubleIntegerMaxHeap search(O obj, int ef, DBIDArrayIter it) {
+    int ep = entry;
+    if(ep < 0) {
+      return null;
+    }
+    double epd = distance(obj, it.seek(ep));
+    for(int lc = links[ep].length - 1; lc > 0; lc--) {
+      ep = greedy(obj, ep, epd, lc, it);
+      epd = distance(obj, it.seek(ep));
+    }
+    return searchLayer(obj, ep, epd, ef, 0, it, new int[(m << 1) + 1]);
+  }
+
+  /**
+   * Compute a distance (and count).
+   *
+   * @param a Object
+   * @param b Object reference
+   * @return Distance
+   */
+  private double distance(O a, DBIDArrayIter b) {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+    return distanceQuery.distance(a, b);
+  }
+
+  /**
+   * Compute a distance (and count).
+   *
+   * @param a Object reference
+   * @param b Object reference
+   * @return Distance
+   */
+  private double distance(DBIDArrayIter a, DBIDArrayIter b) {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+    return distanceQuery.distance(a, b);
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+    if(LOG.isStatistics() && links != null) {
+      long edges = 0;
+      for(int[][] l : links) {
+        for(int[] nb : l) {
+          edges += nb[0];
+        }
+      }
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".levels", links[entry].length));
+      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".mean-links", edges / (double) links.length));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "Hierarchical navigable small world graph";
+  }
+
+  @Override
+  public String getShortName() {
+    return "hnsw";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    if(distanceQuery.getRelation() != relation || !this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    return new HNSWKNNQuery(distanceQuery);
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    if(distanceQuery.getRelation() != relation || !this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    return new HNSWRangeQuery(distanceQuery);
+  }
+
+  /**
+   * Visited markers, reset in constant time by incrementing a generation.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static final class Visited {
+    /**
+     * Generation in which each object was last visited.
+     */
+    final int[] marks;
+
+    /**
+     * Current generation.
+     */
+    int gen = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of objects
+     */
+    Visited(int size) {
+      marks = new int[size];
+    }
+
+    /**
+     * Start a new search.
+     *
+     * @return this
+     */
+    Visited clear() {
+      if(++gen == 0) { // Overflow: reset markers.
+        Arrays.fill(marks, 0);
+        gen = 1;
+      }
+      return this;
+    }
+
+    /**
+     * Mark an object visited.
+     *
+     * @param i Object offset
+     * @return {@code false} if already visited
+     */
+    boolean add(int i) {
+      if(marks[i] == gen) {
+        return false;
+      }
+      marks[i] = gen;
+      return true;
+    }
+  }
+
+  /**
+   * kNN query using the HNSW graph.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap heap = DBIDUtil.newHeap(k);
+      final DBIDArrayIter it = ids != null ? ids.iter() : null;
+      final DoubleIntegerMaxHeap res = search(obj, Math.max(efSearch, k), it);
+      if(res != null) {
+        for(DoubleIntegerHeap.UnsortedIter iter = res.unsortedIter(); iter.valid(); iter.advance()) {
+          heap.insert(iter.getKey(), it.seek(iter.getValue()));
+        }
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Range query using the HNSW graph: after locating the query, the bottom
+   * layer is traversed from all results within the radius.
+   *
+   * @author Erich Schubert
+   */
+  public class HNSWRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     */
+    public HNSWRangeQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      final DBIDArrayIter it = ids != null ? ids.iter() : null;
+      final DoubleIntegerMaxHeap res = search(obj, efSearch, it);
+      if(res == null) {
+        return;
+      }
+      final Visited vis = visited.get().clear();
+      int[] queue = new int[16];
+      int qlen = 0;
+      for(DoubleIntegerHeap.UnsortedIter iter = res.unsortedIter(); iter.valid(); iter.advance()) {
+        vis.add(iter.getValue());
+        if(iter.getKey() <= range) {
+          result.add(iter.getKey(), it.seek(iter.getValue()));
+          if(qlen == queue.length) {
+            queue = Arrays.copyOf(queue, qlen << 1);
+          }
+          queue[qlen++] = iter.getValue();
+        }
+      }
+      final int[] buf = new int[(m << 1) + 1];
+      while(qlen > 0) {
+        final int num = copyLinks(queue[--qlen], 0, buf);
+        for(int i = 1; i <= num; i++) {
+          final int e = buf[i];
+          if(!vis.add(e)) {
+            continue;
+          }
+          final double d = distance(obj, it.seek(e));
+          if(d <= range) {
+            result.add(d, it);
+            if(qlen == queue.length) {
+              queue = Arrays.copyOf(queue, qlen << 1);
+            }
+            queue[qlen++] = e;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.has HNSWIndex
+   *
+   * @param <O> Object type
+   */
+  @Alias({ "hnsw" })
+  public static class Factory<O> implements IndexFactory<O, HNSWIndex<O>> {
+    /**
+     * Distance function.
+     */
+    DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Number of links per object and layer.
+     */
+    int m;
+
+    /**
+     * Beam width during construction.
+     */
+    int efConstruction;
+
+    /**
+     * Beam width during search.
+     */
+    int efSearch;
+
+    /**
+     * Random generator for the levels.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param m Number of links per object and layer
+     * @param efConstruction Beam width during construction
+     * @param efSearch Beam width during search
+     * @param rnd Random generator for the levels
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, int m, int efConstruction, int efSearch, RandomFactory rnd) {
+      super();
+      this.distanceFunction = distanceFunction;
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.efSearch = efSearch;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public HNSWIndex<O> instantiate(Relation<O> relation) {
+      return new HNSWIndex<>(relation, distanceFunction, m, efConstruction, efSearch, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Distance function to use.
+       */
+      public static final OptionID DISTANCE_FUNCTION_ID = new OptionID("hnsw.distancefunction", "Distance function to determine the distance between objects.");
+
+      /**
+       * Number of links per object and layer.
+       */
+      public static final OptionID M_ID = new OptionID("hnsw.m", "Number of links per object and layer, twice as many on the bottom layer.");
+
+      /**
+       * Beam width during construction.
+       */
+      public static final OptionID EF_CONSTRUCTION_ID = new OptionID("hnsw.efconstruction", "Number of candidates considered when linking a new object.");
+
+      /**
+       * Beam width during search.
+       */
+      public static final OptionID EF_SEARCH_ID = new OptionID("hnsw.efsearch", "Number of candidates considered in searches (at least k).");
+
+      /**
+       * Random generator seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("hnsw.seed", "Random generator seed for the object levels.");
+
+      /**
+       * Distance function.
+       */
+      DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Number of links per object and layer.
+       */
+      int m;
+
+      /**
+       * Beam width during construction.
+       */
+      int efConstruction;
+
+      /**
+       * Beam width during search.
+       */
+      int efSearch;
+
+      /**
+       * Random generator for the levels.
+       */
+      RandomFactory rnd;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super O>> distanceFunctionP = new ObjectParameter<>(DISTANCE_FUNCTION_ID, DistanceFunction.class);
+        if(config.grab(distanceFunctionP)) {
+          distanceFunction = distanceFunctionP.instantiateClass(config);
+        }
+        IntParameter mP = new IntParameter(M_ID, 16) //
+        .addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+        if(config.grab(mP)) {
+          m = mP.intValue();
+        }
+        IntParameter efConstructionP = new IntParameter(EF_CONSTRUCTION_ID, 200) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efConstructionP)) {
+          efConstruction = efConstructionP.intValue();
+        }
+        IntParameter efSearchP = new IntParameter(EF_SEARCH_ID, 50) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(efSearchP)) {
+          efSearch = efSearchP.intValue();
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(distanceFunction, m, efConstruction, efSearch, rnd);
+      }
+    }
+  }
+}
@@ -0,0 +1,740 @@
+package de.lmu.ifi.dbs.elki.index.laesa;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractRefiningIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.referencepoints.ReferencePointsHeuristic;
+
+/**
+ * In-memory LAESA index, a metric index storing the distances of every object
+ * to a set of pivots in a table.
+ * 
+ * Different from iDistance, which only keeps the distance to the nearest
+ * reference point, all pivots are used to compute a lower bound of the
+ * distance by the triangle inequality:
+ * \( d(q,o) \geq \max_p |d(q,p)-d(o,p)| \). This is particularly effective for
+ * expensive distance functions, as only the candidates that cannot be pruned
+ * need to be refined.
+ * 
+ * The pivot distances are stored in a contiguous float matrix, one row per
+ * object. Both the construction of the table and the computation of the lower
+ * bounds for a query run in parallel.
+ * 
+ * Pivots can be chosen with a {@link ReferencePointsHeuristic} for vector
+ * data. Otherwise, the greedy maximum sum of distances selection of LAESA is
+ * used, which also works with non-vector data such as strings.
+ * 
+ * Reference:
+ * <p>
+ * M. L. Micó, J. Oncina, E. Vidal<br />
+ * A new version of the nearest-neighbour approximating and eliminating search
+ * algorithm (AESA) with linear preprocessing time and memory requirements.<br />
+ * Pattern Recognition Letters 15(1), 9-17
+ * </p>
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has LAESAKNNQuery
+ * @apiviz.has LAESARangeQuery
+ * 
+ * @param <O> Object type
+ */
+@Reference(authors = "M. L. Micó, J. Oncina, E. Vidal", //
+title = "A new version of the nearest-neighbour approximating and eliminating search algorithm (AESA) with linear preprocessing time and memory requirements", //
+booktitle = "Pattern Recognition Letters 15(1)", //
+url = "http://dx.doi.org/10.1016/0167-8655(94)90095-7")
+public class LAESAIndex<O> extends AbstractRefiningIndex<O> implements RangeIndex<O>, KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(LAESAIndex.class);
+
+  /**
+   * Minimum number of objects for parallel construction.
+   */
+  private static final int BUILD_PARALLEL_THRESHOLD = 1 << 10;
+
+  /**
+   * Number of objects per parallel construction block.
+   */
+  private static final int BUILD_BLOCK_SIZE = 1 << 7;
+
+  /**
+   * Minimum number of objects for parallel filtering.
+   */
+  private static final int FILTER_PARALLEL_THRESHOLD = 1 << 14;
+
+  /**
+   * Number of objects per parallel filter block.
+   */
+  private static final int FILTER_BLOCK_SIZE = 1 << 12;
+
+  /**
+   * Distance query.
+   */
+  private DistanceQuery<O> distanceQuery;
+
+  /**
+   * Heuristic to choose the pivots, may be {@code null}.
+   */
+  private ReferencePointsHeuristic heuristic;
+
+  /**
+   * Number of pivots for the greedy selection.
+   */
+  private int numpivots;
+
+  /**
+   * Random generator for the first pivot of the greedy selection.
+   */
+  private RandomFactory rnd;
+
+  /**
+   * Indexed objects, in table order.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Pivot objects.
+   */
+  private List<O> pivots;
+
+  /**
+   * Offsets of the pivots in the table, if they are database objects.
+   */
+  private int[] pivotOffsets;
+
+  /**
+   * Flags for rows that are pivots.
+   */
+  private boolean[] isPivot;
+
+  /**
+   * Pivot distance table, one row of {@code p} distances per object.
+   */
+  private float[] table;
+
+  /**
+   * Number of pivots, i.e. row length.
+   */
+  private int p;
+
+  /**
+   * Maximum rounding error of the float table.
+   */
+  private double slack;
+
+  /**
+   * Constructor.
+   * 
+   * @param relation Data relation
+   * @param distance Distance
+   * @param heuristic Heuristic to choose the pivots, may be {@code null}
+   * @param numpivots Number of pivots for the greedy selection
+   * @param rnd Random generator for the greedy selection
+   */
+  public LAESAIndex(Relation<O> relation, DistanceQuery<O> distance, ReferencePointsHeuristic heuristic, int numpivots, RandomFactory rnd) {
+    super(relation);
+    this.distanceQuery = distance;
+    this.heuristic = heuristic;
+    this.numpivots = numpivots;
+    this.rnd = rnd;
+    if(!distance.getDistanceFunction().isMetric()) {
+      LOG.warning("LAESA assumes metric distance functions.\n" //
+          + distance.getDistanceFunction().getClass() + " does not report itself as metric.\n" //
+          + "LAESA will run, but may yield approximate results.");
+    }
+  }
+
+  @Override
+  public void initialize() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    isPivot = new boolean[size];
+    if(heuristic != null) {
+      choosePivots();
+    }
+    else {
+      greedyPivots();
+    }
+    float max = 0.f;
+    for(float v : table) {
+      max = v > max ? v : max;
+    }
+    // The float table is rounded to nearest, so this suffices for exactness:
+    slack = Math.ulp(max);
+  }
+
+  /**
+   * Choose the pivots using the reference point heuristic, then build the
+   * table.
+   */
+  @SuppressWarnings("unchecked")
+  private void choosePivots() {
+    if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
+      throw new AbortException("Reference point heuristics can only be used with vector data.");
+    }
+    Collection<? extends NumberVector> refs = heuristic.getReferencePoints((Relation<? extends NumberVector>) relation);
+    pivots = new ArrayList<>(refs.size());
+    for(NumberVector ref : refs) {
+      pivots.add((O) ref);
+    }
+    p = pivots.size();
+    pivotOffsets = null;
+    final int size = ids.size();
+    table = allocateTable(size, p);
+    run(new RowBlock(), size, BUILD_PARALLEL_THRESHOLD, BUILD_BLOCK_SIZE);
+  }
+
+  /**
+   * Greedy pivot selection of LAESA: each new pivot maximizes the sum of
+   * distances to the previous pivots. The table is built column by column.
+   */
+  private void greedyPivots() {
+    final int size = ids.size();
+    p = Math.min(numpivots, size);
+    pivots = new ArrayList<>(p);
+    pivotOffsets = new int[p];
+    table = allocateTable(size, p);
+    if(size == 0) {
+      return; // No pivots to choose.
+    }
+    double[] sums = new double[size];
+    DBIDArrayIter iter = ids.iter();
+    int cur = rnd.getSingleThreadedRandom().nextInt(size);
+    for(int j = 0; j < p; j++) {
+      pivotOffsets[j] = cur;
+      isPivot[cur] = true;
+      final O pivot = relation.get(iter.seek(cur));
+      pivots.add(pivot);
+      run(new ColumnBlock(pivot, j, sums), size, BUILD_PARALLEL_THRESHOLD, BUILD_BLOCK_SIZE);
+      double best = Double.NEGATIVE_INFINITY;
+      for(int i = 0; i < size; i++) {
+        if(!isPivot[i] && sums[i] > best) {
+          best = sums[i];
+          cur = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Allocate the pivot distance table.
+   *
+   * @param size Number of objects
+   * @param p Number of pivots
+   * @return Table
+   */
+  private static float[] allocateTable(int size, int p) {
+    if((long) size * p > Integer.MAX_VALUE) {
+      throw new AbortException("Pivot table of " + size + " objects times " + p + " pivots exceeds the maximum array size. Use fewer pivots.");
+    }
+    return new float[size * p];
+  }
+
+  /**
+   * Process all objects, in parallel for large data sets.
+   * 
+   * @param block Block processor
+   * @param size Number of objects
+   * @param threshold Minimum size for parallel execution
+   * @param blocksize Number of objects per parallel block
+   */
+  private static void run(ParallelRange.Block block, int size, int threshold, int blocksize) {
+    ParallelRange.run(0, size, size < threshold ? size : blocksize, block);
+  }
+
+  /**
+   * Compute the distances of the query object to the pivots.
+   * 
+   * @param obj Query object
+   * @return Pivot distances
+   */
+  private double[] pivotDistances(O obj) {
+    double[] qd = new double[p];
+    for(int j = 0; j < p; j++) {
+      qd[j] = distanceQuery.distance(obj, pivots.get(j));
+    }
+    return qd;
+  }
+
+  /**
+   * Compute the lower bounds for all objects.
+   * 
+   * @param qd Pivot distances of the query
+   * @return Lower bounds
+   */
+  private double[] lowerBounds(double[] qd) {
+    final int size = ids.size();
+    double[] lb = new double[size];
+    run(new FilterBlock(qd, lb), size, FILTER_PARALLEL_THRESHOLD, FILTER_BLOCK_SIZE);
+    return lb;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.getDistanceFunction().equals(distanceFunction)) {
+      if(LOG.isDebugging()) {
+        LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      }
+      return null;
+    }
+    return new LAESAKNNQuery(distanceQuery);
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    // Query on the relation we index
+    if(distanceQuery.getRelation() != relation) {
+      return null;
+    }
+    DistanceFunction<? super O> distanceFunction = (DistanceFunction<? super O>) distanceQuery.getDistanceFunction();
+    if(!this.getDistanceFunction().equals(distanceFunction)) {
+      if(LOG.isDebugging()) {
+        LOG.debug("Distance function not supported by index - or 'equals' not implemented right!");
+      }
+      return null;
+    }
+    return new LAESARangeQuery(distanceQuery);
+  }
+
+  /**
+   * Distance function.
+   * 
+   * @return Distance function
+   */
+  private DistanceFunction<? super O> getDistanceFunction() {
+    return distanceQuery.getDistanceFunction();
+  }
+
+  @Override
+  public String getLongName() {
+    return "LAESA pivot table index";
+  }
+
+  @Override
+  public String getShortName() {
+    return "laesa-index";
+  }
+
+  @Override
+  public Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    LOG.statistics(new LongStatistic(LAESAIndex.class.getName() + ".pivots", p));
+    LOG.statistics(new DoubleStatistic(LAESAIndex.class.getName() + ".table.megabytes", table.length * 4. / (1 << 20)));
+  }
+
+  /**
+   * Compute full table rows.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class RowBlock implements ParallelRange.Block {
+    @Override
+    public void process(int begin, int end) {
+      DBIDArrayIter iter = ids.iter();
+      for(int i = begin, off = begin * p; i < end; i++) {
+        iter.seek(i);
+        for(int j = 0; j < p; j++) {
+          table[off++] = (float) distanceQuery.distance(pivots.get(j), iter);
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute a table column, and accumulate the distance sums for the greedy
+   * pivot selection.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class ColumnBlock implements ParallelRange.Block {
+    /**
+     * Pivot object.
+     */
+    private final O pivot;
+
+    /**
+     * Column number.
+     */
+    private final int col;
+
+    /**
+     * Distance sums.
+     */
+    private final double[] sums;
+
+    /**
+     * Constructor.
+     * 
+     * @param pivot Pivot object
+     * @param col Column number
+     * @param sums Distance sums
+     */
+    ColumnBlock(O pivot, int col, double[] sums) {
+      this.pivot = pivot;
+      this.col = col;
+      this.sums = sums;
+    }
+
+    @Override
+    public void process(int begin, int end) {
+      DBIDArrayIter iter = ids.iter();
+      for(int i = begin; i < end; i++) {
+        final double d = distanceQuery.distance(pivot, iter.seek(i));
+        table[i * p + col] = (float) d;
+        sums[i] += d;
+      }
+    }
+  }
+
+  /**
+   * Compute the lower bounds for a range of objects.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private class FilterBlock implements ParallelRange.Block {
+    /**
+     * Pivot distances of the query.
+     */
+    private final double[] qd;
+
+    /**
+     * Output lower bounds.
+     */
+    private final double[] lb;
+
+    /**
+     * Constructor.
+     * 
+     * @param qd Pivot distances of the query
+     * @param lb Output lower bounds
+     */
+    FilterBlock(double[] qd, double[] lb) {
+      this.qd = qd;
+      this.lb = lb;
+    }
+
+    @Override
+    public void process(int begin, int end) {
+      final double[] qd = this.qd;
+      final float[] table = LAESAIndex.this.table;
+      final int p = LAESAIndex.this.p;
+      for(int i = begin, off = begin * p; i < end; i++) {
+        double max = 0.;
+        for(int j = 0; j < p; j++, off++) {
+          final double d = Math.abs(qd[j] - table[off]);
+          max = d > max ? d : max;
+        }
+        lb[i] = max;
+      }
+    }
+  }
+
+  /**
+   * kNN query implementation, refining candidates by ascending lower bound.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  protected class LAESAKNNQuery extends AbstractRefiningIndex<O>.AbstractKNNQuery {
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     */
+    public LAESAKNNQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final double[] qd = pivotDistances(obj);
+      final double[] lb = lowerBounds(qd);
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      DBIDArrayIter iter = ids.iter();
+      // Pivot distances are exact.
+      if(pivotOffsets != null) {
+        for(int j = 0; j < p; j++) {
+          heap.insert(qd[j], iter.seek(pivotOffsets[j]));
+        }
+      }
+      // Refine the remaining candidates in ascending order of their lower
+      // bound, skipping those that cannot beat the current k-distance:
+      double kdist = heap.getKNNDistance();
+      DoubleIntegerMinHeap cands = new DoubleIntegerMinHeap(Math.max(k, 16));
+      for(int i = 0; i < lb.length; i++) {
+        if(!isPivot[i] && lb[i] - slack <= kdist) {
+          cands.add(lb[i], i);
+        }
+      }
+      while(!cands.isEmpty() && cands.peekKey() - slack <= kdist) {
+        final double dist = refine(iter.seek(cands.peekValue()), obj);
+        cands.poll();
+        if(dist <= kdist) {
+          kdist = heap.insert(dist, iter);
+        }
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  /**
+   * Exact range query implementation.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  protected class LAESARangeQuery extends AbstractRefiningIndex<O>.AbstractRangeQuery {
+    /**
+     * Constructor.
+     * 
+     * @param distanceQuery Distance query
+     */
+    public LAESARangeQuery(DistanceQuery<O> distanceQuery) {
+      super(distanceQuery);
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      final double[] qd = pivotDistances(obj);
+      final double[] lb = lowerBounds(qd);
+      DBIDArrayIter iter = ids.iter();
+      // Pivot distances are exact.
+      if(pivotOffsets != null) {
+        for(int j = 0; j < p; j++) {
+          if(qd[j] <= range) {
+            result.add(qd[j], iter.seek(pivotOffsets[j]));
+          }
+        }
+      }
+      final double bound = range + slack;
+      for(int i = 0; i < lb.length; i++) {
+        if(lb[i] > bound || isPivot[i]) {
+          continue;
+        }
+        final double dist = refine(iter.seek(i), obj);
+        if(dist <= range) {
+          result.add(dist, iter);
+        }
+      }
+    }
+  }
+
+  /**
+   * Index factory for LAESA indexes.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.has LAESAIndex
+   * 
+   * @param <V> Data type.
+   */
+  @Alias({ "laesa" })
+  public static class Factory<V> implements IndexFactory<V, LAESAIndex<V>> {
+    /**
+     * Distance function to use.
+     */
+    DistanceFunction<? super V> distance;
+
+    /**
+     * Heuristic to choose the pivots, may be {@code null}.
+     */
+    ReferencePointsHeuristic heuristic;
+
+    /**
+     * Number of pivots for the greedy selection.
+     */
+    int numpivots;
+
+    /**
+     * Random generator for the greedy selection.
+     */
+    RandomFactory rnd;
+
+    /**
+     * Constructor.
+     * 
+     * @param distance Distance function
+     * @param heuristic Heuristic to choose the pivots, may be {@code null}
+     * @param numpivots Number of pivots for the greedy selection
+     * @param rnd Random generator for the greedy selection
+     */
+    public Factory(DistanceFunction<? super V> distance, ReferencePointsHeuristic heuristic, int numpivots, RandomFactory rnd) {
+      super();
+      this.distance = distance;
+      this.heuristic = heuristic;
+      this.numpivots = numpivots;
+      this.rnd = rnd;
+    }
+
+    @Override
+    public LAESAIndex<V> instantiate(Relation<V> relation) {
+      return new LAESAIndex<>(relation, distance.instantiate(relation), heuristic, numpivots, rnd);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distance.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     * 
+     * @author Erich Schubert
+     * 
+     * @apiviz.exclude
+     * 
+     * @param <V> object type.
+     */
+    public static class Parameterizer<V> extends AbstractParameterizer {
+      /**
+       * Parameter for the distance function
+       */
+      public static final OptionID DISTANCE_ID = new OptionID("laesa.distance", "Distance function to build the index for.");
+
+      /**
+       * Heuristic to choose the pivots.
+       */
+      public static final OptionID PIVOTS_ID = new OptionID("laesa.pivots", "Reference point heuristic to choose the pivots (vector data only). If not set, the greedy maximum distance sum selection of LAESA is used.");
+
+      /**
+       * Number of pivots for the greedy selection.
+       */
+      public static final OptionID K_ID = new OptionID("laesa.k", "Number of pivots to choose greedily.");
+
+      /**
+       * Random generator for the greedy selection.
+       */
+      public static final OptionID SEED_ID = new OptionID("laesa.seed", "Random generator seed for the first pivot of the greedy selection.");
+
+      /**
+       * Distance function to use.
+       */
+      DistanceFunction<? super V> distance;
+
+      /**
+       * Heuristic to choose the pivots.
+       */
+      ReferencePointsHeuristic heuristic;
+
+      /**
+       * Number of pivots for the greedy selection.
+       */
+      int numpivots;
+
+      /**
+       * Random generator for the greedy selection.
+       */
+      RandomFactory rnd;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        ObjectParameter<DistanceFunction<? super V>> distanceP = new ObjectParameter<>(DISTANCE_ID, DistanceFunction.class);
+        if(config.grab(distanceP)) {
+          distance = distanceP.instantiateClass(config);
+        }
+
+        ObjectParameter<ReferencePointsHeuristic> pivotsP = new ObjectParameter<>(PIVOTS_ID, ReferencePointsHeuristic.class);
+        pivotsP.setOptional(true);
+        if(config.grab(pivotsP)) {
+          heuristic = pivotsP.instantiateClass(config);
+        }
+        if(heuristic == null) {
+          IntParameter kP = new IntParameter(K_ID, 16)//
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+          if(config.grab(kP)) {
+            numpivots = kP.intValue();
+          }
+          RandomParameter rndP = new RandomParameter(SEED_ID);
+          if(config.grab(rndP)) {
+            rnd = rndP.getValue();
+          }
+        }
+      }
+
+      @Override
+      protected LAESAIndex.Factory<V> makeInstance() {
+        return new LAESAIndex.Factory<>(distance, heuristic, numpivots, rnd);
+      }
+    }
+  }
+}
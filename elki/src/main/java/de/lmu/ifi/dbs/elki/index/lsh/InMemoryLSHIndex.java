@@ -23,19 +23,17 @@ package de.lmu.ifi.dbs.elki.index.lsh;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.iterator.TIntObjectIterator;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -49,9 +47,11 @@ import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
 import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.MultiProbeSequence;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -62,14 +62,34 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 /**
  * Locality Sensitive Hashing.
  *
+ * The hash tables use a compact layout: the sorted bucket keys, with offsets
+ * into a single array of object offsets (as in a compressed sparse row
+ * matrix). With multi-probe querying, the neighboring buckets that are most
+ * likely to contain near neighbors are visited, too, which yields the same
+ * recall with much fewer hash tables. The number of candidates refined per
+ * query can be bounded.
+ *
+ * Reference (multi-probe LSH):
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity
+ * Search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ *
  * @author Erich Schubert
  * @since 0.6.0
  *
  * @apiviz.has LocalitySensitiveHashFunctionFamily
  * @apiviz.has Instance
+ * @apiviz.uses MultiProbeSequence
  *
  * @param <V> Object type to index
  */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
 public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.Instance> {
   /**
    * Class logger
@@ -91,6 +111,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each hash table.
+   */
+  int probes;
+
+  /**
+   * Maximum number of candidates to refine per query.
+   */
+  int candidates;
+
   /**
    * Constructor.
    *
@@ -99,15 +129,30 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each hash table
+   * @param candidates Maximum number of candidates to refine per query
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes, int candidates) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
+    this.candidates = candidates;
   }
 
   @Override
   public Instance instantiate(Relation<V> relation) {
-    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets);
+    return new Instance(relation, family.generateHashFunctions(relation, l), numberOfBuckets, probes, candidates);
   }
 
   @Override
@@ -115,6 +160,72 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     return family.getInputTypeRestriction();
   }
 
+  /**
+   * Hash table in compressed sparse row layout.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class BucketTable {
+    /**
+     * Sorted bucket keys.
+     */
+    int[] keys;
+
+    /**
+     * Start of each bucket in {@link #members}; one additional end marker.
+     */
+    int[] offsets;
+
+    /**
+     * Object offsets, grouped by bucket.
+     */
+    int[] members;
+
+    /**
+     * Constructor.
+     *
+     * @param buckets Bucket of each object
+     */
+    BucketTable(int[] buckets) {
+      final int size = buckets.length;
+      // Sort (bucket, offset) pairs packed into longs.
+      long[] pairs = new long[size];
+      int numkeys = 0;
+      for(int i = 0; i < size; i++) {
+        pairs[i] = (((long) buckets[i]) << 32) | i;
+      }
+      Arrays.sort(pairs);
+      for(int i = 0; i < size; i++) {
+        if(i == 0 || (pairs[i] >> 32) != (pairs[i - 1] >> 32)) {
+          numkeys++;
+        }
+      }
+      keys = new int[numkeys];
+      offsets = new int[numkeys + 1];
+      members = new int[size];
+      for(int i = 0, k = -1; i < size; i++) {
+        if(i == 0 || (pairs[i] >> 32) != (pairs[i - 1] >> 32)) {
+          keys[++k] = (int) (pairs[i] >> 32);
+          offsets[k] = i;
+        }
+        members[i] = (int) pairs[i];
+      }
+      offsets[numkeys] = size;
+    }
+
+    /**
+     * Find a bucket.
+     *
+     * @param key Bucket key
+     * @return Bucket number, or a negative value if not found.
+     */
+    int find(int key) {
+      return Arrays.binarySearch(keys, key);
+    }
+  }
+
   /**
    * Instance of a LSH index for a single relation.
    *
@@ -129,25 +240,56 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * The actual tables
+     */
+    BucketTable[] hashtables;
+
+    /**
+     * Indexed objects, referenced by offset from the tables.
      */
-    ArrayList<TIntObjectMap<DBIDs>> hashtables;
+    ArrayDBIDs ids;
 
     /**
      * Number of buckets to use.
      */
     private int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    private int probes;
+
+    /**
+     * Maximum number of candidates to refine per query.
+     */
+    private int candidates;
+
     /**
      * Constructor.
      *
      * @param relation Relation to index.
      * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets
      */
     public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets) {
+      this(relation, hashfunctions, numberOfBuckets, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to index.
+     * @param hashfunctions Hash functions.
+     * @param numberOfBuckets Number of buckets
+     * @param probes Number of buckets to probe in each hash table
+     * @param candidates Maximum number of candidates to refine per query
+     */
+    public Instance(Relation<V> relation, ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions, int numberOfBuckets, int probes, int candidates) {
       super(relation);
       this.hashfunctions = hashfunctions;
       this.numberOfBuckets = numberOfBuckets;
+      this.probes = probes;
+      this.candidates = candidates;
     }
 
     @Override
@@ -163,59 +305,43 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new TIntObjectHashMap<DBIDs>(numberOfBuckets));
-      }
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      int[][] buckets = new int[numhash][size];
 
       // TODO: We assume all hash functions have the same dimensionality.
       double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", size, LOG) : null;
+      int off = 0;
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance(), off++) {
         V obj = relation.get(iter);
         for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
-          }
+          // Get the initial (unbounded) hash code, reduced to the table size
+          buckets[i][off] = hashfunctions.get(i).hashObject(obj, buf) % numberOfBuckets;
         }
         LOG.incrementProcessed(progress);
       }
       LOG.ensureCompleted(progress);
+      hashtables = new BucketTable[numhash];
+      for(int i = 0; i < numhash; i++) {
+        hashtables[i] = new BucketTable(buckets[i]);
+        buckets[i] = null; // Allow garbage collection
+      }
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          for(TIntObjectIterator<DBIDs> iter = table.iterator(); iter.hasNext();) {
-            iter.advance();
-            int size = iter.value().size();
-            if(size < min) {
-              min = size;
-            }
-            if(size > max) {
-              max = size;
-            }
+        long numbuckets = 0;
+        for(BucketTable table : hashtables) {
+          for(int b = 0; b < table.keys.length; b++) {
+            int bsize = table.offsets[b + 1] - table.offsets[b];
+            min = bsize < min ? bsize : min;
+            max = bsize > max ? bsize : max;
           }
+          numbuckets += table.keys.length;
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
-        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.length));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".buckets", numbuckets));
       }
     }
 
@@ -252,6 +378,55 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       return new LSHRangeQuery(distanceQuery);
     }
 
+    /**
+     * Collect the candidates of a query: in each round, the next probe of
+     * every hash table is visited, until the probes or the candidate budget
+     * are exhausted.
+     *
+     * @param obj Query object
+     * @return Offsets of the candidates
+     */
+    protected int[] getCandidates(V obj) {
+      final int numhash = hashtables.length;
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[][] hashes = new int[numhash][probes];
+      int[] counts = new int[numhash];
+      for(int i = 0; i < numhash; i++) {
+        counts[i] = hashfunctions.get(i).hashObjectProbes(obj, buf, hashes[i]);
+      }
+      // Open addressing hash set, so the cost depends on the candidates only.
+      TIntHashSet seen = new TIntHashSet(Math.min(candidates, 64));
+      int[] cands = new int[Math.min(ids.size(), 16)];
+      int numcands = 0;
+      probing: for(int p = 0; p < probes; p++) {
+        for(int i = 0; i < numhash; i++) {
+          if(p >= counts[i]) {
+            continue;
+          }
+          final BucketTable table = hashtables[i];
+          // Reduce to hash table size
+          final int b = table.find(hashes[i][p] % numberOfBuckets);
+          if(b < 0) {
+            continue;
+          }
+          for(int j = table.offsets[b], end = table.offsets[b + 1]; j < end; j++) {
+            final int off = table.members[j];
+            if(!seen.add(off)) {
+              continue;
+            }
+            if(numcands == cands.length) {
+              cands = Arrays.copyOf(cands, Math.min(ids.size(), cands.length << 1));
+            }
+            cands[numcands++] = off;
+            if(numcands >= candidates) {
+              break probing;
+            }
+          }
+        }
+      }
+      return Arrays.copyOf(cands, numcands);
+    }
+
     /**
      * Class for handling kNN queries against the LSH index.
      *
@@ -271,32 +446,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public KNNList getKNNForObject(V obj, int k) {
-        ModifiableDBIDs candidates = null;
-        final int numhash = hashtables.size();
-        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            if(candidates == null) {
-              candidates = DBIDUtil.newHashSet(cur.size() * numhash + k);
-            }
-            candidates.addDBIDs(cur);
-          }
-        }
-        if(candidates == null) {
-          candidates = DBIDUtil.newArray();
-        }
-
         // Refine.
         KNNHeap heap = DBIDUtil.newHeap(k);
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
-          final double dist = distanceQuery.distance(obj, iter);
+        DBIDArrayIter iter = ids.iter();
+        for(int off : getCandidates(obj)) {
+          final double dist = distanceQuery.distance(obj, iter.seek(off));
           super.incRefinements(1);
           heap.insert(dist, iter);
         }
@@ -323,25 +477,10 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public void getRangeForObject(V obj, double range, ModifiableDoubleDBIDList result) {
-        ModifiableDBIDs candidates = DBIDUtil.newHashSet();
-        final int numhash = hashtables.size();
-        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            candidates.addDBIDs(cur);
-          }
-        }
-
         // Refine.
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
-          final double dist = distanceQuery.distance(obj, iter);
+        DBIDArrayIter iter = ids.iter();
+        for(int off : getCandidates(obj)) {
+          final double dist = distanceQuery.distance(obj, iter.seek(off));
           super.incRefinements(1);
           if(dist <= range) {
             result.add(dist, iter);
@@ -374,6 +513,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH).");
+
+    /**
+     * Maximum number of candidates to refine per query.
+     */
+    public static final OptionID CANDIDATES_ID = new OptionID("lsh.candidates", "Maximum number of candidates to refine per query. Unlimited by default.");
+
     /**
      * LSH hash function family to use.
      */
@@ -389,6 +538,16 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    int probes;
+
+    /**
+     * Maximum number of candidates to refine per query.
+     */
+    int candidates = Integer.MAX_VALUE;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -409,11 +568,24 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 1);
+      probesP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
+
+      IntParameter candidatesP = new IntParameter(CANDIDATES_ID);
+      candidatesP.setOptional(true);
+      candidatesP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(candidatesP)) {
+        candidates = candidatesP.intValue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes, candidates);
     }
   }
 }
@@ -84,6 +84,34 @@ public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHas
     return hashValue;
   }
 
+  @Override
+  public int hashObjectProbes(NumberVector obj, double[] buf, int[] hashes) {
+    final int hashValue = hashObject(obj, buf);
+    hashes[0] = hashValue;
+    if(hashes.length == 1) {
+      return 1;
+    }
+    // Perturbations: flip the bits closest to the hyperplane.
+    final int num = Math.min(buf.length, Integer.SIZE);
+    final double[] scores = new double[num];
+    final int[] codes = new int[num];
+    for(int i = 0; i < num; i++) {
+      scores[i] = buf[i] * buf[i];
+      codes[i] = i;
+    }
+    MultiProbeSequence.sort(scores, codes, num);
+    final long[] sets = new long[hashes.length - 1];
+    final int count = MultiProbeSequence.generate(scores, num, null, sets, sets.length);
+    for(int p = 0; p < count; p++) {
+      int flip = 0;
+      for(long cur = sets[p]; cur != 0; cur &= cur - 1) {
+        flip |= 1 << codes[Long.numberOfTrailingZeros(cur)];
+      }
+      hashes[p + 1] = hashValue ^ flip;
+    }
+    return count + 1;
+  }
+
   @Override
   public int getNumberOfProjections() {
     return projection.getOutputDimensionality();
@@ -49,6 +49,18 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values for multi-probe LSH: the hash value of the object
+   * itself, followed by the hash values of the neighboring buckets, in order of
+   * decreasing likelihood of containing near neighbors.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param hashes Output buffer, sized according to the number of probes.
+   * @return Number of hash values produced
+   */
+  int hashObjectProbes(V obj, double[] buf, int[] hashes);
+
   /**
    * Get the number of projections performed.
    *
@@ -0,0 +1,142 @@
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleLongMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Generation of the perturbation sequence for multi-probe LSH.
+ *
+ * Given the scores of the individual perturbations of a query hash (e.g. the
+ * squared distance to the bucket boundary), the sets of perturbations are
+ * enumerated in ascending order of their total score, using the shift and
+ * expand operations on a heap. At most 64 perturbations (the ones with the
+ * smallest scores) are considered, so that a set fits into a {@code long}
+ * bitmask.
+ *
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity
+ * Search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+title = "Multi-Probe LSH: Efficient Indexing for High-Dimensional Similarity Search", //
+booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+public final class MultiProbeSequence {
+  /**
+   * Maximum number of perturbations considered.
+   */
+  public static final int MAX_PERTURBATIONS = Long.SIZE;
+
+  /**
+   * Fake constructor: static class.
+   */
+  private MultiProbeSequence() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Sort the perturbations by ascending score, using insertion sort (the
+   * arrays are short).
+   *
+   * @param scores Perturbation scores
+   * @param codes Perturbation codes, sorted alongside
+   * @param m Number of perturbations
+   */
+  public static void sort(double[] scores, int[] codes, int m) {
+    for(int i = 1; i < m; i++) {
+      final double s = scores[i];
+      final int c = codes[i];
+      int j = i - 1;
+      for(; j >= 0 && scores[j] > s; j--) {
+        scores[j + 1] = scores[j];
+        codes[j + 1] = codes[j];
+      }
+      scores[j + 1] = s;
+      codes[j + 1] = c;
+    }
+  }
+
+  /**
+   * Enumerate the valid perturbation sets with the smallest total score.
+   *
+   * @param scores Perturbation scores, sorted ascending
+   * @param m Number of perturbations to use, at most {@link #MAX_PERTURBATIONS}
+   * @param conflicts Bitmask of the perturbations that cannot be combined with
+   *        each perturbation, may be {@code null}
+   * @param sets Output array of perturbation sets, as bitmasks
+   * @param num Number of sets to produce
+   * @return Number of sets produced
+   */
+  public static int generate(double[] scores, int m, long[] conflicts, long[] sets, int num) {
+    assert (m <= MAX_PERTURBATIONS);
+    if(m <= 0 || num <= 0) {
+      return 0;
+    }
+    DoubleLongMinHeap heap = new DoubleLongMinHeap(num << 1);
+    heap.add(scores[0], 1L);
+    int count = 0;
+    while(count < num && !heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final long set = heap.peekValue();
+      heap.poll();
+      final int max = 63 - Long.numberOfLeadingZeros(set);
+      if(max + 1 < m) {
+        final long next = 1L << (max + 1);
+        // Shift: replace the largest element with its successor.
+        heap.add(score - scores[max] + scores[max + 1], (set ^ (1L << max)) | next);
+        // Expand: add the successor of the largest element.
+        heap.add(score + scores[max + 1], set | next);
+      }
+      if(conflicts == null || isValid(set, conflicts)) {
+        sets[count++] = set;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Test whether a perturbation set contains conflicting perturbations.
+   *
+   * @param set Perturbation set
+   * @param conflicts Conflicts of each perturbation
+   * @return {@code true} when valid
+   */
+  private static boolean isValid(long set, long[] conflicts) {
+    for(long cur = set; cur != 0; cur &= cur - 1) {
+      if((conflicts[Long.numberOfTrailingZeros(cur)] & set) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -121,6 +121,54 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashObjectProbes(NumberVector vec, double[] buf, int[] hashes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final int num = shift.length;
+    // Perturbations: code 2i decrements, 2i+1 increments slot i.
+    final double[] scores = new double[num << 1];
+    final int[] codes = new int[num << 1];
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double v = (buf[i] + shift[i]) * iwidth;
+      final double ai = Math.floor(v), f = v - ai;
+      t1sum += (randoms1[i] & MASK32) * (int) ai; // unsigned math!
+      scores[i << 1] = f * f;
+      scores[(i << 1) + 1] = (1 - f) * (1 - f);
+      codes[i << 1] = i << 1;
+      codes[(i << 1) + 1] = (i << 1) + 1;
+    }
+    hashes[0] = fastModPrime(t1sum);
+    if(hashes.length == 1) {
+      return 1;
+    }
+    MultiProbeSequence.sort(scores, codes, num << 1);
+    final int m = Math.min(num << 1, MultiProbeSequence.MAX_PERTURBATIONS);
+    // The two perturbations of the same slot conflict.
+    final int[] pos = new int[num << 1];
+    for(int j = 0; j < pos.length; j++) {
+      pos[codes[j]] = j;
+    }
+    final long[] conflicts = new long[m];
+    for(int j = 0; j < m; j++) {
+      final int other = pos[codes[j] ^ 1];
+      conflicts[j] = other < m ? 1L << other : 0L;
+    }
+    final long[] sets = new long[hashes.length - 1];
+    final int count = MultiProbeSequence.generate(scores, m, conflicts, sets, sets.length);
+    for(int p = 0; p < count; p++) {
+      long sum = t1sum;
+      for(long cur = sets[p]; cur != 0; cur &= cur - 1) {
+        final int code = codes[Long.numberOfTrailingZeros(cur)];
+        final long r = randoms1[code >>> 1] & MASK32;
+        sum += (code & 1) == 0 ? -r : r;
+      }
+      hashes[p + 1] = fastModPrime(sum);
+    }
+    return count + 1;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
@@ -0,0 +1,755 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.RKNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A preprocessor materializing the k nearest neighbors and the reverse k
+ * nearest neighbors of each object, maintained incrementally on insertions
+ * and deletions.
+ *
+ * Every object is assigned a slot; the kNN lists (slots and distances) and the
+ * reverse lists (slots) are stored as primitive arrays per slot, instead of
+ * {@link KNNList} objects and tree sets. Updates only touch the affected
+ * neighborhoods: an insertion is added to the kNN lists of the objects that
+ * have it within their kNN distance, and a deletion only recomputes the kNN
+ * lists of its reverse nearest neighbors. Lists that still contain k objects
+ * due to ties are not recomputed.
+ *
+ * {@link KNNListener}s are notified once per {@link #insertAll} or
+ * {@link #deleteAll} call. Single insertions and deletions, as performed by
+ * the database, can be combined into one notification by enclosing them in
+ * {@link #beginBatch()} and {@link #endBatch()}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> the type of database objects the preprocessor can be applied to
+ */
+@Title("Incremental kNN and RkNN preprocessor")
+@Description("Materializes the k nearest neighbors and the reverse k nearest neighbors of objects of a database, and maintains them incrementally.")
+public class IncrementalKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreprocessor<O> implements RKNNIndex<O> {
+  /**
+   * Logger to use.
+   */
+  private static final Logging LOG = Logging.getLogger(IncrementalKNNAndRKNNPreprocessor.class);
+
+  /**
+   * Slot of each object, -1 if not indexed.
+   */
+  private WritableIntegerDataStore slots;
+
+  /**
+   * Object of each slot.
+   */
+  private ArrayModifiableDBIDs slotIds;
+
+  /**
+   * Number of slots in use or free.
+   */
+  private int numslots;
+
+  /**
+   * Free slots.
+   */
+  private int[] free;
+
+  /**
+   * Number of free slots.
+   */
+  private int numfree;
+
+  /**
+   * kNN lists: neighbor slots, sorted by distance.
+   */
+  private int[][] knnSlots;
+
+  /**
+   * kNN lists: distances.
+   */
+  private double[][] knnDists;
+
+  /**
+   * kNN list sizes (may exceed k on ties).
+   */
+  private int[] knnSize;
+
+  /**
+   * Reverse kNN lists: slots, unordered.
+   */
+  private int[][] rknnSlots;
+
+  /**
+   * Reverse kNN list sizes.
+   */
+  private int[] rknnSize;
+
+  /**
+   * Upper bound of the kNN distances, for range queries on insertion.
+   */
+  private double maxKNNDistance;
+
+  /**
+   * Range query used to find the affected objects, if an index is available.
+   */
+  private RangeQuery<O> rangeQuery;
+
+  /**
+   * Nesting depth of batches.
+   */
+  private int batchDepth = 0;
+
+  /**
+   * Type of the pending notification, {@code null} if none.
+   */
+  private KNNChangeEvent.Type pendingType;
+
+  /**
+   * Objects inserted or deleted since the last notification.
+   */
+  private HashSetModifiableDBIDs pendingObjects = DBIDUtil.newHashSet();
+
+  /**
+   * Objects with changed kNN since the last notification.
+   */
+  private HashSetModifiableDBIDs pendingUpdates = DBIDUtil.newHashSet();
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to process
+   * @param distanceFunction the distance function to use
+   * @param k query k
+   */
+  public IncrementalKNNAndRKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k) {
+    super(relation, distanceFunction, k);
+  }
+
+  @Override
+  public void initialize() {
+    if(slots != null) {
+      throw new UnsupportedOperationException("Preprocessor already ran.");
+    }
+    if(relation.size() > 0) {
+      preprocess();
+    }
+  }
+
+  @Override
+  protected void preprocess() {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), cap = Math.max(size, 16);
+    slots = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT, -1);
+    slotIds = DBIDUtil.newArray(cap);
+    knnSlots = new int[cap][];
+    knnDists = new double[cap][];
+    knnSize = new int[cap];
+    rknnSlots = new int[cap][];
+    rknnSize = new int[cap];
+    free = new int[16];
+    numfree = 0;
+    numslots = 0;
+    maxKNNDistance = 0.;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      allocateSlot(iter);
+    }
+    FiniteProgress progress = getLogger().isVerbose() ? new FiniteProgress("Materializing k nearest neighbors and reverse k nearest neighbors (k=" + k + ")", size, getLogger()) : null;
+    int i = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), i++) {
+      setKNN(i, knnQuery.getKNNForDBID(iter, k));
+      getLogger().incrementProcessed(progress);
+    }
+    getLogger().ensureCompleted(progress);
+  }
+
+  @Override
+  public KNNList get(DBIDRef id) {
+    if(slots == null) {
+      preprocess();
+    }
+    final int s = slots.intValue(id);
+    if(s < 0) {
+      return null;
+    }
+    final int[] ns = knnSlots[s];
+    final double[] ds = knnDists[s];
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    DBIDArrayIter it = slotIds.iter();
+    for(int i = 0, size = knnSize[s]; i < size; i++) {
+      heap.insert(ds[i], it.seek(ns[i]));
+    }
+    return heap.toKNNList();
+  }
+
+  /**
+   * Returns the materialized RkNNs of the specified id.
+   *
+   * @param id the query id
+   * @return the RkNNs, sorted by distance
+   */
+  public DoubleDBIDList getRKNN(DBIDRef id) {
+    if(slots == null) {
+      preprocess();
+    }
+    final int s = slots.intValue(id);
+    if(s < 0) {
+      return null;
+    }
+    final int[] rs = rknnSlots[s];
+    final int size = rknnSize[s];
+    ModifiableDoubleDBIDList ret = DBIDUtil.newDistanceDBIDList(size);
+    DBIDArrayIter it = slotIds.iter();
+    for(int i = 0; i < size; i++) {
+      final int r = rs[i];
+      ret.add(knnDists[r][indexOf(knnSlots[r], knnSize[r], s)], it.seek(r));
+    }
+    ret.sort();
+    return ret;
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    if(slots == null && ids.size() > 0) {
+      preprocess();
+      return;
+    }
+    objectsInserted(ids);
+  }
+
+  @Override
+  protected void objectsInserted(DBIDs ids) {
+    if(slots == null) {
+      preprocess();
+      return;
+    }
+    ArrayModifiableDBIDs updates = DBIDUtil.newArray();
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      insertObject(iter, updates);
+    }
+    notify(KNNChangeEvent.Type.INSERT, ids, updates);
+  }
+
+  /**
+   * Insert a single object.
+   *
+   * @param id Object to insert
+   * @param updates Output: objects with changed kNN
+   */
+  private void insertObject(DBIDRef id, ArrayModifiableDBIDs updates) {
+    if(slots.intValue(id) >= 0) {
+      return; // Already indexed.
+    }
+    final int s = allocateSlot(id);
+    if(knnQuery instanceof LinearScanQuery) {
+      // Single pass: compute the kNN of the new object, and find the objects
+      // that have it within their kNN distance.
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final int o = slots.intValue(iter);
+        if(o < 0) {
+          continue; // Not yet indexed, will be handled on its insertion.
+        }
+        if(o == s) {
+          heap.insert(0., iter);
+          continue;
+        }
+        final double d = distanceQuery.distance(id, iter);
+        heap.insert(d, iter);
+        if(d <= knnDistance(o)) {
+          insertNeighbor(o, s, d);
+          updates.add(iter);
+        }
+      }
+      setKNN(s, heap.toKNNList());
+      return;
+    }
+    setKNN(s, knnQuery.getKNNForDBID(id, k));
+    if(rangeQuery == null) {
+      rangeQuery = relation.getRangeQuery(distanceQuery, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+    }
+    for(DoubleDBIDListIter iter = rangeQuery.getRangeForDBID(id, maxKNNDistance).iter(); iter.valid(); iter.advance()) {
+      final int o = slots.intValue(iter);
+      if(o < 0 || o == s) {
+        continue;
+      }
+      if(iter.doubleValue() <= knnDistance(o)) {
+        insertNeighbor(o, s, iter.doubleValue());
+        updates.add(iter);
+      }
+    }
+  }
+
+  @Override
+  protected void objectsRemoved(DBIDs ids) {
+    if(slots == null) {
+      return;
+    }
+    ArrayModifiableDBIDs updates = DBIDUtil.newArray();
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      deleteObject(iter, updates);
+    }
+    notify(KNNChangeEvent.Type.DELETE, ids, updates);
+  }
+
+  /**
+   * Delete a single object.
+   *
+   * @param id Object to delete
+   * @param updates Output: objects with changed kNN
+   */
+  private void deleteObject(DBIDRef id, ArrayModifiableDBIDs updates) {
+    final int s = slots.intValue(id);
+    if(s < 0) {
+      return;
+    }
+    // Unlink the kNN of the deleted object.
+    for(int i = 0, size = knnSize[s]; i < size; i++) {
+      final int n = knnSlots[s][i];
+      if(n != s) {
+        removeReverse(n, s);
+      }
+    }
+    knnSize[s] = 0;
+    // Reverse nearest neighbors are affected:
+    final int[] affected = Arrays.copyOf(rknnSlots[s], rknnSize[s]);
+    rknnSize[s] = 0;
+    slots.delete(id);
+    free = numfree == free.length ? Arrays.copyOf(free, numfree << 1) : free;
+    free[numfree++] = s;
+    DBIDArrayIter it = slotIds.iter();
+    for(int a : affected) {
+      if(a == s) {
+        continue;
+      }
+      removeNeighbor(a, s);
+      updates.add(it.seek(a));
+      if(knnSize[a] >= k) {
+        continue; // Enough ties remaining.
+      }
+      // Recompute the neighborhood:
+      for(int i = 0, size = knnSize[a]; i < size; i++) {
+        removeReverse(knnSlots[a][i], a);
+      }
+      knnSize[a] = 0;
+      setKNN(a, knnQuery.getKNNForDBID(it, k));
+    }
+  }
+
+  /**
+   * Begin a batch of updates; listeners will be notified once at the end of
+   * the batch. Batches may be nested.
+   */
+  public void beginBatch() {
+    batchDepth++;
+  }
+
+  /**
+   * End a batch of updates, and notify the listeners if this was the
+   * outermost batch.
+   */
+  public void endBatch() {
+    if(batchDepth <= 0) {
+      throw new AbortException("endBatch() without beginBatch().");
+    }
+    if(--batchDepth == 0) {
+      flush();
+    }
+  }
+
+  /**
+   * Record a change, and notify the listeners unless in a batch.
+   *
+   * @param type Change type
+   * @param objects Inserted or deleted objects
+   * @param updates Objects with changed kNN
+   */
+  private void notify(KNNChangeEvent.Type type, DBIDs objects, DBIDs updates) {
+    if(pendingType != null && pendingType != type) {
+      flush();
+    }
+    pendingType = type;
+    pendingObjects.addDBIDs(objects);
+    pendingUpdates.addDBIDs(updates);
+    if(batchDepth == 0) {
+      flush();
+    }
+  }
+
+  /**
+   * Notify the listeners of the pending changes.
+   */
+  private void flush() {
+    if(pendingType == null) {
+      return;
+    }
+    if(rangeQuery != null) {
+      // Tighten the bound for the next range queries.
+      maxKNNDistance = 0.;
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final int o = slots.intValue(iter);
+        maxKNNDistance = o >= 0 ? Math.max(maxKNNDistance, knnDistance(o)) : maxKNNDistance;
+      }
+    }
+    pendingUpdates.removeDBIDs(pendingObjects);
+    ArrayDBIDs objects = DBIDUtil.newArray(pendingObjects);
+    ArrayDBIDs updates = DBIDUtil.newArray(pendingUpdates);
+    final KNNChangeEvent.Type type = pendingType;
+    pendingType = null;
+    pendingObjects.clear();
+    pendingUpdates.clear();
+    if(type == KNNChangeEvent.Type.INSERT) {
+      fireKNNsInserted(objects, updates);
+    }
+    else {
+      fireKNNsRemoved(objects, updates);
+    }
+  }
+
+  /**
+   * Assign a slot to an object.
+   *
+   * @param id Object
+   * @return Slot
+   */
+  private int allocateSlot(DBIDRef id) {
+    final int s;
+    if(numfree > 0) {
+      s = free[--numfree];
+      slotIds.set(s, id);
+    }
+    else {
+      s = numslots++;
+      if(s == knnSlots.length) {
+        final int cap = s + (s >>> 1);
+        knnSlots = Arrays.copyOf(knnSlots, cap);
+        knnDists = Arrays.copyOf(knnDists, cap);
+        knnSize = Arrays.copyOf(knnSize, cap);
+        rknnSlots = Arrays.copyOf(rknnSlots, cap);
+        rknnSize = Arrays.copyOf(rknnSize, cap);
+      }
+      slotIds.add(id);
+      knnSlots[s] = new int[k];
+      knnDists[s] = new double[k];
+      rknnSlots[s] = new int[k];
+    }
+    knnSize[s] = 0;
+    rknnSize[s] = 0;
+    slots.putInt(id, s);
+    return s;
+  }
+
+  /**
+   * Get the kNN distance of a slot.
+   *
+   * @param s Slot
+   * @return kNN distance, infinite if there are less than k neighbors
+   */
+  private double knnDistance(int s) {
+    return knnSize[s] >= k ? knnDists[s][k - 1] : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Store a kNN list for an empty slot, and add the reverse links.
+   *
+   * @param s Slot
+   * @param knn kNN list
+   */
+  private void setKNN(int s, KNNList knn) {
+    int[] ns = knnSlots[s];
+    double[] ds = knnDists[s];
+    if(ns.length < knn.size()) {
+      ns = knnSlots[s] = new int[knn.size()];
+      ds = knnDists[s] = new double[knn.size()];
+    }
+    int size = 0;
+    for(DoubleDBIDListIter iter = knn.iter(); iter.valid(); iter.advance()) {
+      final int n = slots.intValue(iter);
+      if(n < 0) {
+        continue; // Not (yet) indexed.
+      }
+      ns[size] = n;
+      ds[size++] = iter.doubleValue();
+      addReverse(n, s);
+    }
+    knnSize[s] = size;
+    if(size >= k && ds[k - 1] > maxKNNDistance) {
+      maxKNNDistance = ds[k - 1];
+    }
+    else if(size < k) {
+      maxKNNDistance = Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * Insert a new neighbor into a kNN list, dropping neighbors beyond the k
+   * nearest (keeping ties).
+   *
+   * @param o Slot to update
+   * @param s New neighbor slot
+   * @param d Distance
+   */
+  private void insertNeighbor(int o, int s, double d) {
+    int size = knnSize[o];
+    int[] ns = knnSlots[o];
+    double[] ds = knnDists[o];
+    if(size == ns.length) {
+      ns = knnSlots[o] = Arrays.copyOf(ns, size + (size >>> 1) + 1);
+      ds = knnDists[o] = Arrays.copyOf(ds, ns.length);
+    }
+    int pos = size;
+    while(pos > 0 && ds[pos - 1] > d) {
+      pos--;
+    }
+    System.arraycopy(ns, pos, ns, pos + 1, size - pos);
+    System.arraycopy(ds, pos, ds, pos + 1, size - pos);
+    ns[pos] = s;
+    ds[pos] = d;
+    size++;
+    addReverse(s, o);
+    if(size > k) {
+      final double kdist = ds[k - 1];
+      int keep = k;
+      while(keep < size && ds[keep] <= kdist) {
+        keep++;
+      }
+      for(int i = keep; i < size; i++) {
+        removeReverse(ns[i], o);
+      }
+      size = keep;
+    }
+    knnSize[o] = size;
+  }
+
+  /**
+   * Remove a neighbor from a kNN list.
+   *
+   * @param o Slot to update
+   * @param s Neighbor slot to remove
+   */
+  private void removeNeighbor(int o, int s) {
+    final int size = knnSize[o];
+    final int[] ns = knnSlots[o];
+    final int pos = indexOf(ns, size, s);
+    System.arraycopy(ns, pos + 1, ns, pos, size - pos - 1);
+    System.arraycopy(knnDists[o], pos + 1, knnDists[o], pos, size - pos - 1);
+    knnSize[o] = size - 1;
+  }
+
+  /**
+   * Add a reverse link.
+   *
+   * @param n Neighbor slot
+   * @param o Slot having n as neighbor
+   */
+  private void addReverse(int n, int o) {
+    int[] rs = rknnSlots[n];
+    if(rknnSize[n] == rs.length) {
+      rs = rknnSlots[n] = Arrays.copyOf(rs, rs.length + (rs.length >>> 1) + 1);
+    }
+    rs[rknnSize[n]++] = o;
+  }
+
+  /**
+   * Remove a reverse link.
+   *
+   * @param n Neighbor slot
+   * @param o Slot no longer having n as neighbor
+   */
+  private void removeReverse(int n, int o) {
+    final int[] rs = rknnSlots[n];
+    final int last = --rknnSize[n];
+    rs[indexOf(rs, last + 1, o)] = rs[last];
+  }
+
+  /**
+   * Find a value in an array.
+   *
+   * @param a Array
+   * @param size Number of valid entries
+   * @param v Value
+   * @return Position
+   */
+  private static int indexOf(int[] a, int size, int v) {
+    for(int i = 0; i < size; i++) {
+      if(a[i] == v) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("Inconsistent kNN and reverse kNN lists.");
+  }
+
+  @Override
+  public RKNNQuery<O> getRKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    if(!this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    // k max supported?
+    for(Object hint : hints) {
+      if(hint instanceof Integer) {
+        if(((Integer) hint) > k) {
+          return null;
+        }
+        break;
+      }
+    }
+    return new IncrementalRKNNQuery();
+  }
+
+  @Override
+  public String getLongName() {
+    return "Incremental kNN and RkNN Preprocessor";
+  }
+
+  @Override
+  public String getShortName() {
+    return "incremental knn and rknn preprocessor";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * RkNN query using the materialized reverse lists.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class IncrementalRKNNQuery implements RKNNQuery<O> {
+    /**
+     * Warn only once.
+     */
+    private boolean warned = false;
+
+    @Override
+    public DoubleDBIDList getRKNNForDBID(DBIDRef id, int k) {
+      checkK(k);
+      return getRKNN(id);
+    }
+
+    @Override
+    public DoubleDBIDList getRKNNForObject(O obj, int k) {
+      throw new AbortException("Preprocessor RkNN query only supports ID queries.");
+    }
+
+    @Override
+    public List<? extends DoubleDBIDList> getRKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      checkK(k);
+      List<DoubleDBIDList> result = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        result.add(getRKNN(iter));
+      }
+      return result;
+    }
+
+    /**
+     * Warn if k does not match the preprocessor.
+     *
+     * @param k Requested k
+     */
+    private void checkK(int k) {
+      if(!warned && k != IncrementalKNNAndRKNNPreprocessor.this.k) {
+        LoggingUtil.warning("Requested a different k than preprocessed: requested " + k + " preprocessed " + IncrementalKNNAndRKNNPreprocessor.this.k);
+        warned = true;
+      }
+    }
+  }
+
+  /**
+   * The parameterizable factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.uses IncrementalKNNAndRKNNPreprocessor oneway - - «create»
+   *
+   * @param <O> The object type
+   */
+  public static class Factory<O> extends MaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Constructor.
+     *
+     * @param k k
+     * @param distanceFunction distance function
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction) {
+      super(k, distanceFunction);
+    }
+
+    @Override
+    public IncrementalKNNAndRKNNPreprocessor<O> instantiate(Relation<O> relation) {
+      return new IncrementalKNNAndRKNNPreprocessor<>(relation, distanceFunction, k);
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O> extends MaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(k, distanceFunction);
+      }
+    }
+  }
+}
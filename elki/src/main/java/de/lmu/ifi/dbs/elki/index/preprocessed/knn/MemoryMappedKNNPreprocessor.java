@@ -0,0 +1,526 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.persistent.OnDiskArray;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * kNN preprocessor that keeps the materialized kNN lists in a memory-mapped
+ * {@link OnDiskArray}, so that they survive restarts.
+ *
+ * Each object is stored as a fixed-size record of the neighbor count and the
+ * (offset, distance) pairs of its k nearest neighbors, indexed by the offset
+ * within the relations {@link DBIDRange}. The file header contains the
+ * relation size, the stored k, a hash of the relation contents and the number
+ * of records already computed. On initialization, a file with matching size
+ * and hash (and at least the requested k) is reused; an interrupted
+ * computation is resumed from the last completed block. Otherwise, the file is
+ * (re-)built.
+ *
+ * The hash only covers the class of the distance function, not its
+ * parameters: delete the file when changing these.
+ *
+ * Queries for any k up to the stored k are answered from the file. Where ties
+ * at the k-distance were cut off by the record size, or larger k are
+ * requested, the query falls back to the underlying kNN query.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf OnDiskArray
+ *
+ * @param <O> Object type
+ */
+public class MemoryMappedKNNPreprocessor<O> extends AbstractIndex<O> implements KNNIndex<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MemoryMappedKNNPreprocessor.class);
+
+  /**
+   * Magic number to identify files.
+   *
+   * Note: change this when performing incompatible changes to the file format!
+   */
+  public static final int KNN_MAPPED_MAGIC = 0xCAC4A9D1;
+
+  /**
+   * Extra header: content hash, relation size, k, completed records.
+   */
+  private static final int EXTRA_HEADER_SIZE = ByteArrayUtil.SIZE_LONG + 3 * ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Position of the number of completed records in the extra header.
+   */
+  private static final int POS_COMPLETED = ByteArrayUtil.SIZE_LONG + 2 * ByteArrayUtil.SIZE_INT;
+
+  /**
+   * Size of a single (offset, distance) neighbor entry.
+   */
+  private static final int ENTRY_SIZE = ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_DOUBLE;
+
+  /**
+   * Flag bit in the neighbor count, marking lists truncated within ties.
+   */
+  private static final int TRUNCATED = 0x80000000;
+
+  /**
+   * Number of objects to process before updating the progress in the header.
+   */
+  private static final int BLOCKSIZE = 1024;
+
+  /**
+   * Number of neighbors to materialize.
+   */
+  protected final int k;
+
+  /**
+   * The distance function to be used.
+   */
+  protected final DistanceFunction<? super O> distanceFunction;
+
+  /**
+   * Cache file.
+   */
+  protected final File filename;
+
+  /**
+   * Stored k, may be larger than the requested k when reusing a file.
+   */
+  private int storedk;
+
+  /**
+   * DBID range.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Memory-mapped kNN lists.
+   */
+  private OnDiskArray array;
+
+  /**
+   * Underlying kNN query used for building and fallback.
+   */
+  private KNNQuery<O> knnQuery;
+
+  /**
+   * Number of records computed in this run (as opposed to loaded).
+   */
+  private int computed;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction Distance function
+   * @param k Number of neighbors to materialize
+   * @param filename Cache file
+   */
+  public MemoryMappedKNNPreprocessor(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, File filename) {
+    super(relation);
+    this.distanceFunction = distanceFunction;
+    this.k = k;
+    this.filename = filename;
+  }
+
+  @Override
+  public void initialize() {
+    DBIDs rids = relation.getDBIDs();
+    if(!(rids instanceof DBIDRange)) {
+      throw new AbortException("Memory-mapped kNN lists are only supported for DBID ranges (as used by static databases).");
+    }
+    ids = (DBIDRange) rids;
+    DistanceQuery<O> distanceQuery = distanceFunction.instantiate(relation);
+    knnQuery = relation.getKNNQuery(distanceQuery, k, DatabaseQuery.HINT_BULK, DatabaseQuery.HINT_HEAVY_USE, DatabaseQuery.HINT_NO_CACHE);
+
+    final long hash = contentHash();
+    final int size = ids.size();
+    try {
+      array = openExisting(hash, size);
+      int completed = 0;
+      if(array != null) {
+        completed = array.getExtraHeader().getInt(POS_COMPLETED);
+        if(completed < size) { // Resume an interrupted computation.
+          array.close();
+          array = new OnDiskArray(filename, KNN_MAPPED_MAGIC, EXTRA_HEADER_SIZE, true);
+        }
+      }
+      else {
+        if((long) size * (ByteArrayUtil.SIZE_INT + k * ENTRY_SIZE) > Integer.MAX_VALUE) {
+          throw new AbortException("kNN lists too large to be memory-mapped: " + size + " objects with k=" + k);
+        }
+        storedk = k;
+        array = new OnDiskArray(filename, KNN_MAPPED_MAGIC, EXTRA_HEADER_SIZE, ByteArrayUtil.SIZE_INT + k * ENTRY_SIZE, size);
+        array.getExtraHeader().putLong(hash).putInt(size).putInt(k).putInt(0);
+      }
+      if(completed < size) {
+        build(completed);
+        // Reopen read-only, releasing the file lock.
+        array.close();
+        array = new OnDiskArray(filename, KNN_MAPPED_MAGIC, EXTRA_HEADER_SIZE, false);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error in memory-mapping the kNN lists: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Try to open an existing cache file.
+   *
+   * @param hash Expected content hash
+   * @param size Expected relation size
+   * @return Array, or {@code null} if the file is missing or not reusable.
+   * @throws IOException on errors deleting a stale file
+   */
+  private OnDiskArray openExisting(long hash, int size) throws IOException {
+    if(!filename.exists() || filename.length() == 0) {
+      return null;
+    }
+    OnDiskArray existing = null;
+    try {
+      existing = new OnDiskArray(filename, KNN_MAPPED_MAGIC, EXTRA_HEADER_SIZE, false);
+      ByteBuffer header = existing.getExtraHeader();
+      final long fhash = header.getLong();
+      final int fsize = header.getInt(), fk = header.getInt();
+      if(fhash == hash && fsize == size && fk >= k && existing.getNumRecords() == size) {
+        storedk = fk;
+        return existing;
+      }
+      LOG.verbose("kNN cache file " + filename + " does not match the data (size " + fsize + " k " + fk + "), rebuilding.");
+      existing.close();
+    }
+    catch(IOException e) {
+      LOG.verbose("kNN cache file " + filename + " is not usable, rebuilding: " + e.getMessage());
+      if(existing != null) {
+        existing.close();
+      }
+    }
+    if(!filename.delete()) {
+      throw new IOException("Could not delete stale kNN cache file " + filename);
+    }
+    return null;
+  }
+
+  /**
+   * Compute the missing records, block-wise. After each block, the header is
+   * updated, so that an interrupted computation can be resumed.
+   *
+   * @param completed Number of records already complete
+   * @throws IOException on I/O errors
+   */
+  private void build(int completed) throws IOException {
+    final int size = ids.size();
+    ByteBuffer header = array.getExtraHeader();
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".precomputation-time").begin() : null;
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Materializing k nearest neighbors (k=" + storedk + ")", size, LOG) : null;
+    if(prog != null) {
+      prog.setProcessed(completed, LOG);
+    }
+    for(int start = completed; start < size;) {
+      final int end = Math.min(start + BLOCKSIZE, size);
+      List<? extends KNNList> lists = knnQuery.getKNNForBulkDBIDs(ids.slice(start, end), storedk);
+      for(int i = start; i < end; i++) {
+        writeRecord(array.getRecordBuffer(i), lists.get(i - start));
+        LOG.incrementProcessed(prog);
+      }
+      computed += end - start;
+      start = end;
+      header.putInt(POS_COMPLETED, start);
+    }
+    LOG.ensureCompleted(prog);
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+  }
+
+  /**
+   * Serialize a kNN list into a record.
+   *
+   * @param buffer Record buffer
+   * @param knn kNN list
+   */
+  private void writeRecord(ByteBuffer buffer, KNNList knn) {
+    final int size = Math.min(knn.size(), storedk);
+    buffer.putInt(size < knn.size() ? size | TRUNCATED : size);
+    DoubleDBIDListIter it = knn.iter();
+    for(int i = 0; i < size; i++, it.advance()) {
+      buffer.putInt(ids.getOffset(it));
+      buffer.putDouble(it.doubleValue());
+    }
+  }
+
+  /**
+   * Compute a hash of the relation contents and the distance function, to
+   * detect stale files.
+   *
+   * @return Hash code
+   */
+  protected long contentHash() {
+    return RelationUtil.contentHash(relation, distanceFunction.getClass().getName().hashCode(), false);
+  }
+
+  /**
+   * Get the number of neighbors stored in the file.
+   *
+   * @return Stored k
+   */
+  public int getK() {
+    return storedk;
+  }
+
+  @Override
+  public void logStatistics() {
+    if(array != null) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".k", storedk));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".computed", computed));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".loaded", ids.size() - computed));
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "Memory-mapped kNN lists";
+  }
+
+  @Override
+  public String getShortName() {
+    return "mapped-knn";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    if(!this.distanceFunction.equals(distanceQuery.getDistanceFunction())) {
+      return null;
+    }
+    // k max supported?
+    for(Object hint : hints) {
+      if(hint instanceof Integer) {
+        if(((Integer) hint) > storedk) {
+          return null;
+        }
+        break;
+      }
+    }
+    return new MappedKNNQuery();
+  }
+
+  /**
+   * kNN query reading the memory-mapped lists.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class MappedKNNQuery implements KNNQuery<O> {
+    @Override
+    public KNNList getKNNForDBID(DBIDRef id, int k) {
+      if(k > storedk) {
+        return knnQuery.getKNNForDBID(id, k);
+      }
+      final ByteBuffer buffer;
+      try {
+        buffer = array.getRecordBuffer(ids.getOffset(id));
+      }
+      catch(IOException e) {
+        throw new AbortException("I/O error reading the kNN lists: " + e.getMessage(), e);
+      }
+      final int header = buffer.getInt();
+      final int size = header & ~TRUNCATED;
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      DBIDArrayIter it = ids.iter();
+      double kdist = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < size; i++) {
+        final int off = buffer.getInt();
+        final double dist = buffer.getDouble();
+        if(dist > kdist) {
+          return heap.toKNNList(); // Lists are sorted.
+        }
+        kdist = heap.insert(dist, it.seek(off));
+      }
+      // Remaining ties may have been cut off.
+      return (header & TRUNCATED) != 0 ? knnQuery.getKNNForDBID(id, k) : heap.toKNNList();
+    }
+
+    @Override
+    public List<? extends KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+      List<KNNList> ret = new ArrayList<>(ids.size());
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        ret.add(getKNNForDBID(iter, k));
+      }
+      return ret;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      return knnQuery.getKNNForObject(obj, k);
+    }
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has MemoryMappedKNNPreprocessor oneway - - «create»
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> implements IndexFactory<O, MemoryMappedKNNPreprocessor<O>> {
+    /**
+     * Number of neighbors to materialize.
+     */
+    protected final int k;
+
+    /**
+     * The distance function to be used.
+     */
+    protected final DistanceFunction<? super O> distanceFunction;
+
+    /**
+     * Cache file.
+     */
+    protected final File filename;
+
+    /**
+     * Constructor.
+     *
+     * @param k Number of neighbors to materialize
+     * @param distanceFunction Distance function
+     * @param filename Cache file
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, File filename) {
+      super();
+      this.k = k;
+      this.distanceFunction = distanceFunction;
+      this.filename = filename;
+    }
+
+    @Override
+    public MemoryMappedKNNPreprocessor<O> instantiate(Relation<O> relation) {
+      return new MemoryMappedKNNPreprocessor<>(relation, distanceFunction, k, filename);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return distanceFunction.getInputTypeRestriction();
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractParameterizer {
+      /**
+       * Option ID for the cache file.
+       */
+      public static final OptionID FILE_ID = new OptionID("materialize.file", "File to memory-map the kNN lists from. It will be (re-)built if it is missing or does not match the data.");
+
+      /**
+       * Number of neighbors to materialize.
+       */
+      protected int k;
+
+      /**
+       * The distance function to be used.
+       */
+      protected DistanceFunction<? super O> distanceFunction;
+
+      /**
+       * Cache file.
+       */
+      protected File filename;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        final IntParameter kP = new IntParameter(AbstractMaterializeKNNPreprocessor.Factory.K_ID);
+        kP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(kP)) {
+          k = kP.getValue();
+        }
+        final ObjectParameter<DistanceFunction<? super O>> distanceP = new ObjectParameter<>(AbstractMaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, DistanceFunction.class, EuclideanDistanceFunction.class);
+        if(config.grab(distanceP)) {
+          distanceFunction = distanceP.instantiateClass(config);
+        }
+        final FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE);
+        if(config.grab(fileP)) {
+          filename = fileP.getValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(k, distanceFunction, filename);
+      }
+    }
+  }
+}
@@ -1,5 +1,5 @@
 package de.lmu.ifi.dbs.elki.index.tree;
-import de.lmu.ifi.dbs.elki.index.Index;
+import de.lmu.ifi.dbs.elki.index.FreezableIndex;
 
 /*
  This file is part of ELKI:
@@ -43,7 +43,7 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * @param <N> the type of Node used in the index
  * @param <E> the type of Entry used in the index
  */
-public abstract class IndexTree<N extends Node<E>, E extends Entry> implements Index {
+public abstract class IndexTree<N extends Node<E>, E extends Entry> implements FreezableIndex {
   /**
    * The file storing the entries of this index.
    */
@@ -81,6 +81,11 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    */
   private E rootEntry;
 
+  /**
+   * The header of the page file.
+   */
+  private TreeIndexHeader header;
+
   /**
    * Constructor.
    *
@@ -96,7 +101,7 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    */
   @Override
   public void initialize() {
-    TreeIndexHeader header = createHeader();
+    header = createHeader();
     if (this.file.initialize(header)) {
       initializeFromFile(header, file);
     }
@@ -190,6 +195,7 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @param node Node to write
    */
   protected void writeNode(N node) {
+    checkWritable();
     file.writePage(node);
   }
 
@@ -199,9 +205,44 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    * @param node Node to delete
    */
   protected void deleteNode(N node) {
+    checkWritable();
     file.deletePage(node.getPageID());
   }
 
+  /**
+   * Ensure the tree has not been frozen. Every modifying entry point must call
+   * this before touching any node, so a frozen tree is left unchanged.
+   *
+   * @throws UnsupportedOperationException when the tree is read-only.
+   */
+  protected void checkWritable() {
+    if(isFrozen()) {
+      throw new UnsupportedOperationException("Index has been frozen and is read-only.");
+    }
+  }
+
+  /**
+   * Freeze the tree, by making the page file read-only. Afterwards, the tree
+   * can be queried concurrently.
+   */
+  @Override
+  public void freeze() {
+    file.freeze();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return file.isFrozen();
+  }
+
+  /**
+   * Close the backing storage. Disk-based page files keep their pages and
+   * write the header, so the tree can be reopened from the same file.
+   */
+  public void close() {
+    file.close();
+  }
+
   /**
    * Creates a header for this index structure which is an instance of
    * {@link TreeIndexHeader}. Subclasses may need to overwrite this method if
@@ -242,6 +283,13 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
    */
   protected final void initialize(E exampleLeaf) {
     initializeCapacities(exampleLeaf);
+    if (header != null) {
+      // The header was created before the capacities were known.
+      header.dirCapacity = dirCapacity;
+      header.leafCapacity = leafCapacity;
+      header.dirMinimum = dirMinimum;
+      header.leafMinimum = leafMinimum;
+    }
 
     // create empty root
     createEmptyRoot(exampleLeaf);
@@ -32,10 +32,11 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.FreezableIndex;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingUtil;
-import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -52,7 +53,12 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * @param <O> Object type
  */
-public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
+public abstract class AbstractCoverTree<O> extends AbstractIndex<O> implements FreezableIndex {
+  /**
+   * Minimum number of objects in a subtree to build it in a separate task.
+   */
+  protected static final int PARALLEL_THRESHOLD = 1000;
+
   /**
    * Constant expansion rate. 2 would be the intuitive value, but the original
    * version used 1.3, so we copy this. This means that in every level, the
@@ -83,7 +89,12 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
   /**
    * Distance computations performed.
    */
-  protected long distComputations = 0L;
+  protected Counter distComputations;
+
+  /**
+   * Read-only flag.
+   */
+  private volatile boolean frozen = false;
 
   /**
    * Stop refining the tree at this size, but build a leaf.
@@ -106,6 +117,8 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
     this.expansion = expansion;
     this.invLogExpansion = 1. / Math.log(expansion);
     this.scaleBottom = (int) Math.ceil(Math.log(Double.MIN_NORMAL) * invLogExpansion);
+    Logging log = getLogger();
+    this.distComputations = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".distance-computations") : null;
   }
 
   /**
@@ -151,7 +164,9 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    * @return Distance
    */
   protected double distance(DBIDRef a, DBIDRef b) {
-    ++distComputations;
+    if(distComputations != null) {
+      distComputations.increment();
+    }
     return distanceQuery.distance(a, b);
   }
 
@@ -163,7 +178,9 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
    * @return Distance
    */
   protected double distance(O a, DBIDRef b) {
-    ++distComputations;
+    if(distComputations != null) {
+      distComputations.increment();
+    }
     return distanceQuery.distance(a, b);
   }
 
@@ -212,7 +229,33 @@ public abstract class AbstractCoverTree<O> extends AbstractIndex<O> {
 
   @Override
   public void logStatistics() {
-    getLogger().statistics(new LongStatistic(this.getClass().getName() + ".distance-computations", distComputations));
+    if(distComputations != null) {
+      getLogger().statistics(distComputations);
+    }
+  }
+
+  /**
+   * Freeze the tree, rejecting further insertions and deletions.
+   */
+  @Override
+  public void freeze() {
+    frozen = true;
+  }
+
+  /**
+   * Ensure the tree has not been frozen.
+   * 
+   * @throws UnsupportedOperationException when the tree is frozen.
+   */
+  protected void checkWritable() {
+    if(frozen) {
+      throw new UnsupportedOperationException("Cover tree has been frozen and is read-only.");
+    }
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
   }
 
   /**
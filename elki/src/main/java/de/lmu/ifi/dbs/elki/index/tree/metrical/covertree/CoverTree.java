@@ -24,7 +24,10 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  */
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -42,11 +45,13 @@ import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -67,7 +72,9 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * parent nodes. It thus needs more than twice the memory of
  * {@link SimplifiedCoverTree}, but computes fewer distances.
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * Large subtrees are bulk-loaded in parallel. Objects can be inserted and
+ * removed afterwards; removing a routing object rebuilds the subtree it routes.
+ * Modifications must not run concurrently with queries.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -79,7 +86,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Cover trees for nearest neighbor", //
 booktitle = "In Proc. 23rd International Conference on Machine Learning (ICML)", //
 url = "http://dx.doi.org/10.1145/1143844.1143857")
-public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -133,7 +140,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     /**
      * Expansion scale.
      */
-    // int scale = SCALE_LEAF;
+    int scale;
 
     /**
      * Constructor.
@@ -141,13 +148,15 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
      * @param r Object.
      * @param maxDist Maximum distance to any descendant.
      * @param parentDist Distance from parent.
+     * @param scale Expansion scale.
      */
-    public Node(DBIDRef r, double maxDist, double parentDist) {
+    public Node(DBIDRef r, double maxDist, double parentDist, int scale) {
       this.singletons = DBIDUtil.newDistanceDBIDList();
       this.singletons.add(0., r);
       this.children = new ArrayList<>();
       this.maxDist = maxDist;
       this.parentDist = parentDist;
+      this.scale = scale;
     }
 
     /**
@@ -157,8 +166,9 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
      * @param maxDist Maximum distance to any descendant.
      * @param parentDist Distance from parent.
      * @param singletons Singletons.
+     * @param scale Expansion scale.
      */
-    public Node(DBIDRef r, double maxDist, double parentDist, DoubleDBIDList singletons) {
+    public Node(DBIDRef r, double maxDist, double parentDist, DoubleDBIDList singletons, int scale) {
       assert(!singletons.contains(r));
       this.singletons = DBIDUtil.newDistanceDBIDList(singletons.size() + 1);
       this.singletons.add(0., r);
@@ -168,6 +178,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       this.children = null;
       this.maxDist = maxDist;
       this.parentDist = parentDist;
+      this.scale = scale;
     }
 
     /**
@@ -200,18 +211,40 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    * @param ids IDs to load
    */
   public void bulkLoad(DBIDs ids) {
+    assert(root == null) : "Tree already initialized.";
+    root = buildSubtree(null, ids);
+  }
+
+  /**
+   * Build a subtree, using the first object as routing object.
+   *
+   * @param parent Parent routing object, may be {@code null}
+   * @param ids IDs to load
+   * @return Subtree root, {@code null} if empty
+   */
+  private Node buildSubtree(DBIDRef parent, DBIDs ids) {
     if(ids.size() == 0) {
-      return;
+      return null;
     }
-    assert(root == null) : "Tree already initialized.";
     DBIDIter it = ids.iter();
     DBID first = DBIDUtil.deref(it);
+    final double parentDist = parent != null ? distance(parent, first) : 0.;
     // Compute distances to all neighbors:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(ids.size() - 1);
     for(it.advance(); it.valid(); it.advance()) {
       candidates.add(distance(first, it), it);
     }
-    root = bulkConstruct(first, Integer.MAX_VALUE, 0., candidates);
+    if(candidates.size() < PARALLEL_THRESHOLD) {
+      return bulkConstruct(first, Integer.MAX_VALUE, parentDist, candidates);
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return core.invoke(new BuildTask(first, Integer.MAX_VALUE, parentDist, candidates, 0));
+    }
+    finally {
+      core.disconnect();
+    }
   }
 
   /**
@@ -220,8 +253,12 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
    * This bulk-load is slightly simpler than the one used in the original
    * cover-tree source: We do not look back into the "far" set of candidates.
    *
+   * When run inside a fork-join pool, children with at least
+   * {@link #PARALLEL_THRESHOLD} objects are built in separate tasks.
+   *
    * @param cur Current routing object
    * @param maxScale Maximum scale
+   * @param parentDist Distance from parent
    * @param elems Candidates
    * @return Root node of subtree
    */
@@ -233,7 +270,7 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, parentDist, elems);
+      return new Node(cur, max, parentDist, elems, scale);
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -244,12 +281,20 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       return bulkConstruct(cur, nextScale, parentDist, elems);
     }
     // We will have at least one other child, so build the parent:
-    Node node = new Node(cur, max, parentDist);
+    Node node = new Node(cur, max, parentDist, scale);
+    final boolean parallel = ForkJoinTask.inForkJoinPool();
+    ArrayList<BuildTask> tasks = null;
     // Routing element now is a singleton:
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
       // Add node for the routing object:
-      node.children.add(bulkConstruct(cur, nextScale, 0, elems));
+      if(parallel && elems.size() >= PARALLEL_THRESHOLD) {
+        tasks = forkChild(tasks, node, cur, nextScale, 0., elems);
+        elems = DBIDUtil.newDistanceDBIDList(); // Now owned by the task.
+      }
+      else {
+        node.children.add(bulkConstruct(cur, nextScale, 0, elems));
+      }
     }
     final double fmax = scaleToDist(nextScale);
     // Build additional cover nodes:
@@ -262,6 +307,10 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       if(elems.size() == 0) { // Singleton
         node.singletons.add(it.doubleValue(), it);
       }
+      else if(parallel && elems.size() >= PARALLEL_THRESHOLD) {
+        tasks = forkChild(tasks, node, it, nextScale, it.doubleValue(), elems);
+        elems = DBIDUtil.newDistanceDBIDList(); // Now owned by the task.
+      }
       else {
         // Build a full child node:
         node.children.add(bulkConstruct(it, nextScale, it.doubleValue(), elems));
@@ -269,6 +318,11 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       candidates.removeSwap(0);
     }
     assert(candidates.size() == 0);
+    if(tasks != null) {
+      for(BuildTask task : tasks) {
+        node.children.set(task.slot, task.join());
+      }
+    }
     // Routing object is not yet handled:
     if(curSingleton) {
       if(node.isLeaf()) {
@@ -282,6 +336,208 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     return node;
   }
 
+  /**
+   * Fork a task to build a child node.
+   *
+   * @param tasks Tasks forked so far, may be {@code null}
+   * @param node Parent node, receives a placeholder
+   * @param cur Routing object of the child
+   * @param scale Maximum scale
+   * @param parentDist Distance from parent
+   * @param elems Candidates, owned by the task afterwards
+   * @return Tasks forked
+   */
+  private ArrayList<BuildTask> forkChild(ArrayList<BuildTask> tasks, Node node, DBIDRef cur, int scale, double parentDist, ModifiableDoubleDBIDList elems) {
+    tasks = tasks != null ? tasks : new ArrayList<BuildTask>();
+    BuildTask task = new BuildTask(DBIDUtil.deref(cur), scale, parentDist, elems, node.children.size());
+    node.children.add(null); // Placeholder, until joined.
+    tasks.add(task);
+    task.fork();
+    return tasks;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    checkWritable();
+    if(root == null) {
+      root = buildSubtree(null, DBIDUtil.deref(id));
+      return;
+    }
+    Node parent = null, cur = root;
+    int slot = -1;
+    double d = distance(cur.singletons.iter(), id);
+    while(!cur.isLeaf()) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      // Descend into the closest child covering the new object:
+      final DoubleDBIDListIter it = cur.singletons.iter();
+      final double fmax = scaleToDist(cur.scale - 1);
+      int best = -1;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int i = 0, l = cur.children.size(); i < l; i++) {
+        final Node c = cur.children.get(i);
+        final double r = c.maxDist > fmax ? c.maxDist : fmax;
+        // Cannot be covered (metric assumption):
+        if(Math.abs(d - c.parentDist) > r) {
+          continue;
+        }
+        final DoubleDBIDListIter f = c.singletons.iter();
+        final double dist = DBIDUtil.equal(f, it) ? d : distance(f, id);
+        if(dist <= r && dist < bestd) {
+          best = i;
+          bestd = dist;
+        }
+      }
+      if(best < 0) { // Not covered by any child: add a new leaf.
+        cur.children.add(new Node(id, 0., d, DBIDUtil.newDistanceDBIDList(0), cur.scale - 1));
+        return;
+      }
+      parent = cur;
+      slot = best;
+      cur = cur.children.get(best);
+      d = bestd;
+    }
+    cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+    cur.singletons.add(d, id);
+    // Split overfull leaves:
+    if(cur.singletons.size() > truncate << 1 && cur.maxDist > 0) {
+      ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(cur.singletons.size() - 1);
+      DoubleDBIDListIter it = cur.singletons.iter();
+      for(it.advance(); it.valid(); it.advance()) {
+        elems.add(it.doubleValue(), it);
+      }
+      Node split = bulkConstruct(cur.singletons.iter(), Integer.MAX_VALUE, cur.parentDist, elems);
+      if(parent == null) {
+        root = split;
+      }
+      else {
+        parent.children.set(slot, split);
+      }
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    checkWritable();
+    if(root == null) {
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      insert(iter);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    checkWritable();
+    if(root == null) {
+      return false;
+    }
+    final DoubleDBIDListIter it = root.singletons.iter();
+    if(DBIDUtil.equal(it, id)) {
+      root = buildSubtree(null, collectExcept(root, id, DBIDUtil.newArray()));
+      return true;
+    }
+    return delete(root, distance(it, id), id);
+  }
+
+  /**
+   * Remove an object from a subtree.
+   *
+   * @param cur Current node
+   * @param d Distance of the object to the routing object
+   * @param id Object to remove
+   * @return {@code true} if the object was found
+   */
+  private boolean delete(Node cur, double d, DBIDRef id) {
+    if(d > cur.maxDist) {
+      return false;
+    }
+    final DoubleDBIDListIter it = cur.singletons.iter();
+    for(it.advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        cur.singletons.removeSwap(it.getOffset());
+        return true;
+      }
+    }
+    if(cur.isLeaf()) {
+      return false;
+    }
+    it.seek(0);
+    for(int i = 0, l = cur.children.size(); i < l; i++) {
+      final Node c = cur.children.get(i);
+      final DoubleDBIDListIter f = c.singletons.iter();
+      if(DBIDUtil.equal(f, id)) {
+        // Routing object removed, rebuild the subtree:
+        Node rebuilt = buildSubtree(it, collectExcept(c, id, DBIDUtil.newArray()));
+        if(rebuilt != null) {
+          cur.children.set(i, rebuilt);
+        }
+        else {
+          cur.children.remove(i);
+          if(cur.children.isEmpty()) {
+            makeLeaf(cur);
+          }
+        }
+        return true;
+      }
+      if(delete(c, DBIDUtil.equal(f, it) ? d : distance(f, id), id)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      delete(iter);
+    }
+  }
+
+  /**
+   * Turn an inner node without children into a leaf.
+   *
+   * @param node Node
+   */
+  private void makeLeaf(Node node) {
+    // The routing object was stored as an additional singleton:
+    final DoubleDBIDListIter it = node.singletons.iter();
+    for(it.advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, node.singletons.iter())) {
+        node.singletons.removeSwap(it.getOffset());
+        break;
+      }
+    }
+    node.children = null; // First in leaf is enough.
+  }
+
+  /**
+   * Collect all objects stored in a subtree.
+   *
+   * @param cur Subtree root
+   * @param except Object to skip
+   * @param collect Output list
+   * @return Output list
+   */
+  private ArrayModifiableDBIDs collectExcept(Node cur, DBIDRef except, ArrayModifiableDBIDs collect) {
+    final DoubleDBIDListIter it = cur.singletons.iter();
+    if(cur.isLeaf() && !DBIDUtil.equal(it, except)) {
+      collect.add(it);
+    }
+    for(it.advance(); it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(it, except)) {
+        collect.add(it);
+      }
+    }
+    if(!cur.isLeaf()) {
+      for(Node c : cur.children) {
+        collectExcept(c, except, collect);
+      }
+    }
+    return collect;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -356,6 +612,9 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       while(!open.isEmpty()) {
@@ -418,6 +677,9 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
@@ -474,6 +736,67 @@ public class CoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>,
     }
   }
 
+  /**
+   * Task to build a subtree.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BuildTask extends RecursiveTask<Node> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Routing object.
+     */
+    private final DBID cur;
+
+    /**
+     * Maximum scale.
+     */
+    private final int scale;
+
+    /**
+     * Distance from parent.
+     */
+    private final double parentDist;
+
+    /**
+     * Candidates.
+     */
+    private final ModifiableDoubleDBIDList elems;
+
+    /**
+     * Position in the parents child list.
+     */
+    final int slot;
+
+    /**
+     * Constructor.
+     *
+     * @param cur Routing object
+     * @param scale Maximum scale
+     * @param parentDist Distance from parent
+     * @param elems Candidates
+     * @param slot Position in the parents child list
+     */
+    BuildTask(DBID cur, int scale, double parentDist, ModifiableDoubleDBIDList elems, int slot) {
+      this.cur = cur;
+      this.scale = scale;
+      this.parentDist = parentDist;
+      this.elems = elems;
+      this.slot = slot;
+    }
+
+    @Override
+    protected Node compute() {
+      return bulkConstruct(cur, scale, parentDist, elems);
+    }
+  }
+
   /**
    * Index factory.
    *
@@ -24,9 +24,12 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
  */
 
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -44,11 +47,13 @@ import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
 
 /**
@@ -68,7 +73,9 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * In Proc. 23rd International Conference on Machine Learning (ICML).
  * </p>
  *
- * TODO: allow insertions and removals, as in the original publication.
+ * Large subtrees are bulk-loaded in parallel. Objects can be inserted and
+ * removed afterwards; removing a routing object rebuilds the subtree it routes.
+ * Modifications must not run concurrently with queries.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -76,7 +83,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
  * @apiviz.has CoverTreeRangeQuery
  * @apiviz.has CoverTreeKNNQuery
  */
-public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O> {
+public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
   /**
    * Class logger.
    */
@@ -122,17 +129,24 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
      */
     ArrayList<Node> children;
 
+    /**
+     * Expansion scale.
+     */
+    int scale;
+
     /**
      * Constructor.
      *
      * @param r Object.
      * @param maxDist Maximum distance to any descendant.
+     * @param scale Expansion scale.
      */
-    public Node(DBIDRef r, double maxDist) {
+    public Node(DBIDRef r, double maxDist, int scale) {
       this.singletons = DBIDUtil.newArray();
       this.singletons.add(r);
       this.children = new ArrayList<>();
       this.maxDist = maxDist;
+      this.scale = scale;
     }
 
     /**
@@ -141,14 +155,16 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
      * @param r Object.
      * @param maxDist Maximum distance to any descendant.
      * @param singletons Singletons.
+     * @param scale Expansion scale.
      */
-    public Node(DBIDRef r, double maxDist, DoubleDBIDList singletons) {
+    public Node(DBIDRef r, double maxDist, DoubleDBIDList singletons, int scale) {
       assert(!singletons.contains(r));
       this.singletons = DBIDUtil.newArray(singletons.size() + 1);
       this.singletons.add(r);
       this.singletons.addDBIDs(singletons);
       this.children = null;
       this.maxDist = maxDist;
+      this.scale = scale;
     }
 
     /**
@@ -181,10 +197,20 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
    * @param ids IDs to load
    */
   public void bulkLoad(DBIDs ids) {
+    assert(root == null) : "Tree already initialized.";
+    root = buildSubtree(ids);
+  }
+
+  /**
+   * Build a subtree, using the first object as routing object.
+   *
+   * @param ids IDs to load
+   * @return Subtree root, {@code null} if empty
+   */
+  private Node buildSubtree(DBIDs ids) {
     if(ids.size() == 0) {
-      return;
+      return null;
     }
-    assert(root == null) : "Tree already initialized.";
     DBIDIter it = ids.iter();
     DBID first = DBIDUtil.deref(it);
     // Compute distances to all neighbors:
@@ -192,7 +218,17 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     for(it.advance(); it.valid(); it.advance()) {
       candidates.add(distance(first, it), it);
     }
-    root = bulkConstruct(first, Integer.MAX_VALUE, candidates);
+    if(candidates.size() < PARALLEL_THRESHOLD) {
+      return bulkConstruct(first, Integer.MAX_VALUE, candidates);
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return core.invoke(new BuildTask(first, Integer.MAX_VALUE, candidates, 0));
+    }
+    finally {
+      core.disconnect();
+    }
   }
 
   /**
@@ -201,6 +237,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
    * This bulk-load is slightly simpler than the one used in the original
    * cover-tree source: We do not look back into the "far" set of candidates.
    *
+   * When run inside a fork-join pool, children with at least
+   * {@link #PARALLEL_THRESHOLD} objects are built in separate tasks.
+   *
    * @param cur Current routing object
    * @param maxScale Maximum scale
    * @param elems Candidates
@@ -214,7 +253,7 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     // Leaf node, because points coincide, we are too deep, or have too few
     // elements remaining:
     if(max <= 0 || scale <= scaleBottom || elems.size() < truncate) {
-      return new Node(cur, max, elems);
+      return new Node(cur, max, elems, scale);
     }
     // Find neighbors in the cover of the current object:
     ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
@@ -225,12 +264,20 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       return bulkConstruct(cur, nextScale, elems);
     }
     // We will have at least one other child, so build the parent:
-    Node node = new Node(cur, max);
+    Node node = new Node(cur, max, scale);
+    final boolean parallel = ForkJoinTask.inForkJoinPool();
+    ArrayList<BuildTask> tasks = null;
     // Routing element now is a singleton:
     final boolean curSingleton = elems.size() == 0;
     if(!curSingleton) {
       // Add node for the routing object:
-      node.children.add(bulkConstruct(cur, nextScale, elems));
+      if(parallel && elems.size() >= PARALLEL_THRESHOLD) {
+        tasks = forkChild(tasks, node, cur, nextScale, elems);
+        elems = DBIDUtil.newDistanceDBIDList(); // Now owned by the task.
+      }
+      else {
+        node.children.add(bulkConstruct(cur, nextScale, elems));
+      }
     }
     final double fmax = scaleToDist(nextScale);
     // Build additional cover nodes:
@@ -243,6 +290,10 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       if(elems.size() == 0) { // Singleton
         node.singletons.add(it);
       }
+      else if(parallel && elems.size() >= PARALLEL_THRESHOLD) {
+        tasks = forkChild(tasks, node, it, nextScale, elems);
+        elems = DBIDUtil.newDistanceDBIDList(); // Now owned by the task.
+      }
       else {
         // Build a full child node:
         node.children.add(bulkConstruct(it, nextScale, elems));
@@ -250,6 +301,11 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       candidates.removeSwap(0);
     }
     assert(candidates.size() == 0);
+    if(tasks != null) {
+      for(BuildTask task : tasks) {
+        node.children.set(task.slot, task.join());
+      }
+    }
     // Routing object is not yet handled:
     if(curSingleton) {
       if(node.isLeaf()) {
@@ -263,6 +319,214 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     return node;
   }
 
+  /**
+   * Fork a task to build a child node.
+   *
+   * @param tasks Tasks forked so far, may be {@code null}
+   * @param node Parent node, receives a placeholder
+   * @param cur Routing object of the child
+   * @param scale Maximum scale
+   * @param elems Candidates, owned by the task afterwards
+   * @return Tasks forked
+   */
+  private ArrayList<BuildTask> forkChild(ArrayList<BuildTask> tasks, Node node, DBIDRef cur, int scale, ModifiableDoubleDBIDList elems) {
+    tasks = tasks != null ? tasks : new ArrayList<BuildTask>();
+    BuildTask task = new BuildTask(DBIDUtil.deref(cur), scale, elems, node.children.size());
+    node.children.add(null); // Placeholder, until joined.
+    tasks.add(task);
+    task.fork();
+    return tasks;
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    checkWritable();
+    if(root == null) {
+      root = buildSubtree(DBIDUtil.deref(id));
+      return;
+    }
+    Node parent = null, cur = root;
+    int slot = -1;
+    double d = distance(cur.singletons.iter(), id);
+    while(!cur.isLeaf()) {
+      cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+      // Descend into the closest child covering the new object:
+      final DBIDIter it = cur.singletons.iter();
+      final double fmax = scaleToDist(cur.scale - 1);
+      int best = -1;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int i = 0, l = cur.children.size(); i < l; i++) {
+        final Node c = cur.children.get(i);
+        final double r = c.maxDist > fmax ? c.maxDist : fmax;
+        final DBIDIter f = c.singletons.iter();
+        final double dist = DBIDUtil.equal(f, it) ? d : distance(f, id);
+        if(dist <= r && dist < bestd) {
+          best = i;
+          bestd = dist;
+        }
+      }
+      if(best < 0) { // Not covered by any child: add a new leaf.
+        cur.children.add(new Node(id, 0., DBIDUtil.newDistanceDBIDList(0), cur.scale - 1));
+        return;
+      }
+      parent = cur;
+      slot = best;
+      cur = cur.children.get(best);
+      d = bestd;
+    }
+    cur.maxDist = d > cur.maxDist ? d : cur.maxDist;
+    cur.singletons.add(id);
+    // Split overfull leaves:
+    if(cur.singletons.size() > truncate << 1 && cur.maxDist > 0) {
+      final DBIDIter it = cur.singletons.iter();
+      ModifiableDoubleDBIDList elems = DBIDUtil.newDistanceDBIDList(cur.singletons.size() - 1);
+      for(DBIDIter it2 = cur.singletons.iter().advance(); it2.valid(); it2.advance()) {
+        elems.add(distance(it, it2), it2);
+      }
+      Node split = bulkConstruct(it, Integer.MAX_VALUE, elems);
+      if(parent == null) {
+        root = split;
+      }
+      else {
+        parent.children.set(slot, split);
+      }
+    }
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    checkWritable();
+    if(root == null) {
+      bulkLoad(ids);
+      return;
+    }
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      insert(iter);
+    }
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    checkWritable();
+    if(root == null) {
+      return false;
+    }
+    final DBIDIter it = root.singletons.iter();
+    if(DBIDUtil.equal(it, id)) {
+      root = buildSubtree(collectExcept(root, id, DBIDUtil.newArray()));
+      return true;
+    }
+    return delete(root, distance(it, id), id);
+  }
+
+  /**
+   * Remove an object from a subtree.
+   *
+   * @param cur Current node
+   * @param d Distance of the object to the routing object
+   * @param id Object to remove
+   * @return {@code true} if the object was found
+   */
+  private boolean delete(Node cur, double d, DBIDRef id) {
+    if(d > cur.maxDist) {
+      return false;
+    }
+    for(DBIDArrayIter it = cur.singletons.iter().advance(); it.valid(); it.advance()) {
+      if(DBIDUtil.equal(it, id)) {
+        removeSingleton(cur, it.getOffset());
+        return true;
+      }
+    }
+    if(cur.isLeaf()) {
+      return false;
+    }
+    final DBIDIter it = cur.singletons.iter();
+    for(int i = 0, l = cur.children.size(); i < l; i++) {
+      final Node c = cur.children.get(i);
+      final DBIDIter f = c.singletons.iter();
+      if(DBIDUtil.equal(f, id)) {
+        // Routing object removed, rebuild the subtree:
+        Node rebuilt = buildSubtree(collectExcept(c, id, DBIDUtil.newArray()));
+        if(rebuilt != null) {
+          cur.children.set(i, rebuilt);
+        }
+        else {
+          cur.children.remove(i);
+          if(cur.children.isEmpty()) {
+            makeLeaf(cur);
+          }
+        }
+        return true;
+      }
+      if(delete(c, DBIDUtil.equal(f, it) ? d : distance(f, id), id)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      delete(iter);
+    }
+  }
+
+  /**
+   * Turn an inner node without children into a leaf.
+   *
+   * @param node Node
+   */
+  private void makeLeaf(Node node) {
+    // The routing object was stored as an additional singleton:
+    final DBIDIter it = node.singletons.iter();
+    for(DBIDArrayIter it2 = node.singletons.iter().advance(); it2.valid(); it2.advance()) {
+      if(DBIDUtil.equal(it2, it)) {
+        removeSingleton(node, it2.getOffset());
+        break;
+      }
+    }
+    node.children = null; // First in leaf is enough.
+  }
+
+  /**
+   * Remove a singleton, replacing it with the last one.
+   *
+   * @param node Node
+   * @param off Offset of the singleton
+   */
+  private static void removeSingleton(Node node, int off) {
+    final int last = node.singletons.size() - 1;
+    node.singletons.swap(off, last);
+    node.singletons.remove(last);
+  }
+
+  /**
+   * Collect all objects stored in a subtree.
+   *
+   * @param cur Subtree root
+   * @param except Object to skip
+   * @param collect Output list
+   * @return Output list
+   */
+  private ArrayModifiableDBIDs collectExcept(Node cur, DBIDRef except, ArrayModifiableDBIDs collect) {
+    final DBIDIter it = cur.singletons.iter();
+    if(cur.isLeaf() && !DBIDUtil.equal(it, except)) {
+      collect.add(it);
+    }
+    for(it.advance(); it.valid(); it.advance()) {
+      if(!DBIDUtil.equal(it, except)) {
+        collect.add(it);
+      }
+    }
+    if(!cur.isLeaf()) {
+      for(Node c : cur.children) {
+        collectExcept(c, except, collect);
+      }
+    }
+    return collect;
+  }
+
   /**
    * Collect some statistics on the tree.
    *
@@ -336,6 +600,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
 
     @Override
     public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList ret) {
+      if(root == null) {
+        return;
+      }
       ArrayList<Node> open = new ArrayList<Node>(); // LIFO stack
       open.add(root);
       DBIDVar r = DBIDUtil.newVar();
@@ -392,6 +659,9 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
       }
 
       KNNHeap knnList = DBIDUtil.newHeap(k);
+      if(root == null) {
+        return knnList.toKNNList();
+      }
       double d_k = Double.POSITIVE_INFINITY;
 
       final DoubleObjectMinHeap<Node> pq = new DoubleObjectMinHeap<>();
@@ -443,6 +713,60 @@ public class SimplifiedCoverTree<O> extends AbstractCoverTree<O>implements Range
     }
   }
 
+  /**
+   * Task to build a subtree.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BuildTask extends RecursiveTask<Node> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Routing object.
+     */
+    private final DBID cur;
+
+    /**
+     * Maximum scale.
+     */
+    private final int scale;
+
+    /**
+     * Candidates.
+     */
+    private final ModifiableDoubleDBIDList elems;
+
+    /**
+     * Position in the parents child list.
+     */
+    final int slot;
+
+    /**
+     * Constructor.
+     *
+     * @param cur Routing object
+     * @param scale Maximum scale
+     * @param elems Candidates
+     * @param slot Position in the parents child list
+     */
+    BuildTask(DBID cur, int scale, ModifiableDoubleDBIDList elems, int slot) {
+      this.cur = cur;
+      this.scale = scale;
+      this.elems = elems;
+      this.slot = slot;
+    }
+
+    @Override
+    protected Node compute() {
+      return bulkConstruct(cur, scale, elems);
+    }
+  }
+
   /**
    * Index factory.
    *
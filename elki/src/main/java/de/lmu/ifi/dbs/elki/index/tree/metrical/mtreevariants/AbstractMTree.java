@@ -24,8 +24,10 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -39,6 +41,8 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.pairs.DoubleIntPair;
 
 /**
@@ -154,8 +158,8 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
    * @param withPreInsert if this flag is true, the preInsert method will be
    *        called before inserting the object
    */
-  // todo: implement a bulk load for M-Tree and remove this method
   public void insert(E entry, boolean withPreInsert) {
+    checkWritable();
     if(getLogger().isDebugging()) {
       getLogger().debugFine("insert " + entry.getRoutingObjectID() + "\n");
     }
@@ -200,14 +204,178 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
    * @param entries Entries to insert
    */
   public void insertAll(List<E> entries) {
+    checkWritable();
     if(!initialized && !entries.isEmpty()) {
       initialize(entries.get(0));
     }
+    if(bulkLoad(entries)) {
+      return;
+    }
     for(E entry : entries) {
       insert(entry, false);
     }
   }
 
+  /**
+   * Bulk load the tree, if enabled in the settings and the tree is empty.
+   * 
+   * The entries are recursively partitioned around randomly sampled pivots,
+   * which become the routing objects. The height of the tree is chosen first,
+   * and partitions are limited to the capacity of a subtree of the remaining
+   * height, so that the resulting tree is balanced. Every entry is assigned
+   * to its nearest pivot with remaining capacity.
+   * 
+   * @param entries Leaf entries to load
+   * @return {@code true} if the tree was bulk loaded
+   */
+  @Reference(authors = "P. Ciaccia, M. Patella", //
+  title = "Bulk loading the M-tree", //
+  booktitle = "Proc. 9th Australasian Database Conference (ADC'98)")
+  protected boolean bulkLoad(List<E> entries) {
+    if(!settings.bulkLoad || entries.isEmpty()) {
+      return false;
+    }
+    if(!initialized) {
+      initialize(entries.get(0));
+    }
+    N oldroot = getRoot();
+    if(!oldroot.isLeaf() || oldroot.getNumEntries() > 0) {
+      return false;
+    }
+    final int size = entries.size();
+    int height = 0;
+    for(long cap = leafCapacity - 1; cap < size; cap *= dirCapacity - 1) {
+      height++;
+    }
+    // The root does not have a routing object.
+    double[] dists = new double[size];
+    Arrays.fill(dists, Double.NaN);
+    N root = height == 0 ? createNewLeafNode() : createNewDirectoryNode();
+    root.setPageID(getRootID());
+    bulkFill(root, new ArrayList<>(entries), dists, height, settings.random.getSingleThreadedRandom());
+    writeNode(root);
+    E rootEntry = getRootEntry();
+    root.adjustEntry(rootEntry, rootEntry.getRoutingObjectID(), rootEntry.getParentDistance(), this);
+    if(EXTRA_INTEGRITY_CHECKS) {
+      getRoot().integrityCheck(this, getRootEntry());
+    }
+    return true;
+  }
+
+  /**
+   * Fill a node during bulk loading.
+   * 
+   * @param node Node to fill
+   * @param entries Leaf entries of the subtree
+   * @param dists Distances of the entries to the routing object of the node
+   * @param height Height of the subtree, 0 for leaves
+   * @param rnd Random generator
+   */
+  private void bulkFill(N node, List<E> entries, double[] dists, int height, Random rnd) {
+    final int size = entries.size();
+    if(height == 0) {
+      for(int i = 0; i < size; i++) {
+        final E entry = entries.get(i);
+        entry.setParentDistance(dists[i]);
+        node.addLeafEntry(entry);
+      }
+      return;
+    }
+    final int leafcap = leafCapacity - 1, dircap = dirCapacity - 1;
+    long cap = leafcap; // Capacity of a child subtree.
+    for(int h = 1; h < height; h++) {
+      cap *= dircap;
+    }
+    // Number of partitions: enough for the capacity, and spread out
+    // well enough to fill the leaves.
+    final int numpart = (int) Math.min(dircap, Math.max((size + cap - 1) / cap, (size + leafcap - 1) / leafcap));
+    // Sample the pivots:
+    int[] order = new int[size];
+    for(int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    int[] pivots = new int[numpart];
+    for(int j = 0; j < numpart; j++) {
+      final int r = j + rnd.nextInt(size - j);
+      final int tmp = order[r];
+      order[r] = order[j];
+      order[j] = tmp;
+      pivots[j] = tmp;
+    }
+    // Assign to nearest pivots:
+    int[] assign = new int[size], counts = new int[numpart];
+    double[] pdists = new double[size];
+    for(int i = 0; i < size; i++) {
+      final DBID id = entries.get(i).getRoutingObjectID();
+      int best = 0;
+      double bestd = Double.POSITIVE_INFINITY;
+      for(int j = 0; j < numpart; j++) {
+        final double d = pivots[j] == i ? 0. : distance(entries.get(pivots[j]).getRoutingObjectID(), id);
+        if(d < bestd) {
+          bestd = d;
+          best = j;
+        }
+      }
+      assign[i] = best;
+      pdists[i] = bestd;
+      counts[best]++;
+    }
+    // Move the farthest members of overfull partitions:
+    for(int j = 0; j < numpart; j++) {
+      if(counts[j] <= cap) {
+        continue;
+      }
+      int[] members = new int[counts[j]];
+      double[] mdists = new double[counts[j]];
+      for(int i = 0, k = 0; i < size; i++) {
+        if(assign[i] == j) {
+          mdists[k] = pdists[i];
+          members[k++] = i;
+        }
+      }
+      DoubleIntegerArrayQuickSort.sortReverse(mdists, members, members.length);
+      for(int k = 0; counts[j] > cap; k++) {
+        final int i = members[k];
+        final DBID id = entries.get(i).getRoutingObjectID();
+        counts[j]--;
+        int best = -1;
+        double bestd = Double.POSITIVE_INFINITY;
+        for(int j2 = 0; j2 < numpart; j2++) {
+          if(j2 == j || counts[j2] >= cap) {
+            continue;
+          }
+          final double d = distance(entries.get(pivots[j2]).getRoutingObjectID(), id);
+          if(d < bestd || best < 0) {
+            bestd = d;
+            best = j2;
+          }
+        }
+        assign[i] = best;
+        pdists[i] = bestd;
+        counts[best]++;
+      }
+    }
+    // Build the partitions:
+    for(int j = 0; j < numpart; j++) {
+      if(counts[j] == 0) {
+        continue;
+      }
+      List<E> part = new ArrayList<>(counts[j]);
+      double[] partdists = new double[counts[j]];
+      for(int i = 0; i < size; i++) {
+        if(assign[i] == j) {
+          partdists[part.size()] = pdists[i];
+          part.add(entries.get(i));
+        }
+      }
+      N child = height == 1 ? createNewLeafNode() : createNewDirectoryNode();
+      bulkFill(child, part, partdists, height - 1, rnd);
+      writeNode(child);
+      final double pd = dists[pivots[j]];
+      node.addDirectoryEntry(createNewDirectoryEntry(child, entries.get(pivots[j]).getRoutingObjectID(), pd == pd ? pd : 0.));
+    }
+  }
+
   @Override
   protected final void createEmptyRoot(E exampleLeaf) {
     N root = createNewLeafNode();
@@ -519,9 +687,9 @@ public abstract class AbstractMTree<O, N extends AbstractMTreeNode<O, N, E>, E e
     public Statistics() {
       super();
       Logging log = getLogger();
-      distanceCalcs = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".rangequeries") : null;
     }
 
     /**
@@ -35,7 +35,9 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.MT
 import de.lmu.ifi.dbs.elki.persistent.PageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
 
 /**
  * Abstract factory for various MTrees
@@ -112,6 +114,22 @@ public abstract class AbstractMTreeFactory<O, N extends AbstractMTreeNode<O, N,
      */
     public static final OptionID INSERT_STRATEGY_ID = new OptionID("mtree.insert", "Insertion strategy to use for constructing the M-tree.");
 
+    /**
+     * Flag to bulk load the tree.
+     * <p>
+     * Key: {@code -mtree.bulk}
+     * </p>
+     */
+    public static final OptionID BULK_ID = new OptionID("mtree.bulk", "Bulk load the tree by recursive partitioning around sampled pivots, instead of inserting objects one at a time.");
+
+    /**
+     * Random generator for sampling the bulk load pivots.
+     * <p>
+     * Key: {@code -mtree.bulk.seed}
+     * </p>
+     */
+    public static final OptionID SEED_ID = new OptionID("mtree.bulk.seed", "Random generator seed for sampling the bulk load pivots.");
+
     /**
      * Tree settings.
      */
@@ -133,6 +151,16 @@ public abstract class AbstractMTreeFactory<O, N extends AbstractMTreeNode<O, N,
       if (config.grab(insertStrategyP)) {
         settings.insertStrategy = insertStrategyP.instantiateClass(config);
       }
+      Flag bulkF = new Flag(BULK_ID);
+      if(config.grab(bulkF)) {
+        settings.bulkLoad = bulkF.isTrue();
+      }
+      if(settings.bulkLoad) {
+        RandomParameter randomP = new RandomParameter(SEED_ID);
+        if(config.grab(randomP)) {
+          settings.random = randomP.getValue();
+        }
+      }
     }
 
     abstract protected S makeSettings();
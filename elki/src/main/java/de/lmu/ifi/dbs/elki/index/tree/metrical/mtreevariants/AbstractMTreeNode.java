@@ -23,10 +23,14 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.logging.Logger;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.index.tree.AbstractNode;
+import de.lmu.ifi.dbs.elki.index.tree.Entry;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.InconsistentDataException;
 
@@ -185,4 +189,51 @@ public abstract class AbstractMTreeNode<O, N extends AbstractMTreeNode<O, N, E>,
       throw new InconsistentDataException("pcr < pd + cr \n" + parentEntry.getCoveringRadius() + " < " + parentDistance + " + " + entry.getCoveringRadius() + "in node " + parent.getPageID() + " at index " + index + " (child " + entry + "):\n" + "dist(" + entry.getRoutingObjectID() + " - " + parentEntry.getRoutingObjectID() + ")" + " >  cr(" + entry + ")");
     }
   }
+
+  /**
+   * Create an empty leaf entry, to be restored from a page.
+   * 
+   * @return Leaf entry
+   */
+  protected abstract E createEmptyLeafEntry();
+
+  /**
+   * Create an empty directory entry, to be restored from a page.
+   * 
+   * @return Directory entry
+   */
+  protected abstract E createEmptyDirectoryEntry();
+
+  /**
+   * Calls the super method and writes the capacity and the entries of this
+   * node to the specified stream.
+   */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeInt(entries.length);
+    for(int i = 0; i < numEntries; i++) {
+      entries[i].writeExternal(out);
+    }
+  }
+
+  /**
+   * Reads the capacity and the entries of this node from the specified
+   * stream.
+   * 
+   * @param in the stream to read data from in order to restore the object
+   * @throws java.io.IOException if I/O errors occur
+   * @throws ClassNotFoundException If the class for an object being restored
+   *         cannot be found.
+   */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    entries = new Entry[in.readInt()];
+    for(int i = 0; i < numEntries; i++) {
+      E entry = isLeaf ? createEmptyLeafEntry() : createEmptyDirectoryEntry();
+      entry.readExternal(in);
+      entries[i] = entry;
+    }
+  }
 }
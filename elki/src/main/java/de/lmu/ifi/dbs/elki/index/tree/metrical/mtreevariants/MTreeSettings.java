@@ -26,6 +26,7 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.insert.MTreeInsert;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.strategies.split.MTreeSplit;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 
 /**
  * Class to store the MTree settings.
@@ -52,4 +53,14 @@ public class MTreeSettings<O, N extends AbstractMTreeNode<O, N, E>, E extends MT
    * Insertion strategy.
    */
   protected MTreeInsert<O, N, E> insertStrategy;
+
+  /**
+   * Bulk load the tree, instead of inserting objects one at a time.
+   */
+  protected boolean bulkLoad = false;
+
+  /**
+   * Random generator for sampling the bulk load pivots.
+   */
+  protected RandomFactory random = RandomFactory.DEFAULT;
 }
@@ -83,11 +83,15 @@ public abstract class AbstractMkTreeUnified<O, N extends AbstractMTreeNode<O, N,
 
     ModifiableDBIDs ids = DBIDUtil.newArray(entries.size());
 
-    // insert sequentially
+    // collect the ids
     for (E entry : entries) {
       ids.add(entry.getRoutingObjectID());
-      // insert the object
-      super.insert(entry, false);
+    }
+    if (!bulkLoad(entries)) {
+      for (E entry : entries) {
+        // insert the object
+        super.insert(entry, false);
+      }
     }
 
     // do batch nn
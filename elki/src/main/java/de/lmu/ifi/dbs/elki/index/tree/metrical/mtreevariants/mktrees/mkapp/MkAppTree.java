@@ -115,11 +115,15 @@ public abstract class MkAppTree<O> extends AbstractMkTree<O, MkAppTreeNode<O>, M
 
     ModifiableDBIDs ids = DBIDUtil.newArray(entries.size());
 
-    // insert
+    // collect the ids
     for(MkAppEntry entry : entries) {
       ids.add(entry.getRoutingObjectID());
-      // insert the object
-      super.insert(entry, false);
+    }
+    if(!bulkLoad(entries)) {
+      for(MkAppEntry entry : entries) {
+        // insert the object
+        super.insert(entry, false);
+      }
     }
 
     // do batch nn
@@ -129,4 +129,14 @@ class MkAppTreeNode<O> extends AbstractMTreeNode<O, MkAppTreeNode<O>, MkAppEntry
 
     }
   }
-}
\ No newline at end of file
+
+  @Override
+  protected MkAppEntry createEmptyLeafEntry() {
+    return new MkAppLeafEntry();
+  }
+
+  @Override
+  protected MkAppEntry createEmptyDirectoryEntry() {
+    return new MkAppDirectoryEntry();
+  }
+}
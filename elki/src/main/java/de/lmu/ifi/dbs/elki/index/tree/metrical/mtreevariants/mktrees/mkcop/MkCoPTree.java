@@ -119,11 +119,15 @@ public abstract class MkCoPTree<O> extends AbstractMkTree<O, MkCoPTreeNode<O>, M
 
     ModifiableDBIDs ids = DBIDUtil.newArray(entries.size());
 
-    // insert
+    // collect the ids
     for(MkCoPEntry entry : entries) {
       ids.add(entry.getRoutingObjectID());
-      // insert the object
-      super.insert(entry, false);
+    }
+    if(!bulkLoad(entries)) {
+      for(MkCoPEntry entry : entries) {
+        // insert the object
+        super.insert(entry, false);
+      }
     }
 
     // perform nearest neighbor queries
@@ -162,4 +162,14 @@ class MkCoPTreeNode<O> extends AbstractMTreeNode<O, MkCoPTreeNode<O>, MkCoPEntry
       throw new RuntimeException("Wrong conservative approximation in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + soll + ",\n ist: " + ist);
     }
   }
+
+  @Override
+  protected MkCoPEntry createEmptyLeafEntry() {
+    return new MkCoPLeafEntry();
+  }
+
+  @Override
+  protected MkCoPEntry createEmptyDirectoryEntry() {
+    return new MkCoPDirectoryEntry();
+  }
 }
@@ -103,4 +103,14 @@ class MkMaxTreeNode<O> extends AbstractMTreeNode<O, MkMaxTreeNode<O>, MkMaxEntry
       throw new RuntimeException("Wrong knnDistance in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + knnDistance + ",\n ist: " + entry.getKnnDistance());
     }
   }
+
+  @Override
+  protected MkMaxEntry createEmptyLeafEntry() {
+    return new MkMaxLeafEntry();
+  }
+
+  @Override
+  protected MkMaxEntry createEmptyDirectoryEntry() {
+    return new MkMaxDirectoryEntry();
+  }
 }
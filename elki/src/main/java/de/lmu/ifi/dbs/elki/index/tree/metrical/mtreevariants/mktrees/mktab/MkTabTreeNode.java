@@ -107,4 +107,14 @@ class MkTabTreeNode<O> extends AbstractMTreeNode<O, MkTabTreeNode<O>, MkTabEntry
       throw new RuntimeException("Wrong knnDistances in node " + parent.getPageID() + " at index " + index + " (child " + entry + ")" + "\nsoll: " + soll + ",\n ist: " + ist);
     }
   }
+
+  @Override
+  protected MkTabEntry createEmptyLeafEntry() {
+    return new MkTabLeafEntry();
+  }
+
+  @Override
+  protected MkTabEntry createEmptyDirectoryEntry() {
+    return new MkTabDirectoryEntry();
+  }
 }
@@ -42,11 +42,13 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeSettings;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MTreeQueryUtil;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.NotImplementedException;
 import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 
@@ -154,10 +156,46 @@ public class MTreeIndex<O> extends MTree<O>implements RangeIndex<O>, KNNIndex<O>
     return new MTreeLeafEntry(id, parentDistance);
   }
 
+  @Override
+  protected TreeIndexHeader createHeader() {
+    final int distanceHash = getDistanceFunction().getClass().getName().hashCode();
+    return new MTreeIndexHeader(getPageSize(), dirCapacity, leafCapacity, dirMinimum, leafMinimum, relation.size(), distanceHash, RelationUtil.contentHash(relation, distanceHash, true));
+  }
+
+  /**
+   * Verify that a reopened page file was built on the same data with the same
+   * distance function.
+   */
+  @Override
+  public void initializeFromFile(TreeIndexHeader header, PageFile<MTreeNode<O>> file) {
+    if(!(header instanceof MTreeIndexHeader)) {
+      throw new AbortException("Page file does not contain an M-tree header.");
+    }
+    MTreeIndexHeader mheader = (MTreeIndexHeader) header;
+    final int distanceHash = getDistanceFunction().getClass().getName().hashCode();
+    if(mheader.getRelationSize() != relation.size()) {
+      throw new AbortException("M-tree page file was built on " + mheader.getRelationSize() + " objects, but the relation has " + relation.size() + ". Delete the file to rebuild the index.");
+    }
+    if(mheader.getDistanceHash() != distanceHash) {
+      throw new AbortException("M-tree page file was built with a different distance function than " + getDistanceFunction().getClass().getName() + ". Delete the file to rebuild the index.");
+    }
+    if(mheader.getContentHash() != RelationUtil.contentHash(relation, distanceHash, true)) {
+      throw new AbortException("M-tree page file was built on different objects or DBIDs. Delete the file to rebuild the index.");
+    }
+    super.initializeFromFile(header, file);
+  }
+
+  /**
+   * Initialize the index. If the page file already contains a tree, it is
+   * reused without rebuilding; the relation size, DBIDs, object contents and
+   * distance function must match those stored in the file header.
+   */
   @Override
   public void initialize() {
     super.initialize();
-    insertAll(relation.getDBIDs());
+    if(!initialized) {
+      insertAll(relation.getDBIDs());
+    }
   }
 
   @Override
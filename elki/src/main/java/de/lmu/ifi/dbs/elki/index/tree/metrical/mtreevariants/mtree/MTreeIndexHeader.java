@@ -0,0 +1,135 @@
+package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+
+/**
+ * Header of a persistent {@link MTreeIndex}, which additionally stores a
+ * fingerprint of the indexed data, to detect when a page file is reopened on
+ * different data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MTreeIndexHeader extends TreeIndexHeader {
+  /**
+   * The size of the additional header fields in bytes: 4 bytes each for
+   * {@link #relationSize} and {@link #distanceHash}, 8 bytes for
+   * {@link #contentHash}.
+   */
+  private static final int SIZE = 16;
+
+  /**
+   * Number of indexed objects.
+   */
+  private int relationSize;
+
+  /**
+   * Hash code of the distance function class name.
+   */
+  private int distanceHash;
+
+  /**
+   * Hash of the indexed DBIDs and objects.
+   */
+  private long contentHash;
+
+  /**
+   * Empty constructor for serialization.
+   */
+  public MTreeIndexHeader() {
+    super();
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the size of a page in bytes
+   * @param dirCapacity the maximum number of entries in a directory node
+   * @param leafCapacity the maximum number of entries in a leaf node
+   * @param dirMinimum the minimum number of entries in a directory node
+   * @param leafMinimum the minimum number of entries in a leaf node
+   * @param relationSize Number of indexed objects
+   * @param distanceHash Hash code of the distance function class name
+   * @param contentHash Hash of the indexed DBIDs and objects
+   */
+  public MTreeIndexHeader(int pageSize, int dirCapacity, int leafCapacity, int dirMinimum, int leafMinimum, int relationSize, int distanceHash, long contentHash) {
+    super(pageSize, dirCapacity, leafCapacity, dirMinimum, leafMinimum);
+    this.relationSize = relationSize;
+    this.distanceHash = distanceHash;
+    this.contentHash = contentHash;
+  }
+
+  @Override
+  public void readHeader(RandomAccessFile file) throws IOException {
+    super.readHeader(file);
+    this.relationSize = file.readInt();
+    this.distanceHash = file.readInt();
+    this.contentHash = file.readLong();
+  }
+
+  @Override
+  public void writeHeader(RandomAccessFile file) throws IOException {
+    super.writeHeader(file);
+    file.writeInt(this.relationSize);
+    file.writeInt(this.distanceHash);
+    file.writeLong(this.contentHash);
+  }
+
+  /**
+   * Get the number of indexed objects.
+   *
+   * @return Relation size
+   */
+  public int getRelationSize() {
+    return relationSize;
+  }
+
+  /**
+   * Get the hash code of the distance function class name.
+   *
+   * @return Hash code
+   */
+  public int getDistanceHash() {
+    return distanceHash;
+  }
+
+  /**
+   * Get the hash of the indexed DBIDs and objects.
+   *
+   * @return Content hash
+   */
+  public long getContentHash() {
+    return contentHash;
+  }
+
+  @Override
+  public int size() {
+    return super.size() + SIZE;
+  }
+}
@@ -24,7 +24,9 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
  */
 
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeNode;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeLeafEntry;
 
 /**
  * Represents a node in an M-Tree.
@@ -56,4 +58,14 @@ public class MTreeNode<O> extends AbstractMTreeNode<O, MTreeNode<O>, MTreeEntry>
   public MTreeNode(int capacity, boolean isLeaf) {
     super(capacity, isLeaf, MTreeEntry.class);
   }
-}
\ No newline at end of file
+
+  @Override
+  protected MTreeEntry createEmptyLeafEntry() {
+    return new MTreeLeafEntry();
+  }
+
+  @Override
+  protected MTreeEntry createEmptyDirectoryEntry() {
+    return new MTreeDirectoryEntry();
+  }
+}
@@ -0,0 +1,867 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListMIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.Norm;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SparseLPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Dynamic in-memory k-d-tree, as a forest of static trees using the
+ * logarithmic method: each tree is serialized into a
+ * {@link ModifiableDoubleDBIDList} as in {@link SmallMemoryKDTree}, and tree
+ * sizes at least double, so there are at most logarithmically many trees.
+ * Insertions build a new tree, merging it with all trees that are not larger.
+ * Deletions are recorded and skipped by queries until half of the entries are
+ * deleted, then the forest is rebuilt.
+ *
+ * Large trees are built in parallel, partitioning subtrees with quickselect.
+ *
+ * If an approximation factor or a leaf limit is configured, kNN queries are
+ * approximate unless {@link DatabaseQuery#HINT_EXACT} is given. Range queries
+ * are always exact.
+ *
+ * Modifications must not run concurrently with queries.
+ *
+ * Reference:
+ * <p>
+ * J. L. Bentley, J. B. Saxe<br />
+ * Decomposable searching problems I: Static-to-dynamic transformation<br />
+ * Journal of Algorithms 1(4)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KDTreeKNNQuery
+ * @apiviz.has KDTreeRangeQuery
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "J. L. Bentley, J. B. Saxe", //
+title = "Decomposable searching problems I: Static-to-dynamic transformation", //
+booktitle = "Journal of Algorithms 1(4)", //
+url = "http://dx.doi.org/10.1016/0196-6774(80)90015-2")
+public class DynamicKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O>, DynamicIndex {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(DynamicKDTree.class);
+
+  /**
+   * Minimum subtree size to build in a separate task.
+   */
+  private static final int PARALLEL_THRESHOLD = 2048;
+
+  /**
+   * The static trees, each as a sorted array, by decreasing size.
+   */
+  ArrayList<ModifiableDoubleDBIDList> trees = new ArrayList<>();
+
+  /**
+   * Deleted objects still contained in the trees.
+   */
+  HashSetModifiableDBIDs deleted = DBIDUtil.newHashSet();
+
+  /**
+   * Number of indexed (not deleted) objects.
+   */
+  int size = 0;
+
+  /**
+   * The number of dimensions.
+   */
+  int dims = -1;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  int leafsize;
+
+  /**
+   * Approximation factor for kNN queries, 0 for exact.
+   */
+  double epsilon;
+
+  /**
+   * Maximum number of leaves to visit in kNN queries, 0 for unlimited.
+   */
+  int maxleaves;
+
+  /**
+   * Counter for comparisons.
+   */
+  final Counter objaccess;
+
+  /**
+   * Counter for distance computations.
+   */
+  final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   * @param epsilon Approximation factor for kNN queries, 0 for exact
+   * @param maxleaves Maximum number of leaves to visit, 0 for unlimited
+   */
+  public DynamicKDTree(Relation<O> relation, int leafsize, double epsilon, int maxleaves) {
+    super(relation);
+    this.leafsize = leafsize;
+    this.epsilon = epsilon;
+    this.maxleaves = maxleaves;
+    assert(leafsize >= 1);
+    if(LOG.isStatistics()) {
+      String prefix = this.getClass().getName();
+      this.objaccess = LOG.newConcurrentCounter(prefix + ".objaccess");
+      this.distcalc = LOG.newConcurrentCounter(prefix + ".distancecalcs");
+    }
+    else {
+      this.objaccess = null;
+      this.distcalc = null;
+    }
+  }
+
+  @Override
+  public void initialize() {
+    dims = RelationUtil.dimensionality(relation);
+    insertAll(relation.getDBIDs());
+  }
+
+  @Override
+  public void insert(DBIDRef id) {
+    insertAll(DBIDUtil.deref(id));
+  }
+
+  @Override
+  public void insertAll(DBIDs ids) {
+    ModifiableDoubleDBIDList tree = DBIDUtil.newDistanceDBIDList(ids.size());
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      // Deleted objects are still in the trees, and become visible again.
+      if(!deleted.remove(it)) {
+        tree.add(Double.NaN, it);
+      }
+      ++size;
+    }
+    if(tree.size() == 0) {
+      return;
+    }
+    if(dims < 0) {
+      dims = relation.get(tree.iter()).getDimensionality();
+    }
+    // Merge all trees that are not larger than the new tree:
+    for(int last = trees.size() - 1; last >= 0 && trees.get(last).size() <= tree.size(); last--) {
+      ModifiableDoubleDBIDList small = trees.remove(last);
+      for(DBIDIter it = small.iter(); it.valid(); it.advance()) {
+        if(!deleted.remove(it)) {
+          tree.add(Double.NaN, it);
+        }
+      }
+    }
+    buildTree(tree);
+    trees.add(tree);
+  }
+
+  @Override
+  public boolean delete(DBIDRef id) {
+    if(deleted.contains(id)) {
+      return false;
+    }
+    final O obj = relation.get(id);
+    boolean found = false;
+    for(ModifiableDoubleDBIDList tree : trees) {
+      if(contains(tree.iter(), 0, tree.size(), 0, obj, id)) {
+        found = true;
+        break;
+      }
+    }
+    if(!found) {
+      return false;
+    }
+    deleted.add(id);
+    --size;
+    // Rebuild when half of the entries are deleted:
+    if(deleted.size() > size) {
+      ModifiableDoubleDBIDList all = DBIDUtil.newDistanceDBIDList(size);
+      for(ModifiableDoubleDBIDList tree : trees) {
+        for(DBIDIter it = tree.iter(); it.valid(); it.advance()) {
+          if(!deleted.contains(it)) {
+            all.add(Double.NaN, it);
+          }
+        }
+      }
+      trees.clear();
+      deleted.clear();
+      if(all.size() > 0) {
+        buildTree(all);
+        trees.add(all);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void deleteAll(DBIDs ids) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      delete(it);
+    }
+  }
+
+  /**
+   * Find an object in a tree, by following its coordinates.
+   *
+   * @param iter Iterator
+   * @param left Subtree begin
+   * @param right Subtree end (exclusive)
+   * @param axis Current splitting axis
+   * @param obj Object
+   * @param id Object id
+   * @return {@code true} when found
+   */
+  private boolean contains(DoubleDBIDListIter iter, int left, int right, int axis, O obj, DBIDRef id) {
+    if(right - left <= leafsize) {
+      for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+        if(DBIDUtil.equal(iter, id)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    final int middle = (left + right) >>> 1;
+    final double delta = iter.seek(middle).doubleValue() - obj.doubleValue(axis);
+    if(delta == 0 && DBIDUtil.equal(iter, id)) {
+      return true;
+    }
+    final int next = (axis + 1) % dims;
+    return (delta >= 0 && left < middle && contains(iter, left, middle, next, obj, id)) //
+        || (delta <= 0 && middle + 1 < right && contains(iter, middle + 1, right, next, obj, id));
+  }
+
+  /**
+   * Build a static tree, in parallel for large trees.
+   *
+   * @param tree Objects, will be sorted
+   */
+  private void buildTree(ModifiableDoubleDBIDList tree) {
+    if(tree.size() < PARALLEL_THRESHOLD) {
+      buildTree(tree, 0, tree.size(), 0, tree.iter());
+      return;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.invoke(new BuildTask(tree, 0, tree.size(), 0));
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Recursively build the tree by partial sorting.
+   *
+   * @param tree Tree storage
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @param axis Current splitting axis
+   * @param iter Iterator
+   * @return Split position, or -1 for leaves.
+   */
+  private int partition(ModifiableDoubleDBIDList tree, int left, int right, int axis, DoubleDBIDListMIter iter) {
+    assert(left < right);
+    for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+      iter.setDouble(relation.get(iter).doubleValue(axis));
+      countObjectAccess();
+    }
+    if(right - left <= leafsize) {
+      return -1;
+    }
+    final int middle = (left + right) >>> 1;
+    QuickSelect.quickSelect(tree, left, right, middle);
+    return middle;
+  }
+
+  /**
+   * Recursively build the tree by partial sorting. O(n log n) complexity.
+   *
+   * @param tree Tree storage
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @param axis Current splitting axis
+   * @param iter Iterator
+   */
+  private void buildTree(ModifiableDoubleDBIDList tree, int left, int right, int axis, DoubleDBIDListMIter iter) {
+    final int middle = partition(tree, left, right, axis, iter);
+    if(middle < 0) {
+      return;
+    }
+    final int next = (axis + 1) % dims;
+    if(left < middle) {
+      buildTree(tree, left, middle, next, iter);
+    }
+    if(middle + 1 < right) {
+      buildTree(tree, middle + 1, right, next, iter);
+    }
+  }
+
+  @Override
+  public String getLongName() {
+    return "dynamic kd-tree";
+  }
+
+  @Override
+  public String getShortName() {
+    return "dynamic-kd-tree";
+  }
+
+  @Override
+  public void logStatistics() {
+    if(objaccess != null) {
+      LOG.statistics(objaccess);
+    }
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".trees", trees.size()));
+    }
+  }
+
+  /**
+   * Count a single object access.
+   */
+  protected void countObjectAccess() {
+    if(objaccess != null) {
+      objaccess.increment();
+    }
+  }
+
+  /**
+   * Count a distance computation.
+   */
+  protected void countDistanceComputation() {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+  }
+
+  /**
+   * Get the norm of a supported distance function.
+   *
+   * @param df Distance function
+   * @return Norm, or {@code null}
+   */
+  @SuppressWarnings("unchecked")
+  private Norm<? super O> getNorm(DistanceFunction<? super O> df) {
+    if(df instanceof LPNormDistanceFunction || df instanceof SquaredEuclideanDistanceFunction || df instanceof SparseLPNormDistanceFunction) {
+      return (Norm<? super O>) df;
+    }
+    return null;
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    Norm<? super O> norm = getNorm(distanceQuery.getDistanceFunction());
+    if(norm == null) {
+      return null;
+    }
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return new KDTreeKNNQuery(distanceQuery, norm, 0., 0);
+      }
+    }
+    return new KDTreeKNNQuery(distanceQuery, norm, epsilon, maxleaves);
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    Norm<? super O> norm = getNorm(distanceQuery.getDistanceFunction());
+    return norm != null ? new KDTreeRangeQuery(distanceQuery, norm) : null;
+  }
+
+  /**
+   * kNN query for the k-d-tree. With an approximation factor &epsilon;,
+   * subtrees are pruned when their minimum distance times (1+&epsilon;)
+   * exceeds the current kNN distance, so the i-th result is at most
+   * (1+&epsilon;) times the true i-th neighbor distance. With a leaf limit,
+   * only the branches containing the query are explored once the limit is
+   * reached.
+   *
+   * Reference:
+   * <p>
+   * S. Arya, D. M. Mount, N. S. Netanyahu, R. Silverman, A. Y. Wu<br />
+   * An optimal algorithm for approximate nearest neighbor searching in fixed
+   * dimensions<br />
+   * Journal of the ACM 45(6)
+   * </p>
+   *
+   * @author Erich Schubert
+   */
+  @Reference(authors = "S. Arya, D. M. Mount, N. S. Netanyahu, R. Silverman, A. Y. Wu", //
+  title = "An optimal algorithm for approximate nearest neighbor searching in fixed dimensions", //
+  booktitle = "Journal of the ACM 45(6)", //
+  url = "http://dx.doi.org/10.1145/293347.293348")
+  public class KDTreeKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Norm to use.
+     */
+    private Norm<? super O> norm;
+
+    /**
+     * Use squared distances for pruning.
+     */
+    private boolean squared;
+
+    /**
+     * Pruning factor, 1+epsilon.
+     */
+    private double factor;
+
+    /**
+     * Maximum number of leaves to visit, 0 for unlimited.
+     */
+    private int maxleaves;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param norm Norm to use
+     * @param epsilon Approximation factor, 0 for exact
+     * @param maxleaves Maximum number of leaves to visit, 0 for unlimited
+     */
+    public KDTreeKNNQuery(DistanceQuery<O> distanceQuery, Norm<? super O> norm, double epsilon, int maxleaves) {
+      super(distanceQuery);
+      this.norm = norm;
+      this.squared = norm instanceof SquaredEuclideanDistanceFunction;
+      this.factor = 1. + epsilon;
+      this.maxleaves = maxleaves;
+    }
+
+    /**
+     * Check if this query is exact.
+     *
+     * @return {@code true} for exact queries
+     */
+    public boolean isExact() {
+      return factor == 1. && maxleaves <= 0;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      // Remaining leaf visits:
+      final int[] budget = new int[] { maxleaves > 0 ? maxleaves : Integer.MAX_VALUE };
+      double maxdist = Double.POSITIVE_INFINITY;
+      for(ModifiableDoubleDBIDList tree : trees) {
+        maxdist = kdKNNSearch(tree.iter(), 0, tree.size(), 0, obj, knns, maxdist, budget);
+      }
+      return knns.toKNNList();
+    }
+
+    /**
+     * Perform a kNN search on a kd-tree.
+     *
+     * @param iter Iterator
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param query Query object
+     * @param knns kNN heap
+     * @param maxdist Current upper bound of kNN distance.
+     * @param budget Remaining leaf visits
+     * @return New upper bound of kNN distance.
+     */
+    private double kdKNNSearch(DoubleDBIDListIter iter, int left, int right, int axis, O query, KNNHeap knns, double maxdist, int[] budget) {
+      if(right - left <= leafsize) {
+        --budget[0];
+        for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          maxdist = candidate(iter, query, knns, maxdist);
+        }
+        return maxdist;
+      }
+      final int middle = (left + right) >>> 1;
+      // Distance to the splitting plane:
+      final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
+      final double mindist = (squared ? delta * delta : Math.abs(delta)) * factor;
+      final int next = (axis + 1) % dims;
+      // Descend into the side containing the query first:
+      if(delta >= 0) {
+        if(left < middle) {
+          maxdist = kdKNNSearch(iter, left, middle, next, query, knns, maxdist, budget);
+        }
+        if(mindist <= maxdist) {
+          maxdist = candidate(iter.seek(middle), query, knns, maxdist);
+          if(middle + 1 < right && budget[0] > 0) {
+            maxdist = kdKNNSearch(iter, middle + 1, right, next, query, knns, maxdist, budget);
+          }
+        }
+      }
+      else {
+        if(middle + 1 < right) {
+          maxdist = kdKNNSearch(iter, middle + 1, right, next, query, knns, maxdist, budget);
+        }
+        if(mindist <= maxdist) {
+          maxdist = candidate(iter.seek(middle), query, knns, maxdist);
+          if(left < middle && budget[0] > 0) {
+            maxdist = kdKNNSearch(iter, left, middle, next, query, knns, maxdist, budget);
+          }
+        }
+      }
+      return maxdist;
+    }
+
+    /**
+     * Consider a single candidate.
+     *
+     * @param iter Candidate
+     * @param query Query object
+     * @param knns kNN heap
+     * @param maxdist Current upper bound of kNN distance.
+     * @return New upper bound of kNN distance.
+     */
+    private double candidate(DoubleDBIDListIter iter, O query, KNNHeap knns, double maxdist) {
+      if(!deleted.isEmpty() && deleted.contains(iter)) {
+        return maxdist;
+      }
+      final double dist = norm.distance(query, relation.get(iter));
+      countObjectAccess();
+      countDistanceComputation();
+      return dist <= maxdist ? knns.insert(dist, iter) : maxdist;
+    }
+  }
+
+  /**
+   * Range query for the k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class KDTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Norm to use.
+     */
+    private Norm<? super O> norm;
+
+    /**
+     * Use squared distances for pruning.
+     */
+    private boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param norm Norm to use
+     */
+    public KDTreeRangeQuery(DistanceQuery<O> distanceQuery, Norm<? super O> norm) {
+      super(distanceQuery);
+      this.norm = norm;
+      this.squared = norm instanceof SquaredEuclideanDistanceFunction;
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      for(ModifiableDoubleDBIDList tree : trees) {
+        kdRangeSearch(tree.iter(), 0, tree.size(), 0, obj, result, range);
+      }
+    }
+
+    /**
+     * Perform a range search on a kd-tree.
+     *
+     * @param iter Iterator
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param query Query object
+     * @param res Result list
+     * @param radius Query radius
+     */
+    private void kdRangeSearch(DoubleDBIDListIter iter, int left, int right, int axis, O query, ModifiableDoubleDBIDList res, double radius) {
+      if(right - left <= leafsize) {
+        for(iter.seek(left); iter.getOffset() < right; iter.advance()) {
+          candidate(iter, query, res, radius);
+        }
+        return;
+      }
+      final int middle = (left + right) >>> 1;
+      // Distance to the splitting plane:
+      final double delta = iter.seek(middle).doubleValue() - query.doubleValue(axis);
+      final boolean close = (squared ? delta * delta : Math.abs(delta)) <= radius;
+      final int next = (axis + 1) % dims;
+      if(close) {
+        candidate(iter, query, res, radius);
+      }
+      if(left < middle && (delta >= 0 || close)) {
+        kdRangeSearch(iter, left, middle, next, query, res, radius);
+      }
+      if(middle + 1 < right && (delta <= 0 || close)) {
+        kdRangeSearch(iter, middle + 1, right, next, query, res, radius);
+      }
+    }
+
+    /**
+     * Consider a single candidate.
+     *
+     * @param iter Candidate
+     * @param query Query object
+     * @param res Result list
+     * @param radius Query radius
+     */
+    private void candidate(DoubleDBIDListIter iter, O query, ModifiableDoubleDBIDList res, double radius) {
+      if(!deleted.isEmpty() && deleted.contains(iter)) {
+        return;
+      }
+      final double dist = norm.distance(query, relation.get(iter));
+      countObjectAccess();
+      countDistanceComputation();
+      if(dist <= radius) {
+        res.add(dist, iter);
+      }
+    }
+  }
+
+  /**
+   * Task to build a subtree.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BuildTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Tree storage.
+     */
+    private final ModifiableDoubleDBIDList tree;
+
+    /**
+     * Subtree range.
+     */
+    private final int left, right;
+
+    /**
+     * Splitting axis.
+     */
+    private final int axis;
+
+    /**
+     * Constructor.
+     *
+     * @param tree Tree storage
+     * @param left Interval minimum
+     * @param right Interval maximum
+     * @param axis Splitting axis
+     */
+    BuildTask(ModifiableDoubleDBIDList tree, int left, int right, int axis) {
+      this.tree = tree;
+      this.left = left;
+      this.right = right;
+      this.axis = axis;
+    }
+
+    @Override
+    protected void compute() {
+      final DoubleDBIDListMIter iter = tree.iter();
+      if(right - left < PARALLEL_THRESHOLD) {
+        buildTree(tree, left, right, axis, iter);
+        return;
+      }
+      final int middle = partition(tree, left, right, axis, iter);
+      if(middle < 0) {
+        return;
+      }
+      final int next = (axis + 1) % dims;
+      if(left < middle && middle + 1 < right) {
+        invokeAll(new BuildTask(tree, left, middle, next), new BuildTask(tree, middle + 1, right, next));
+      }
+      else if(left < middle) {
+        new BuildTask(tree, left, middle, next).compute();
+      }
+      else if(middle + 1 < right) {
+        new BuildTask(tree, middle + 1, right, next).compute();
+      }
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has DynamicKDTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "dynkd" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O, DynamicKDTree<O>> {
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Approximation factor for kNN queries.
+     */
+    double epsilon;
+
+    /**
+     * Maximum number of leaves to visit.
+     */
+    int maxleaves;
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     * @param epsilon Approximation factor for kNN queries, 0 for exact
+     * @param maxleaves Maximum number of leaves to visit, 0 for unlimited
+     */
+    public Factory(int leafsize, double epsilon, int maxleaves) {
+      super();
+      this.leafsize = leafsize;
+      this.epsilon = epsilon;
+      this.maxleaves = maxleaves;
+    }
+
+    @Override
+    public DynamicKDTree<O> instantiate(Relation<O> relation) {
+      return new DynamicKDTree<>(relation, leafsize, epsilon, maxleaves);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+      /**
+       * Approximation factor epsilon for kNN queries.
+       */
+      public static final OptionID EPSILON_ID = new OptionID("kd.epsilon", "Approximation factor for kNN queries: results are within (1+epsilon) of the true neighbor distances. 0 is exact.");
+
+      /**
+       * Maximum number of leaves to visit in kNN queries.
+       */
+      public static final OptionID MAXLEAVES_ID = new OptionID("kd.maxleaves", "Maximum number of leaves to visit in kNN queries, 0 for unlimited.");
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      /**
+       * Approximation factor for kNN queries.
+       */
+      double epsilon;
+
+      /**
+       * Maximum number of leaves to visit.
+       */
+      int maxleaves;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter leafP = new IntParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 1) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(leafP)) {
+          leafsize = leafP.intValue();
+        }
+        DoubleParameter epsilonP = new DoubleParameter(EPSILON_ID, 0.) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+        if(config.grab(epsilonP)) {
+          epsilon = epsilonP.doubleValue();
+        }
+        IntParameter maxleavesP = new IntParameter(MAXLEAVES_ID, 0) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+        if(config.grab(maxleavesP)) {
+          maxleaves = maxleavesP.intValue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(leafsize, epsilon, maxleaves);
+      }
+    }
+  }
+}
@@ -137,8 +137,8 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     assert(leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
-      this.objaccess = LOG.newCounter(prefix + ".objaccess");
-      this.distcalc = LOG.newCounter(prefix + ".distancecalcs");
+      this.objaccess = LOG.newConcurrentCounter(prefix + ".objaccess");
+      this.distcalc = LOG.newConcurrentCounter(prefix + ".distancecalcs");
     }
     else {
       this.objaccess = null;
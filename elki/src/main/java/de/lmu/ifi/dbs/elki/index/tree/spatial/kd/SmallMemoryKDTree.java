@@ -133,8 +133,8 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>i
     assert(leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
-      this.objaccess = LOG.newCounter(prefix + ".objaccess");
-      this.distcalc = LOG.newCounter(prefix + ".distancecalcs");
+      this.objaccess = LOG.newConcurrentCounter(prefix + ".objaccess");
+      this.distcalc = LOG.newConcurrentCounter(prefix + ".distancecalcs");
     }
     else {
       this.objaccess = null;
@@ -142,6 +142,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
 
   @Override
   public void insertLeaf(E leaf) {
+    checkWritable();
     if(!initialized) {
       initialize(leaf);
     }
@@ -159,6 +160,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    * @param entry the leaf entry to be inserted
    */
   protected void insertLeafEntry(E entry) {
+    checkWritable();
     lastInsertedEntry = entry;
     // choose subtree for insertion
     IndexTreePath<E> subtree = choosePath(getRootPath(), entry, height, 1);
@@ -183,6 +185,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    * @param depth the depth at which the directory entry is to be inserted
    */
   protected void insertDirectoryEntry(E entry, int depth) {
+    checkWritable();
     lastInsertedEntry = entry;
     // choose node for insertion of o
     IndexTreePath<E> subtree = choosePath(getRootPath(), entry, depth, 1);
@@ -204,6 +207,7 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    * @param deletionPath Path to delete
    */
   protected void deletePath(IndexTreePath<E> deletionPath) {
+    checkWritable();
     N leaf = getNode(deletionPath.getParentPath().getEntry());
     int index = deletionPath.getIndex();
 
@@ -865,9 +869,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? log.newConcurrentCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? log.newConcurrentCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? log.newConcurrentCounter(prefix + ".rangequeries") : null;
     }
 
     /**
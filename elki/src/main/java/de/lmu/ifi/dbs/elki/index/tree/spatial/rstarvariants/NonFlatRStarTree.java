@@ -28,6 +28,9 @@ import java.util.List;
 
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 
 /**
@@ -115,9 +118,15 @@ public abstract class NonFlatRStarTree<N extends AbstractRStarTreeNode<N, E>, E
   /**
    * Performs a bulk load on this RTree with the specified data. Is called by
    * the constructor and should be overwritten by subclasses if necessary.
+   *
+   * The build time and throughput (objects per second) are logged as
+   * statistics.
    */
   @Override
   protected void bulkLoad(List<E> spatialObjects) {
+    checkWritable();
+    final Logging log = getLogger();
+    Duration duration = log.isStatistics() ? log.newDuration(this.getClass().getName() + ".bulkload.time").begin() : null;
     if(!initialized) {
       initialize(spatialObjects.get(0));
     }
@@ -170,6 +179,10 @@ public abstract class NonFlatRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       msg.append("\n  root ").append(getRoot());
       getLogger().debugFine(msg.toString());
     }
+    if(duration != null) {
+      log.statistics(duration.end());
+      log.statistics(new DoubleStatistic(this.getClass().getName() + ".bulkload.throughput", spatialObjects.size() * 1000. / Math.max(1L, duration.getDuration())));
+    }
   }
 
   /**
@@ -112,6 +112,7 @@ public abstract class FlatRStarTree extends AbstractRStarTree<FlatRStarTreeNode,
    */
   @Override
   protected void bulkLoad(List<SpatialEntry> spatialObjects) {
+    checkWritable();
     if(!initialized) {
       initialize(spatialObjects.get(0));
     }
@@ -23,35 +23,32 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import gnu.trove.list.array.TIntArrayList;
+
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DBID;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
-import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
-import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.query.DoubleDistanceSearchCandidate;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
 /**
@@ -91,6 +88,16 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
    */
   protected Relation<? extends O> relation;
 
+  /**
+   * Number of queries to locate in one task of the batch join.
+   */
+  private static final int LOCATE_BLOCK = 1024;
+
+  /**
+   * Number of queries to process in one task of the batch join.
+   */
+  private static final int JOIN_BLOCK = 256;
+
   /**
    * Constructor.
    * 
@@ -169,137 +176,199 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
   }
 
   /**
-   * Performs a batch knn query.
-   * 
-   * @param node the node for which the query should be performed
-   * @param knnLists a map containing the knn lists for each query objects
+   * Batch kNN join: the queries are grouped by the leaf they are located in,
+   * and every group is processed with a best-first search, using the bounding
+   * box of the group to prune the tree for all its members at once. Groups are
+   * processed in parallel.
    */
-  protected void batchNN(AbstractRStarTreeNode<?, ?> node, Map<DBID, KNNHeap> knnLists) {
-    if(node.isLeaf()) {
-      for(int i = 0; i < node.getNumEntries(); i++) {
-        SpatialEntry p = node.getEntry(i);
-        for(Entry<DBID, KNNHeap> ent : knnLists.entrySet()) {
-          final DBID q = ent.getKey();
-          final KNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.getKNNDistance();
-
-          DBID pid = ((LeafEntry) p).getDBID();
-          // FIXME: objects are NOT accessible by DBID in a plain R-tree
-          // context!
-          double dist_pq = distanceFunction.distance(relation.get(pid), relation.get(q));
-          tree.statistics.countDistanceCalculation();
-          if(dist_pq <= knn_q_maxDist) {
-            knns_q.insert(dist_pq, pid);
+  @Override
+  public List<KNNList> getKNNForBulkDBIDs(final ArrayDBIDs ids, final int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one enumeration has to be requested!");
+    }
+    final int size = ids.size();
+    final KNNHeap[] heaps = new KNNHeap[size];
+    if(size > 0) {
+      // Leaf page id in the upper, query offset in the lower 32 bits.
+      final long[] groups = new long[size];
+      ParallelRange.run(0, size, LOCATE_BLOCK, new ParallelRange.Block() {
+        @Override
+        public void process(int begin, int end) {
+          DBIDArrayIter iter = ids.iter().seek(begin);
+          for(int i = begin; i < end; i++, iter.advance()) {
+            groups[i] = ((long) locateLeaf(relation.get(iter)) << 32) | i;
           }
         }
+      });
+      Arrays.sort(groups);
+      // Find the group boundaries.
+      TIntArrayList blist = new TIntArrayList();
+      blist.add(0);
+      for(int i = 1; i < size; i++) {
+        if((groups[i] >>> 32) != (groups[i - 1] >>> 32)) {
+          blist.add(i);
+        }
       }
-    }
-    else {
-      ModifiableDBIDs ids = DBIDUtil.newArray(knnLists.size());
-      for(DBID id : knnLists.keySet()) {
-        ids.add(id);
-      }
-      List<DoubleDistanceEntry> entries = getSortedEntries(node, ids);
-      for(DoubleDistanceEntry distEntry : entries) {
-        double minDist = distEntry.distance;
-        for(Entry<DBID, KNNHeap> ent : knnLists.entrySet()) {
-          final KNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.getKNNDistance();
-
-          if(minDist <= knn_q_maxDist) {
-            SpatialEntry entry = distEntry.entry;
-            AbstractRStarTreeNode<?, ?> child = tree.getNode(((DirectoryEntry) entry).getPageID().intValue());
-            batchNN(child, knnLists);
-            break;
+      blist.add(size);
+      final int[] bounds = blist.toArray();
+      final int numgroups = bounds.length - 1;
+      // Groups per block, for about JOIN_BLOCK queries per block:
+      final int blocksize = (int) Math.max(1L, (long) numgroups * JOIN_BLOCK / size);
+      ParallelRange.run(0, numgroups, blocksize, new ParallelRange.Block() {
+        @Override
+        public void process(int begin, int end) {
+          DBIDArrayIter iter = ids.iter();
+          for(int g = begin; g < end; g++) {
+            final int gsize = bounds[g + 1] - bounds[g];
+            List<O> objs = new ArrayList<>(gsize);
+            KNNHeap[] gheaps = new KNNHeap[gsize];
+            for(int j = 0; j < gsize; j++) {
+              final int off = (int) groups[bounds[g] + j];
+              objs.add(relation.get(iter.seek(off)));
+              gheaps[j] = heaps[off] = DBIDUtil.newHeap(k);
+            }
+            joinGroup(objs, gheaps);
           }
         }
-      }
+      });
     }
+    List<KNNList> result = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      tree.statistics.countKNNQuery();
+      result.add(toKNNList(heaps[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Compute the minimum distance used by the batch join. Subclasses may use a
+   * cheaper, monotone distance, and convert in {@link #toKNNList}.
+   * 
+   * @param a First object or rectangle
+   * @param b Second object or rectangle
+   * @return Distance
+   */
+  protected double batchMinDist(SpatialComparable a, SpatialComparable b) {
+    return distanceFunction.minDist(a, b);
   }
 
   /**
-   * Sorts the entries of the specified node according to their minimum distance
-   * to the specified objects.
+   * Convert a heap of the batch join into the final result.
    * 
-   * @param node the node
-   * @param ids the id of the objects
-   * @return a list of the sorted entries
+   * @param heap Heap
+   * @return kNN list
    */
-  protected List<DoubleDistanceEntry> getSortedEntries(AbstractRStarTreeNode<?, ?> node, DBIDs ids) {
-    List<DoubleDistanceEntry> result = new ArrayList<>();
+  protected KNNList toKNNList(KNNHeap heap) {
+    return heap.toKNNList();
+  }
 
-    for(int i = 0; i < node.getNumEntries(); i++) {
-      SpatialEntry entry = node.getEntry(i);
-      double minMinDist = Double.MAX_VALUE;
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        double minDist = distanceFunction.minDist(entry, relation.get(iter));
+  /**
+   * Find the leaf a query object belongs to, by descending into the closest
+   * child.
+   * 
+   * @param obj Query object
+   * @return Page id of the leaf
+   */
+  protected int locateLeaf(O obj) {
+    int pageID = tree.getRootID();
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(pageID);
+    while(!node.isLeaf()) {
+      double best = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+        double distance = batchMinDist(entry, obj);
         tree.statistics.countDistanceCalculation();
-        minMinDist = Math.min(minDist, minMinDist);
+        if(distance < best) {
+          best = distance;
+          pageID = entry.getPageID();
+          if(distance <= 0) {
+            break;
+          }
+        }
       }
-      result.add(new DoubleDistanceEntry(entry, minMinDist));
+      node = tree.getNode(pageID);
     }
-
-    Collections.sort(result);
-    return result;
+    return pageID;
   }
 
   /**
-   * Optimized double distance entry implementation.
+   * Process one group of queries located in the same leaf.
    * 
-   * @author Erich Schubert
-   * 
-   * @apiviz.hidden
+   * @param objs Query objects
+   * @param heaps Output heaps
    */
-  static class DoubleDistanceEntry implements Comparable<DoubleDistanceEntry> {
-    /**
-     * Referenced entry
-     */
-    SpatialEntry entry;
-
-    /**
-     * Distance value
-     */
-    double distance;
-
-    /**
-     * Constructor.
-     * 
-     * @param entry Entry
-     * @param distance Distance
-     */
-    public DoubleDistanceEntry(SpatialEntry entry, double distance) {
-      this.entry = entry;
-      this.distance = distance;
+  protected void joinGroup(List<O> objs, KNNHeap[] heaps) {
+    final int gsize = objs.size();
+    final double[] kdist = new double[gsize];
+    Arrays.fill(kdist, Double.POSITIVE_INFINITY);
+    ModifiableHyperBoundingBox mbr = new ModifiableHyperBoundingBox(objs.get(0));
+    for(int j = 1; j < gsize; j++) {
+      mbr.extend(objs.get(j));
     }
-
-    @Override
-    public int compareTo(DoubleDistanceEntry o) {
-      return Double.compare(this.distance, o.distance);
+    // Candidate nodes, referenced by their index in the priority queue.
+    ArrayList<SpatialEntry> cands = new ArrayList<>();
+    DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(21);
+    double gmax = Double.POSITIVE_INFINITY;
+    AbstractRStarTreeNode<?, ?> node = tree.getNode(tree.getRootID());
+    SpatialEntry entry = null;
+    while(true) {
+      if(node.isLeaf()) {
+        gmax = joinLeaf(node, entry, objs, heaps, kdist);
+      }
+      else {
+        for(int i = 0; i < node.getNumEntries(); i++) {
+          SpatialEntry child = node.getEntry(i);
+          double distance = batchMinDist(child, mbr);
+          tree.statistics.countDistanceCalculation();
+          if(distance <= gmax) {
+            pq.add(distance, cands.size());
+            cands.add(child);
+          }
+        }
+      }
+      if(pq.isEmpty() || pq.peekKey() > gmax) {
+        break;
+      }
+      entry = cands.get(pq.peekValue());
+      pq.poll();
+      node = tree.getNode(((SpatialDirectoryEntry) entry).getPageID());
     }
   }
 
-  @Override
-  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
-    if(k < 1) {
-      throw new IllegalArgumentException("At least one enumeration has to be requested!");
-    }
-
-    // While this works, it seems to be slow at least for large sets!
-    // TODO: use a DataStore instead of a map.
-    final Map<DBID, KNNHeap> knnLists = new HashMap<>(ids.size());
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      knnLists.put(id, DBIDUtil.newHeap(k));
-    }
-
-    batchNN(tree.getRoot(), knnLists);
-
-    List<KNNList> result = new ArrayList<>();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      tree.statistics.countKNNQuery();
-      result.add(knnLists.get(id).toKNNList());
+  /**
+   * Scan a leaf for all queries of a group.
+   * 
+   * @param node Leaf node
+   * @param entry Directory entry of the leaf, {@code null} for the root
+   * @param objs Query objects
+   * @param heaps Heaps
+   * @param kdist Current kNN distances
+   * @return Maximum kNN distance of the group
+   */
+  private double joinLeaf(AbstractRStarTreeNode<?, ?> node, SpatialEntry entry, List<O> objs, KNNHeap[] heaps, double[] kdist) {
+    double gmax = 0.;
+    for(int j = 0; j < kdist.length; j++) {
+      final O obj = objs.get(j);
+      double maxDist = kdist[j];
+      if(entry != null) {
+        tree.statistics.countDistanceCalculation();
+        if(batchMinDist(entry, obj) > maxDist) {
+          gmax = maxDist > gmax ? maxDist : gmax;
+          continue;
+        }
+      }
+      final KNNHeap heap = heaps[j];
+      for(int i = 0; i < node.getNumEntries(); i++) {
+        SpatialPointLeafEntry e = (SpatialPointLeafEntry) node.getEntry(i);
+        double distance = batchMinDist(e, obj);
+        tree.statistics.countDistanceCalculation();
+        if(distance <= maxDist) {
+          maxDist = heap.insert(distance, e.getDBID());
+        }
+      }
+      kdist[j] = maxDist;
+      gmax = maxDist > gmax ? maxDist : gmax;
     }
-    return result;
+    return gmax;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,253 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Parallel variant of Sort-Tile-Recursive bulk loading.
+ *
+ * The slabs of each dimension use the same boundaries as in
+ * {@link SortTileRecursiveBulkSplit}, and thus yield the same tiling (up to
+ * the assignment of objects tied at a slab boundary). Instead of selecting the
+ * boundaries left to right, which needs a quadratic number of comparisons in
+ * the number of slabs, the median boundary is selected first, and both halves
+ * are processed recursively and in parallel. The slabs are then tiled in
+ * parallel, too. The pages are returned in the same order as the sequential
+ * version.
+ *
+ * Reference:
+ * <p>
+ * Leutenegger, S.T. and Lopez, M.A. and Edgington, J.:<br />
+ * STR: A simple and efficient algorithm for R-tree packing<br />
+ * In: Proc. 13th International Conference on Data Engineering, 1997
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "Leutenegger, S.T. and Lopez, M.A. and Edgington, J.", title = "STR: A simple and efficient algorithm for R-tree packing", booktitle = "Proc. 13th International Conference on Data Engineering, 1997", url = "http://dx.doi.org/10.1109/ICDE.1997.582015")
+@Alias({ "parallel-str" })
+public class ParallelSortTileRecursiveBulkSplit extends SortTileRecursiveBulkSplit {
+  /**
+   * Static instance.
+   */
+  public static final ParallelSortTileRecursiveBulkSplit STATIC = new ParallelSortTileRecursiveBulkSplit();
+
+  /**
+   * Ranges smaller than this are processed by the current thread.
+   */
+  private static final int THRESHOLD = 1 << 14;
+
+  @Override
+  public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
+    final int dims = spatialObjects.get(0).getDimensionality();
+    if(spatialObjects.size() < THRESHOLD) {
+      final int p = (int) Math.ceil(spatialObjects.size() / (double) maxEntries);
+      List<List<T>> ret = new ArrayList<>(p);
+      strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
+      return ret;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return core.invoke(new SlabTask<>(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries));
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Task to tile one range in one dimension.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <T> Object type
+   */
+  private static class SlabTask<T extends SpatialComparable> extends RecursiveTask<List<List<T>>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Objects to partition.
+     */
+    private final List<T> objs;
+
+    /**
+     * Range to process.
+     */
+    private final int start, end;
+
+    /**
+     * Current dimension, and total dimensionality.
+     */
+    private final int depth, dims;
+
+    /**
+     * Page capacity.
+     */
+    private final int maxEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param objs Objects
+     * @param start Range start
+     * @param end Range end
+     * @param depth Current dimension
+     * @param dims Dimensionality
+     * @param maxEntries Page capacity
+     */
+    SlabTask(List<T> objs, int start, int end, int depth, int dims, int maxEntries) {
+      this.objs = objs;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.dims = dims;
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected List<List<T>> compute() {
+      final int p = (int) Math.ceil((end - start) / (double) maxEntries);
+      final int s = (int) Math.ceil(Math.pow(p, 1.0 / (dims - depth)));
+      return new BoundaryTask<>(this, s, 0, s).compute();
+    }
+
+    /**
+     * Slab boundary, as in the sequential version.
+     *
+     * @param i Slab number
+     * @param s Number of slabs
+     * @return Boundary position
+     */
+    int boundary(int i, int s) {
+      final double len = end - start; // double intentional!
+      return start + (int) ((i * len) / s);
+    }
+  }
+
+  /**
+   * Task to select the boundaries of slabs {@code [lo, hi[} of a range, then
+   * tile each slab in the next dimension.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <T> Object type
+   */
+  private static class BoundaryTask<T extends SpatialComparable> extends RecursiveTask<List<List<T>>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Range being tiled.
+     */
+    private final SlabTask<T> slab;
+
+    /**
+     * Number of slabs in total, first and last slab to process.
+     */
+    private final int s, lo, hi;
+
+    /**
+     * Constructor.
+     *
+     * @param slab Range being tiled
+     * @param s Number of slabs
+     * @param lo First slab
+     * @param hi Last slab (exclusive)
+     */
+    BoundaryTask(SlabTask<T> slab, int s, int lo, int hi) {
+      this.slab = slab;
+      this.s = s;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected List<List<T>> compute() {
+      final int begin = slab.boundary(lo, s), end = slab.boundary(hi, s);
+      if(hi - lo == 1) {
+        if(slab.depth + 1 == slab.dims) {
+          return Collections.singletonList(slab.objs.subList(begin, end));
+        }
+        // Descend
+        SlabTask<T> sub = new SlabTask<>(slab.objs, begin, end, slab.depth + 1, slab.dims, slab.maxEntries);
+        return sub.compute();
+      }
+      final int mid = (lo + hi) >>> 1;
+      QuickSelect.quickSelect(slab.objs, new SpatialSingleMeanComparator(slab.depth), begin, end, slab.boundary(mid, s));
+      BoundaryTask<T> left = new BoundaryTask<>(slab, s, lo, mid);
+      BoundaryTask<T> right = new BoundaryTask<>(slab, s, mid, hi);
+      List<List<T>> l, r;
+      if(end - begin < THRESHOLD) {
+        l = left.compute();
+        r = right.compute();
+      }
+      else {
+        invokeAll(left, right);
+        l = left.join();
+        r = right.join();
+      }
+      List<List<T>> ret = new ArrayList<>(l.size() + r.size());
+      ret.addAll(l);
+      ret.addAll(r);
+      return ret;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelSortTileRecursiveBulkSplit makeInstance() {
+      return STATIC;
+    }
+  }
+}
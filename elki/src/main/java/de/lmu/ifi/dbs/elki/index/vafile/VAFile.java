@@ -23,14 +23,14 @@ package de.lmu.ifi.dbs.elki.index.vafile;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
@@ -49,19 +49,27 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMaxHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.LessEqualConstraint;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 
 /**
  * Vector-approximation file (VAFile)
  * 
+ * The approximations are packed into a single byte array, using one byte per
+ * dimension (hence, at most 256 partitions are supported). The filter step
+ * computes the bounds for blocks of approximations with table lookups only,
+ * and is run in parallel on large data sets.
+ * 
  * Reference:
  * <p>
  * Weber, R. and Blott, S.<br>
@@ -91,9 +99,29 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   private static final Logging LOG = Logging.getLogger(VAFile.class);
 
   /**
-   * Approximation index.
+   * Maximum number of partitions, as cells are stored in a byte.
+   */
+  public static final int MAX_PARTITIONS = 256;
+
+  /**
+   * Minimum data set size to filter in parallel.
    */
-  private List<VectorApproximation> vectorApprox;
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  /**
+   * Number of approximations filtered per parallel block.
+   */
+  private static final int BLOCK_SIZE = 1 << 12;
+
+  /**
+   * Indexed objects, in the order of the approximations.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Packed approximations: one byte per dimension, consecutive per object.
+   */
+  private byte[] approx;
 
   /**
    * Number of partitions.
@@ -115,6 +143,12 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    */
   int scans;
 
+  /**
+   * Per-thread buffers for the lower and upper distance bounds, reused across
+   * queries.
+   */
+  private final ThreadLocal<double[][]> bounds = new ThreadLocal<>();
+
   /**
    * Constructor.
    * 
@@ -127,15 +161,23 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     this.partitions = partitions;
     this.pageSize = pageSize;
     this.scans = 0;
-    this.vectorApprox = new ArrayList<>();
   }
 
   @Override
   public void initialize() {
     setPartitions(relation);
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      vectorApprox.add(calculateApproximation(id, relation.get(id)));
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int dim = splitPositions.length;
+    if((long) ids.size() * dim > Integer.MAX_VALUE) {
+      throw new AbortException("Data set too large for the VA file: " + ids.size() + " objects with " + dim + " dimensions exceed " + Integer.MAX_VALUE + " approximation bytes.");
+    }
+    approx = new byte[ids.size() * dim];
+    int off = 0;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance(), off += dim) {
+      V dv = relation.get(iter);
+      for(int d = 0; d < dim; d++) {
+        approx[off + d] = (byte) getCell(d, dv.doubleValue(d), true);
+      }
     }
   }
 
@@ -149,6 +191,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     if((Math.log(partitions) / Math.log(2)) != (int) (Math.log(partitions) / Math.log(2))) {
       throw new IllegalArgumentException("Number of partitions must be a power of 2!");
     }
+    if(partitions > MAX_PARTITIONS) {
+      throw new IllegalArgumentException("At most " + MAX_PARTITIONS + " partitions are supported.");
+    }
 
     final int dimensions = RelationUtil.dimensionality(relation);
     final int size = relation.size();
@@ -182,32 +227,70 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
   public VectorApproximation calculateApproximation(DBID id, V dv) {
     int[] approximation = new int[dv.getDimensionality()];
     for(int d = 0; d < splitPositions.length; d++) {
-      final double val = dv.doubleValue(d);
-      final int lastBorderIndex = splitPositions[d].length - 1;
-
-      // Value is below data grid
-      if(val < splitPositions[d][0]) {
-        approximation[d] = 0;
-        if(id != null) {
-          LOG.warning("Vector outside of VAFile grid!");
-        }
-      } // Value is above data grid
-      else if(val > splitPositions[d][lastBorderIndex]) {
-        approximation[d] = lastBorderIndex - 1;
-        if(id != null) {
-          LOG.warning("Vector outside of VAFile grid!");
-        }
-      } // normal case
-      else {
-        // Search grid position
-        int pos = Arrays.binarySearch(splitPositions[d], val);
-        pos = (pos >= 0) ? pos : ((-pos) - 2);
-        approximation[d] = pos;
-      }
+      approximation[d] = getCell(d, dv.doubleValue(d), id != null);
     }
     return new VectorApproximation(id, approximation);
   }
 
+  /**
+   * Find the grid cell of a value.
+   * 
+   * @param d Dimension
+   * @param val Value
+   * @param warn Warn about values outside of the grid
+   * @return Cell number
+   */
+  private int getCell(int d, double val, boolean warn) {
+    final double[] split = splitPositions[d];
+    final int lastBorderIndex = split.length - 1;
+    // Value is below data grid
+    if(val < split[0]) {
+      if(warn) {
+        LOG.warning("Vector outside of VAFile grid!");
+      }
+      return 0;
+    }
+    // Value is above data grid
+    if(val > split[lastBorderIndex]) {
+      if(warn) {
+        LOG.warning("Vector outside of VAFile grid!");
+      }
+      return lastBorderIndex - 1;
+    }
+    // Search grid position
+    int pos = Arrays.binarySearch(split, val);
+    return (pos >= 0) ? Math.min(pos, lastBorderIndex - 1) : ((-pos) - 2);
+  }
+
+  /**
+   * Filter step: compute the bounds of all approximations, in parallel for
+   * large data sets.
+   * 
+   * @param vadist Approximative distance function
+   * @param minDist Output minimum distances (to the power of p)
+   * @param maxDist Output maximum distances (to the power of p), may be
+   *        {@code null}
+   */
+  private void filter(final VALPNormDistance vadist, final double[] minDist, final double[] maxDist) {
+    // Count a VA file scan
+    scans += 1;
+    final int size = ids.size();
+    ParallelRange.run(0, size, size < PARALLEL_THRESHOLD ? size : BLOCK_SIZE, new ParallelRange.Block() {
+      @Override
+      public void process(int begin, int end) {
+        for(int b = begin; b < end; b += BLOCK_SIZE) {
+          final int e = Math.min(b + BLOCK_SIZE, end);
+          if(maxDist != null) {
+            vadist.getMinMaxDists(approx, b, e, minDist, maxDist);
+          }
+          else {
+            vadist.getMinDists(approx, b, e, minDist);
+          }
+        }
+      }
+    });
+  }
+
   /**
    * Get the number of scanned bytes.
    * 
@@ -215,7 +298,7 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
    */
   public long getScannedPages() {
     int vacapacity = pageSize / VectorApproximation.byteOnDisk(splitPositions.length, partitions);
-    int vasize = (int) Math.ceil((vectorApprox.size()) / (1.0 * vacapacity));
+    int vasize = (int) Math.ceil((ids.size()) / (1.0 * vacapacity));
     return vasize * scans;
   }
 
@@ -263,6 +346,20 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
     return null;
   }
 
+  /**
+   * Get the bound buffers of the current thread.
+   *
+   * @return Arrays for the minimum and maximum distances, one entry per object
+   */
+  private double[][] getBounds() {
+    double[][] buf = bounds.get();
+    if(buf == null || buf[0].length != ids.size()) {
+      buf = new double[][] { new double[ids.size()], new double[ids.size()] };
+      bounds.set(buf);
+    }
+    return buf;
+  }
+
   /**
    * Range query for this index.
    * 
@@ -294,15 +391,14 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
       // Approximative distance function
       VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
 
-      // Count a VA file scan
-      scans += 1;
-
       // Approximation step
-      for(int i = 0; i < vectorApprox.size(); i++) {
-        VectorApproximation va = vectorApprox.get(i);
-        double minDist = vadist.getMinDist(va);
-
-        if(minDist > eps) {
+      final double[] minDists = getBounds()[0];
+      filter(vadist, minDists, null);
+      // Compare without taking roots; allow for rounding in the bounds.
+      final double peps = vadist.toPowered(eps) * (1 + 1e-12);
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < minDists.length; i++) {
+        if(minDists[i] > peps) {
           continue;
         }
 
@@ -310,9 +406,9 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
         // interested in the DBID only! But this needs an API change.
 
         // refine the next element
-        final double dist = refine(va.id, query);
+        final double dist = refine(it.seek(i), query);
         if(dist <= eps) {
-          result.add(dist, va.id);
+          result.add(dist, it);
         }
       }
     }
@@ -348,31 +444,25 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
       // Approximative distance function
       VALPNormDistance vadist = new VALPNormDistance(p, splitPositions, query, queryApprox);
 
+      // Approximation step
+      final int size = ids.size();
+      final double[][] buf = getBounds();
+      final double[] minDists = buf[0], maxDists = buf[1];
+      filter(vadist, minDists, maxDists);
+
       // Heap for the kth smallest maximum distance (yes, we need a max heap!)
       DoubleMaxHeap minMaxHeap = new DoubleMaxHeap(k + 1);
-      double minMaxDist = Double.POSITIVE_INFINITY;
+      for(int i = 0; i < size; i++) {
+        minMaxHeap.add(maxDists[i], k);
+      }
+      // Allow for rounding in the bounds.
+      final double minMaxDist = minMaxHeap.size() >= k ? minMaxHeap.peek() * (1 + 1e-12) : Double.POSITIVE_INFINITY;
       // Candidates with minDist <= kth maxDist
-      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList(vectorApprox.size());
-
-      // Count a VA file scan
-      scans += 1;
-
-      // Approximation step
-      for(int i = 0; i < vectorApprox.size(); i++) {
-        VectorApproximation va = vectorApprox.get(i);
-        double minDist = vadist.getMinDist(va);
-        double maxDist = vadist.getMaxDist(va);
-
-        // Skip excess candidate generation:
-        if(minDist > minMaxDist) {
-          continue;
-        }
-        candidates.add(minDist, va.id);
-
-        // Update candidate pruning heap
-        minMaxHeap.add(maxDist, k);
-        if(minMaxHeap.size() >= k) {
-          minMaxDist = minMaxHeap.peek();
+      ModifiableDoubleDBIDList candidates = DBIDUtil.newDistanceDBIDList();
+      DBIDArrayIter it = ids.iter();
+      for(int i = 0; i < size; i++) {
+        if(minDists[i] <= minMaxDist) {
+          candidates.add(vadist.toDistance(minDists[i]), it.seek(i));
         }
       }
       // sort candidates by lower bound (minDist)
@@ -398,7 +488,7 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
       }
       if(LOG.isDebuggingFinest()) {
         LOG.finest("query = (" + query + ")");
-        LOG.finest("database: " + vectorApprox.size() + ", candidates: " + candidates.size() + ", results: " + result.size());
+        LOG.finest("database: " + ids.size() + ", candidates: " + candidates.size() + ", results: " + result.size());
       }
 
       return result.toKNNList();
@@ -485,6 +575,7 @@ public class VAFile<V extends NumberVector> extends AbstractRefiningIndex<V> imp
         }
         IntParameter partitionsP = new IntParameter(Factory.PARTITIONS_ID);
         partitionsP.addConstraint(CommonConstraints.GREATER_THAN_ONE_INT);
+        partitionsP.addConstraint(new LessEqualConstraint(MAX_PARTITIONS));
         if(config.grab(partitionsP)) {
           numpart = partitionsP.getValue();
         }
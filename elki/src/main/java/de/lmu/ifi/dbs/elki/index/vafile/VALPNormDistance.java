@@ -28,15 +28,36 @@ import de.lmu.ifi.dbs.elki.data.NumberVector;
 /**
  * Lp-Norm distance function for partially computed objects.
  * 
+ * For scanning packed approximations (one byte per dimension, see
+ * {@link VAFile}), the bound contributions are additionally kept in flat
+ * tables indexed by dimension and cell. The block kernels then only perform
+ * table lookups and additions, and return the bounds <em>before</em> taking
+ * the p-th root; use {@link #toDistance} and {@link #toPowered} to convert.
+ * 
  * @author Erich Schubert
  * @since 0.5.0
  */
 public class VALPNormDistance {
+  /**
+   * Value of p for lP norm.
+   */
+  private final double p;
+
   /**
    * Value of 1/p for lP norm.
    */
   private final double onebyp;
 
+  /**
+   * Number of cells per dimension.
+   */
+  private int cells;
+
+  /**
+   * Minimum and maximum contributions, by dimension and cell.
+   */
+  private double[] minTable, maxTable;
+
   /**
    * Lookup table for grid cells.
    */
@@ -57,11 +78,115 @@ public class VALPNormDistance {
    */
   public VALPNormDistance(double p, double[][] splitPositions, NumberVector query, VectorApproximation queryApprox) {
     super();
+    this.p = p;
     this.onebyp = 1.0 / p;
     this.queryApprox = queryApprox;
     initializeLookupTable(splitPositions, query, p);
   }
 
+  /**
+   * Convert a bound returned by the block kernels to a distance.
+   * 
+   * @param powered Bound, before taking the p-th root
+   * @return Distance
+   */
+  public double toDistance(double powered) {
+    return p == Double.POSITIVE_INFINITY ? powered : Math.pow(powered, onebyp);
+  }
+
+  /**
+   * Convert a distance to the scale of the block kernels.
+   * 
+   * @param dist Distance
+   * @return Distance to the power of p
+   */
+  public double toPowered(double dist) {
+    return p == Double.POSITIVE_INFINITY ? dist : Math.pow(dist, p);
+  }
+
+  /**
+   * Compute the minimum distances for a block of packed approximations.
+   * 
+   * @param approx Packed approximations, one byte per dimension and object
+   * @param begin First object
+   * @param end End of block (exclusive)
+   * @param minDist Output array, indexed by object; to the power of p
+   */
+  public void getMinDists(byte[] approx, int begin, int end, double[] minDist) {
+    final int dim = lookup.length, cells = this.cells;
+    final double[] minTable = this.minTable;
+    if(p == Double.POSITIVE_INFINITY) {
+      for(int i = begin, off = begin * dim; i < end; i++, off += dim) {
+        double mi = 0;
+        for(int d = 0, t = 0; d < dim; d++, t += cells) {
+          mi = Math.max(mi, minTable[t + (approx[off + d] & 0xFF)]);
+        }
+        minDist[i] = mi;
+      }
+      return;
+    }
+    for(int i = begin, off = begin * dim; i < end; i++, off += dim) {
+      // Two independent accumulators, to not stall on the additions.
+      double mi0 = 0, mi1 = 0;
+      int d = 0, t = 0;
+      for(; d + 1 < dim; d += 2, t += cells << 1) {
+        mi0 += minTable[t + (approx[off + d] & 0xFF)];
+        mi1 += minTable[t + cells + (approx[off + d + 1] & 0xFF)];
+      }
+      if(d < dim) {
+        mi0 += minTable[t + (approx[off + d] & 0xFF)];
+      }
+      minDist[i] = mi0 + mi1;
+    }
+  }
+
+  /**
+   * Compute the minimum and maximum distances for a block of packed
+   * approximations.
+   * 
+   * @param approx Packed approximations, one byte per dimension and object
+   * @param begin First object
+   * @param end End of block (exclusive)
+   * @param minDist Output array, indexed by object; to the power of p
+   * @param maxDist Output array, indexed by object; to the power of p
+   */
+  public void getMinMaxDists(byte[] approx, int begin, int end, double[] minDist, double[] maxDist) {
+    final int dim = lookup.length, cells = this.cells;
+    final double[] minTable = this.minTable, maxTable = this.maxTable;
+    if(p == Double.POSITIVE_INFINITY) {
+      for(int i = begin, off = begin * dim; i < end; i++, off += dim) {
+        double mi = 0, ma = 0;
+        for(int d = 0, t = 0; d < dim; d++, t += cells) {
+          final int c = t + (approx[off + d] & 0xFF);
+          mi = Math.max(mi, minTable[c]);
+          ma = Math.max(ma, maxTable[c]);
+        }
+        minDist[i] = mi;
+        maxDist[i] = ma;
+      }
+      return;
+    }
+    for(int i = begin, off = begin * dim; i < end; i++, off += dim) {
+      double mi0 = 0, mi1 = 0, ma0 = 0, ma1 = 0;
+      int d = 0, t = 0;
+      for(; d + 1 < dim; d += 2, t += cells << 1) {
+        final int c0 = t + (approx[off + d] & 0xFF);
+        final int c1 = t + cells + (approx[off + d + 1] & 0xFF);
+        mi0 += minTable[c0];
+        mi1 += minTable[c1];
+        ma0 += maxTable[c0];
+        ma1 += maxTable[c1];
+      }
+      if(d < dim) {
+        final int c0 = t + (approx[off + d] & 0xFF);
+        mi0 += minTable[c0];
+        ma0 += maxTable[c0];
+      }
+      minDist[i] = mi0 + mi1;
+      maxDist[i] = ma0 + ma1;
+    }
+  }
+
   /**
    * Get the minimum distance contribution of a single dimension.
    * 
@@ -160,10 +285,21 @@ public class VALPNormDistance {
     final int dimensions = splitPositions.length;
     final int bordercount = splitPositions[0].length;
     lookup = new double[dimensions][bordercount];
+    final boolean inf = p == Double.POSITIVE_INFINITY;
     for(int d = 0; d < dimensions; d++) {
       final double val = query.doubleValue(d);
       for(int i = 0; i < bordercount; i++) {
-        lookup[d][i] = Math.pow(splitPositions[d][i] - val, p);
+        final double delta = Math.abs(splitPositions[d][i] - val);
+        lookup[d][i] = inf ? delta : Math.pow(delta, p);
+      }
+    }
+    cells = bordercount - 1;
+    minTable = new double[dimensions * cells];
+    maxTable = new double[dimensions * cells];
+    for(int d = 0, t = 0; d < dimensions; d++) {
+      for(int c = 0; c < cells; c++, t++) {
+        minTable[t] = getPartialMinDist(d, c);
+        maxTable[t] = getPartialMaxDist(d, c);
       }
     }
   }
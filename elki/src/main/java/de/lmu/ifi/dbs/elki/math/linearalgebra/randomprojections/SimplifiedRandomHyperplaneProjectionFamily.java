@@ -23,6 +23,7 @@ package de.lmu.ifi.dbs.elki.math.linearalgebra.randomprojections;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.Arrays;
 import java.util.Random;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
@@ -125,6 +126,7 @@ public class SimplifiedRandomHyperplaneProjectionFamily implements RandomProject
 
     @Override
     public double[] project(NumberVector vec, double[] ret) {
+      Arrays.fill(ret, 0.); // Buffers may be reused.
       if(!(vec instanceof SparseNumberVector)) {
         return projectDense(vec, ret);
       }
@@ -23,10 +23,12 @@ package de.lmu.ifi.dbs.elki.math.spacefillingcurves;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.parallel.ParallelRange;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 
@@ -34,7 +36,8 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * Sort object along the Hilbert Space Filling curve by mapping them to their
  * Hilbert numbers and sorting them.
  * 
- * Objects are mapped using 31 bits per dimension.
+ * Objects are mapped using 31 bits per dimension. Large inputs are mapped and
+ * sorted in parallel; the resulting order is the same.
  * 
  * Reference:
  * <p>
@@ -50,6 +53,11 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  */
 @Reference(authors = "D. Hilbert", title = "Über die stetige Abbildung einer Linie auf ein Flächenstück", booktitle = "Mathematische Annalen, 38(3)")
 public class HilbertSpatialSorter extends AbstractSpatialSorter {
+  /**
+   * Inputs smaller than this are sorted by the current thread.
+   */
+  private static final int THRESHOLD = 1 << 14;
+
   /**
    * Constructor.
    */
@@ -59,19 +67,15 @@ public class HilbertSpatialSorter extends AbstractSpatialSorter {
 
   @Override
   public <T extends SpatialComparable> void sort(List<T> objs, int start, int end, double[] minmax, int[] dims) {
+    if(end - start >= THRESHOLD) {
+      parallelSort(objs, start, end, minmax, dims);
+      return;
+    }
     final int dim = (dims != null) ? dims.length : (minmax.length >> 1);
     List<HilbertRef<T>> tmp = new ArrayList<>(end - start);
     int[] buf = new int[dim];
     for (int i = start; i < end; i++) {
-      T v = objs.get(i);
-      // Convert into integers
-      for (int d = 0; d < dim; d++) {
-        final int ed = (dims != null) ? dims[d] : d, ed2 = ed << 1;
-        double val = (v.getMin(ed) + v.getMax(ed)) * .5;
-        val = Integer.MAX_VALUE * ((val - minmax[ed2]) / (minmax[ed2 + 1] - minmax[ed2]));
-        buf[d] = (int) val;
-      }
-      tmp.add(new HilbertRef<>(v, coordinatesToHilbert(buf, Integer.SIZE - 1, 1)));
+      tmp.add(hilbertRef(objs.get(i), minmax, dims, buf));
     }
     // Sort and copy back
     Collections.sort(tmp);
@@ -80,6 +84,76 @@ public class HilbertSpatialSorter extends AbstractSpatialSorter {
     }
   }
 
+  /**
+   * Sort using all available processors: the Hilbert addresses are computed
+   * in parallel, followed by a parallel stable merge sort.
+   *
+   * @param objs Objects to sort
+   * @param start Start of sorting range
+   * @param end End of sorting range
+   * @param minmax Value range
+   * @param dims Dimensions to use, or {@code null}
+   * @param <T> Object type
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private <T extends SpatialComparable> void parallelSort(final List<T> objs, final int start, int end, final double[] minmax, final int[] dims) {
+    final HilbertRef<T>[] refs = new HilbertRef[end - start];
+    final HilbertRef<T>[] scratch = new HilbertRef[end - start];
+    ParallelRange.reduce(0, refs.length, THRESHOLD - 1, new ParallelRange.Reducer<int[]>() {
+      @Override
+      public int[] process(int begin, int end) {
+        int[] buf = new int[(dims != null) ? dims.length : (minmax.length >> 1)];
+        for (int i = begin; i < end; i++) {
+          refs[i] = hilbertRef(objs.get(start + i), minmax, dims, buf);
+        }
+        Arrays.sort(refs, begin, end);
+        return new int[] { begin, end };
+      }
+
+      @Override
+      public int[] merge(int[] left, int[] right) {
+        // Stable merge of two adjacent sorted blocks:
+        final int begin = left[0], mid = left[1], end = right[1];
+        int i = begin, j = mid, o = begin;
+        while (i < mid && j < end) {
+          scratch[o++] = (refs[j].compareTo(refs[i]) < 0) ? refs[j++] : refs[i++];
+        }
+        while (i < mid) {
+          scratch[o++] = refs[i++];
+        }
+        while (j < end) {
+          scratch[o++] = refs[j++];
+        }
+        System.arraycopy(scratch, begin, refs, begin, end - begin);
+        return new int[] { begin, end };
+      }
+    });
+    for (int i = start; i < end; i++) {
+      objs.set(i, refs[i - start].vec);
+    }
+  }
+
+  /**
+   * Map an object to its Hilbert address.
+   *
+   * @param v Object
+   * @param minmax Value range
+   * @param dims Dimensions to use, or {@code null}
+   * @param buf Buffer, of length dimensionality
+   * @param <T> Object type
+   * @return Reference for sorting
+   */
+  private static <T extends SpatialComparable> HilbertRef<T> hilbertRef(T v, double[] minmax, int[] dims, int[] buf) {
+    // Convert into integers
+    for (int d = 0; d < buf.length; d++) {
+      final int ed = (dims != null) ? dims[d] : d, ed2 = ed << 1;
+      double val = (v.getMin(ed) + v.getMax(ed)) * .5;
+      val = Integer.MAX_VALUE * ((val - minmax[ed2]) / (minmax[ed2 + 1] - minmax[ed2]));
+      buf[d] = (int) val;
+    }
+    return new HilbertRef<>(v, coordinatesToHilbert(buf, Integer.SIZE - 1, 1));
+  }
+
   /**
    * Object used in spatial sorting, combining the spatial object and the object
    * ID.
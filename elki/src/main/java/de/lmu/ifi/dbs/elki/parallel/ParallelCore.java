@@ -24,6 +24,8 @@ package de.lmu.ifi.dbs.elki.parallel;
  */
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -31,7 +33,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}
+ * and, for work-stealing tasks, a {@link ForkJoinPool}.
  * 
  * TODO: make configurable how many threads are used.
  * 
@@ -54,6 +57,11 @@ public class ParallelCore {
    */
   ThreadPoolExecutor executor;
 
+  /**
+   * Work-stealing pool, for recursively split tasks.
+   */
+  ForkJoinPool forkjoin;
+
   /**
    * Number of connected submitters.
    */
@@ -101,6 +109,18 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Run a task in the work-stealing pool, and wait for its completion.
+   * 
+   * Exceptions of the task are rethrown in the calling thread.
+   * 
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    return forkjoin.invoke(task);
+  }
+
   /**
    * Connect to the executor.
    */
@@ -108,6 +128,8 @@ public class ParallelCore {
     if(executor == null) {
       synchronized(this) {
         if(executor == null) {
+          // Idle fork-join workers terminate on their own.
+          forkjoin = new ForkJoinPool(processors);
           executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
           executor.allowCoreThreadTimeOut(true);
         }
@@ -27,13 +27,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
@@ -41,44 +47,142 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 /**
  * Class to run processors in parallel, on all available cores.
  * 
+ * The objects can be distributed to the threads using different
+ * {@link Strategy strategies}. By default, work stealing is used, which
+ * adapts to skewed per-object cost (e.g. kNN queries in dense and sparse
+ * regions) much better than a static partitioning.
+ * 
+ * Each thread keeps a single set of processor instances for the whole run;
+ * these are cleaned up once all objects have been processed. When statistics
+ * logging is enabled, the busy time of every worker is reported.
+ * 
  * TODO: add progress
  * 
  * @author Erich Schubert
  * @since 0.7.0
  * 
- * @apiviz.has BlockArrayRunner
+ * @apiviz.has Strategy
+ * @apiviz.has Worker
  * @apiviz.uses ParallelCore
  */
 public class ParallelExecutor {
   /**
-   * Run a task on all available CPUs.
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelExecutor.class);
+
+  /**
+   * Smallest block size to split for the dynamic strategies.
+   */
+  private static final int MIN_BLOCKSIZE = 16;
+
+  /**
+   * Strategies to distribute the objects to the worker threads.
+   * 
+   * @author Erich Schubert
+   */
+  public static enum Strategy {
+    /**
+     * Static partitioning into equally sized blocks, decided up front.
+     */
+    STATIC,
+    /**
+     * Guided self-scheduling: threads fetch blocks from a shared counter, with
+     * the block size decreasing as fewer objects remain.
+     */
+    GUIDED,
+    /**
+     * Work stealing with adaptive splitting on a fork-join pool: blocks are
+     * only split while other threads are short of work.
+     */
+    WORK_STEALING;
+  }
+
+  /**
+   * Strategy used by {@link #run(DBIDs, Processor...)}.
+   */
+  private static Strategy defaultStrategy = Strategy.WORK_STEALING;
+
+  /**
+   * Get the default partitioning strategy.
+   * 
+   * @return Strategy
+   */
+  public static Strategy getDefaultStrategy() {
+    return defaultStrategy;
+  }
+
+  /**
+   * Set the default partitioning strategy.
+   * 
+   * @param strategy Strategy to use
+   */
+  public static void setDefaultStrategy(Strategy strategy) {
+    defaultStrategy = strategy;
+  }
+
+  /**
+   * Run a task on all available CPUs, using the default strategy.
    * 
    * @param ids IDs to process
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
+    run(ids, defaultStrategy, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs.
+   * 
+   * @param ids IDs to process
+   * @param strategy Partitioning strategy
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, Strategy strategy, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * numparts - 1 : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = (start + blocksize < size) ? start + blocksize : size;
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
+      final int parallelism = core.getParallelism();
+      Job job = new Job(aids, procs);
+      switch(strategy){
+      case STATIC: {
+        int numparts = parallelism;
+        // TODO: are there better heuristics for choosing this?
+        numparts = (numparts > 1 && size > numparts * numparts * 16) ? numparts * numparts - 1 : numparts;
+        final int blocksize = (size + (numparts - 1)) / numparts;
+        List<Future<Void>> parts = new ArrayList<>(numparts);
+        for(int start = 0; start < size; start += blocksize) {
+          final int end = (start + blocksize < size) ? start + blocksize : size;
+          parts.add(core.submit(new BlockRunner(job, start, end)));
+        }
+        for(Future<Void> fut : parts) {
+          fut.get();
+        }
+        break;
       }
-
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
+      case GUIDED: {
+        GuidedRunner runner = new GuidedRunner(job, parallelism);
+        List<Future<Void>> parts = new ArrayList<>(parallelism);
+        for(int i = 0; i < parallelism; i++) {
+          parts.add(core.submit(runner));
+        }
+        for(Future<Void> fut : parts) {
+          fut.get();
+        }
+        break;
       }
+      case WORK_STEALING: {
+        // Do not produce more than ~256 blocks per thread.
+        final int minsize = Math.max(MIN_BLOCKSIZE, size / (parallelism << 8));
+        core.invoke(new StealingTask(job, 0, size, minsize, null));
+        break;
+      }
+      default:
+        throw new IllegalStateException("Unknown partitioning strategy: " + strategy);
+      }
+      job.finish(strategy);
     }
     catch(ExecutionException e) {
       throw new RuntimeException("Processor execution failed.", e);
@@ -92,72 +196,175 @@ public class ParallelExecutor {
   }
 
   /**
-   * Run for an array part, without step size.
+   * A single parallel run: the objects, the processors, and the per-thread
+   * workers.
    * 
    * @author Erich Schubert
    * 
-   * @apiviz.uses Processor
+   * @apiviz.has Worker
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  protected static class Job {
     /**
      * Array IDs to process
      */
-    private ArrayDBIDs ids;
+    final ArrayDBIDs ids;
 
     /**
-     * Start position
+     * The processor masters that own the instances.
      */
-    private int start;
+    final Processor[] procs;
 
     /**
-     * End position
+     * Workers, one per thread.
      */
-    private int end;
+    final ConcurrentHashMap<Thread, Worker> workers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * 
+     * @param ids IDs to process
+     * @param procs Processors to run
+     */
+    protected Job(ArrayDBIDs ids, Processor[] procs) {
+      super();
+      this.ids = ids;
+      this.procs = procs;
+    }
+
+    /**
+     * Process a block, in the worker of the current thread.
+     * 
+     * @param start Start position
+     * @param end End position (exclusive)
+     */
+    protected void process(int start, int end) {
+      if(start >= end) {
+        return;
+      }
+      // Only the thread itself registers its worker, so this is race-free.
+      final Thread thread = Thread.currentThread();
+      Worker worker = workers.get(thread);
+      if(worker == null) {
+        worker = new Worker(procs);
+        workers.put(thread, worker);
+      }
+      worker.process(ids, start, end);
+    }
+
+    /**
+     * Cleanup all workers and log the load statistics.
+     * 
+     * @param strategy Strategy used
+     */
+    protected void finish(Strategy strategy) {
+      long maxbusy = 0, sumbusy = 0;
+      int i = 0;
+      final String prefix = ParallelExecutor.class.getName() + ".";
+      for(Worker worker : workers.values()) {
+        worker.cleanup();
+        maxbusy = Math.max(maxbusy, worker.busy);
+        sumbusy += worker.busy;
+        if(LOG.isStatistics()) {
+          final String key = prefix + "worker-" + (i++) + ".";
+          LOG.statistics(new LongStatistic(key + "busy-ms", worker.busy / 1000000L));
+          LOG.statistics(new LongStatistic(key + "objects", worker.objects));
+          LOG.statistics(new LongStatistic(key + "blocks", worker.blocks));
+        }
+      }
+      if(LOG.isStatistics() && sumbusy > 0) {
+        LOG.statistics(new LongStatistic(prefix + strategy.name().toLowerCase() + ".workers", workers.size()));
+        // Ratio of the slowest worker to the average worker; 1 is perfect.
+        LOG.statistics(new DoubleStatistic(prefix + strategy.name().toLowerCase() + ".imbalance", maxbusy * (double) workers.size() / sumbusy));
+      }
+    }
+  }
 
+  /**
+   * Per-thread worker, holding the processor instances and load statistics.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.uses Processor
+   */
+  protected static class Worker implements Executor {
     /**
      * The processor masters that own the instances.
      */
     private Processor[] procs;
 
+    /**
+     * Processor instances, instantiated on first use.
+     */
+    private Processor.Instance[] instances;
+
     /**
      * Variables map.
      */
     private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
 
+    /**
+     * Time spent processing, in nanoseconds.
+     */
+    long busy = 0L;
+
+    /**
+     * Number of objects processed.
+     */
+    long objects = 0L;
+
+    /**
+     * Number of blocks processed.
+     */
+    int blocks = 0;
+
     /**
      * Constructor.
      * 
-     * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
      * @param procs Processors to run
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected Worker(Processor[] procs) {
       super();
-      this.ids = ids;
-      this.start = start;
-      this.end = end;
       this.procs = procs;
     }
 
-    @Override
-    public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
-      for(int i = 0; i < procs.length; i++) {
-        instances[i] = procs[i].instantiate(this);
+    /**
+     * Process a block of objects.
+     * 
+     * @param ids IDs to process
+     * @param start Start position
+     * @param end End position (exclusive)
+     */
+    protected void process(ArrayDBIDs ids, int start, int end) {
+      final long begin = System.nanoTime();
+      if(instances == null) {
+        instances = new Processor.Instance[procs.length];
+        for(int i = 0; i < procs.length; i++) {
+          instances[i] = procs[i].instantiate(this);
+        }
       }
-
       DBIDArrayIter iter = ids.iter();
       iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
+      for(int c = end - start; iter.valid() && c > 0; iter.advance(), c--) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
       }
+      objects += end - start;
+      ++blocks;
+      busy += System.nanoTime() - begin;
+    }
+
+    /**
+     * Cleanup the processor instances.
+     */
+    protected void cleanup() {
+      if(instances == null) {
+        return;
+      }
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
       }
-      return ids;
+      instances = null;
     }
 
     @Override
@@ -171,4 +378,174 @@ public class ParallelExecutor {
       return inst;
     }
   }
+
+  /**
+   * Run for a fixed array part.
+   * 
+   * @author Erich Schubert
+   */
+  protected static class BlockRunner implements Callable<Void> {
+    /**
+     * Job to process.
+     */
+    private Job job;
+
+    /**
+     * Start position
+     */
+    private int start;
+
+    /**
+     * End position
+     */
+    private int end;
+
+    /**
+     * Constructor.
+     * 
+     * @param job Job to process
+     * @param start Starting position
+     * @param end End position (exclusive)
+     */
+    protected BlockRunner(Job job, int start, int end) {
+      super();
+      this.job = job;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public Void call() {
+      job.process(start, end);
+      return null;
+    }
+  }
+
+  /**
+   * Guided self-scheduling: fetch blocks of decreasing size from a shared
+   * counter until all objects are processed.
+   * 
+   * @author Erich Schubert
+   */
+  protected static class GuidedRunner implements Callable<Void> {
+    /**
+     * Job to process.
+     */
+    private Job job;
+
+    /**
+     * Next unprocessed position.
+     */
+    private AtomicInteger next = new AtomicInteger(0);
+
+    /**
+     * Divisor for the block size.
+     */
+    private int div;
+
+    /**
+     * Constructor.
+     * 
+     * @param job Job to process
+     * @param parallelism Number of threads
+     */
+    protected GuidedRunner(Job job, int parallelism) {
+      super();
+      this.job = job;
+      this.div = parallelism << 1;
+    }
+
+    @Override
+    public Void call() {
+      final int size = job.ids.size();
+      int start;
+      while((start = next.get()) < size) {
+        final int end = Math.min(size, start + Math.max(MIN_BLOCKSIZE, (size - start) / div));
+        if(next.compareAndSet(start, end)) {
+          job.process(start, end);
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Work-stealing task with adaptive splitting.
+   * 
+   * The range is halved only as long as there are few surplus tasks queued;
+   * the forked halves are processed locally again when no other thread
+   * stole them.
+   * 
+   * @author Erich Schubert
+   */
+  protected static class StealingTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of surplus queued tasks to allow.
+     */
+    private static final int SURPLUS = 3;
+
+    /**
+     * Job to process.
+     */
+    private final Job job;
+
+    /**
+     * Range to process.
+     */
+    private final int start, end;
+
+    /**
+     * Minimum block size.
+     */
+    private final int minsize;
+
+    /**
+     * Next forked sibling task.
+     */
+    private final StealingTask next;
+
+    /**
+     * Constructor.
+     * 
+     * @param job Job to process
+     * @param start Starting position
+     * @param end End position (exclusive)
+     * @param minsize Minimum block size
+     * @param next Next forked sibling
+     */
+    protected StealingTask(Job job, int start, int end, int minsize, StealingTask next) {
+      super();
+      this.job = job;
+      this.start = start;
+      this.end = end;
+      this.minsize = minsize;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      int e = end;
+      StealingTask right = null;
+      while(e - start > minsize && getSurplusQueuedTaskCount() <= SURPLUS) {
+        final int mid = (start + e) >>> 1;
+        right = new StealingTask(job, mid, e, minsize, right);
+        right.fork();
+        e = mid;
+      }
+      job.process(start, e);
+      for(; right != null; right = right.next) {
+        if(right.tryUnfork()) {
+          right.compute();
+        }
+        else {
+          right.join();
+        }
+      }
+    }
+  }
 }
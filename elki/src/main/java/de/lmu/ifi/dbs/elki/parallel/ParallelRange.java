@@ -0,0 +1,269 @@
+package de.lmu.ifi.dbs.elki.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Run a loop over a range of integers (e.g. array offsets) on the
+ * work-stealing pool of the {@link ParallelCore}.
+ * 
+ * The range is split recursively into halves, until the blocks are no larger
+ * than the given block size. Ranges that fit into a single block are processed
+ * in the calling thread, without using the pool.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has Block
+ * @apiviz.has Reducer
+ * @apiviz.uses ParallelCore
+ */
+public final class ParallelRange {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private ParallelRange() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Choose a block size that yields about 16 blocks per thread.
+   * 
+   * @param size Number of objects
+   * @param minsize Minimum block size
+   * @return Block size
+   */
+  public static int blocksize(int size, int minsize) {
+    return Math.max(minsize, size / (ParallelCore.getCore().getParallelism() << 4));
+  }
+
+  /**
+   * Process a range of integers in parallel.
+   * 
+   * @param begin First value
+   * @param end End of range (exclusive)
+   * @param blocksize Number of values to process without splitting
+   * @param block Block processor
+   */
+  public static void run(int begin, int end, int blocksize, Block block) {
+    if(end - begin <= blocksize) {
+      block.process(begin, end);
+      return;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.invoke(new BlockTask(block, begin, end, blocksize));
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Process a range of integers in parallel, and combine the block results.
+   * 
+   * Results are combined in the order of the range, i.e. the first argument of
+   * {@link Reducer#merge} always belongs to the lower block.
+   * 
+   * @param begin First value
+   * @param end End of range (exclusive)
+   * @param blocksize Number of values to process without splitting
+   * @param reducer Block processor and combiner
+   * @param <R> Result type
+   * @return Combined result
+   */
+  public static <R> R reduce(int begin, int end, int blocksize, Reducer<R> reducer) {
+    if(end - begin <= blocksize) {
+      return reducer.process(begin, end);
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return core.invoke(new ReduceTask<>(reducer, begin, end, blocksize));
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Processor for a block of the range.
+   * 
+   * Blocks are processed concurrently, so implementations must only write to
+   * thread-safe or block-local state.
+   * 
+   * @author Erich Schubert
+   */
+  public static interface Block {
+    /**
+     * Process a block.
+     * 
+     * @param begin First value
+     * @param end End of block (exclusive)
+     */
+    void process(int begin, int end);
+  }
+
+  /**
+   * Processor for a block of the range, with a result.
+   * 
+   * @author Erich Schubert
+   * 
+   * @param <R> Result type
+   */
+  public static interface Reducer<R> {
+    /**
+     * Process a block.
+     * 
+     * @param begin First value
+     * @param end End of block (exclusive)
+     * @return Result of the block
+     */
+    R process(int begin, int end);
+
+    /**
+     * Combine the results of two adjacent blocks.
+     * 
+     * @param left Result of the lower block
+     * @param right Result of the upper block
+     * @return Combined result
+     */
+    R merge(R left, R right);
+  }
+
+  /**
+   * Recursively split task for {@link Block}s.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class BlockTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Block processor.
+     */
+    private final Block block;
+
+    /**
+     * Range to process.
+     */
+    private final int begin, end;
+
+    /**
+     * Number of values to process without splitting.
+     */
+    private final int blocksize;
+
+    /**
+     * Constructor.
+     * 
+     * @param block Block processor
+     * @param begin First value
+     * @param end End of range (exclusive)
+     * @param blocksize Number of values to process without splitting
+     */
+    BlockTask(Block block, int begin, int end, int blocksize) {
+      this.block = block;
+      this.begin = begin;
+      this.end = end;
+      this.blocksize = blocksize;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - begin > blocksize) {
+        final int mid = (begin + end) >>> 1;
+        invokeAll(new BlockTask(block, begin, mid, blocksize), new BlockTask(block, mid, end, blocksize));
+        return;
+      }
+      block.process(begin, end);
+    }
+  }
+
+  /**
+   * Recursively split task for {@link Reducer}s.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <R> Result type
+   */
+  private static class ReduceTask<R> extends RecursiveTask<R> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Block processor.
+     */
+    private final Reducer<R> reducer;
+
+    /**
+     * Range to process.
+     */
+    private final int begin, end;
+
+    /**
+     * Number of values to process without splitting.
+     */
+    private final int blocksize;
+
+    /**
+     * Constructor.
+     * 
+     * @param reducer Block processor
+     * @param begin First value
+     * @param end End of range (exclusive)
+     * @param blocksize Number of values to process without splitting
+     */
+    ReduceTask(Reducer<R> reducer, int begin, int end, int blocksize) {
+      this.reducer = reducer;
+      this.begin = begin;
+      this.end = end;
+      this.blocksize = blocksize;
+    }
+
+    @Override
+    protected R compute() {
+      if(end - begin > blocksize) {
+        final int mid = (begin + end) >>> 1;
+        ReduceTask<R> left = new ReduceTask<>(reducer, begin, mid, blocksize);
+        ReduceTask<R> right = new ReduceTask<>(reducer, mid, end, blocksize);
+        invokeAll(left, right);
+        return reducer.merge(left.getRawResult(), right.getRawResult());
+      }
+      return reducer.process(begin, end);
+    }
+  }
+}
@@ -46,14 +46,19 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
    */
   private Counter writeAccess;
 
+  /**
+   * Read-only flag.
+   */
+  private volatile boolean frozen = false;
+
   /**
    * Constructor.
    */
   public AbstractPageFile() {
     super();
     Logging log = getLogger();
-    this.readAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".reads") : null;
-    this.writeAccess = log.isStatistics() ? log.newCounter(this.getClass().getName() + ".writes") : null;
+    this.readAccess = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".reads") : null;
+    this.writeAccess = log.isStatistics() ? log.newConcurrentCounter(this.getClass().getName() + ".writes") : null;
   }
 
   /**
@@ -72,6 +77,7 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
    */
   @Override
   public final synchronized int writePage(P page) {
+    checkWritable();
     int pageid = setPageID(page);
     writePage(pageid, page);
     return pageid;
@@ -85,6 +91,27 @@ public abstract class AbstractPageFile<P extends Page> implements PageFile<P> {
    */
   protected abstract void writePage(int pageid, P page);
 
+  @Override
+  public void freeze() {
+    frozen = true;
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Ensure the page file has not been frozen.
+   * 
+   * @throws UnsupportedOperationException when the file is read-only.
+   */
+  protected void checkWritable() {
+    if(frozen) {
+      throw new UnsupportedOperationException("Page file has been frozen and is read-only.");
+    }
+  }
+
   @Override
   public void close() {
     clear();
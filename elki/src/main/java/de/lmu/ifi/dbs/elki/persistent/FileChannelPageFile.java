@@ -0,0 +1,394 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectInput;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectOutput;
+
+/**
+ * Disk-based page file using positional {@link FileChannel} I/O.
+ * 
+ * In contrast to {@link PersistentPageFile}, pages are read and written
+ * through reusable direct buffers (one per thread). Because the positional
+ * reads do not modify a shared file pointer, concurrent page reads do not need
+ * to synchronize on a global seek lock.
+ * 
+ * Header layout and page encoding are the same as in
+ * {@link PersistentPageFile}, so files can be opened with either class.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf FileChannel
+ * @apiviz.uses ByteBufferObjectInput
+ * @apiviz.uses ByteBufferObjectOutput
+ * 
+ * @param <P> Page type
+ */
+public class FileChannelPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(FileChannelPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * The file storing the pages; used for the header only.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The channel used for page I/O.
+   */
+  private final FileChannel channel;
+
+  /**
+   * Reusable page buffers, one per thread.
+   */
+  private final ThreadLocal<PageBuffer> buffers = new ThreadLocal<>();
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize the page size
+   * @param fileName the file name
+   * @param pageclass the class of pages to be used
+   */
+  public FileChannelPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+      channel = file.getChannel();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading persistent page file.", e);
+    }
+  }
+
+  /**
+   * Get the page buffer of the current thread.
+   * 
+   * @return Page buffer, cleared and limited to the page size.
+   */
+  private PageBuffer getBuffer() {
+    PageBuffer buf = buffers.get();
+    if(buf == null || buf.buffer.capacity() != pageSize) {
+      buf = new PageBuffer(pageSize);
+      buffers.set(buf);
+    }
+    buf.buffer.clear();
+    return buf;
+  }
+
+  /**
+   * Compute the file offset of a page.
+   * 
+   * @param pageID Page id
+   * @return File offset
+   */
+  private long offset(int pageID) {
+    return ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      PageBuffer buf = getBuffer();
+      final long offset = offset(pageID);
+      ByteBuffer buffer = buf.buffer;
+      while(buffer.hasRemaining()) {
+        if(channel.read(buffer, offset + buffer.position()) < 0) {
+          throw new EOFException("Unexpected end of file after " + buffer.position() + " of " + pageSize + " bytes.");
+        }
+      }
+      buffer.flip();
+      return decodePage(buf.input);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    super.deletePage(pageID);
+    countWrite();
+    writeBuffer(pageID, null);
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    writeBuffer(pageID, page);
+    page.setDirty(false);
+  }
+
+  /**
+   * Encode and write a page.
+   * 
+   * @param pageID Page id
+   * @param page Page, may be {@code null} for an empty page.
+   */
+  private void writeBuffer(int pageID, P page) {
+    PageBuffer buf = getBuffer();
+    ByteBuffer buffer = buf.buffer;
+    try {
+      if(page == null) {
+        buffer.putInt(EMPTY_PAGE);
+      }
+      else {
+        buffer.putInt(FILLED_PAGE);
+        page.writeExternal(buf.output);
+      }
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred! ", e);
+    }
+    // Always write full pages, to keep the file layout dense.
+    buffer.clear();
+    final long offset = offset(pageID);
+    assert offset >= 0 : header.getReservedPages() + " " + pageID + " " + pageSize + " " + offset;
+    try {
+      while(buffer.hasRemaining()) {
+        channel.write(buffer, offset + buffer.position());
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Reconstruct a page from the binary representation.
+   * 
+   * @param in Input positioned at the page start
+   * @return Page, or {@code null} for empty pages
+   */
+  private P decodePage(ByteBufferObjectInput in) {
+    int type = in.readInt();
+    if(type == EMPTY_PAGE) {
+      return null;
+    }
+    if(type != FILLED_PAGE) {
+      throw new IllegalArgumentException("Unknown type: " + type);
+    }
+    try {
+      P page = pageclass.getDeclaredConstructor().newInstance();
+      page.readExternal(in);
+      return page;
+    }
+    catch(ReflectiveOperationException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error in page file", e);
+    }
+  }
+
+  /**
+   * Closes this file. The pages are kept, so that the file can be reopened
+   * later.
+   */
+  @Override
+  public void close() {
+    try {
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // Remove any previous list of empty pages, then write the current list
+        // to the end of the file (also when empty, to reset the size stored in
+        // the header)
+        file.setLength(offset(nextPageID));
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      file.setLength(header.size());
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   * 
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        this.header = header;
+        header.readHeader(file);
+        this.pageSize = header.getPageSize();
+
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+          // Drop the list of empty pages, it will be rewritten on close.
+          file.setLength(offset(nextPageID));
+        }
+        else { // must scan complete file
+          ByteBuffer type = ByteBuffer.allocate(4);
+          for(int i = 0; offset(i) + pageSize <= channel.size(); i++) {
+            type.clear();
+            channel.read(type, offset(i));
+            type.flip();
+            final int t = type.getInt();
+            if(t == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(t == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + t);
+            }
+          }
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        this.header = header;
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Reusable direct buffer, with codec wrappers.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class PageBuffer {
+    /**
+     * Direct buffer of the page size.
+     */
+    final ByteBuffer buffer;
+
+    /**
+     * Input wrapper.
+     */
+    final ByteBufferObjectInput input;
+
+    /**
+     * Output wrapper.
+     */
+    final ByteBufferObjectOutput output;
+
+    /**
+     * Constructor.
+     * 
+     * @param pageSize Page size
+     */
+    PageBuffer(int pageSize) {
+      buffer = ByteBuffer.allocateDirect(pageSize);
+      input = new ByteBufferObjectInput(buffer);
+      output = new ByteBufferObjectOutput(buffer);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.StripedLongCounter;
+
+/**
+ * Read-only cache state used by the page caches after they have been frozen.
+ * 
+ * The cache is a concurrent map that is filled with pages read from the
+ * (frozen) backing file until the capacity is reached; no pages are evicted
+ * afterwards. Because no page can be modified anymore, there is no need to
+ * write back pages, and readers do not need any locks.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @param <P> Page type
+ */
+class FrozenPageCache<P extends Page> {
+  /**
+   * Cached pages.
+   */
+  private final ConcurrentHashMap<Integer, P> map;
+
+  /**
+   * Number of pages in the map.
+   */
+  private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * Maximum number of pages.
+   */
+  private final int capacity;
+
+  /**
+   * The backing file, frozen.
+   */
+  private final PageFile<P> file;
+
+  /**
+   * Statistics.
+   */
+  private final Counter hits, misses;
+
+  /**
+   * Constructor.
+   * 
+   * @param capacity Capacity in pages
+   * @param file Backing file, must be frozen
+   * @param prefix Statistics prefix
+   */
+  FrozenPageCache(int capacity, PageFile<P> file, String prefix) {
+    assert file.isFrozen();
+    this.capacity = capacity;
+    this.file = file;
+    this.map = new ConcurrentHashMap<>(capacity, .75f, Runtime.getRuntime().availableProcessors());
+    this.hits = new StripedLongCounter(prefix + ".frozen.hits");
+    this.misses = new StripedLongCounter(prefix + ".frozen.misses");
+  }
+
+  /**
+   * Add a page that was cached before freezing.
+   * 
+   * @param pageID Page id
+   * @param page Page
+   */
+  void add(int pageID, P page) {
+    if(page != null && size.get() < capacity && map.putIfAbsent(pageID, page) == null) {
+      size.incrementAndGet();
+    }
+  }
+
+  /**
+   * Read a page, from the cache or the backing file.
+   * 
+   * @param pageID Page id
+   * @return Page
+   */
+  P readPage(int pageID) {
+    P page = map.get(pageID);
+    if(page != null) {
+      hits.increment();
+      return page;
+    }
+    misses.increment();
+    page = file.readPage(pageID);
+    add(pageID, page);
+    return page;
+  }
+
+  /**
+   * Number of cache hits.
+   * 
+   * @return Hits
+   */
+  long getHits() {
+    return hits.getValue();
+  }
+
+  /**
+   * Number of cache misses.
+   * 
+   * @return Misses
+   */
+  long getMisses() {
+    return misses.getValue();
+  }
+}
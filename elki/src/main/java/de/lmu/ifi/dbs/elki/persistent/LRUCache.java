@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
@@ -72,6 +73,11 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    */
   protected PageFile<P> file;
 
+  /**
+   * Read-only cache, once frozen.
+   */
+  private volatile FrozenPageCache<P> frozen;
+
   /**
    * Initializes this cache with the specified parameters.
    * 
@@ -93,7 +99,24 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
    *         exists in the cache
    */
   @Override
-  public synchronized P readPage(int pageID) {
+  public P readPage(int pageID) {
+    final FrozenPageCache<P> frozen = this.frozen;
+    if(frozen != null) {
+      countRead();
+      return frozen.readPage(pageID);
+    }
+    synchronized(this) {
+      return readPageLocked(pageID);
+    }
+  }
+
+  /**
+   * Read a page, while holding the lock.
+   * 
+   * @param pageID the id of the page to be returned
+   * @return Page
+   */
+  private P readPageLocked(int pageID) {
     countRead();
     P page = map.get(pageID);
     if(page != null) {
@@ -123,6 +146,7 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
 
   @Override
   public void deletePage(int pageID) {
+    checkWritable();
     countWrite();
     map.remove(pageID);
     file.deletePage(pageID);
@@ -195,6 +219,28 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
     return created;
   }
 
+  /**
+   * Freeze the cache: dirty pages are written to the underlying file, which is
+   * frozen, too. Afterwards, pages are read without locking.
+   */
+  @Override
+  public synchronized void freeze() {
+    if(isFrozen()) {
+      return;
+    }
+    for(P page : map.values()) {
+      expirePage(page);
+    }
+    file.freeze();
+    FrozenPageCache<P> snapshot = new FrozenPageCache<>(cacheSize, file, this.getClass().getName());
+    for(Map.Entry<Integer, P> ent : map.entrySet()) {
+      snapshot.add(ent.getKey(), ent.getValue());
+    }
+    map.clear();
+    frozen = snapshot;
+    super.freeze();
+  }
+
   @Override
   public void close() {
     flush();
@@ -254,6 +300,12 @@ public class LRUCache<P extends Page> extends AbstractPageFile<P> {
   @Override
   public void logStatistics() {
     super.logStatistics();
+    final FrozenPageCache<P> frozen = this.frozen;
+    if(frozen != null && LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      LOG.statistics(new LongStatistic(prefix + ".frozen.hits", frozen.getHits()));
+      LOG.statistics(new LongStatistic(prefix + ".frozen.misses", frozen.getMisses()));
+    }
     file.logStatistics();
   }
 
@@ -59,9 +59,16 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
   }
 
   @Override
-  public synchronized P readPage(int pageID) {
-    countRead();
-    return file.get(pageID);
+  public P readPage(int pageID) {
+    if(isFrozen()) {
+      // No concurrent modifications possible anymore.
+      countRead();
+      return file.get(pageID);
+    }
+    synchronized(this) {
+      countRead();
+      return file.get(pageID);
+    }
   }
 
   @Override
@@ -103,6 +103,12 @@ public class OnDiskArray {
    */
   private MappedByteBuffer map;
 
+  /**
+   * Independent view of the mapped buffer, whose position is never modified;
+   * used for reading without locks.
+   */
+  private volatile ByteBuffer view;
+
   /**
    * Size of the classes header size.
    */
@@ -236,11 +242,13 @@ public class OnDiskArray {
    */
   private synchronized void mapArray() throws IOException {
     if (map != null) {
+      view = null;
       ByteArrayUtil.unmapByteBuffer(map);
       map = null;
     }
     MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
     map = file.getChannel().map(mode, headersize, recordsize * numrecs);
+    view = map.duplicate();
   }
 
   /**
@@ -357,6 +365,27 @@ public class OnDiskArray {
     }
   }
 
+  /**
+   * Get a record buffer without locking, for concurrent readers.
+   * 
+   * The file must not be resized concurrently, and modifications by other
+   * threads are not guaranteed to be visible.
+   * 
+   * @param index Record index
+   * @return Byte buffer for the record
+   * @throws IOException on IO errors
+   */
+  public ByteBuffer getRecordBufferUnsynchronized(int index) throws IOException {
+    final ByteBuffer view = this.view;
+    if (view == null || index < 0 || index >= numrecs) {
+      throw new IOException("Access beyond end of file.");
+    }
+    ByteBuffer buf = view.duplicate();
+    buf.limit(recordsize * (index + 1));
+    buf.position(recordsize * index);
+    return buf.slice();
+  }
+
   /**
    * Return the size of the extra header. Accessor.
    * 
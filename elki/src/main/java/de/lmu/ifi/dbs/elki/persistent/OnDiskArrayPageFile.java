@@ -111,7 +111,7 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
   public P readPage(int pageID) {
     try {
       countRead();
-      return byteBufferToPage(this.file.getRecordBuffer(pageID));
+      return byteBufferToPage(isFrozen() ? this.file.getRecordBufferUnsynchronized(pageID) : this.file.getRecordBuffer(pageID));
     } catch (IOException e) {
       throw new RuntimeException("IOException occurred during reading of page " + pageID, e);
     }
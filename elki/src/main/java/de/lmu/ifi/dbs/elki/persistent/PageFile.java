@@ -106,6 +106,20 @@ public interface PageFile<P extends Page> {
    */
   public boolean initialize(PageHeader header);
 
+  /**
+   * Freeze the page file: afterwards, the file is read-only, and pages may be
+   * read concurrently by multiple threads. Any attempt to modify a frozen file
+   * will cause an {@link UnsupportedOperationException}.
+   */
+  public void freeze();
+
+  /**
+   * Test whether the page file has been frozen.
+   * 
+   * @return {@code true} when read-only.
+   */
+  public boolean isFrozen();
+
   /**
    * Log some statistics to the appropriate logger.
    */
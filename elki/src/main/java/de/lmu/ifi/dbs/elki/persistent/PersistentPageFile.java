@@ -23,28 +23,35 @@ package de.lmu.ifi.dbs.elki.persistent;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectInput;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectOutput;
 
 /**
  * A PersistentPageFile stores objects persistently that implement the
  * <code>Page</code> interface. For convenience each page is represented by a
  * single file. All pages are stored in a specified directory.
  * 
+ * Pages are encoded with {@link ByteBufferObjectOutput}, which writes
+ * primitives directly into the page buffer. Closing the file keeps the pages
+ * and writes the header, so the file can be reopened later.
+ * 
  * @author Elke Achtert
  * @since 0.2
  * 
  * @apiviz.composedOf PageHeader
  * @apiviz.composedOf RandomAccessFile
+ * @apiviz.uses ByteBufferObjectInput
+ * @apiviz.uses ByteBufferObjectOutput
  * 
  * @param <P> Page type
  */
@@ -118,8 +125,22 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
+      if(isFrozen()) {
+        // Positional reads do not modify the shared file pointer.
+        ByteBuffer buf = ByteBuffer.wrap(buffer);
+        FileChannel channel = file.getChannel();
+        while(buf.hasRemaining()) {
+          if(channel.read(buf, offset + buf.position()) < 0) {
+            break;
+          }
+        }
+      }
+      else {
+        synchronized(file) {
+          file.seek(offset);
+          file.read(buffer);
+        }
+      }
       return byteArrayToPage(buffer);
     }
     catch(IOException e) {
@@ -142,8 +163,10 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       countWrite();
       byte[] array = pageToByteArray(null);
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
-      file.seek(offset);
-      file.write(array);
+      synchronized(file) {
+        file.seek(offset);
+        file.write(array);
+      }
     }
     catch(IOException e) {
       throw new RuntimeException(e);
@@ -163,8 +186,10 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       byte[] array = pageToByteArray(page);
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       assert offset >= 0 : header.getReservedPages() + " " + pageID + " " + pageSize + " " + offset;
-      file.seek(offset);
-      file.write(array);
+      synchronized(file) {
+        file.seek(offset);
+        file.write(array);
+      }
       page.setDirty(false);
     }
     catch(IOException e) {
@@ -178,12 +203,15 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   @Override
   public void close() {
     try {
-      super.close();
-      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
-        // write the list of empty pages to the end of the file
-        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+        // drop a stale trailer of a previous session, then write the list of
+        // empty pages after the last page (also when empty, to reset the size
+        // stored in the header)
+        file.setLength(((long) (header.getReservedPages() + nextPageID)) * (long) pageSize);
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
       }
-      ((TreeIndexHeader) header).setLargestPageID(nextPageID);
       header.writeHeader(file);
       file.close();
     }
@@ -213,8 +241,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   private P byteArrayToPage(byte[] array) {
     try {
-      ByteArrayInputStream bais = new ByteArrayInputStream(array);
-      ObjectInputStream ois = new ObjectInputStream(bais);
+      ByteBufferObjectInput ois = new ByteBufferObjectInput(ByteBuffer.wrap(array));
       int type = ois.readInt();
       if(type == EMPTY_PAGE) {
         return null;
@@ -246,43 +273,24 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    * @return the byte array
    */
   private byte[] pageToByteArray(P page) {
+    byte[] result = new byte[pageSize];
+    ByteBuffer buffer = ByteBuffer.wrap(result);
     try {
       if(page == null) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeInt(EMPTY_PAGE);
-        oos.close();
-        baos.close();
-        byte[] array = baos.toByteArray();
-        byte[] result = new byte[pageSize];
-        System.arraycopy(array, 0, result, 0, array.length);
-        return result;
+        buffer.putInt(EMPTY_PAGE);
       }
       else {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeInt(FILLED_PAGE);
-        page.writeExternal(oos);
-        oos.close();
-        baos.close();
-        byte[] array = baos.toByteArray();
-        if(array.length > this.pageSize) {
-          throw new IllegalArgumentException("Size of page " + page + " is greater than specified" + " pagesize: " + array.length + " > " + pageSize);
-        }
-        else if(array.length == this.pageSize) {
-          return array;
-        }
-
-        else {
-          byte[] result = new byte[pageSize];
-          System.arraycopy(array, 0, result, 0, array.length);
-          return result;
-        }
+        buffer.putInt(FILLED_PAGE);
+        page.writeExternal(new ByteBufferObjectOutput(buffer));
       }
     }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize);
+    }
     catch(IOException e) {
       throw new RuntimeException("IOException occurred! ", e);
     }
+    return result;
   }
 
   /** @return the random access file storing the pages. */
@@ -325,6 +333,7 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
         // init the header
         this.header = header;
         header.readHeader(file);
+        this.pageSize = header.getPageSize();
 
         // reading empty nodes in Stack
         if(header instanceof TreeIndexHeader) {
@@ -341,13 +350,8 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
           int i = 0;
           while(file.getFilePointer() + pageSize <= file.length()) {
             long offset = ((long) (header.getReservedPages() + i)) * (long) pageSize;
-            byte[] buffer = new byte[pageSize];
             file.seek(offset);
-            file.read(buffer);
-
-            ByteArrayInputStream bais = new ByteArrayInputStream(buffer);
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            int type = ois.readInt();
+            int type = file.readInt();
             if(type == EMPTY_PAGE) {
               emptyPages.push(i);
             }
@@ -0,0 +1,634 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import de.lmu.ifi.dbs.elki.index.tree.Node;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Lock-striped, scan-resistant page cache using the 2Q replacement policy.
+ * 
+ * Pages seen for the first time enter a FIFO queue ("A1in"); only pages that
+ * are referenced again after falling out of this queue (tracked by their id in
+ * the ghost queue "A1out") are promoted to the main LRU queue ("Am"). A single
+ * scan over the data therefore does not evict the frequently used pages.
+ * 
+ * In addition, directory pages of tree indexes are kept in a separate pinned
+ * tier (up to a fraction of the cache size), where they are never evicted.
+ * 
+ * The cache is split into independently locked segments by page id, so that
+ * concurrent readers rarely contend. Cache misses are read from the backing
+ * page file concurrently only if it is a {@link FileChannelPageFile}, and are
+ * serialized otherwise.
+ * 
+ * Reference:
+ * <p>
+ * T. Johnson, D. Shasha<br />
+ * 2Q: A Low Overhead High Performance Buffer Management Replacement
+ * Algorithm<br />
+ * In Proc. 20th Int. Conf. on Very Large Data Bases (VLDB 1994)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.uses PageFile
+ * @apiviz.composedOf Segment
+ * 
+ * @param <P> Page type
+ */
+public class TwoQueueCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TwoQueueCache.class);
+
+  /**
+   * Minimum number of pages per segment.
+   */
+  private static final int MIN_SEGMENT_SIZE = 16;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Fraction of the cache reserved for pinned directory pages.
+   */
+  protected double pinned;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Lock for accessing the backing file, {@code null} if it supports
+   * concurrent access.
+   */
+  private Object backingLock;
+
+  /**
+   * Cache segments.
+   */
+  private Segment<P>[] segments;
+
+  /**
+   * Bit mask to choose the segment.
+   */
+  private int mask;
+
+  /**
+   * Cache size, in pages.
+   */
+  private int cacheSize;
+
+  /**
+   * Read-only cache, once frozen.
+   */
+  private volatile FrozenPageCache<P> frozen;
+
+  /**
+   * Constructor.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param pinned Fraction of the cache for pinned directory pages
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public TwoQueueCache(int cacheSizeBytes, double pinned, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.pinned = pinned;
+    this.backingLock = (file instanceof FileChannelPageFile) ? null : file;
+  }
+
+  /**
+   * Get the segment for a page.
+   * 
+   * @param pageID Page id
+   * @return Segment
+   */
+  private Segment<P> segment(int pageID) {
+    // Spread the bits, as consecutive ids are common.
+    int h = pageID * 0x9E3779B9;
+    return segments[(h ^ (h >>> 16)) & mask];
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final FrozenPageCache<P> frozen = this.frozen;
+    if(frozen != null) {
+      return frozen.readPage(pageID);
+    }
+    Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      P page = seg.get(pageID);
+      if(page != null) {
+        ++seg.hits;
+        return page;
+      }
+      ++seg.misses;
+    }
+    P page = readBacking(pageID);
+    if(page == null) {
+      return null;
+    }
+    synchronized(seg) {
+      // Another thread may have loaded the page meanwhile:
+      P other = seg.get(pageID);
+      if(other != null) {
+        return other;
+      }
+      seg.insert(pageID, page);
+    }
+    return page;
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    checkWritable();
+    countWrite();
+    page.setDirty(true);
+    Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      if(!seg.replace(pageID, page)) {
+        seg.insert(pageID, page);
+      }
+    }
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to cache: " + pageID);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    checkWritable();
+    countWrite();
+    Segment<P> seg = segment(pageID);
+    synchronized(seg) {
+      seg.remove(pageID);
+    }
+    if(backingLock == null) {
+      file.deletePage(pageID);
+      return;
+    }
+    synchronized(backingLock) {
+      file.deletePage(pageID);
+    }
+  }
+
+  /**
+   * Read a page from the backing file.
+   * 
+   * @param pageID Page id
+   * @return Page
+   */
+  private P readBacking(int pageID) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Read from backing: " + pageID);
+    }
+    if(backingLock == null) {
+      return file.readPage(pageID);
+    }
+    synchronized(backingLock) {
+      return file.readPage(pageID);
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   * 
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(!page.isDirty()) {
+      return;
+    }
+    if(backingLock == null) {
+      file.writePage(page);
+      return;
+    }
+    synchronized(backingLock) {
+      file.writePage(page);
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    // Use about 4 segments per processor, but keep segments reasonably large.
+    int nseg = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() << 2);
+    while(nseg > 1 && cacheSize / nseg < MIN_SEGMENT_SIZE) {
+      nseg >>>= 1;
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages in " + nseg + " segments.");
+    }
+    segments = new Segment[nseg];
+    mask = nseg - 1;
+    for(int i = 0; i < nseg; i++) {
+      final int segsize = cacheSize / nseg + (i < cacheSize % nseg ? 1 : 0);
+      segments[i] = new Segment<>(this, segsize, (int) (segsize * pinned));
+    }
+    return created;
+  }
+
+  /**
+   * Freeze the cache: dirty pages are written to the underlying file, which is
+   * frozen, too. Afterwards, pages are read without locking.
+   */
+  @Override
+  public synchronized void freeze() {
+    if(isFrozen()) {
+      return;
+    }
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.writeBack();
+      }
+    }
+    file.freeze();
+    FrozenPageCache<P> snapshot = new FrozenPageCache<>(cacheSize, file, this.getClass().getName());
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.transfer(snapshot);
+      }
+    }
+    frozen = snapshot;
+    super.freeze();
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.flush();
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    for(Segment<P> seg : segments) {
+      synchronized(seg) {
+        seg.clear();
+      }
+    }
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(LOG.isStatistics()) {
+      long hits = 0, misses = 0, evictions = 0, numpinned = 0;
+      for(Segment<P> seg : segments) {
+        synchronized(seg) {
+          hits += seg.hits;
+          misses += seg.misses;
+          evictions += seg.evictions;
+          numpinned += seg.pinned.size();
+        }
+      }
+      final String prefix = this.getClass().getName();
+      LOG.statistics(new LongStatistic(prefix + ".hits", hits));
+      LOG.statistics(new LongStatistic(prefix + ".misses", misses));
+      LOG.statistics(new LongStatistic(prefix + ".evictions", evictions));
+      LOG.statistics(new LongStatistic(prefix + ".pinned", numpinned));
+      final FrozenPageCache<P> frozen = this.frozen;
+      if(frozen != null) {
+        LOG.statistics(new LongStatistic(prefix + ".frozen.hits", frozen.getHits()));
+        LOG.statistics(new LongStatistic(prefix + ".frozen.misses", frozen.getMisses()));
+      }
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Test whether a page is a directory page, to be pinned.
+   * 
+   * @param page Page
+   * @return {@code true} for directory nodes of tree indexes.
+   */
+  protected static boolean isDirectory(Page page) {
+    return page instanceof Node && !((Node<?>) page).isLeaf();
+  }
+
+  /**
+   * A single segment of the cache, with its own 2Q queues. All methods must be
+   * called while holding the segment lock.
+   * 
+   * @author Erich Schubert
+   * 
+   * @param <P> Page type
+   */
+  private static class Segment<P extends Page> {
+    /**
+     * Cache that owns this segment.
+     */
+    final TwoQueueCache<P> cache;
+
+    /**
+     * Capacity of the queues, in pages.
+     */
+    final int capacity;
+
+    /**
+     * Maximum number of pinned directory pages.
+     */
+    final int maxpinned;
+
+    /**
+     * Size limits of the A1in and A1out queues.
+     */
+    final int kin, kout;
+
+    /**
+     * Pinned directory pages.
+     */
+    final HashMap<Integer, P> pinned = new HashMap<>();
+
+    /**
+     * FIFO queue of pages seen once.
+     */
+    final LinkedHashMap<Integer, P> a1in = new LinkedHashMap<>();
+
+    /**
+     * Ghost FIFO queue of page ids recently evicted from a1in.
+     */
+    final LinkedHashSet<Integer> a1out = new LinkedHashSet<>();
+
+    /**
+     * LRU queue of frequently used pages.
+     */
+    final LinkedHashMap<Integer, P> am = new LinkedHashMap<>(16, .75f, true);
+
+    /**
+     * Statistics; misses are only counted when reading pages.
+     */
+    long hits, misses, evictions;
+
+    /**
+     * Constructor.
+     * 
+     * @param cache Cache that owns this segment
+     * @param capacity Capacity of the queues
+     * @param maxpinned Maximum number of pinned pages
+     */
+    Segment(TwoQueueCache<P> cache, int capacity, int maxpinned) {
+      this.cache = cache;
+      this.capacity = Math.max(1, capacity - maxpinned);
+      this.maxpinned = maxpinned;
+      this.kin = Math.max(1, this.capacity >> 2);
+      this.kout = Math.max(1, this.capacity >> 1);
+    }
+
+    /**
+     * Get a page, if cached, and update the queues.
+     * 
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    P get(int pageID) {
+      final Integer key = pageID;
+      P page = pinned.get(key);
+      if(page == null) {
+        page = am.get(key); // Moves to MRU position
+      }
+      if(page == null) {
+        page = a1in.get(key); // Stays in FIFO position
+      }
+      return page;
+    }
+
+    /**
+     * Replace a cached page, without changing the queue order.
+     * 
+     * @param pageID Page id
+     * @param page New page
+     * @return {@code false} if the page was not cached.
+     */
+    boolean replace(int pageID, P page) {
+      final Integer key = pageID;
+      if(pinned.containsKey(key)) {
+        pinned.put(key, page);
+        return true;
+      }
+      if(am.containsKey(key)) {
+        am.put(key, page);
+        return true;
+      }
+      if(a1in.containsKey(key)) {
+        a1in.put(key, page);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Insert a page that is not yet in the cache.
+     * 
+     * @param pageID Page id
+     * @param page Page
+     */
+    void insert(int pageID, P page) {
+      final Integer key = pageID;
+      if(pinned.size() < maxpinned && isDirectory(page)) {
+        pinned.put(key, page);
+        return;
+      }
+      reclaim();
+      if(a1out.remove(key)) {
+        am.put(key, page); // Seen again: hot page
+      }
+      else {
+        a1in.put(key, page);
+      }
+    }
+
+    /**
+     * Make room for one more page.
+     */
+    private void reclaim() {
+      if(a1in.size() + am.size() < capacity) {
+        return;
+      }
+      if(a1in.size() > kin || am.isEmpty()) {
+        Iterator<Map.Entry<Integer, P>> it = a1in.entrySet().iterator();
+        Map.Entry<Integer, P> eldest = it.next();
+        it.remove();
+        if(a1out.size() >= kout) {
+          Iterator<Integer> it2 = a1out.iterator();
+          it2.next();
+          it2.remove();
+        }
+        a1out.add(eldest.getKey());
+        evict(eldest.getValue());
+      }
+      else {
+        Iterator<Map.Entry<Integer, P>> it = am.entrySet().iterator();
+        P eldest = it.next().getValue();
+        it.remove();
+        evict(eldest);
+      }
+    }
+
+    /**
+     * Evict a page.
+     * 
+     * @param page Page
+     */
+    private void evict(P page) {
+      ++evictions;
+      cache.expirePage(page);
+    }
+
+    /**
+     * Remove a page from the cache, without writing it.
+     * 
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      final Integer key = pageID;
+      if(pinned.remove(key) == null && am.remove(key) == null) {
+        a1in.remove(key);
+      }
+      a1out.remove(key);
+    }
+
+    /**
+     * Write all pages to the backing file, and empty the segment.
+     */
+    void flush() {
+      for(P page : pinned.values()) {
+        cache.expirePage(page);
+      }
+      for(P page : am.values()) {
+        cache.expirePage(page);
+      }
+      for(P page : a1in.values()) {
+        cache.expirePage(page);
+      }
+      clear();
+    }
+
+    /**
+     * Write all dirty pages to the backing file, but keep them cached.
+     */
+    void writeBack() {
+      for(P page : pinned.values()) {
+        cache.expirePage(page);
+      }
+      for(P page : am.values()) {
+        cache.expirePage(page);
+      }
+      for(P page : a1in.values()) {
+        cache.expirePage(page);
+      }
+    }
+
+    /**
+     * Move all cached pages into the read-only cache, and empty the segment.
+     * Directory pages go first, as they are the most valuable.
+     * 
+     * @param snapshot Read-only cache
+     */
+    void transfer(FrozenPageCache<P> snapshot) {
+      for(Map.Entry<Integer, P> ent : pinned.entrySet()) {
+        snapshot.add(ent.getKey(), ent.getValue());
+      }
+      for(Map.Entry<Integer, P> ent : am.entrySet()) {
+        snapshot.add(ent.getKey(), ent.getValue());
+      }
+      for(Map.Entry<Integer, P> ent : a1in.entrySet()) {
+        snapshot.add(ent.getKey(), ent.getValue());
+      }
+      clear();
+    }
+
+    /**
+     * Empty the segment, without writing.
+     */
+    void clear() {
+      pinned.clear();
+      am.clear();
+      a1in.clear();
+      a1out.clear();
+    }
+  }
+}
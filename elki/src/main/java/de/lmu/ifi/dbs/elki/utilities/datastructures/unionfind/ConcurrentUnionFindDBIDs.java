@@ -0,0 +1,199 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.StaticDBIDs;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Union-find algorithm that can be used by multiple threads at the same time.
+ *
+ * To instantiate, use {@link UnionFindUtil#makeConcurrent}.
+ *
+ * Components are linked by compare-and-swap on the root element. To avoid
+ * cycles without locking, the root with the larger offset is always linked
+ * below the root with the smaller offset (instead of weighting by size).
+ * Finds use path-halving, also by compare-and-swap, so concurrent finds
+ * never destroy the forest.
+ *
+ * Reference:
+ * <p>
+ * R. J. Anderson, H. Woll<br />
+ * Wait-free parallel algorithms for the union-find problem<br />
+ * Proc. 23rd ACM Symposium on Theory of Computing (STOC)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "R. J. Anderson, H. Woll", //
+title = "Wait-free parallel algorithms for the union-find problem", //
+booktitle = "Proc. 23rd ACM Symposium on Theory of Computing (STOC)", //
+url = "http://dx.doi.org/10.1145/103418.103458")
+public class ConcurrentUnionFindDBIDs implements UnionFind {
+  /**
+   * Object IDs.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Index, to map DBID to offset (unless the ids are a {@link DBIDRange}).
+   */
+  private WritableIntegerDataStore index;
+
+  /**
+   * Parent element
+   */
+  private AtomicIntegerArray parent;
+
+  /**
+   * Constructor (package private, use {@link UnionFindUtil#makeConcurrent}).
+   *
+   * @param ids IDs to use
+   */
+  ConcurrentUnionFindDBIDs(StaticDBIDs ids) {
+    this.ids = DBIDUtil.ensureArray(ids);
+    if(!(ids instanceof DBIDRange)) {
+      index = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+      int j = 0;
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        index.put(iter, j++);
+      }
+    }
+    parent = new AtomicIntegerArray(ids.size());
+    for(int i = 0; i < ids.size(); i++) {
+      parent.lazySet(i, i);
+    }
+  }
+
+  /**
+   * Get the offset of an element, as used by {@link #find(int)} and
+   * {@link #union(int, int)}.
+   *
+   * @param element Element
+   * @return Offset
+   */
+  public int offset(DBIDRef element) {
+    return index != null ? index.intValue(element) : ((DBIDRange) ids).getOffset(element);
+  }
+
+  @Override
+  public int find(DBIDRef element) {
+    return find(offset(element));
+  }
+
+  /**
+   * Find the component ID of an element, by offset.
+   *
+   * @param cur Element offset
+   * @return Component id
+   */
+  public int find(int cur) {
+    assert (cur >= 0 && cur < parent.length());
+    int p = parent.get(cur);
+    while(cur != p) {
+      final int gp = parent.get(p);
+      if(p != gp) {
+        // Path halving; may fail if another thread was faster.
+        parent.compareAndSet(cur, p, gp);
+      }
+      cur = gp;
+      p = parent.get(cur);
+    }
+    return cur;
+  }
+
+  @Override
+  public int union(DBIDRef first, DBIDRef second) {
+    return union(offset(first), offset(second));
+  }
+
+  /**
+   * Join the components of two elements, by offset.
+   *
+   * @param first First element offset
+   * @param second Second element offset
+   * @return Component id.
+   */
+  public int union(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return first;
+      }
+      // Always link the larger root below the smaller root.
+      if(first < second) {
+        if(parent.compareAndSet(second, second, first)) {
+          return first;
+        }
+      }
+      else if(parent.compareAndSet(first, first, second)) {
+        return second;
+      }
+      // Some other thread modified a root, retry.
+    }
+  }
+
+  @Override
+  public boolean isConnected(DBIDRef first, DBIDRef second) {
+    int f = offset(first), s = offset(second);
+    while(true) {
+      f = find(f);
+      s = find(s);
+      if(f == s) {
+        return true;
+      }
+      // Only trust the answer if f is still a root.
+      if(parent.get(f) == f) {
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public DBIDs getRoots() {
+    ArrayModifiableDBIDs roots = DBIDUtil.newArray();
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      // roots or one element in component
+      if(parent.get(iter.getOffset()) == iter.getOffset()) {
+        roots.add(iter);
+      }
+    }
+    return roots;
+  }
+}
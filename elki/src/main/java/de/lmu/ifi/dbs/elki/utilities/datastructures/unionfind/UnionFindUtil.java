@@ -44,4 +44,14 @@ public class UnionFindUtil {
     }
     return new WeightedQuickUnionStaticDBIDs(ids);
   }
+
+  /**
+   * Make a new instance that can be shared by multiple threads.
+   *
+   * @param ids ID set
+   * @return Union find algorithm
+   */
+  public static ConcurrentUnionFindDBIDs makeConcurrent(StaticDBIDs ids) {
+    return new ConcurrentUnionFindDBIDs(ids);
+  }
 }
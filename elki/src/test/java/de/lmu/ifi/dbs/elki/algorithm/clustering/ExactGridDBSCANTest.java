@@ -0,0 +1,152 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the exact grid-based DBSCAN.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ExactGridDBSCANTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run DBSCAN with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testExactGridDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    ExactGridDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ExactGridDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database
+    Clustering<Model> result = dbscan.run(db);
+
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Run DBSCAN with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testDBSCANOnSingleLinkDataset() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    ExactGridDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ExactGridDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    // run DBSCAN on database
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.954382);
+    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+  }
+
+  /**
+   * Compare to a brute-force evaluation of the DBSCAN definitions on
+   * three-dimensional data. Border points in reach of multiple clusters may be
+   * assigned to either cluster.
+   */
+  @Test
+  public void testBruteForce3D() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-3d2d1d.csv", 600);
+    final double epsilon = 0.05;
+    final int minpts = 10;
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, epsilon);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, minpts);
+    ExactGridDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ExactGridDBSCAN.class, params);
+    testParameterizationOk(params);
+    Clustering<Model> result = dbscan.run(db);
+
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    RangeQuery<DoubleVector> rq = db.getRangeQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), epsilon);
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(rel.getDBIDs(), DataStoreFactory.HINT_TEMP, -1);
+    int c = 0;
+    for(Cluster<Model> clus : result.getAllClusters()) {
+      for(DBIDIter it = clus.getIDs().iter(); it.valid(); it.advance()) {
+        assignment.putInt(it, clus.isNoise() ? -1 : c);
+      }
+      ++c;
+    }
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      DoubleDBIDList neighbors = rq.getRangeForDBID(it, epsilon);
+      final int a = assignment.intValue(it);
+      if(neighbors.size() >= minpts) {
+        // Core points: all neighbors must be in the same cluster.
+        assertTrue("Core point is noise.", a >= 0);
+        for(DBIDIter n = neighbors.iter(); n.valid(); n.advance()) {
+          if(rq.getRangeForDBID(n, epsilon).size() >= minpts) {
+            assertEquals("Neighboring core points are in different clusters.", a, assignment.intValue(n));
+          }
+        }
+        continue;
+      }
+      // Border and noise points: must be in the cluster of some core point.
+      boolean found = false, anycore = false;
+      for(DBIDIter n = neighbors.iter(); n.valid(); n.advance()) {
+        if(rq.getRangeForDBID(n, epsilon).size() >= minpts) {
+          anycore = true;
+          found |= assignment.intValue(n) == a;
+        }
+      }
+      assertEquals("Noise point not assigned correctly.", anycore, a >= 0);
+      assertTrue("Border point not in the cluster of a neighbor.", !anycore || found);
+    }
+  }
+}
@@ -48,48 +48,58 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParamet
 public class GeneralizedDBSCANTest extends AbstractSimpleAlgorithmTest {
   /**
    * Run Generalized DBSCAN with fixed parameters and compare the result to a
-   * golden standard.
+   * golden standard, both sequentially and in parallel mode.
    * 
    * @throws ParameterException
    */
   @Test
   public void testDBSCANResults() {
-    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    for(boolean parallel : new boolean[] { false, true }) {
+      Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
 
-    // setup algorithm
-    ListParameterization params = new ListParameterization();
-    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
-    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
-    GeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
-    testParameterizationOk(params);
+      // setup algorithm
+      ListParameterization params = new ListParameterization();
+      params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+      params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+      if(parallel) {
+        params.addFlag(GeneralizedDBSCAN.Parameterizer.PARALLEL_ID);
+      }
+      GeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
+      testParameterizationOk(params);
 
-    // run DBSCAN on database
-    Clustering<Model> result = dbscan.run(db);
+      // run DBSCAN on database
+      Clustering<Model> result = dbscan.run(db);
 
-    testFMeasure(db, result, 0.996413);
-    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+      testFMeasure(db, result, 0.996413);
+      testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+    }
   }
 
   /**
    * Run Generalized DBSCAN with fixed parameters and compare the result to a
-   * golden standard.
+   * golden standard, both sequentially and in parallel mode.
    * 
    * @throws ParameterException
    */
   @Test
   public void testDBSCANOnSingleLinkDataset() {
-    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    for(boolean parallel : new boolean[] { false, true }) {
+      Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
 
-    // Setup algorithm
-    ListParameterization params = new ListParameterization();
-    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
-    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
-    GeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
-    testParameterizationOk(params);
+      // Setup algorithm
+      ListParameterization params = new ListParameterization();
+      params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+      params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+      if(parallel) {
+        params.addFlag(GeneralizedDBSCAN.Parameterizer.PARALLEL_ID);
+      }
+      GeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
+      testParameterizationOk(params);
 
-    // run DBSCAN on database
-    Clustering<Model> result = dbscan.run(db);
-    testFMeasure(db, result, 0.954382);
-    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+      // run DBSCAN on database
+      Clustering<Model> result = dbscan.run(db);
+      testFMeasure(db, result, 0.954382);
+      testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.HDBSCANHierarchyExtraction;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.workflow.AlgorithmStep;
+
+/**
+ * Test HDBSCAN* with Boruvka's spanning tree algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HDBSCANBoruvkaTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Compare the hierarchy to the Prim-based linear memory version.
+   */
+  @Test
+  public void testCompareLinearMemory() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20);
+    HDBSCANBoruvka<?> boruvka = ClassGenericsUtil.parameterizeOrAbort(HDBSCANBoruvka.class, params);
+    testParameterizationOk(params);
+
+    params = new ListParameterization();
+    params.addParameter(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20);
+    HDBSCANLinearMemory<?> prim = ClassGenericsUtil.parameterizeOrAbort(HDBSCANLinearMemory.class, params);
+    testParameterizationOk(params);
+
+    PointerDensityHierarchyRepresentationResult result = boruvka.run(db), expect = prim.run(db);
+    // Spanning trees may differ with ties, but the merge heights must agree.
+    assertArrayEquals(heights(expect), heights(result), 1e-15);
+    for(DBIDIter it = expect.getDBIDs().iter(); it.valid(); it.advance()) {
+      assertEquals("Core distances differ.", expect.getCoreDistanceStore().doubleValue(it), result.getCoreDistanceStore().doubleValue(it), 0.);
+    }
+  }
+
+  /**
+   * Run HDBSCAN with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testHDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(HDBSCANHierarchyExtraction.Parameterizer.MINCLUSTERSIZE_ID, 20);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, HDBSCANBoruvka.class);
+    params.addParameter(AbstractHDBSCAN.Parameterizer.MIN_PTS_ID, 20);
+    HDBSCANHierarchyExtraction hdbscan = ClassGenericsUtil.parameterizeOrAbort(HDBSCANHierarchyExtraction.class, params);
+    testParameterizationOk(params);
+
+    Result result = hdbscan.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.9721803);
+    testClusterSizes(clustering, new int[] { 21, 54, 103, 152 });
+  }
+
+  /**
+   * Get the sorted merge heights of a hierarchy.
+   *
+   * @param pointer Pointer representation
+   * @return Sorted heights
+   */
+  private static double[] heights(PointerHierarchyRepresentationResult pointer) {
+    double[] h = new double[pointer.getDBIDs().size()];
+    int i = 0;
+    for(DBIDIter it = pointer.getDBIDs().iter(); it.valid(); it.advance()) {
+      h[i++] = pointer.getParentDistanceStore().doubleValue(it);
+    }
+    Arrays.sort(h);
+    return h;
+  }
+}
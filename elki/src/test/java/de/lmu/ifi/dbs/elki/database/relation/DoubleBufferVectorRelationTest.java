@@ -0,0 +1,162 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleBufferVector;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for storing vectors in a contiguous buffer.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class DoubleBufferVectorRelationTest {
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testHeapBuffer() {
+    testStorage(StaticArrayDatabase.VectorStorage.HEAP);
+  }
+
+  @Test
+  public void testDirectBuffer() {
+    testStorage(StaticArrayDatabase.VectorStorage.DIRECT);
+  }
+
+  @Test
+  public void testMappedBuffer() {
+    testStorage(StaticArrayDatabase.VectorStorage.MAPPED);
+  }
+
+  @Test
+  public void testSegments() {
+    Relation<? extends NumberVector> ref = load(StaticArrayDatabase.VectorStorage.OBJECTS);
+    final int dim = RelationUtil.dimensionality(ref);
+    // Force 7 vectors per segment, the last one partially filled.
+    DoubleBufferVectorRelation rel = new DoubleBufferVectorRelation(ref.getDBIDs(), dim, null, DoubleBufferVectorRelation.Storage.DIRECT, 7 * dim + 1, null);
+    for(DBIDIter it = ref.iterDBIDs(); it.valid(); it.advance()) {
+      rel.set(it, ref.get(it));
+    }
+    double[] buf = new double[dim];
+    DBIDIter it = ref.iterDBIDs();
+    DoubleBuffer first = rel.getBuffer(it);
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      assertEquals("Wrong segment offset.", (i % 7) * dim, rel.getOffset(it));
+      assertEquals("Wrong segment.", i < 7, rel.getBuffer(it) == first);
+      NumberVector v1 = ref.get(it), v2 = rel.get(it);
+      rel.copyRow(it, buf, 0);
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Value differs.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+        assertEquals("Value differs.", v1.doubleValue(d), buf[d], 0.);
+      }
+    }
+  }
+
+  @Test
+  public void testDoubleVectorView() {
+    Relation<? extends NumberVector> ref = load(StaticArrayDatabase.VectorStorage.OBJECTS);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    params.addParameter(StaticArrayDatabase.Parameterizer.VECTOR_STORAGE_ID, StaticArrayDatabase.VectorStorage.HEAP);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertEquals("Size differs.", ref.size(), rel.size());
+    assertTrue("View not reused.", rel == db.<DoubleVector> getRelation(TypeUtil.DOUBLE_VECTOR_FIELD));
+    for(DBIDIter it = ref.iterDBIDs(), it2 = rel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      NumberVector v1 = ref.get(it);
+      DoubleVector v2 = rel.get(it2);
+      for(int d = 0; d < v1.getDimensionality(); d++) {
+        assertEquals("Value differs.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+    }
+  }
+
+  private void testStorage(StaticArrayDatabase.VectorStorage storage) {
+    Relation<? extends NumberVector> ref = load(StaticArrayDatabase.VectorStorage.OBJECTS);
+    Relation<? extends NumberVector> rel = load(storage);
+    assertTrue("Not stored in a buffer.", rel instanceof DoubleBufferVectorRelation);
+    assertEquals("Size differs.", ref.size(), rel.size());
+    final int dim = ((DoubleBufferVectorRelation) rel).getDimensionality();
+
+    for(DBIDIter it = ref.iterDBIDs(), it2 = rel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      NumberVector v1 = ref.get(it), v2 = rel.get(it2);
+      assertTrue("Not a flyweight vector.", v2 instanceof DoubleBufferVector);
+      assertEquals("Dimensionality differs.", v1.getDimensionality(), v2.getDimensionality());
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Value differs.", v1.doubleValue(d), v2.doubleValue(d), 0.);
+      }
+    }
+
+    KNNQuery<?> q1 = QueryUtil.getKNNQuery(ref, EuclideanDistanceFunction.STATIC, 10);
+    KNNQuery<?> q2 = QueryUtil.getKNNQuery(rel, EuclideanDistanceFunction.STATIC, 10);
+    for(DBIDIter it = ref.iterDBIDs(), it2 = rel.iterDBIDs(); it.valid(); it.advance(), it2.advance()) {
+      KNNList l1 = q1.getKNNForDBID(it, 10), l2 = q2.getKNNForDBID(it2, 10);
+      assertEquals("kNN size differs.", l1.size(), l2.size());
+      for(DoubleDBIDListIter i1 = l1.iter(), i2 = l2.iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("kNN distance differs.", i1.doubleValue(), i2.doubleValue(), 0.);
+      }
+    }
+    // Batch queries copy the raw buffers.
+    List<? extends KNNList> b1 = q1.getKNNForBulkDBIDs(DBIDUtil.ensureArray(ref.getDBIDs()), 10);
+    List<? extends KNNList> b2 = q2.getKNNForBulkDBIDs(DBIDUtil.ensureArray(rel.getDBIDs()), 10);
+    for(int i = 0; i < b1.size(); i++) {
+      for(DoubleDBIDListIter i1 = b1.get(i).iter(), i2 = b2.get(i).iter(); i1.valid(); i1.advance(), i2.advance()) {
+        assertEquals("kNN distance differs.", i1.doubleValue(), i2.doubleValue(), 0.);
+      }
+    }
+  }
+
+  private Relation<? extends NumberVector> load(StaticArrayDatabase.VectorStorage storage) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    params.addParameter(StaticArrayDatabase.Parameterizer.VECTOR_STORAGE_ID, storage);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+}
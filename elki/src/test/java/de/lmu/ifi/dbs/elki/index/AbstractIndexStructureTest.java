@@ -24,19 +24,30 @@ package de.lmu.ifi.dbs.elki.index;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
@@ -132,7 +143,8 @@ public abstract class AbstractIndexStructureTest {
       // get the 10 next neighbors
       DoubleVector dv = DoubleVector.wrap(querypoint);
       KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
-      assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+      assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), //
+          expectKNNQuery.isAssignableFrom(knnq.getClass()));
       KNNList ids = knnq.getKNNForObject(dv, k);
       assertEquals("Result size does not match expectation!", shouldd.length, ids.size(), 1e-15);
 
@@ -151,7 +163,8 @@ public abstract class AbstractIndexStructureTest {
       // Do a range query
       DoubleVector dv = DoubleVector.wrap(querypoint);
       RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, eps);
-      assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), expectRangeQuery.isAssignableFrom(rangeq.getClass()));
+      assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), //
+          expectRangeQuery.isAssignableFrom(rangeq.getClass()));
       DoubleDBIDList ids = rangeq.getRangeForObject(dv, eps);
       assertEquals("Result size does not match expectation!", shouldd.length, ids.size(), 1e-15);
 
@@ -189,7 +202,8 @@ public abstract class AbstractIndexStructureTest {
       // get the 10 next neighbors
       DoubleVector dv = DoubleVector.wrap(querypoint);
       KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
-      assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+      assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), //
+          expectKNNQuery.isAssignableFrom(knnq.getClass()));
       KNNList ids = knnq.getKNNForObject(dv, k);
       assertEquals("Result size does not match expectation!", cosshouldd.length, ids.size());
 
@@ -208,7 +222,8 @@ public abstract class AbstractIndexStructureTest {
       // Do a range query
       DoubleVector dv = DoubleVector.wrap(querypoint);
       RangeQuery<DoubleVector> rangeq = db.getRangeQuery(dist, coseps);
-      assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), expectRangeQuery.isAssignableFrom(rangeq.getClass()));
+      assertTrue("Returned range query is not of expected class: expected " + expectRangeQuery + " got " + rangeq.getClass(), //
+          expectRangeQuery.isAssignableFrom(rangeq.getClass()));
       DoubleDBIDList ids = rangeq.getRangeForObject(dv, coseps);
       assertEquals("Result size does not match expectation!", cosshouldd.length, ids.size());
 
@@ -224,4 +239,134 @@ public abstract class AbstractIndexStructureTest {
       }
     }
   }
+
+  /**
+   * Test routine for dynamic indexes, on the default data set.
+   *
+   * @param factory Index factory
+   */
+  protected void testDynamicEuclidean(IndexFactory<DoubleVector, ?> factory) {
+    ListParameterization inputparams = new ListParameterization();
+    inputparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, inputparams);
+    db.initialize();
+    testDynamicEuclidean(factory, db.<DoubleVector> getRelation(TypeUtil.DOUBLE_VECTOR_FIELD));
+  }
+
+  /**
+   * Test routine for dynamic indexes, on a random data set large enough for
+   * parallel bulk loading.
+   *
+   * @param factory Index factory
+   */
+  protected void testParallelDynamicEuclidean(IndexFactory<DoubleVector, ?> factory) {
+    testDynamicEuclidean(factory, randomRelation(5000, 3, 0L));
+  }
+
+  /**
+   * Test routine for dynamic indexes: bulk load half of the data, insert the
+   * remainder, then delete objects, verifying kNN and range queries against a
+   * linear scan after each step.
+   *
+   * @param factory Index factory
+   * @param rel Data relation
+   */
+  @SuppressWarnings("unchecked")
+  protected void testDynamicEuclidean(IndexFactory<DoubleVector, ?> factory, Relation<DoubleVector> rel) {
+    Index idx = factory.instantiate(rel);
+    assertTrue("Not a dynamic index.", idx instanceof DynamicIndex);
+    DynamicIndex dyn = (DynamicIndex) idx;
+    DistanceQuery<DoubleVector> dist = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    KNNQuery<DoubleVector> knnq = ((KNNIndex<DoubleVector>) idx).getKNNQuery(dist, k);
+    RangeQuery<DoubleVector> rangeq = ((RangeIndex<DoubleVector>) idx).getRangeQuery(dist, eps);
+
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    final int half = ids.size() >> 1;
+    dyn.insertAll(ids.slice(0, half));
+    assertDynamicResults(dist, knnq, rangeq, ids.slice(0, half), ids);
+    for(DBIDIter it = ids.slice(half, ids.size()).iter(); it.valid(); it.advance()) {
+      dyn.insert(it);
+    }
+    assertDynamicResults(dist, knnq, rangeq, ids, ids);
+
+    ModifiableDBIDs remaining = DBIDUtil.newHashSet(ids);
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      if(i % 3 == 0) {
+        assertTrue("Object not found.", dyn.delete(it));
+        remaining.remove(it);
+      }
+    }
+    assertFalse("Deleted object found.", dyn.delete(ids.iter()));
+    assertDynamicResults(dist, knnq, rangeq, remaining, ids);
+    dyn.deleteAll(remaining);
+    assertDynamicResults(dist, knnq, rangeq, DBIDUtil.EMPTYDBIDS, ids);
+  }
+
+  /**
+   * Compare query results to a linear scan over the indexed objects.
+   *
+   * @param dist Distance query
+   * @param knnq kNN query
+   * @param rangeq Range query
+   * @param contained Objects currently indexed
+   * @param queries Query objects, every 7th is used
+   */
+  private void assertDynamicResults(DistanceQuery<DoubleVector> dist, KNNQuery<DoubleVector> knnq, RangeQuery<DoubleVector> rangeq, //
+      DBIDs contained, ArrayDBIDs queries) {
+    ModifiableDoubleDBIDList exp = DBIDUtil.newDistanceDBIDList(contained.size());
+    for(DBIDArrayIter q = queries.iter(); q.valid(); q.advance(7)) {
+      DoubleVector obj = dist.getRelation().get(q);
+      exp.clear();
+      for(DBIDIter it = contained.iter(); it.valid(); it.advance()) {
+        exp.add(dist.distance(obj, it), it);
+      }
+      exp.sort();
+      KNNList knn = knnq.getKNNForObject(obj, k);
+      assertEquals("kNN result size does not match.", Math.min(k, exp.size()), Math.min(k, knn.size()));
+      DoubleDBIDListIter a = knn.iter(), e = exp.iter();
+      for(int j = 0; j < k && e.valid(); j++, a.advance(), e.advance()) {
+        assertEquals("kNN distance does not match.", e.doubleValue(), a.doubleValue(), 1e-15);
+      }
+      int inrange = 0;
+      for(e.seek(0); e.valid() && e.doubleValue() <= eps; e.advance()) {
+        inrange++;
+      }
+      assertEquals("Range query size does not match.", inrange, rangeq.getRangeForObject(obj, eps).size());
+    }
+  }
+
+  /**
+   * Generate uniformly distributed random data in the unit cube.
+   *
+   * @param size Data set size
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] randomData(int size, int dim, long seed) {
+    Random rnd = new Random(seed);
+    double[][] data = new double[size][dim];
+    for(double[] row : data) {
+      for(int d = 0; d < dim; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate a relation of uniformly distributed random vectors, see
+   * {@link #randomData}.
+   *
+   * @param size Data set size
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Relation
+   */
+  public static Relation<DoubleVector> randomRelation(int size, int dim, long seed) {
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(randomData(size, dim, seed)), null);
+    db.initialize();
+    return db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
 }
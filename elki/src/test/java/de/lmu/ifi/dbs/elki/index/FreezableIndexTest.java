@@ -0,0 +1,311 @@
+package de.lmu.ifi.dbs.elki.index;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.TwoQueueCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test concurrent queries on frozen index structures, by comparing the results
+ * of many threads to a linear scan.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FreezableIndexTest {
+  /**
+   * Data set to use.
+   */
+  static final String DATASET = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  /**
+   * Number of threads.
+   */
+  static final int THREADS = 4;
+
+  /**
+   * Number of neighbors, and query radius.
+   */
+  static final int K = 10;
+
+  static final double EPS = 0.1;
+
+  @Test
+  public void testRStarTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    Database db = testConcurrentQueries(params);
+    testRejectsModification(db, true);
+  }
+
+  @Test
+  public void testRStarTreeLRUCache() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, LRUCachePageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 300 * 20);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentQueries(params);
+  }
+
+  @Test
+  public void testRStarTreeTwoQueueCache() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, TwoQueueCachePageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class);
+    params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 300 * 20);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentQueries(params);
+  }
+
+  @Test
+  public void testRStarTreePersistent() throws IOException {
+    File file = File.createTempFile("elki-frozen", ".idx");
+    assertTrue(file.delete());
+    try {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, LRUCachePageFileFactory.class);
+      params.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, PersistentPageFileFactory.class);
+      params.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, file.getPath());
+      params.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 1000 * 5);
+      params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1000);
+      testConcurrentQueries(params);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testMTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    Database db = testConcurrentQueries(params);
+    testRejectsModification(db, false);
+  }
+
+  @Test
+  public void testCoverTree() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, CoverTree.Factory.class);
+    params.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    testConcurrentQueries(params);
+  }
+
+  /**
+   * Run kNN and range queries for every object from multiple threads, and
+   * compare to a linear scan.
+   *
+   * @param params Database parameters
+   * @return Database
+   */
+  protected Database testConcurrentQueries(ListParameterization params) {
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, DATASET);
+    params.addFlag(StaticArrayDatabase.Parameterizer.FREEZE_ID);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    final Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Index was not frozen.", getFrozenIndex(db, rel).isFrozen());
+
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    final KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, K);
+    final RangeQuery<DoubleVector> rq = db.getRangeQuery(dq, EPS);
+    assertFalse("No index kNN query.", knnq.getClass().getName().contains("LinearScan"));
+    final KNNQuery<DoubleVector> lknnq = QueryUtil.getLinearScanKNNQuery(dq);
+    final RangeQuery<DoubleVector> lrq = QueryUtil.getLinearScanRangeQuery(dq);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for(int t = 0; t < THREADS; t++) {
+        final int start = t;
+        futures.add(pool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int n = 0;
+            for(DBIDArrayIter it = ids.iter().seek(start); it.valid(); it.advance(THREADS)) {
+              assertSameDistances(lknnq.getKNNForDBID(it, K), knnq.getKNNForDBID(it, K));
+              assertSameDistances(lrq.getRangeForDBID(it, EPS), rq.getRangeForDBID(it, EPS));
+              ++n;
+            }
+            return n;
+          }
+        }));
+      }
+      int total = 0;
+      for(Future<Integer> f : futures) {
+        total += f.get();
+      }
+      assertEquals("Not all queries were processed.", ids.size(), total);
+    }
+    catch(InterruptedException e) {
+      fail("Interrupted.");
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof AssertionError) {
+        throw (AssertionError) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    finally {
+      pool.shutdown();
+    }
+    return db;
+  }
+
+  /**
+   * Try to modify a frozen index, and verify that the query results did not
+   * change.
+   *
+   * @param db Database
+   * @param delete Also try to delete an object
+   */
+  protected void testRejectsModification(Database db, boolean delete) {
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    FreezableIndex index = getFrozenIndex(db, rel);
+    assertTrue(index instanceof DynamicIndex);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(dq, K);
+    RangeQuery<DoubleVector> rq = db.getRangeQuery(dq, EPS);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<DoubleDBIDList> before = new ArrayList<>();
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      before.add(knnq.getKNNForDBID(it, K));
+      before.add(rq.getRangeForDBID(it, EPS));
+    }
+    try {
+      ((DynamicIndex) index).insert(ids.iter());
+      fail("Frozen index was modified.");
+    }
+    catch(UnsupportedOperationException e) {
+      // Expected.
+    }
+    if(delete) {
+      try {
+        ((DynamicIndex) index).delete(ids.iter());
+        fail("Frozen index was modified.");
+      }
+      catch(UnsupportedOperationException e) {
+        // Expected.
+      }
+    }
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      assertSameDistances(before.get(i++), knnq.getKNNForDBID(it, K));
+      assertSameDistances(before.get(i++), rq.getRangeForDBID(it, EPS));
+    }
+  }
+
+  /**
+   * Get the index of a relation.
+   *
+   * @param db Database
+   * @param rel Relation
+   * @return Index
+   */
+  private static FreezableIndex getFrozenIndex(Database db, Relation<?> rel) {
+    List<FreezableIndex> indexes = ResultUtil.filterResults(db.getHierarchy(), rel, FreezableIndex.class);
+    assertEquals("Expected one index.", 1, indexes.size());
+    return indexes.get(0);
+  }
+
+  /**
+   * Compare the distances of two result lists, ignoring their order.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  private static void assertSameDistances(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals("Result size does not match.", expected.size(), actual.size());
+    double[] e = sortedDistances(expected), a = sortedDistances(actual);
+    for(int i = 0; i < e.length; i++) {
+      assertEquals("Distance does not match.", e[i], a[i], 1e-12);
+    }
+  }
+
+  /**
+   * Get the sorted distances of a result list.
+   *
+   * @param list Result list
+   * @return Distances
+   */
+  private static double[] sortedDistances(DoubleDBIDList list) {
+    double[] d = new double[list.size()];
+    int i = 0;
+    for(DoubleDBIDListIter it = list.iter(); it.valid(); it.advance()) {
+      d[i++] = it.doubleValue();
+    }
+    Arrays.sort(d);
+    return d;
+  }
+}
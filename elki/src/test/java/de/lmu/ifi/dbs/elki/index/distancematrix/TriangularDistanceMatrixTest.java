@@ -0,0 +1,133 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the segmented triangular distance matrix.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class TriangularDistanceMatrixTest {
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testDouble() {
+    testMatrix(TriangularDistanceMatrix.newMatrix(size(), false), 0.);
+  }
+
+  @Test
+  public void testFloat() {
+    testMatrix(TriangularDistanceMatrix.newMatrix(size(), true), 1e-6);
+  }
+
+  @Test
+  public void testMapped() throws IOException {
+    File file = File.createTempFile("elki-triangle", ".dat");
+    try {
+      testMatrix(TriangularDistanceMatrix.newMappedMatrix(size(), false, file), 0.);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testMappedIndex() throws IOException {
+    File file = File.createTempFile("elki-triangle", ".dat");
+    try {
+      size();
+      PrecomputedDistanceMatrix<NumberVector> idx = new PrecomputedDistanceMatrix<>(relation, EuclideanDistanceFunction.STATIC, false, file);
+      // Initializing twice must release the first mapping.
+      idx.initialize();
+      idx.initialize();
+      DistanceQuery<NumberVector> dq = relation.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+      DistanceQuery<NumberVector> mq = idx.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+      for(DBIDIter ix = relation.iterDBIDs(), iy = relation.iterDBIDs(); ix.valid(); ix.advance()) {
+        assertEquals("Wrong distance.", dq.distance(ix, iy), mq.distance(ix, iy), 0.);
+      }
+      idx.close();
+      idx.close(); // Must be idempotent.
+    }
+    finally {
+      assertTrue("Could not delete the file.", file.delete());
+    }
+  }
+
+  /**
+   * Relation used for testing.
+   */
+  private Relation<NumberVector> relation;
+
+  private int size() {
+    if(relation == null) {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+      Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+      db.initialize();
+      relation = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    }
+    return relation.size();
+  }
+
+  private void testMatrix(TriangularDistanceMatrix matrix, double tol) {
+    DistanceQuery<NumberVector> dq = relation.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    matrix.fill(ids, dq, false, null, null);
+    assertEquals("Wrong length.", ids.size() * (ids.size() - 1L) / 2, matrix.length());
+    for(DBIDArrayIter ix = ids.iter(), iy = ids.iter(); ix.valid(); ix.advance()) {
+      for(iy.seek(0); iy.valid(); iy.advance()) {
+        if(ix.getOffset() == iy.getOffset()) {
+          continue;
+        }
+        final double d = dq.distance(ix, iy);
+        assertEquals("Wrong distance.", d, matrix.get(ix.getOffset(), iy.getOffset()), d * tol);
+      }
+    }
+    matrix.close();
+  }
+}
@@ -0,0 +1,98 @@
+package de.lmu.ifi.dbs.elki.index.graph;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Unit test for the HNSW index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HNSWIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link HNSWIndex} using a file based database connection. With a
+   * beam as wide as the data set, the results are exact.
+   */
+  @Test
+  public void testHNSW() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, HNSWIndex.Factory.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.EF_SEARCH_ID, 1000);
+    params.addParameter(HNSWIndex.Factory.Parameterizer.SEED_ID, 0L);
+    testExactEuclidean(params, HNSWIndex.HNSWKNNQuery.class, HNSWIndex.HNSWRangeQuery.class);
+  }
+
+  /**
+   * Test the recall on a data set large enough for parallel insertion.
+   */
+  @Test
+  public void testRecall() {
+    Relation<DoubleVector> rel = randomRelation(3000, 16, 0L);
+    DistanceQuery<DoubleVector> dist = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    HNSWIndex<DoubleVector> idx = new HNSWIndex.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, 16, 100, 50, RandomFactory.get(0L)).instantiate(rel);
+    idx.initialize();
+    assertNull("Approximate index used for exact queries.", idx.getKNNQuery(dist, DatabaseQuery.HINT_EXACT));
+    KNNQuery<DoubleVector> knnq = idx.getKNNQuery(dist);
+    RangeQuery<DoubleVector> rangeq = idx.getRangeQuery(dist);
+    KNNQuery<DoubleVector> linq = new LinearScanDistanceKNNQuery<>(dist);
+    final int k = 10;
+    int found = 0, total = 0, rfound = 0, rtotal = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList exact = linq.getKNNForDBID(it, k);
+      KNNList approx = knnq.getKNNForDBID(it, k);
+      assertEquals("Result size does not match.", exact.size(), approx.size());
+      found += DBIDUtil.intersectionSize(exact, approx);
+      total += exact.size();
+      DoubleDBIDList range = rangeq.getRangeForDBID(it, exact.getKNNDistance());
+      rfound += DBIDUtil.intersectionSize(exact, range);
+      rtotal += exact.size();
+    }
+    assertTrue("kNN recall too low: " + found / (double) total, found >= .95 * total);
+    assertTrue("Range recall too low: " + rfound / (double) rtotal, rfound >= .95 * rtotal);
+  }
+}
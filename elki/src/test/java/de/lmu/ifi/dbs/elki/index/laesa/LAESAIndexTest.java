@@ -0,0 +1,161 @@
+package de.lmu.ifi.dbs.elki.index.laesa;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.strings.LevenshteinDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.referencepoints.RandomSampleReferencePoints;
+
+/**
+ * Unit test for the LAESA index.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class LAESAIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link LAESAIndex} with greedy pivot selection.
+   */
+  @Test
+  public void testLAESA() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, LAESAIndex.Factory.class);
+    spatparams.addParameter(LAESAIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    spatparams.addParameter(LAESAIndex.Factory.Parameterizer.K_ID, 8);
+    spatparams.addParameter(LAESAIndex.Factory.Parameterizer.SEED_ID, 0L);
+    testExactEuclidean(spatparams, LAESAIndex.LAESAKNNQuery.class, LAESAIndex.LAESARangeQuery.class);
+  }
+
+  /**
+   * Test {@link LAESAIndex} with a reference point heuristic.
+   */
+  @Test
+  public void testReferencePoints() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, LAESAIndex.Factory.class);
+    spatparams.addParameter(LAESAIndex.Factory.Parameterizer.DISTANCE_ID, EuclideanDistanceFunction.class);
+    spatparams.addParameter(LAESAIndex.Factory.Parameterizer.PIVOTS_ID, RandomSampleReferencePoints.class);
+    spatparams.addParameter(RandomSampleReferencePoints.Parameterizer.N_ID, 8);
+    spatparams.addParameter(RandomSampleReferencePoints.Parameterizer.RANDOM_ID, 0L);
+    testExactEuclidean(spatparams, LAESAIndex.LAESAKNNQuery.class, LAESAIndex.LAESARangeQuery.class);
+  }
+
+  /**
+   * Test on a data set large enough for parallel construction and filtering.
+   */
+  @Test
+  public void testLarge() {
+    final int size = 20000, dim = 4;
+    Relation<DoubleVector> rel = randomRelation(size, dim, 0L);
+    LAESAIndex<DoubleVector> idx = new LAESAIndex.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, null, 8, new RandomFactory(0L)).instantiate(rel);
+    idx.initialize();
+    DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    KNNQuery<DoubleVector> knnq = idx.getKNNQuery(dq);
+    RangeQuery<DoubleVector> rangeq = idx.getRangeQuery(dq);
+    KNNQuery<DoubleVector> linq = new LinearScanDistanceKNNQuery<>(dq);
+    for(DBIDArrayIter it = DBIDUtil.ensureArray(rel.getDBIDs()).iter(); it.valid(); it.advance(997)) {
+      KNNList exact = linq.getKNNForDBID(it, 10), res = knnq.getKNNForDBID(it, 10);
+      assertEquals("Result size does not match.", exact.size(), res.size());
+      for(DoubleDBIDListIter ei = exact.iter(), ri = res.iter(); ei.valid(); ei.advance(), ri.advance()) {
+        assertEquals("Distances do not match.", ei.doubleValue(), ri.doubleValue(), 1e-10);
+      }
+      assertEquals("Range query size does not match.", exact.size(), rangeq.getRangeForDBID(it, exact.getKNNDistance()).size());
+    }
+  }
+
+  /**
+   * Test the greedy pivot selection on non-vector data.
+   */
+  @Test
+  public void testLevenshtein() {
+    final int size = 500;
+    // Random strings of length 3 to 10 over a four letter alphabet:
+    double[][] data = randomData(size, 11, 0L);
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+    MaterializedRelation<String> rel = new MaterializedRelation<>(TypeUtil.STRING, ids);
+    StringBuilder buf = new StringBuilder();
+    int j = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), j++) {
+      buf.setLength(0);
+      for(int i = 3 + (int) (data[j][0] * 8); i > 0; i--) {
+        buf.append((char) ('a' + (int) (data[j][i] * 4)));
+      }
+      rel.insert(it, buf.toString());
+    }
+    LevenshteinDistanceFunction dist = LevenshteinDistanceFunction.STATIC_SENSITIVE;
+    LAESAIndex<String> idx = new LAESAIndex.Factory<String>(dist, null, 8, new RandomFactory(0L)).instantiate(rel);
+    idx.initialize();
+    DistanceQuery<String> dq = dist.instantiate(rel);
+    KNNQuery<String> knnq = idx.getKNNQuery(dq);
+    RangeQuery<String> rangeq = idx.getRangeQuery(dq);
+    assertTrue("Wrong kNN query class.", knnq instanceof LAESAIndex.LAESAKNNQuery);
+    assertTrue("Wrong range query class.", rangeq instanceof LAESAIndex.LAESARangeQuery);
+    KNNQuery<String> linq = new LinearScanDistanceKNNQuery<>(dq);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(7)) {
+      KNNList exact = linq.getKNNForDBID(it, 10), res = knnq.getKNNForDBID(it, 10);
+      assertEquals("Result size does not match.", exact.size(), res.size());
+      for(DoubleDBIDListIter ei = exact.iter(), ri = res.iter(); ei.valid(); ei.advance(), ri.advance()) {
+        assertEquals("Distances do not match.", ei.doubleValue(), ri.doubleValue(), 0.);
+      }
+      assertEquals("Range query size does not match.", exact.size(), rangeq.getRangeForDBID(it, exact.getKNNDistance()).size());
+    }
+  }
+
+  /**
+   * Test the greedy pivot selection on an empty relation.
+   */
+  @Test
+  public void testEmpty() {
+    MaterializedRelation<String> rel = new MaterializedRelation<>(TypeUtil.STRING, DBIDUtil.generateStaticDBIDRange(0));
+    LevenshteinDistanceFunction dist = LevenshteinDistanceFunction.STATIC_SENSITIVE;
+    LAESAIndex<String> idx = new LAESAIndex.Factory<String>(dist, null, 8, new RandomFactory(0L)).instantiate(rel);
+    idx.initialize();
+    DistanceQuery<String> dq = dist.instantiate(rel);
+    assertEquals("kNN result not empty.", 0, idx.getKNNQuery(dq).getKNNForObject("abc", 10).size());
+    assertEquals("Range result not empty.", 0, idx.getRangeQuery(dq).getRangeForObject("abc", 10.).size());
+  }
+}
@@ -0,0 +1,146 @@
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.CosineHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.LocalitySensitiveHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Unit test for the LSH index, in particular multi-probe querying and the
+ * candidate budget.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class InMemoryLSHIndexTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Number of neighbors to query.
+   */
+  private static final int K = 10;
+
+  /**
+   * Number of query objects.
+   */
+  private static final int QUERIES = 200;
+
+  @Test
+  public void testEuclideanMultiProbe() {
+    Database db = makeSimpleDatabase(UNITTEST + "axis-parallel-subspace-clusters-6d.csv.gz", 2500);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, RandomFactory.get(0L));
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, 30.);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 6);
+    EuclideanHashFunctionFamily family = ClassGenericsUtil.parameterizeOrAbort(EuclideanHashFunctionFamily.class, params);
+
+    double single = recall(rel, family, EuclideanDistanceFunction.STATIC, 2, 1);
+    double multi = recall(rel, family, EuclideanDistanceFunction.STATIC, 2, 20);
+    double many = recall(rel, family, EuclideanDistanceFunction.STATIC, 10, 1);
+    assertTrue("Multi-probe did not improve recall: " + single + " " + multi, multi > single + 0.1);
+    assertTrue("Multi-probe recall too low: " + multi + " vs. " + many, multi >= many);
+  }
+
+  @Test
+  public void testCosineMultiProbe() {
+    Database db = makeSimpleDatabase(UNITTEST + "axis-parallel-subspace-clusters-6d.csv.gz", 2500);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(CosineHashFunctionFamily.Parameterizer.RANDOM_ID, RandomFactory.get(0L));
+    params.addParameter(CosineHashFunctionFamily.Parameterizer.NUMPROJ_ID, 24);
+    CosineHashFunctionFamily family = ClassGenericsUtil.parameterizeOrAbort(CosineHashFunctionFamily.class, params);
+
+    double single = recall(rel, family, CosineDistanceFunction.STATIC, 2, 1);
+    double multi = recall(rel, family, CosineDistanceFunction.STATIC, 2, 20);
+    double many = recall(rel, family, CosineDistanceFunction.STATIC, 10, 1);
+    assertTrue("Multi-probe did not improve recall: " + single + " " + multi, multi > single + 0.1);
+    assertTrue("Multi-probe recall too low: " + multi + " vs. " + many, multi >= many);
+  }
+
+  @Test
+  public void testCandidateBudget() {
+    Database db = makeSimpleDatabase(UNITTEST + "axis-parallel-subspace-clusters-6d.csv.gz", 2500);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(CosineHashFunctionFamily.Parameterizer.RANDOM_ID, RandomFactory.get(0L));
+    params.addParameter(CosineHashFunctionFamily.Parameterizer.NUMPROJ_ID, 24);
+    CosineHashFunctionFamily family = ClassGenericsUtil.parameterizeOrAbort(CosineHashFunctionFamily.class, params);
+
+    InMemoryLSHIndex<NumberVector>.Instance index = new InMemoryLSHIndex<NumberVector>(family, 5, 7919, 10, 5).instantiate(rel);
+    index.initialize();
+    DistanceQuery<NumberVector> dq = CosineDistanceFunction.STATIC.instantiate(rel);
+    KNNQuery<NumberVector> knnq = index.getKNNQuery(dq, K);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Candidate budget not respected.", 5, knnq.getKNNForDBID(it, K).size());
+    }
+  }
+
+  /**
+   * Compute the average recall of the kNN queries.
+   *
+   * @param rel Relation
+   * @param family Hash function family
+   * @param df Distance function
+   * @param l Number of hash tables
+   * @param probes Number of probes
+   * @return Recall
+   */
+  private double recall(Relation<NumberVector> rel, LocalitySensitiveHashFunctionFamily<? super NumberVector> family, DistanceFunction<? super NumberVector> df, int l, int probes) {
+    InMemoryLSHIndex<NumberVector>.Instance index = new InMemoryLSHIndex<NumberVector>(family, l, 7919, probes, Integer.MAX_VALUE).instantiate(rel);
+    index.initialize();
+    DistanceQuery<NumberVector> dq = df.instantiate(rel);
+    KNNQuery<NumberVector> knnq = index.getKNNQuery(dq, K);
+    KNNQuery<NumberVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+    int found = 0, total = 0, q = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && q < QUERIES; it.advance(), q++) {
+      KNNList exact = lin.getKNNForDBID(it, K);
+      KNNList approx = knnq.getKNNForDBID(it, K);
+      found += DBIDUtil.intersectionSize(exact, approx);
+      total += exact.size();
+    }
+    return found / (double) total;
+  }
+}
@@ -0,0 +1,157 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.LinearScanRKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the incremental kNN and RkNN preprocessor against a linear scan.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class IncrementalKNNAndRKNNPreprocessorTest {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  // number of neighbors
+  static int k = 5;
+
+  @Test
+  public void testIncremental() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+
+    IncrementalKNNAndRKNNPreprocessor<DoubleVector> preproc = new IncrementalKNNAndRKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, k);
+    preproc.initialize();
+    db.getHierarchy().add(rel, preproc);
+    final int[] events = new int[1];
+    preproc.addKNNListener(new KNNListener() {
+      @Override
+      public void kNNsChanged(KNNChangeEvent e) {
+        events[0]++;
+      }
+    });
+    KNNQuery<DoubleVector> knnq = preproc.getKNNQuery(dq, k);
+    RKNNQuery<DoubleVector> rknnq = preproc.getRKNNQuery(dq, k);
+    compare(rel, dq, knnq, rknnq);
+
+    // Insert objects near existing ones, to cause many kNN changes.
+    // The first column selects about 10% of the objects, the others jitter.
+    final int dim = RelationUtil.dimensionality(rel);
+    double[][] rnd = AbstractIndexStructureTest.randomData(rel.size(), dim + 1, 0L);
+    List<DoubleVector> insertions = new ArrayList<>();
+    int i = 0;
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance(), i++) {
+      if(rnd[i][0] < .1) {
+        double[] v = rel.get(iter).toArray();
+        for(int d = 0; d < dim; d++) {
+          v[d] += (rnd[i][d + 1] - .5) * 2e-3;
+        }
+        insertions.add(new DoubleVector(v));
+      }
+    }
+    preproc.beginBatch();
+    DBIDs inserted = db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), insertions));
+    preproc.endBatch();
+    assertEquals("Insertions were not batched.", 1, events[0]);
+    compare(rel, dq, knnq, rknnq);
+
+    // Delete some of the inserted and some of the original objects.
+    ModifiableDBIDs deletions = DBIDUtil.newArray();
+    rnd = AbstractIndexStructureTest.randomData(rel.size(), 1, 1L);
+    i = 0;
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance(), i++) {
+      if(rnd[i][0] < .25) {
+        deletions.add(iter);
+      }
+    }
+    assertTrue(deletions.size() > 0 && inserted.size() > 0);
+    preproc.beginBatch();
+    db.delete(deletions);
+    preproc.endBatch();
+    assertEquals("Deletions were not batched.", 2, events[0]);
+    compare(rel, dq, knnq, rknnq);
+  }
+
+  /**
+   * Compare the materialized kNN and RkNN to a linear scan.
+   *
+   * @param rel Relation
+   * @param dq Distance query
+   * @param knnq Preprocessor kNN query
+   * @param rknnq Preprocessor RkNN query
+   */
+  private static void compare(Relation<DoubleVector> rel, DistanceQuery<DoubleVector> dq, KNNQuery<DoubleVector> knnq, RKNNQuery<DoubleVector> rknnq) {
+    KNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+    RKNNQuery<DoubleVector> rlin = new LinearScanRKNNQuery<>(dq, lin, k);
+    for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList expect = lin.getKNNForDBID(iter, k), actual = knnq.getKNNForDBID(iter, k);
+      assertEquals("kNN sizes do not agree.", expect.size(), actual.size());
+      for(DoubleDBIDListIter e = expect.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+        assertEquals("kNN distances do not agree.", e.doubleValue(), a.doubleValue(), 0.);
+      }
+      DoubleDBIDList rexpect = rlin.getRKNNForDBID(iter, k), ractual = rknnq.getRKNNForDBID(iter, k);
+      assertEquals("RkNN sizes do not agree.", rexpect.size(), ractual.size());
+      for(DoubleDBIDListIter e = rexpect.iter(), a = ractual.iter(); e.valid(); e.advance(), a.advance()) {
+        assertEquals("RkNN distances do not agree.", e.doubleValue(), a.doubleValue(), 0.);
+      }
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the memory-mapped kNN preprocessor against a linear scan, and the reuse
+ * of the cache file.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MemoryMappedKNNPreprocessorTest {
+  // the following values depend on the data set used!
+  static String dataset = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  @Test
+  public void testMappedKNN() throws IOException {
+    File file = File.createTempFile("elki-knn", ".dat");
+    try {
+      file.delete(); // Start without a cache file.
+      Relation<DoubleVector> rel = loadRelation(dataset);
+      DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+      KNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+
+      // Build the file:
+      MemoryMappedKNNPreprocessor<DoubleVector> idx = new MemoryMappedKNNPreprocessor.Factory<DoubleVector>(10, EuclideanDistanceFunction.STATIC, file).instantiate(rel);
+      idx.initialize();
+      assertEquals("Stored k", 10, idx.getK());
+      KNNQuery<DoubleVector> knnq = idx.getKNNQuery(dq, 10);
+      assertNotNull("No kNN query returned.", knnq);
+      compare(rel, lin, knnq, 10);
+      compare(rel, lin, knnq, 3);
+      compare(rel, lin, knnq, 15); // Falls back
+
+      // Reopen, in a fresh database, with smaller k: reuses the file.
+      Relation<DoubleVector> rel2 = loadRelation(dataset);
+      idx = new MemoryMappedKNNPreprocessor.Factory<DoubleVector>(5, EuclideanDistanceFunction.STATIC, file).instantiate(rel2);
+      idx.initialize();
+      assertEquals("File was not reused", 10, idx.getK());
+      compare(rel2, new LinearScanDistanceKNNQuery<>(EuclideanDistanceFunction.STATIC.instantiate(rel2)), idx.getKNNQuery(dq, 5), 5);
+
+      // Larger k: rebuild.
+      idx = new MemoryMappedKNNPreprocessor.Factory<DoubleVector>(12, EuclideanDistanceFunction.STATIC, file).instantiate(rel2);
+      idx.initialize();
+      assertEquals("File was not rebuilt", 12, idx.getK());
+      compare(rel2, new LinearScanDistanceKNNQuery<>(EuclideanDistanceFunction.STATIC.instantiate(rel2)), idx.getKNNQuery(dq, 12), 12);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  private static Relation<DoubleVector> loadRelation(String filename) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, filename);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    return db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+
+  private static void compare(Relation<DoubleVector> rel, KNNQuery<DoubleVector> lin, KNNQuery<DoubleVector> knnq, int k) {
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> expect = lin.getKNNForBulkDBIDs(ids, k);
+    List<? extends KNNList> actual = knnq.getKNNForBulkDBIDs(ids, k);
+    for(int i = 0; i < ids.size(); i++) {
+      KNNList e = expect.get(i), a = actual.get(i);
+      assertEquals("kNN sizes do not agree.", e.size(), a.size());
+      for(int j = 0; j < e.size(); j++) {
+        assertEquals("kNN distances do not agree.", e.get(j).doubleValue(), a.get(j).doubleValue(), 0.);
+      }
+    }
+  }
+}
@@ -25,6 +25,7 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
@@ -47,4 +48,20 @@ public class CoverTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(CoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
     testExactEuclidean(metparams, CoverTree.CoverTreeKNNQuery.class, CoverTree.CoverTreeRangeQuery.class);
   }
+
+  /**
+   * Test insertions and deletions in {@link CoverTree}.
+   */
+  @Test
+  public void testDynamic() {
+    testDynamicEuclidean(new CoverTree.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, 1.3, 10));
+  }
+
+  /**
+   * Test {@link CoverTree} on a data set large enough for parallel bulk loading.
+   */
+  @Test
+  public void testParallelDynamic() {
+    testParallelDynamicEuclidean(new CoverTree.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, 1.3, 10));
+  }
 }
@@ -25,6 +25,7 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
@@ -47,4 +48,21 @@ public class SimplifiedCoverTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(SimplifiedCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
     testExactEuclidean(metparams, SimplifiedCoverTree.CoverTreeKNNQuery.class, SimplifiedCoverTree.CoverTreeRangeQuery.class);
   }
+
+  /**
+   * Test insertions and deletions in {@link SimplifiedCoverTree}.
+   */
+  @Test
+  public void testDynamic() {
+    testDynamicEuclidean(new SimplifiedCoverTree.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, 1.3, 10));
+  }
+
+  /**
+   * Test {@link SimplifiedCoverTree} on a data set large enough for parallel
+   * bulk loading.
+   */
+  @Test
+  public void testParallelDynamic() {
+    testParallelDynamicEuclidean(new SimplifiedCoverTree.Factory<DoubleVector>(EuclideanDistanceFunction.STATIC, 1.3, 10));
+  }
 }
@@ -23,13 +23,40 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query.MetricalIndexRangeQuery;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -49,4 +76,142 @@ public class MTreeTest extends AbstractIndexStructureTest {
     metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
     testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
   }
+
+  /**
+   * Test a bulk loaded {@link MTree}.
+   */
+  @Test
+  public void testBulkLoad() {
+    ListParameterization metparams = new ListParameterization();
+    metparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, MTreeFactory.class);
+    metparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    metparams.addFlag(AbstractMTreeFactory.Parameterizer.BULK_ID);
+    metparams.addParameter(AbstractMTreeFactory.Parameterizer.SEED_ID, 0L);
+    testExactEuclidean(metparams, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+  }
+
+  /**
+   * Test reopening a bulk loaded {@link MTree} from disk.
+   */
+  @Test
+  public void testPersistent() throws IOException {
+    File file = File.createTempFile("elki-mtree", ".idx");
+    assertTrue(file.delete());
+    try {
+      ListParameterization dbparams = new ListParameterization();
+      dbparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, "data/testdata/unittests/hierarchical-3d2d1d.csv");
+      Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, dbparams);
+      db.initialize();
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      DistanceQuery<DoubleVector> dq = EuclideanDistanceFunction.STATIC.instantiate(rel);
+      KNNQuery<DoubleVector> lin = new LinearScanDistanceKNNQuery<>(dq);
+
+      MTreeIndex<DoubleVector> idx = makeFactory(file).instantiate(rel);
+      idx.initialize();
+      final int height = idx.getHeight();
+      assertTrue("Tree was not bulk loaded.", height > 1);
+      compare(rel, lin, idx.getKNNQuery(dq, 10), 10);
+      idx.close();
+      final long length = file.length();
+
+      // Reopen, without rebuilding:
+      MTreeIndex<DoubleVector> idx2 = makeFactory(file).instantiate(rel);
+      idx2.initialize();
+      assertEquals("Height of reopened tree", height, idx2.getHeight());
+      compare(rel, lin, idx2.getKNNQuery(dq, 10), 10);
+      idx2.close();
+      assertEquals("File grew when closing a reopened tree.", length, file.length());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Test that reopening an {@link MTree} on a different distance function or
+   * different data is rejected.
+   */
+  @Test
+  public void testPersistentMismatch() throws IOException {
+    File file = File.createTempFile("elki-mtree", ".idx");
+    assertTrue(file.delete());
+    try {
+      ListParameterization dbparams = new ListParameterization();
+      dbparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, "data/testdata/unittests/hierarchical-3d2d1d.csv");
+      Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, dbparams);
+      db.initialize();
+      Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+
+      MTreeIndex<DoubleVector> idx = makeFactory(file).instantiate(rel);
+      idx.initialize();
+      idx.close();
+
+      try {
+        makeFactory(file, ManhattanDistanceFunction.class).instantiate(rel).initialize();
+        fail("Reopening with a different distance function was not rejected.");
+      }
+      catch(AbortException e) {
+        // Expected.
+      }
+
+      // Same size, but different DBIDs:
+      ListParameterization dbparams2 = new ListParameterization();
+      dbparams2.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, "data/testdata/unittests/hierarchical-3d2d1d.csv");
+      Database db2 = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, dbparams2);
+      db2.initialize();
+      Relation<DoubleVector> rel2 = db2.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      assertEquals(rel.size(), rel2.size());
+      try {
+        makeFactory(file).instantiate(rel2).initialize();
+        fail("Reopening on different DBIDs was not rejected.");
+      }
+      catch(AbortException e) {
+        // Expected.
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Make a bulk loading M-tree factory, using a persistent page file.
+   *
+   * @param file File name
+   * @return Factory
+   */
+  private static MTreeFactory<DoubleVector> makeFactory(File file) {
+    return makeFactory(file, EuclideanDistanceFunction.class);
+  }
+
+  /**
+   * Make a bulk loading M-tree factory, using a persistent page file.
+   *
+   * @param file File name
+   * @param distance Distance function class
+   * @return Factory
+   */
+  private static MTreeFactory<DoubleVector> makeFactory(File file, Class<?> distance) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractMTreeFactory.Parameterizer.DISTANCE_FUNCTION_ID, distance);
+    params.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, PersistentPageFileFactory.class);
+    params.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, file.getPath());
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    params.addFlag(AbstractMTreeFactory.Parameterizer.BULK_ID);
+    return ClassGenericsUtil.parameterizeOrAbort(MTreeFactory.class, params);
+  }
+
+  private static void compare(Relation<DoubleVector> rel, KNNQuery<DoubleVector> lin, KNNQuery<DoubleVector> knnq, int k) {
+    assertNotNull("No kNN query returned.", knnq);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> expect = lin.getKNNForBulkDBIDs(ids, k);
+    List<? extends KNNList> actual = knnq.getKNNForBulkDBIDs(ids, k);
+    for(int i = 0; i < ids.size(); i++) {
+      KNNList e = expect.get(i), a = actual.get(i);
+      assertEquals("kNN sizes do not agree.", e.size(), a.size());
+      for(int j = 0; j < e.size(); j++) {
+        assertEquals("kNN distances do not agree.", e.get(j).doubleValue(), a.get(j).doubleValue(), 1e-15);
+      }
+    }
+  }
 }
@@ -0,0 +1,114 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the dynamic k-d-tree index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class DynamicKDTreeTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link DynamicKDTree} using a file based database connection.
+   */
+  @Test
+  public void testDynamicKDTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, DynamicKDTree.Factory.class);
+    testExactEuclidean(spatparams, DynamicKDTree.KDTreeKNNQuery.class, DynamicKDTree.KDTreeRangeQuery.class);
+  }
+
+  /**
+   * Test insertions and deletions.
+   */
+  @Test
+  public void testDynamic() {
+    testDynamicEuclidean(new DynamicKDTree.Factory<DoubleVector>(1, 0., 0));
+  }
+
+  /**
+   * Test on a data set large enough for parallel construction.
+   */
+  @Test
+  public void testParallelDynamic() {
+    testDynamicEuclidean(new DynamicKDTree.Factory<DoubleVector>(4, 0., 0), randomRelation(10000, 2, 0L));
+  }
+
+  /**
+   * Test approximate kNN queries.
+   */
+  @Test
+  public void testApproximate() {
+    Relation<DoubleVector> rel = randomRelation(5000, 2, 0L);
+    DistanceQuery<DoubleVector> dist = EuclideanDistanceFunction.STATIC.instantiate(rel);
+    final double epsilon = .5;
+    final int k = 10;
+    DynamicKDTree<DoubleVector> exact = new DynamicKDTree.Factory<DoubleVector>(4, 0., 0).instantiate(rel);
+    exact.initialize();
+    DynamicKDTree<DoubleVector> approx = new DynamicKDTree.Factory<DoubleVector>(4, epsilon, 0).instantiate(rel);
+    approx.initialize();
+    DynamicKDTree<DoubleVector> bounded = new DynamicKDTree.Factory<DoubleVector>(4, 0., 3).instantiate(rel);
+    bounded.initialize();
+    KNNQuery<DoubleVector> eq = exact.getKNNQuery(dist);
+    KNNQuery<DoubleVector> aq = approx.getKNNQuery(dist);
+    KNNQuery<DoubleVector> bq = bounded.getKNNQuery(dist);
+    assertTrue(((DynamicKDTree<DoubleVector>.KDTreeKNNQuery) eq).isExact());
+    assertFalse(((DynamicKDTree<DoubleVector>.KDTreeKNNQuery) aq).isExact());
+    assertTrue(((DynamicKDTree<DoubleVector>.KDTreeKNNQuery) approx.getKNNQuery(dist, DatabaseQuery.HINT_EXACT)).isExact());
+    for(DBIDArrayIter it = DBIDUtil.ensureArray(rel.getDBIDs()).iter(); it.valid(); it.advance(25)) {
+      KNNList e = eq.getKNNForDBID(it, k), a = aq.getKNNForDBID(it, k), b = bq.getKNNForDBID(it, k);
+      assertEquals("Result size does not match.", e.size(), a.size());
+      assertTrue("Too many results.", b.size() <= e.size());
+      DoubleDBIDListIter ei = e.iter(), ai = a.iter(), bi = b.iter();
+      for(; ai.valid(); ei.advance(), ai.advance()) {
+        assertTrue("Not within approximation factor.", ai.doubleValue() <= ei.doubleValue() * (1 + epsilon));
+        assertTrue("Better than exact.", ai.doubleValue() >= ei.doubleValue());
+      }
+      for(ei.seek(0); bi.valid(); ei.advance(), bi.advance()) {
+        assertTrue("Better than exact.", bi.doubleValue() >= ei.doubleValue());
+      }
+    }
+  }
+}
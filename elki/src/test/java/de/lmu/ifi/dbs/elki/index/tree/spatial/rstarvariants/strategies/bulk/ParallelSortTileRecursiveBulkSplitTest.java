@@ -0,0 +1,61 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+
+/**
+ * Test that the parallel STR bulk split produces the same tiling as the
+ * sequential version.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelSortTileRecursiveBulkSplitTest {
+  /**
+   * Compare the pages of both bulk splits.
+   */
+  @Test
+  public void testSameTiling() {
+    List<DoubleVector> data = new ArrayList<>();
+    for(double[] row : AbstractIndexStructureTest.randomData(100000, 3, 0L)) {
+      data.add(DoubleVector.wrap(row));
+    }
+    List<List<DoubleVector>> seq = SortTileRecursiveBulkSplit.STATIC.partition(new ArrayList<>(data), 20, 50);
+    List<List<DoubleVector>> par = ParallelSortTileRecursiveBulkSplit.STATIC.partition(new ArrayList<>(data), 20, 50);
+    assertEquals("Number of pages differs.", seq.size(), par.size());
+    for(int i = 0; i < seq.size(); i++) {
+      assertEquals("Page " + i + " differs.", new HashSet<>(seq.get(i)), new HashSet<>(par.get(i)));
+    }
+  }
+}
@@ -23,9 +23,24 @@ package de.lmu.ifi.dbs.elki.index.vafile;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -46,4 +61,39 @@ public class VAFileTest extends AbstractIndexStructureTest {
     spatparams.addParameter(VAFile.Factory.PARTITIONS_ID, 4);
     testExactEuclidean(spatparams, VAFile.VAFileKNNQuery.class, VAFile.VAFileRangeQuery.class);
   }
+
+  /**
+   * Test high-dimensional data, large enough for the parallel filter, with
+   * different norms.
+   */
+  @Test
+  public void testHighDimensional() {
+    final int size = 20000, dim = 32;
+    Relation<DoubleVector> rel = randomRelation(size, dim, 0L);
+    VAFile<DoubleVector> va = new VAFile.Factory<DoubleVector>(1024, 16).instantiate(rel);
+    va.initialize();
+    assertKNNMatches(va, EuclideanDistanceFunction.STATIC.instantiate(rel));
+    assertKNNMatches(va, ManhattanDistanceFunction.STATIC.instantiate(rel));
+    assertKNNMatches(va, MaximumDistanceFunction.STATIC.instantiate(rel));
+  }
+
+  /**
+   * Compare kNN and range queries to a linear scan.
+   *
+   * @param va VA file
+   * @param dq Distance query
+   */
+  private void assertKNNMatches(VAFile<DoubleVector> va, DistanceQuery<DoubleVector> dq) {
+    KNNQuery<DoubleVector> knnq = va.getKNNQuery(dq);
+    RangeQuery<DoubleVector> rangeq = va.getRangeQuery(dq);
+    KNNQuery<DoubleVector> linq = new LinearScanDistanceKNNQuery<>(dq);
+    for(DBIDArrayIter it = DBIDUtil.ensureArray(dq.getRelation().getDBIDs()).iter(); it.valid(); it.advance(997)) {
+      KNNList exact = linq.getKNNForDBID(it, 10), res = knnq.getKNNForDBID(it, 10);
+      assertEquals("Result size does not match.", exact.size(), res.size());
+      for(DoubleDBIDListIter ei = exact.iter(), ri = res.iter(); ei.valid(); ei.advance(), ri.advance()) {
+        assertEquals("Distances do not match.", ei.doubleValue(), ri.doubleValue(), 1e-10);
+      }
+      assertEquals("Range query size does not match.", exact.size(), rangeq.getRangeForDBID(it, exact.getKNNDistance()).size());
+    }
+  }
 }
@@ -0,0 +1,69 @@
+package de.lmu.ifi.dbs.elki.math.spacefillingcurves;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+
+/**
+ * Test the Hilbert curve sorting, including the parallel code path.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class HilbertSpatialSorterTest {
+  /**
+   * Sort a data set large enough for the parallel code path, and verify the
+   * order against the Hilbert addresses.
+   */
+  @Test
+  public void testParallelSort() {
+    List<DoubleVector> data = new ArrayList<>();
+    for(double[] row : AbstractIndexStructureTest.randomData(50000, 2, 0L)) {
+      data.add(DoubleVector.wrap(row));
+    }
+    double[] minmax = AbstractSpatialSorter.computeMinMax(data);
+    new HilbertSpatialSorter().sort(data);
+    long[] prev = null;
+    int[] buf = new int[2];
+    for(DoubleVector v : data) {
+      for(int d = 0; d < 2; d++) {
+        buf[d] = (int) (Integer.MAX_VALUE * ((v.doubleValue(d) - minmax[d << 1]) / (minmax[(d << 1) + 1] - minmax[d << 1])));
+      }
+      long[] cur = HilbertSpatialSorter.coordinatesToHilbert(buf, Integer.SIZE - 1, 1);
+      if(prev != null) {
+        assertTrue("Not sorted by Hilbert address.", BitsUtil.compare(prev, cur) <= 0);
+      }
+      prev = cur;
+    }
+  }
+}
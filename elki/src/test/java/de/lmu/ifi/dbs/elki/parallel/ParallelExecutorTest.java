@@ -0,0 +1,91 @@
+package de.lmu.ifi.dbs.elki.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Test that every partitioning strategy processes each object exactly once.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.0
+ */
+public class ParallelExecutorTest {
+  @Test
+  public void testStatic() {
+    testStrategy(ParallelExecutor.Strategy.STATIC);
+  }
+
+  @Test
+  public void testGuided() {
+    testStrategy(ParallelExecutor.Strategy.GUIDED);
+  }
+
+  @Test
+  public void testWorkStealing() {
+    testStrategy(ParallelExecutor.Strategy.WORK_STEALING);
+  }
+
+  /**
+   * Run a counting processor with the given strategy.
+   * 
+   * @param strategy Strategy
+   */
+  private void testStrategy(ParallelExecutor.Strategy strategy) {
+    for(int size : new int[] { 0, 1, 17, 1000, 12345 }) {
+      final DBIDRange ids = DBIDUtil.generateStaticDBIDRange(size);
+      final AtomicIntegerArray counts = new AtomicIntegerArray(size);
+      final int[] cleanups = new int[1];
+      ParallelExecutor.run(ids, strategy, new Processor() {
+        @Override
+        public Instance instantiate(Executor executor) {
+          return new Instance() {
+            @Override
+            public void map(DBIDRef id) {
+              counts.incrementAndGet(ids.getOffset(id));
+            }
+          };
+        }
+
+        @Override
+        public void cleanup(Instance inst) {
+          ++cleanups[0];
+        }
+      });
+      for(int i = 0; i < size; i++) {
+        assertEquals("Object not processed exactly once.", 1, counts.get(i));
+      }
+      assertEquals("Cleanup not called once per thread.", size > 0, cleanups[0] > 0);
+      assertEquals("More cleanups than threads.", true, cleanups[0] <= ParallelCore.getCore().getParallelism());
+    }
+  }
+}
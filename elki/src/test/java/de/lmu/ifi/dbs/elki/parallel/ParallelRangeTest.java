@@ -0,0 +1,77 @@
+package de.lmu.ifi.dbs.elki.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Test that parallel ranges process each value exactly once, and reduce in
+ * order.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelRangeTest {
+  @Test
+  public void testRun() {
+    for(int size : new int[] { 0, 1, 17, 1000, 12345 }) {
+      final AtomicIntegerArray counts = new AtomicIntegerArray(size);
+      ParallelRange.run(0, size, ParallelRange.blocksize(size, 16), new ParallelRange.Block() {
+        @Override
+        public void process(int begin, int end) {
+          for(int i = begin; i < end; i++) {
+            counts.incrementAndGet(i);
+          }
+        }
+      });
+      for(int i = 0; i < size; i++) {
+        assertEquals("Value not processed exactly once.", 1, counts.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testReduce() {
+    for(int size : new int[] { 1, 17, 1000, 12345 }) {
+      // Concatenate the block ranges, to verify the merge order.
+      String res = ParallelRange.reduce(0, size, 16, new ParallelRange.Reducer<String>() {
+        @Override
+        public String process(int begin, int end) {
+          return begin + "-" + end;
+        }
+
+        @Override
+        public String merge(String left, String right) {
+          assertEquals("Blocks are not adjacent.", left.substring(left.lastIndexOf('-') + 1), right.substring(0, right.indexOf('-')));
+          return left.substring(0, left.lastIndexOf('-')) + right.substring(right.indexOf('-'));
+        }
+      });
+      assertEquals("Reduced range does not match.", "0-" + size, res);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+
+/**
+ * Test writing, deleting and reopening pages with the
+ * {@link FileChannelPageFile}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class FileChannelPageFileTest {
+  File file = new File("FileChannelPageFileTestFile.test.dat");
+
+  /**
+   * Check that we don't overwrite any file.
+   */
+  @Before
+  public void safetyCheck() {
+    if(file.exists()) {
+      Assert.fail("Could not run test - test file already exists.");
+    }
+  }
+
+  /**
+   * Clean up afterwards
+   */
+  @After
+  public void cleanup() {
+    if(file != null && file.exists()) {
+      if(!file.delete()) {
+        Assert.fail("Error cleaning up: can't remove test file.");
+      }
+    }
+  }
+
+  @Test
+  public void testWriteReopen() {
+    final int pageSize = 256, numpages = 20;
+    FileChannelPageFile<TestPage> pfile = new FileChannelPageFile<>(pageSize, file.getPath(), TestPage.class);
+    Assert.assertFalse("File should be new.", pfile.initialize(new TreeIndexHeader(pageSize, 10, 10, 2, 2)));
+    for(int i = 0; i < numpages; i++) {
+      Assert.assertEquals("Page ids not sequential.", i, pfile.writePage(new TestPage(i)));
+    }
+    for(int i = 0; i < numpages; i++) {
+      pfile.readPage(i).check(i);
+    }
+    pfile.deletePage(3);
+    Assert.assertNull("Deleted page was returned.", pfile.readPage(3));
+    pfile.close();
+
+    pfile = new FileChannelPageFile<>(pageSize, file.getPath(), TestPage.class);
+    Assert.assertTrue("File should exist.", pfile.initialize(new TreeIndexHeader()));
+    Assert.assertEquals("Page size not restored.", pageSize, pfile.getPageSize());
+    for(int i = 0; i < numpages; i++) {
+      TestPage page = pfile.readPage(i);
+      if(i == 3) {
+        Assert.assertNull("Deleted page was returned.", page);
+        continue;
+      }
+      page.check(i);
+    }
+    // Deleted page must be reused:
+    Assert.assertEquals("Empty page was not reused.", 3, pfile.writePage(new TestPage(3)));
+    pfile.close();
+  }
+
+  @Test
+  public void testReopenKeepsSize() {
+    final int pageSize = 256, numpages = 10;
+    FileChannelPageFile<TestPage> pfile = new FileChannelPageFile<>(pageSize, file.getPath(), TestPage.class);
+    pfile.initialize(new TreeIndexHeader(pageSize, 10, 10, 2, 2));
+    for(int i = 0; i < numpages; i++) {
+      pfile.writePage(new TestPage(i));
+    }
+    pfile.deletePage(3);
+    pfile.deletePage(5);
+    pfile.close();
+    final long length = file.length();
+    // Repeated open and close must not append further empty page lists.
+    for(int r = 0; r < 3; r++) {
+      pfile = new FileChannelPageFile<>(pageSize, file.getPath(), TestPage.class);
+      Assert.assertTrue("File should exist.", pfile.initialize(new TreeIndexHeader()));
+      pfile.readPage(numpages - 1).check(numpages - 1);
+      pfile.close();
+      Assert.assertEquals("File grew on reopening.", length, file.length());
+    }
+    pfile = new FileChannelPageFile<>(pageSize, file.getPath(), TestPage.class);
+    pfile.initialize(new TreeIndexHeader());
+    Assert.assertEquals("Empty page was not reused.", 5, pfile.writePage(new TestPage(5)));
+    Assert.assertEquals("Empty page was not reused.", 3, pfile.writePage(new TestPage(3)));
+    Assert.assertEquals("Page ids not sequential.", numpages, pfile.writePage(new TestPage(numpages)));
+    pfile.close();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testShortRead() {
+    final int pageSize = 256;
+    FileChannelPageFile<TestPage> pfile = new FileChannelPageFile<>(pageSize, file.getPath(), TestPage.class);
+    pfile.initialize(new TreeIndexHeader(pageSize, 10, 10, 2, 2));
+    pfile.writePage(new TestPage(0));
+    try {
+      // Beyond the end of the file.
+      pfile.readPage(1);
+    }
+    finally {
+      pfile.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPageTooLarge() {
+    FileChannelPageFile<TestPage> pfile = new FileChannelPageFile<>(32, file.getPath(), TestPage.class);
+    pfile.initialize(new TreeIndexHeader(32, 10, 10, 2, 2));
+    pfile.writePage(new TestPage(1));
+  }
+
+  /**
+   * Page used for testing, using primitive fields and an object.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Payload
+     */
+    double[] values;
+
+    /**
+     * Label, stored via Java serialization.
+     */
+    String label;
+
+    /**
+     * Empty constructor for Externalizable interface.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param i Page number
+     */
+    public TestPage(int i) {
+      super();
+      values = new double[] { i, i * .5, -i };
+      label = "page" + i;
+    }
+
+    /**
+     * Verify the page contents.
+     *
+     * @param i Expected page number
+     */
+    void check(int i) {
+      Assert.assertEquals("Page id", i, getPageID());
+      Assert.assertArrayEquals("Payload", new double[] { i, i * .5, -i }, values, 0.);
+      Assert.assertEquals("Label", "page" + i, label);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeInt(values.length);
+      for(double v : values) {
+        out.writeDouble(v);
+      }
+      out.writeBoolean(true);
+      out.writeObject(label);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      values = new double[in.readInt()];
+      for(int i = 0; i < values.length; i++) {
+        values[i] = in.readDouble();
+      }
+      Assert.assertTrue(in.readBoolean());
+      label = (String) in.readObject();
+    }
+  }
+}
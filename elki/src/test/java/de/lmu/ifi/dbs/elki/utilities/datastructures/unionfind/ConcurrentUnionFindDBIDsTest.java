@@ -0,0 +1,107 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+
+/**
+ * Unit test for the concurrent union find.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ConcurrentUnionFindDBIDsTest {
+  @Test
+  public void testBruteForce() {
+    final int size = 100;
+    // Random pairs of objects, more than enough to connect all.
+    double[][] pairs = AbstractIndexStructureTest.randomData(100 * size, 2, 0L);
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(size);
+
+    UnionFind uf = UnionFindUtil.makeConcurrent(range);
+    DBIDArrayIter i1 = range.iter(), i2 = range.iter();
+
+    int[] c = new int[size];
+    for(int i = 0; i < size; i++) {
+      c[i] = i;
+    }
+    int numc = size;
+    for(int p = 0; numc > 1; p++) {
+      // Two randoms, with o1 < o2
+      int o2 = (int) (pairs[p][0] * (size - 1)) + 1, o1 = (int) (pairs[p][1] * o2);
+      final int c1 = c[o1], c2 = c[o2];
+      final boolean ufc = uf.isConnected(i1.seek(o1), i2.seek(o2));
+      assertEquals(c1 == c2, ufc);
+      uf.union(i1, i2); // always
+      if(c1 != c2) {
+        for(int j = 0; j < size; j++) {
+          if(c[j] == c1) {
+            c[j] = c2;
+          }
+        }
+        --numc;
+      }
+      assertEquals(numc, uf.getRoots().size());
+    }
+  }
+
+  @Test
+  public void testThreads() throws InterruptedException {
+    final int size = 10000, nthreads = 4;
+    final ConcurrentUnionFindDBIDs uf = UnionFindUtil.makeConcurrent(DBIDUtil.generateStaticDBIDRange(size));
+    // Each thread links all elements with the same residue modulo 10.
+    Thread[] threads = new Thread[nthreads];
+    for(int t = 0; t < nthreads; t++) {
+      final long seed = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          double[][] pairs = AbstractIndexStructureTest.randomData(size, 2, seed);
+          for(int i = 0; i < size; i++) {
+            int a = (int) (pairs[i][0] * size), b = (int) (pairs[i][1] * (size / 10)) * 10 + a % 10;
+            uf.union(a, b < size ? b : a);
+          }
+          for(int i = 10; i < size; i++) {
+            uf.union(i - 10, i);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for(Thread t : threads) {
+      t.join();
+    }
+    assertEquals(10, uf.getRoots().size());
+    for(int i = 10; i < size; i++) {
+      assertEquals(uf.find(i % 10), uf.find(i));
+    }
+  }
+}